@@ -58,6 +58,7 @@ public class CmdRcp extends AbstractVaultCommand {
         }
         rcp.setUpdate(cl.hasOption(optUpdate));
         rcp.setOnlyNewer(cl.hasOption(optNewer));
+        rcp.setCompareContent(cl.hasOption(optCompare));
         rcp.setNoOrdering(cl.hasOption(optNoOrdering));
         rcp.setCredentialsProvider(app.getCredentialsStore());
         DefaultWorkspaceFilter srcFilter = new DefaultWorkspaceFilter();
@@ -99,6 +100,7 @@ public class CmdRcp extends AbstractVaultCommand {
     private Option optResumeFrom;
     private Option optUpdate;
     private Option optNewer;
+    private Option optCompare;
     private Option optNoOrdering;
 
     protected Command createCommand() {
@@ -153,6 +155,11 @@ public class CmdRcp extends AbstractVaultCommand {
                                 .withLongName("newer")
                                 .withDescription("respect lastModified properties for update.")
                                 .create())
+                        .withOption(optCompare = new DefaultOptionBuilder()
+                                .withShortName("c")
+                                .withLongName("compare")
+                                .withDescription("only write properties that differ from the source for update.")
+                                .create())
                         .withOption(optExclude = new DefaultOptionBuilder()
                                 .withShortName("e")
                                 .withLongName("exclude")
@@ -30,6 +30,20 @@ public interface VaultFsConfig {
      */
     String NAME_USE_BINARY_REFERENCES = "useBinaryReferences";
 
+    /**
+     * Name of the property that configures whether the docview serialization is performed in a separate writer
+     * thread, concurrently to reading the repository items.
+     * @since 3.4.5
+     */
+    String NAME_PIPELINED_SERIALIZATION = "pipelinedSerialization";
+
+    /**
+     * Name of the property that configures whether the docview serialization uses a specialised writer that
+     * writes the encoded bytes directly instead of the generic StAX based writer.
+     * @since 3.4.5
+     */
+    String NAME_USE_OPTIMIZED_WRITER = "useOptimizedWriter";
+
     /**
      * Returns an input stream that contains the source xml that constructs this config
      * @return the source config
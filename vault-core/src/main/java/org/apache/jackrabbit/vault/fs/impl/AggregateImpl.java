@@ -559,6 +559,7 @@ public class AggregateImpl implements Aggregate {
                         // do not create a separate binary file if there is a reference
                         if (binaryReference != null) {
                             includeBinary = false;
+                            mgr.onBinaryReference(propPath, binaryReference, bin.getSize());
                         }
                     }
                 }
@@ -54,6 +54,7 @@ import org.apache.jackrabbit.vault.fs.config.AbstractVaultFsConfig;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
 import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.impl.aggregator.RootAggregator;
+import org.apache.jackrabbit.vault.fs.impl.io.NodeTypeArtifactHandler;
 import org.apache.jackrabbit.vault.fs.spi.CNDReader;
 import org.apache.jackrabbit.vault.fs.spi.NodeTypeInstaller;
 import org.apache.jackrabbit.vault.fs.spi.ServiceProviderFactory;
@@ -141,6 +142,12 @@ public class AggregateManagerImpl implements AggregateManager {
      */
     private final AggregateImpl root;
 
+    /**
+     * manifest of the binaries that are serialized as references or {@code null}
+     * if binary references are not used.
+     */
+    private final BinaryReferenceManifest binaryReferences;
+
     /**
      * Creates a new artifact manager that is rooted at the given node.
      *
@@ -266,6 +273,9 @@ public class AggregateManagerImpl implements AggregateManager {
 
     public void unmount() throws RepositoryException {
         assertMounted();
+        if (binaryReferences != null) {
+            binaryReferences.clear();
+        }
         if (ownSession) {
             session.logout();
         }
@@ -302,6 +312,9 @@ public class AggregateManagerImpl implements AggregateManager {
         workspaceFilter = wspFilter;
         aggregatorProvider = new AggregatorProvider(config.getAggregators());
         artifactHandlers = Collections.unmodifiableList(config.getHandlers());
+        binaryReferences = "true".equals(config.getProperty(VaultFsConfig.NAME_USE_BINARY_REFERENCES))
+                ? new BinaryReferenceManifest()
+                : null;
 
         // init root node
         Aggregator rootAggregator = rootNode.getDepth() == 0
@@ -344,6 +357,31 @@ public class AggregateManagerImpl implements AggregateManager {
         return ret;
     }
 
+    /**
+     * Returns the manifest of the binaries that are serialized as references.
+     * @return the manifest or {@code null} if binary references are not used.
+     */
+    public BinaryReferenceManifest getBinaryReferenceManifest() {
+        return binaryReferences;
+    }
+
+    /**
+     * Records a binary that is serialized as reference.
+     * @param path the path of the binary property
+     * @param reference the reference
+     * @param length the size of the binary
+     * @throws RepositoryException if the reference cannot be recorded
+     */
+    public void onBinaryReference(String path, String reference, long length) throws RepositoryException {
+        if (binaryReferences != null) {
+            try {
+                binaryReferences.add(path, reference, length);
+            } catch (IOException e) {
+                throw new RepositoryException("Unable to record binary reference of " + path, e);
+            }
+        }
+    }
+
     public void startTracking(ProgressTrackerListener pTracker) {
         tracker = new AggregatorTracker(pTracker);
     }
@@ -441,6 +479,7 @@ public class AggregateManagerImpl implements AggregateManager {
             CNDReader types = ServiceProviderFactory.getProvider().getCNDReader();
             types.read(new InputStreamReader(in, "utf8"), DEFAULT_NODETYPES, null);
             installer.install(null, types);
+            aggregatorProvider.invalidate();
         } catch (Exception e) {
             throw new RepositoryException("Error while importing nodetypes.", e);
         }
@@ -474,6 +513,9 @@ public class AggregateManagerImpl implements AggregateManager {
                 info = artifactHandler.accept(session, node, artifacts);
                 if (info != null) {
                     node.invalidate();
+                    if (artifactHandler instanceof NodeTypeArtifactHandler) {
+                        aggregatorProvider.invalidate();
+                    }
                     return info;
                 }
             }
@@ -483,6 +525,9 @@ public class AggregateManagerImpl implements AggregateManager {
                 info = artifactHandler.accept(session, node, reposName, artifacts);
                 if (info != null) {
                     node.invalidate();
+                    if (artifactHandler instanceof NodeTypeArtifactHandler) {
+                        aggregatorProvider.invalidate();
+                    }
                     return info;
                 }
             }
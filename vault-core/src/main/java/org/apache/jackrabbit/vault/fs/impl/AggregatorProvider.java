@@ -17,32 +17,86 @@
 
 package org.apache.jackrabbit.vault.fs.impl;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
+import javax.jcr.nodetype.NodeType;
 
 import org.apache.jackrabbit.vault.fs.api.Aggregator;
 import org.apache.jackrabbit.vault.fs.api.DumpContext;
+import org.apache.jackrabbit.vault.fs.api.FilterSet;
+import org.apache.jackrabbit.vault.fs.api.ItemFilter;
+import org.apache.jackrabbit.vault.fs.api.ItemFilterSet;
+import org.apache.jackrabbit.vault.fs.filter.DepthItemFilter;
+import org.apache.jackrabbit.vault.fs.filter.NameItemFilter;
+import org.apache.jackrabbit.vault.fs.filter.NodeTypeItemFilter;
+import org.apache.jackrabbit.vault.fs.impl.aggregator.FileAggregator;
+import org.apache.jackrabbit.vault.fs.impl.aggregator.FileFolderAggregator;
+import org.apache.jackrabbit.vault.fs.impl.aggregator.FullCoverageAggregator;
+import org.apache.jackrabbit.vault.fs.impl.aggregator.GenericAggregator;
+import org.apache.jackrabbit.vault.fs.impl.aggregator.NodeTypeAggregator;
+import org.apache.jackrabbit.vault.util.JcrConstants;
 
 /**
  * List of configured aggregators that selects one given a repository node.
+ *
+ * The selection is memoized in a decision index that is keyed by the effective
+ * node types (primary type and mixins) and, if needed, the name of the node.
+ * Aggregators whose match filter only depends on these properties are evaluated
+ * once per key, all others (e.g. path dependent filters) are still evaluated
+ * for every node.
  */
 public class AggregatorProvider {
 
+    /**
+     * maximum number of entries in the decision index
+     */
+    private static final int MAX_DECISIONS = 1024;
+
     /**
      * list of aggregators
      */
     private final List<Aggregator> aggregators;
 
+    /**
+     * the rules of the respective aggregators
+     */
+    private final Rule[] rules;
+
+    /**
+     * indicates if the name of the node is part of the decision key
+     */
+    private final boolean nameDependent;
+
+    /**
+     * decision index keyed by node types and name.
+     */
+    private final Map<String, Decision> decisions = new LinkedHashMap<String, Decision>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+            return size() > MAX_DECISIONS;
+        }
+    };
+
     /**
      * Constructs a new aggregator provider with a given aggregator list.
      * @param aggregators the list of aggregators.
      */
     public AggregatorProvider(List<Aggregator> aggregators) {
         this.aggregators = Collections.unmodifiableList(aggregators);
+        rules = new Rule[aggregators.size()];
+        boolean nameDependent = false;
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = Rule.create(aggregators.get(i));
+            nameDependent |= rules[i].nameDependent;
+        }
+        this.nameDependent = nameDependent;
     }
 
     /**
@@ -64,14 +118,83 @@ public class AggregatorProvider {
      * @throws RepositoryException if a repository error occurs
      */
     public Aggregator getAggregator(Node node, String path) throws RepositoryException {
-        for (Aggregator a: aggregators) {
-            if (a.matches(node, path)) {
-                return a;
+        String key = getDecisionKey(node);
+        Decision decision = decisions.get(key);
+        if (decision == null) {
+            decision = createDecision(node, path);
+            decisions.put(key, decision);
+        }
+        for (int idx: decision.candidates) {
+            Rule rule = rules[idx];
+            if (rule.scope == Scope.INDEXED || rule.aggregator.matches(node, path)) {
+                return rule.aggregator;
             }
         }
         return null;
     }
 
+    /**
+     * Clears the decision index. This needs to be called when node types are
+     * (re)registered, since the decisions depend on the node type hierarchy.
+     */
+    public void invalidate() {
+        decisions.clear();
+    }
+
+    /**
+     * Creates the decision for the given node. The decision contains the indexes
+     * of all aggregators that need to be checked for nodes with the same key,
+     * terminated by the first indexed aggregator that matches.
+     *
+     * @param node the node
+     * @param path the path of the node or {@code null}
+     * @return the decision
+     * @throws RepositoryException if a repository error occurs
+     */
+    private Decision createDecision(Node node, String path) throws RepositoryException {
+        int[] candidates = new int[rules.length];
+        int num = 0;
+        for (int i = 0; i < rules.length; i++) {
+            Rule rule = rules[i];
+            if (rule.scope == Scope.INDEXED) {
+                if (rule.aggregator.matches(node, path)) {
+                    candidates[num++] = i;
+                    break;
+                }
+            } else if (rule.scope == Scope.NODE || rule.isGuarded(node)) {
+                candidates[num++] = i;
+            }
+        }
+        return new Decision(Arrays.copyOf(candidates, num));
+    }
+
+    /**
+     * Returns the key of the decision index for the given node.
+     * @param node the node
+     * @return the key
+     * @throws RepositoryException if a repository error occurs
+     */
+    private String getDecisionKey(Node node) throws RepositoryException {
+        StringBuilder key = new StringBuilder(node.getPrimaryNodeType().getName());
+        NodeType[] mixins = node.getMixinNodeTypes();
+        if (mixins.length == 1) {
+            key.append(',').append(mixins[0].getName());
+        } else if (mixins.length > 1) {
+            String[] names = new String[mixins.length];
+            for (int i = 0; i < mixins.length; i++) {
+                names[i] = mixins[i].getName();
+            }
+            Arrays.sort(names);
+            for (String name: names) {
+                key.append(',').append(name);
+            }
+        }
+        if (nameDependent) {
+            key.append('/').append(node.getName());
+        }
+        return key.toString();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -84,4 +207,103 @@ public class AggregatorProvider {
         }
         ctx.outdent();
     }
-}
\ No newline at end of file
+
+    /**
+     * Defines how the match decision of an aggregator can be indexed.
+     */
+    private enum Scope {
+
+        /**
+         * the decision only depends on the node types and the name of the node
+         */
+        INDEXED,
+
+        /**
+         * the decision is negative for all nodes that are not of one of the
+         * guard types, otherwise it depends on the node itself.
+         */
+        GUARDED,
+
+        /**
+         * the decision depends on the node (or its path) and cannot be indexed.
+         */
+        NODE
+    }
+
+    /**
+     * Holds the index scope of an aggregator.
+     */
+    private static class Rule {
+
+        private final Aggregator aggregator;
+
+        private final Scope scope;
+
+        private final boolean nameDependent;
+
+        private final String[] guardTypes;
+
+        private Rule(Aggregator aggregator, Scope scope, boolean nameDependent, String ... guardTypes) {
+            this.aggregator = aggregator;
+            this.scope = scope;
+            this.nameDependent = nameDependent;
+            this.guardTypes = guardTypes;
+        }
+
+        private boolean isGuarded(Node node) throws RepositoryException {
+            for (String type: guardTypes) {
+                if (node.isNodeType(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Rule create(Aggregator aggregator) {
+            Class<?> clazz = aggregator.getClass();
+            if (clazz == FileAggregator.class) {
+                return new Rule(aggregator, Scope.GUARDED, false, JcrConstants.NT_FILE, JcrConstants.NT_RESOURCE);
+            }
+            if (clazz == FileFolderAggregator.class) {
+                return new Rule(aggregator, Scope.GUARDED, false, JcrConstants.NT_HIERARCHYNODE);
+            }
+            if (clazz == GenericAggregator.class || clazz == FullCoverageAggregator.class || clazz == NodeTypeAggregator.class) {
+                ItemFilterSet matchFilter = ((GenericAggregator) aggregator).getMatchFilter();
+                if (!"/".equals(matchFilter.getRoot())) {
+                    return new Rule(aggregator, Scope.NODE, false);
+                }
+                // note that the node type aggregator lazily adds a node type filter if empty
+                // so we must not seal the filter set in this case.
+                if (matchFilter.isEmpty()) {
+                    return new Rule(aggregator, Scope.INDEXED, false);
+                }
+                boolean nameDependent = false;
+                for (FilterSet.Entry<ItemFilter> e: matchFilter.getEntries()) {
+                    Class<?> filterClass = e.getFilter().getClass();
+                    if (filterClass == NameItemFilter.class) {
+                        nameDependent = true;
+                    } else if (filterClass != NodeTypeItemFilter.class && filterClass != DepthItemFilter.class) {
+                        return new Rule(aggregator, Scope.NODE, false);
+                    }
+                }
+                return new Rule(aggregator, Scope.INDEXED, nameDependent);
+            }
+            return new Rule(aggregator, Scope.NODE, false);
+        }
+    }
+
+    /**
+     * Memoized decision for a decision key.
+     */
+    private static class Decision {
+
+        /**
+         * indexes of the aggregators to check
+         */
+        private final int[] candidates;
+
+        private Decision(int[] candidates) {
+            this.candidates = candidates;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.fs.impl;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The binary reference manifest lists the binaries that were exported as references instead of their content.
+ * It is written to {@code META-INF/vault/binary-references.txt} and allows the importer to verify that all
+ * referenced binaries can be resolved in the target repository before the content is modified.
+ *
+ * Each line contains the reference, the size of the binary and the path of the property, separated by tabs.
+ * The entries are spooled to a temporary file, so that exports with many binaries don't consume memory.
+ */
+public class BinaryReferenceManifest {
+
+    private File file;
+
+    private Writer writer;
+
+    private int size;
+
+    /**
+     * Adds a binary reference to the manifest
+     * @param path the path of the binary property
+     * @param reference the binary reference
+     * @param length the size of the binary or {@code -1} if unknown.
+     * @throws IOException if an I/O error occurs
+     */
+    public void add(@NotNull String path, @NotNull String reference, long length) throws IOException {
+        if (writer == null) {
+            file = File.createTempFile("binary-references", ".txt");
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        }
+        writer.write(new Entry(path, reference, length).toString());
+        writer.write('\n');
+        size++;
+    }
+
+    /**
+     * Returns the number of entries in this manifest
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the input stream of the serialized manifest.
+     * @return the input stream
+     * @throws IOException if an I/O error occurs
+     */
+    @NotNull
+    public InputStream getInputStream() throws IOException {
+        if (writer == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        writer.flush();
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Removes all entries and releases the temporary file.
+     */
+    public void clear() {
+        IOUtils.closeQuietly(writer);
+        writer = null;
+        if (file != null) {
+            FileUtils.deleteQuietly(file);
+            file = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Entry of the manifest
+     */
+    public static class Entry {
+
+        private final String path;
+
+        private final String reference;
+
+        private final long length;
+
+        public Entry(@NotNull String path, @NotNull String reference, long length) {
+            this.path = path;
+            this.reference = reference;
+            this.length = length;
+        }
+
+        /**
+         * Parses a line of the manifest
+         * @param line the line
+         * @return the entry or {@code null} if the line is empty or malformed.
+         */
+        @Nullable
+        public static Entry parse(@NotNull String line) {
+            String[] segs = line.split("\t", 3);
+            if (segs.length != 3 || segs[0].isEmpty()) {
+                return null;
+            }
+            try {
+                return new Entry(segs[2], segs[0], Long.parseLong(segs[1]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        @NotNull
+        public String getReference() {
+            return reference;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return reference + "\t" + length + "\t" + path;
+        }
+    }
+}
@@ -23,13 +23,16 @@ import java.io.OutputStream;
 import javax.jcr.RepositoryException;
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.jackrabbit.vault.fs.api.Aggregate;
 import org.apache.jackrabbit.vault.fs.api.SerializationType;
+import org.apache.jackrabbit.vault.fs.api.VaultFsConfig;
 import org.apache.jackrabbit.vault.fs.impl.AggregateImpl;
 import org.apache.jackrabbit.vault.fs.io.DocViewFormat;
 import org.apache.jackrabbit.vault.fs.io.Serializer;
 import org.apache.jackrabbit.vault.util.xml.serialize.FormattingXmlStreamWriter;
+import org.apache.jackrabbit.vault.util.xml.serialize.OutputFormat;
 
 /**
  * {@code DocViewSerializer}...
@@ -54,15 +57,37 @@ public class DocViewSerializer implements Serializer {
      * {@inheritDoc}
      */
     public void writeContent(OutputStream out) throws IOException, RepositoryException {
+        VaultFsConfig config = aggregate.getManager().getConfig();
+        OutputFormat format = new DocViewFormat().getXmlOutputFormat();
+        if ("true".equals(config.getProperty(VaultFsConfig.NAME_USE_OPTIMIZED_WRITER))) {
+            try (DocViewXmlStreamWriter writer = new DocViewXmlStreamWriter(out, format)) {
+                writeContent(config, writer);
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+            return;
+        }
         // build content handler and add filter in case of original xml files
-        try (FormattingXmlStreamWriter writer = FormattingXmlStreamWriter.create(out, new DocViewFormat().getXmlOutputFormat())){
-            DocViewSAXFormatter fmt = new DocViewSAXFormatter(aggregate, writer);
-            aggregate.walk(fmt);
+        try (FormattingXmlStreamWriter writer = FormattingXmlStreamWriter.create(out, format)){
+            writeContent(config, writer);
         } catch (XMLStreamException | FactoryConfigurationError e) {
             throw new IOException(e);
         }
     }
 
+    private void writeContent(VaultFsConfig config, XMLStreamWriter writer) throws RepositoryException, XMLStreamException {
+        if ("true".equals(config.getProperty(VaultFsConfig.NAME_PIPELINED_SERIALIZATION))) {
+            // read the items in this thread and format the xml in a separate one
+            try (PipelinedXmlStreamWriter pipeline = new PipelinedXmlStreamWriter(writer)) {
+                DocViewSAXFormatter fmt = new DocViewSAXFormatter(aggregate, pipeline);
+                aggregate.walk(fmt);
+            }
+        } else {
+            DocViewSAXFormatter fmt = new DocViewSAXFormatter(aggregate, writer);
+            aggregate.walk(fmt);
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -0,0 +1,496 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.fs.impl.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.jackrabbit.vault.util.xml.serialize.OutputFormat;
+
+/**
+ * {@code DocViewXmlStreamWriter} is a specialised writer for the docview serialization which produces the same
+ * output as the {@link org.apache.jackrabbit.vault.util.xml.serialize.FormattingXmlStreamWriter} but writes the
+ * UTF-8 encoded bytes directly into a reusable buffer.
+ *
+ * The encoded qualified names of elements and attributes are cached, and the attribute values are escaped
+ * using a lookup table. Only the subset of the {@link XMLStreamWriter} methods that is used by the
+ * {@link DocViewSAXFormatter} is supported.
+ */
+public class DocViewXmlStreamWriter implements XMLStreamWriter, AutoCloseable {
+
+    private static final byte[] XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] XMLNS = " xmlns".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] EMPTY_ELEMENT_END = "/>".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * marker for characters that cannot be written
+     */
+    private static final byte[] INVALID = new byte[0];
+
+    /**
+     * escape table for the characters below 64.
+     */
+    private static final byte[][] ATTRIBUTE_ESCAPES = new byte[64][];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ATTRIBUTE_ESCAPES[c] = INVALID;
+        }
+        ATTRIBUTE_ESCAPES['\t'] = "&#x9;".getBytes(StandardCharsets.US_ASCII);
+        ATTRIBUTE_ESCAPES['\n'] = "&#xa;".getBytes(StandardCharsets.US_ASCII);
+        ATTRIBUTE_ESCAPES['\r'] = "&#xd;".getBytes(StandardCharsets.US_ASCII);
+        ATTRIBUTE_ESCAPES['"'] = "&quot;".getBytes(StandardCharsets.US_ASCII);
+        ATTRIBUTE_ESCAPES['&'] = "&amp;".getBytes(StandardCharsets.US_ASCII);
+        ATTRIBUTE_ESCAPES['<'] = "&lt;".getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * frequently used names that are encoded upfront
+     */
+    private static final String[] WELL_KNOWN_NAMES = {
+            "jcr:root", "jcr:content", "jcr:primaryType", "jcr:mixinTypes", "jcr:uuid", "jcr:title",
+            "jcr:description", "jcr:created", "jcr:createdBy", "jcr:lastModified", "jcr:lastModifiedBy",
+            "jcr:data", "jcr:mimeType", "jcr:encoding", "sling:resourceType", "sling:resourceSuperType",
+            "cq:lastModified", "cq:lastModifiedBy", "cq:template", "cq:lastReplicated", "cq:lastReplicatedBy",
+            "cq:lastReplicationAction", "nt:unstructured"
+    };
+
+    /**
+     * maximum number of cached names
+     */
+    private static final int MAX_CACHED_NAMES = 4096;
+
+    private final OutputStream out;
+
+    private final byte[] buffer;
+
+    private int pos;
+
+    private final byte[] indent;
+
+    private final boolean splitAttributes;
+
+    private final Map<String, byte[]> names = new HashMap<>();
+
+    /**
+     * stack of the names of the open elements
+     */
+    private byte[][] elements = new byte[16][];
+
+    /**
+     * flags indicating if the respective open element has child elements
+     */
+    private boolean[] hasChildren = new boolean[16];
+
+    private int depth;
+
+    private boolean startTagOpen;
+
+    private int numNamespaceDeclarations;
+
+    private int numAttributes;
+
+    private byte[] bufferedAttributeName;
+
+    private String bufferedAttributeValue;
+
+    /**
+     * Creates a new writer.
+     * @param out the output stream
+     * @param format the output format
+     */
+    public DocViewXmlStreamWriter(OutputStream out, OutputFormat format) {
+        this(out, format, 8192);
+    }
+
+    /**
+     * Creates a new writer.
+     * @param out the output stream
+     * @param format the output format
+     * @param bufferSize the size of the internal buffer
+     */
+    public DocViewXmlStreamWriter(OutputStream out, OutputFormat format, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+        this.indent = format.getIndent().getBytes(StandardCharsets.US_ASCII);
+        this.splitAttributes = format.isSplitAttributesByLineBreaks();
+        for (String name: WELL_KNOWN_NAMES) {
+            names.put(name, name.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public void writeStartDocument() throws XMLStreamException {
+        write(XML_DECLARATION);
+    }
+
+    public void writeStartDocument(String version) throws XMLStreamException {
+        writeStartDocument();
+    }
+
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        writeStartDocument();
+    }
+
+    public void writeEndDocument() throws XMLStreamException {
+        while (depth > 0) {
+            writeEndElement();
+        }
+        write((byte) '\n');
+        flush();
+    }
+
+    public void writeStartElement(String localName) throws XMLStreamException {
+        startElement(getName(null, localName));
+    }
+
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        startElement(getName(prefix, localName));
+    }
+
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeStartElement() without prefix not supported.");
+    }
+
+    private void startElement(byte[] name) throws XMLStreamException {
+        flushBufferedAttribute();
+        if (depth > 0) {
+            closeStartTag();
+            hasChildren[depth - 1] = true;
+            write((byte) '\n');
+            writeIndent(depth, false);
+        }
+        if (depth == elements.length) {
+            elements = Arrays.copyOf(elements, depth * 2);
+            hasChildren = Arrays.copyOf(hasChildren, depth * 2);
+        }
+        elements[depth] = name;
+        hasChildren[depth] = false;
+        depth++;
+        write((byte) '<');
+        write(name);
+        startTagOpen = true;
+        numNamespaceDeclarations = 0;
+        numAttributes = 0;
+    }
+
+    public void writeEndElement() throws XMLStreamException {
+        if (depth == 0) {
+            throw new XMLStreamException("No open element.");
+        }
+        flushBufferedAttribute();
+        depth--;
+        if (hasChildren[depth]) {
+            write((byte) '\n');
+            writeIndent(depth, false);
+        }
+        if (startTagOpen) {
+            write(EMPTY_ELEMENT_END);
+            startTagOpen = false;
+        } else {
+            write((byte) '<');
+            write((byte) '/');
+            write(elements[depth]);
+            write((byte) '>');
+        }
+        elements[depth] = null;
+    }
+
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        assertStartTagOpen();
+        numNamespaceDeclarations++;
+        write(XMLNS);
+        if (prefix != null && prefix.length() > 0) {
+            write((byte) ':');
+            write(getName(null, prefix));
+        }
+        write((byte) '=');
+        write((byte) '"');
+        writeEscaped(namespaceURI);
+        write((byte) '"');
+    }
+
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        writeNamespace(null, namespaceURI);
+    }
+
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        attribute(getName(null, localName), value);
+    }
+
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+        attribute(getName(prefix, localName), value);
+    }
+
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeAttribute() without prefix not supported.");
+    }
+
+    private void attribute(byte[] name, String value) throws XMLStreamException {
+        assertStartTagOpen();
+        numAttributes++;
+        if (splitAttributes) {
+            if (numNamespaceDeclarations + numAttributes > 1) {
+                if (bufferedAttributeName != null) {
+                    write((byte) '\n');
+                    writeIndent(depth, true);
+                    flushBufferedAttribute();
+                }
+                write((byte) '\n');
+                writeIndent(depth, true);
+            } else {
+                // buffer attribute to wait for the next ones
+                bufferedAttributeName = name;
+                bufferedAttributeValue = value;
+                return;
+            }
+        }
+        writeAttributeRaw(name, value);
+    }
+
+    private void flushBufferedAttribute() throws XMLStreamException {
+        if (bufferedAttributeName != null) {
+            writeAttributeRaw(bufferedAttributeName, bufferedAttributeValue);
+            bufferedAttributeName = null;
+            bufferedAttributeValue = null;
+        }
+    }
+
+    private void writeAttributeRaw(byte[] name, String value) throws XMLStreamException {
+        write((byte) ' ');
+        write(name);
+        write((byte) '=');
+        write((byte) '"');
+        writeEscaped(value);
+        write((byte) '"');
+    }
+
+    private void assertStartTagOpen() throws XMLStreamException {
+        if (!startTagOpen) {
+            throw new XMLStreamException("Attributes and namespaces can only be written directly after a start element.");
+        }
+    }
+
+    private void closeStartTag() throws XMLStreamException {
+        if (startTagOpen) {
+            write((byte) '>');
+            startTagOpen = false;
+        }
+    }
+
+    /**
+     * Writes the indentation for the given depth. For attributes the last indentation is one character shorter to
+     * account for the separating space.
+     */
+    private void writeIndent(int level, boolean isAttribute) throws XMLStreamException {
+        for (int i = 0; i < level; i++) {
+            if (isAttribute && i == level - 1) {
+                write(indent, 0, indent.length - 1);
+            } else {
+                write(indent, 0, indent.length);
+            }
+        }
+    }
+
+    /**
+     * Returns the encoded qualified name.
+     */
+    private byte[] getName(String prefix, String localName) {
+        String qName = prefix == null || prefix.length() == 0 ? localName : prefix + ':' + localName;
+        byte[] name = names.get(qName);
+        if (name == null) {
+            if (names.size() >= MAX_CACHED_NAMES) {
+                names.clear();
+            }
+            name = qName.getBytes(StandardCharsets.UTF_8);
+            names.put(qName, name);
+        }
+        return name;
+    }
+
+    /**
+     * Writes the UTF-8 encoded and escaped value to the buffer.
+     */
+    private void writeEscaped(String value) throws XMLStreamException {
+        final int len = value.length();
+        for (int i = 0; i < len; i++) {
+            if (pos + 6 > buffer.length) {
+                flushBuffer();
+            }
+            char c = value.charAt(i);
+            if (c < 64) {
+                byte[] escape = ATTRIBUTE_ESCAPES[c];
+                if (escape == null) {
+                    buffer[pos++] = (byte) c;
+                } else if (escape == INVALID) {
+                    throw new XMLStreamException("Invalid white space character (0x" + Integer.toHexString(c) + ") in text to output");
+                } else {
+                    System.arraycopy(escape, 0, buffer, pos, escape.length);
+                    pos += escape.length;
+                }
+            } else if (c < 0x80) {
+                buffer[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[pos++] = (byte) (0xc0 | (c >> 6));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buffer[pos++] = (byte) (0xf0 | (cp >> 18));
+                buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buffer[pos++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                throw new XMLStreamException("Unpaired surrogate character (0x" + Integer.toHexString(c) + ") in text to output");
+            } else {
+                buffer[pos++] = (byte) (0xe0 | (c >> 12));
+                buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void write(byte b) throws XMLStreamException {
+        if (pos == buffer.length) {
+            flushBuffer();
+        }
+        buffer[pos++] = b;
+    }
+
+    private void write(byte[] bytes) throws XMLStreamException {
+        write(bytes, 0, bytes.length);
+    }
+
+    private void write(byte[] bytes, int off, int len) throws XMLStreamException {
+        if (pos + len > buffer.length) {
+            flushBuffer();
+            if (len > buffer.length) {
+                try {
+                    out.write(bytes, off, len);
+                } catch (IOException e) {
+                    throw new XMLStreamException(e);
+                }
+                return;
+            }
+        }
+        System.arraycopy(bytes, off, buffer, pos, len);
+        pos += len;
+    }
+
+    private void flushBuffer() throws XMLStreamException {
+        if (pos > 0) {
+            try {
+                out.write(buffer, 0, pos);
+            } catch (IOException e) {
+                throw new XMLStreamException(e);
+            }
+            pos = 0;
+        }
+    }
+
+    public void flush() throws XMLStreamException {
+        flushBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /**
+     * Flushes the buffer. The underlying output stream is not closed.
+     */
+    public void close() throws XMLStreamException {
+        flush();
+    }
+
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeEmptyElement() not supported.");
+    }
+
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeEmptyElement() not supported.");
+    }
+
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeEmptyElement() not supported.");
+    }
+
+    public void writeComment(String data) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeComment() not supported.");
+    }
+
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeProcessingInstruction() not supported.");
+    }
+
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeProcessingInstruction() not supported.");
+    }
+
+    public void writeCData(String data) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeCData() not supported.");
+    }
+
+    public void writeDTD(String dtd) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeDTD() not supported.");
+    }
+
+    public void writeEntityRef(String name) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeEntityRef() not supported.");
+    }
+
+    public void writeCharacters(String text) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeCharacters() not supported.");
+    }
+
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        throw new UnsupportedOperationException("writeCharacters() not supported.");
+    }
+
+    public String getPrefix(String uri) throws XMLStreamException {
+        throw new UnsupportedOperationException("getPrefix() not supported.");
+    }
+
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        throw new UnsupportedOperationException("setPrefix() not supported.");
+    }
+
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        throw new UnsupportedOperationException("setDefaultNamespace() not supported.");
+    }
+
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        throw new UnsupportedOperationException("setNamespaceContext() not supported.");
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        throw new UnsupportedOperationException("getNamespaceContext() not supported.");
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        throw new IllegalArgumentException("Property not supported: " + name);
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.fs.impl.io;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code PipelinedXmlStreamWriter} records the write calls into a compact event stream and replays them
+ * on the delegate writer in a separate thread. This allows the thread that reads the repository items to
+ * run concurrently with the XML formatting and the compression of the output.
+ *
+ * The events are recorded into fixed size chunks which are passed to the writer thread via a bounded queue
+ * and recycled afterwards. The writer thread is only started once the first chunk is full, so small documents
+ * are written synchronously on {@link #close()}.
+ *
+ * Only the write methods are supported, the methods that query the state of the writer throw an
+ * {@link UnsupportedOperationException}. Closing this writer flushes all pending events and waits until they are
+ * written, but does not close the delegate.
+ */
+public class PipelinedXmlStreamWriter implements XMLStreamWriter, AutoCloseable {
+
+    /**
+     * default logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(PipelinedXmlStreamWriter.class);
+
+    /**
+     * default number of events per chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    /**
+     * default number of chunks in the pipeline
+     */
+    public static final int DEFAULT_NUM_CHUNKS = 8;
+
+    private static final byte START_DOCUMENT = 0;
+    private static final byte START_DOCUMENT_VERSION = 1;
+    private static final byte START_DOCUMENT_ENCODING_VERSION = 2;
+    private static final byte END_DOCUMENT = 3;
+    private static final byte START_ELEMENT = 4;
+    private static final byte START_ELEMENT_NS = 5;
+    private static final byte START_ELEMENT_PREFIX_NS = 6;
+    private static final byte EMPTY_ELEMENT = 7;
+    private static final byte EMPTY_ELEMENT_NS = 8;
+    private static final byte EMPTY_ELEMENT_PREFIX_NS = 9;
+    private static final byte END_ELEMENT = 10;
+    private static final byte NAMESPACE = 11;
+    private static final byte DEFAULT_NAMESPACE = 12;
+    private static final byte ATTRIBUTE = 13;
+    private static final byte ATTRIBUTE_NS = 14;
+    private static final byte ATTRIBUTE_PREFIX_NS = 15;
+    private static final byte CHARACTERS = 16;
+    private static final byte CDATA = 17;
+    private static final byte COMMENT = 18;
+    private static final byte PROCESSING_INSTRUCTION = 19;
+    private static final byte PROCESSING_INSTRUCTION_DATA = 20;
+    private static final byte DTD = 21;
+    private static final byte ENTITY_REF = 22;
+    private static final byte SET_PREFIX = 23;
+    private static final byte SET_DEFAULT_NAMESPACE = 24;
+    private static final byte FLUSH = 25;
+
+    /**
+     * maximum number of arguments per event
+     */
+    private static final int MAX_ARGS = 4;
+
+    /**
+     * marker chunk that signals the end of the stream
+     */
+    private static final Chunk END = new Chunk(0);
+
+    private final XMLStreamWriter delegate;
+
+    private final int chunkSize;
+
+    /**
+     * filled chunks to be written
+     */
+    private final BlockingQueue<Chunk> filled;
+
+    /**
+     * empty chunks to be reused
+     */
+    private final BlockingQueue<Chunk> free;
+
+    private Chunk current;
+
+    private Thread writerThread;
+
+    /**
+     * the thread that records the events
+     */
+    private Thread producerThread;
+
+    private volatile Exception error;
+
+    private boolean closed;
+
+    /**
+     * Creates a new pipelined writer with the default chunk size and number of chunks.
+     * @param delegate the writer to write to
+     */
+    public PipelinedXmlStreamWriter(XMLStreamWriter delegate) {
+        this(delegate, DEFAULT_CHUNK_SIZE, DEFAULT_NUM_CHUNKS);
+    }
+
+    /**
+     * Creates a new pipelined writer.
+     * @param delegate the writer to write to
+     * @param chunkSize the number of events per chunk
+     * @param numChunks the number of chunks that are at most pending
+     */
+    public PipelinedXmlStreamWriter(XMLStreamWriter delegate, int chunkSize, int numChunks) {
+        if (chunkSize < 1 || numChunks < 1) {
+            throw new IllegalArgumentException("chunkSize and numChunks must be positive.");
+        }
+        this.delegate = delegate;
+        this.chunkSize = chunkSize;
+        // one additional slot for the end marker
+        filled = new ArrayBlockingQueue<>(numChunks + 1);
+        free = new ArrayBlockingQueue<>(numChunks + 1);
+        current = new Chunk(chunkSize);
+    }
+
+    private void record(byte op, String a0, String a1, String a2, String a3) throws XMLStreamException {
+        if (closed) {
+            throw new XMLStreamException("Writer already closed.");
+        }
+        if (current.isFull()) {
+            dispatch(current);
+            current = nextChunk();
+        }
+        current.add(op, a0, a1, a2, a3);
+    }
+
+    private void record(byte op, String a0, String a1, String a2) throws XMLStreamException {
+        record(op, a0, a1, a2, null);
+    }
+
+    private void record(byte op, String a0, String a1) throws XMLStreamException {
+        record(op, a0, a1, null, null);
+    }
+
+    private void record(byte op, String a0) throws XMLStreamException {
+        record(op, a0, null, null, null);
+    }
+
+    private void record(byte op) throws XMLStreamException {
+        record(op, null, null, null, null);
+    }
+
+    private Chunk nextChunk() {
+        Chunk chunk = free.poll();
+        return chunk == null ? new Chunk(chunkSize) : chunk;
+    }
+
+    /**
+     * Passes the given chunk to the writer thread. The writer thread is started on demand.
+     * @param chunk the chunk
+     * @throws XMLStreamException if the writer thread failed or if interrupted
+     */
+    private void dispatch(Chunk chunk) throws XMLStreamException {
+        checkError();
+        if (writerThread == null) {
+            producerThread = Thread.currentThread();
+            writerThread = new Thread(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            }, "Vault DocView Writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+        try {
+            while (!filled.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                checkError();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("Interrupted while writing xml.", e);
+        }
+    }
+
+    private void checkError() throws XMLStreamException {
+        Exception e = error;
+        if (e instanceof XMLStreamException) {
+            throw (XMLStreamException) e;
+        } else if (e != null) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /**
+     * Main loop of the writer thread
+     */
+    private void drain() {
+        try {
+            Chunk chunk;
+            while ((chunk = filled.poll(1, TimeUnit.SECONDS)) != END) {
+                if (chunk == null) {
+                    if (!producerThread.isAlive()) {
+                        // the producer died without closing this writer
+                        log.warn("Producer thread terminated without closing the xml writer.");
+                        return;
+                    }
+                    continue;
+                }
+                if (error == null) {
+                    try {
+                        chunk.replay(delegate);
+                    } catch (Exception e) {
+                        // keep on draining so that the producer does not block
+                        log.error("Error while writing xml", e);
+                        error = e;
+                    }
+                }
+                chunk.clear();
+                free.offer(chunk);
+            }
+        } catch (InterruptedException e) {
+            error = e;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Flushes all pending events to the delegate and waits until they are written. The delegate is not closed.
+     * The writer thread is always terminated, even if writing the events failed.
+     * @throws XMLStreamException if an error occurs while writing the events
+     */
+    public void close() throws XMLStreamException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writerThread == null) {
+            // small documents are written directly
+            current.replay(delegate);
+            return;
+        }
+        try {
+            if (current.size > 0) {
+                dispatch(current);
+            }
+        } finally {
+            stopWriterThread();
+        }
+        checkError();
+    }
+
+    /**
+     * Queues the end marker and waits for the writer thread to terminate. As the writer thread keeps on draining
+     * the queue after an error, the end marker is always accepted as long as the thread is alive.
+     * @throws XMLStreamException if interrupted
+     */
+    private void stopWriterThread() throws XMLStreamException {
+        try {
+            while (writerThread.isAlive() && !filled.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                // retry until the writer thread made room or terminated
+            }
+            writerThread.join();
+        } catch (InterruptedException e) {
+            writerThread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("Interrupted while writing xml.", e);
+        }
+    }
+
+    public void writeStartElement(String localName) throws XMLStreamException {
+        record(START_ELEMENT, localName);
+    }
+
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        record(START_ELEMENT_NS, namespaceURI, localName);
+    }
+
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        record(START_ELEMENT_PREFIX_NS, prefix, localName, namespaceURI);
+    }
+
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        record(EMPTY_ELEMENT_NS, namespaceURI, localName);
+    }
+
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        record(EMPTY_ELEMENT_PREFIX_NS, prefix, localName, namespaceURI);
+    }
+
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        record(EMPTY_ELEMENT, localName);
+    }
+
+    public void writeEndElement() throws XMLStreamException {
+        record(END_ELEMENT);
+    }
+
+    public void writeEndDocument() throws XMLStreamException {
+        record(END_DOCUMENT);
+    }
+
+    public void flush() throws XMLStreamException {
+        record(FLUSH);
+    }
+
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        record(ATTRIBUTE, localName, value);
+    }
+
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+        record(ATTRIBUTE_PREFIX_NS, prefix, namespaceURI, localName, value);
+    }
+
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        record(ATTRIBUTE_NS, namespaceURI, localName, value);
+    }
+
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        record(NAMESPACE, prefix, namespaceURI);
+    }
+
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        record(DEFAULT_NAMESPACE, namespaceURI);
+    }
+
+    public void writeComment(String data) throws XMLStreamException {
+        record(COMMENT, data);
+    }
+
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        record(PROCESSING_INSTRUCTION, target);
+    }
+
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        record(PROCESSING_INSTRUCTION_DATA, target, data);
+    }
+
+    public void writeCData(String data) throws XMLStreamException {
+        record(CDATA, data);
+    }
+
+    public void writeDTD(String dtd) throws XMLStreamException {
+        record(DTD, dtd);
+    }
+
+    public void writeEntityRef(String name) throws XMLStreamException {
+        record(ENTITY_REF, name);
+    }
+
+    public void writeStartDocument() throws XMLStreamException {
+        record(START_DOCUMENT);
+    }
+
+    public void writeStartDocument(String version) throws XMLStreamException {
+        record(START_DOCUMENT_VERSION, version);
+    }
+
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        record(START_DOCUMENT_ENCODING_VERSION, encoding, version);
+    }
+
+    public void writeCharacters(String text) throws XMLStreamException {
+        record(CHARACTERS, text);
+    }
+
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        record(CHARACTERS, new String(text, start, len));
+    }
+
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        record(SET_PREFIX, prefix, uri);
+    }
+
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        record(SET_DEFAULT_NAMESPACE, uri);
+    }
+
+    public String getPrefix(String uri) throws XMLStreamException {
+        throw new UnsupportedOperationException("getPrefix() not supported by pipelined writer.");
+    }
+
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        throw new UnsupportedOperationException("setNamespaceContext() not supported by pipelined writer.");
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        throw new UnsupportedOperationException("getNamespaceContext() not supported by pipelined writer.");
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        throw new IllegalArgumentException("Property not supported by pipelined writer: " + name);
+    }
+
+    /**
+     * Fixed size chunk of recorded events.
+     */
+    private static final class Chunk {
+
+        private final byte[] ops;
+
+        private final String[] args;
+
+        private int size;
+
+        private Chunk(int capacity) {
+            ops = new byte[capacity];
+            args = new String[capacity * MAX_ARGS];
+        }
+
+        private boolean isFull() {
+            return size == ops.length;
+        }
+
+        private void add(byte op, String a0, String a1, String a2, String a3) {
+            int i = size * MAX_ARGS;
+            ops[size++] = op;
+            args[i] = a0;
+            args[i + 1] = a1;
+            args[i + 2] = a2;
+            args[i + 3] = a3;
+        }
+
+        private void clear() {
+            // release the strings
+            Arrays.fill(args, 0, size * MAX_ARGS, null);
+            size = 0;
+        }
+
+        private void replay(XMLStreamWriter w) throws XMLStreamException {
+            for (int n = 0; n < size; n++) {
+                int i = n * MAX_ARGS;
+                switch (ops[n]) {
+                    case START_DOCUMENT: w.writeStartDocument(); break;
+                    case START_DOCUMENT_VERSION: w.writeStartDocument(args[i]); break;
+                    case START_DOCUMENT_ENCODING_VERSION: w.writeStartDocument(args[i], args[i + 1]); break;
+                    case END_DOCUMENT: w.writeEndDocument(); break;
+                    case START_ELEMENT: w.writeStartElement(args[i]); break;
+                    case START_ELEMENT_NS: w.writeStartElement(args[i], args[i + 1]); break;
+                    case START_ELEMENT_PREFIX_NS: w.writeStartElement(args[i], args[i + 1], args[i + 2]); break;
+                    case EMPTY_ELEMENT: w.writeEmptyElement(args[i]); break;
+                    case EMPTY_ELEMENT_NS: w.writeEmptyElement(args[i], args[i + 1]); break;
+                    case EMPTY_ELEMENT_PREFIX_NS: w.writeEmptyElement(args[i], args[i + 1], args[i + 2]); break;
+                    case END_ELEMENT: w.writeEndElement(); break;
+                    case NAMESPACE: w.writeNamespace(args[i], args[i + 1]); break;
+                    case DEFAULT_NAMESPACE: w.writeDefaultNamespace(args[i]); break;
+                    case ATTRIBUTE: w.writeAttribute(args[i], args[i + 1]); break;
+                    case ATTRIBUTE_NS: w.writeAttribute(args[i], args[i + 1], args[i + 2]); break;
+                    case ATTRIBUTE_PREFIX_NS: w.writeAttribute(args[i], args[i + 1], args[i + 2], args[i + 3]); break;
+                    case CHARACTERS: w.writeCharacters(args[i]); break;
+                    case CDATA: w.writeCData(args[i]); break;
+                    case COMMENT: w.writeComment(args[i]); break;
+                    case PROCESSING_INSTRUCTION: w.writeProcessingInstruction(args[i]); break;
+                    case PROCESSING_INSTRUCTION_DATA: w.writeProcessingInstruction(args[i], args[i + 1]); break;
+                    case DTD: w.writeDTD(args[i]); break;
+                    case ENTITY_REF: w.writeEntityRef(args[i]); break;
+                    case SET_PREFIX: w.setPrefix(args[i], args[i + 1]); break;
+                    case SET_DEFAULT_NAMESPACE: w.setDefaultNamespace(args[i]); break;
+                    case FLUSH: w.flush(); break;
+                    default:
+                        throw new IllegalStateException("Unknown event: " + ops[n]);
+                }
+            }
+        }
+    }
+}
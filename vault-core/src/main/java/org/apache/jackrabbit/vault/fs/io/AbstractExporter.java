@@ -19,12 +19,21 @@ package org.apache.jackrabbit.vault.fs.io;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.jar.Attributes;
@@ -37,20 +46,29 @@ import javax.jcr.nodetype.NodeDefinition;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.NodeTypeManager;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.util.ISO8601;
+import org.apache.jackrabbit.vault.fs.api.Aggregate;
 import org.apache.jackrabbit.vault.fs.api.AggregateManager;
+import org.apache.jackrabbit.vault.fs.api.Artifact;
+import org.apache.jackrabbit.vault.fs.api.ArtifactType;
 import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
 import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
+import org.apache.jackrabbit.vault.fs.api.SerializationType;
 import org.apache.jackrabbit.vault.fs.api.SimplePathMapping;
 import org.apache.jackrabbit.vault.fs.api.VaultFile;
 import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.config.MetaInf;
+import org.apache.jackrabbit.vault.fs.impl.AggregateManagerImpl;
+import org.apache.jackrabbit.vault.fs.impl.BinaryReferenceManifest;
 import org.apache.jackrabbit.vault.fs.spi.CNDWriter;
 import org.apache.jackrabbit.vault.fs.spi.ProgressTracker;
 import org.apache.jackrabbit.vault.fs.spi.ServiceProviderFactory;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.PackageType;
 import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.util.SHA1;
 import org.apache.jackrabbit.vault.util.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -110,6 +128,20 @@ public abstract class AbstractExporter implements AutoCloseable {
 
     protected ExportInfo exportInfo = new ExportInfo();
 
+    private boolean includeDigests;
+
+    private ExportInfo incrementalBase;
+
+    /**
+     * repository path that corresponds to the root of the exported files. the digests are recorded relative to it.
+     */
+    private String digestRoot = "";
+
+    /**
+     * the artifacts of modified aggregates that were serialized to calculate their digest and are not written yet
+     */
+    private final Map<Artifact, File> spooledArtifacts = new IdentityHashMap<Artifact, File>();
+
     public boolean isVerbose() {
         return tracker != null;
     }
@@ -163,6 +195,46 @@ public abstract class AbstractExporter implements AutoCloseable {
         return exportInfo;
     }
 
+    /**
+     * Checks if the digests of the exported aggregates are recorded.
+     * @return {@code true} if digests are recorded.
+     * @since 3.4.5
+     */
+    public boolean isIncludeDigests() {
+        return includeDigests;
+    }
+
+    /**
+     * Defines if the digests of the exported aggregates are recorded in the export info and written to
+     * {@code META-INF/vault/export-digests.txt}, so that the export can be used as base for a later
+     * incremental export.
+     * @param includeDigests {@code true} to record the digests
+     * @since 3.4.5
+     */
+    public void setIncludeDigests(boolean includeDigests) {
+        this.includeDigests = includeDigests;
+    }
+
+    /**
+     * Returns the base of an incremental export.
+     * @return the export info of the previous export or {@code null}
+     * @since 3.4.5
+     */
+    public ExportInfo getIncrementalBase() {
+        return incrementalBase;
+    }
+
+    /**
+     * Sets the export info of a previous export that was created with digests. If set, only the aggregates
+     * whose digests differ from the ones of the previous export are exported and aggregates that no longer
+     * exist are recorded as {@link ExportInfo.Type#DELETE}.
+     * @param incrementalBase the export info of the previous export or {@code null}
+     * @since 3.4.5
+     */
+    public void setIncrementalBase(ExportInfo incrementalBase) {
+        this.incrementalBase = incrementalBase;
+    }
+
     /**
      * Defines if the exported files should include their entire path or just
      * be relative to the export root. eg.: exporting /apps/components relative
@@ -194,8 +266,21 @@ public abstract class AbstractExporter implements AutoCloseable {
     public void export(VaultFile parent, boolean noClose)
             throws RepositoryException, IOException {
         exportInfo.getEntries().clear();
+        exportInfo.getDigests().clear();
         open();
         AggregateManager mgr = parent.getFileSystem().getAggregateManager();
+        // the files are either exported relative to the parent or with their path below the mount point
+        digestRoot = isRelativePaths() ? parent.getAggregatePath() : mgr.getRoot().getPath();
+        if ("/".equals(digestRoot)) {
+            digestRoot = "";
+        }
+        BinaryReferenceManifest binaryReferences = null;
+        if (mgr instanceof AggregateManagerImpl) {
+            binaryReferences = ((AggregateManagerImpl) mgr).getBinaryReferenceManifest();
+            if (binaryReferences != null) {
+                binaryReferences.clear();
+            }
+        }
         mgr.startTracking(tracker == null ? null : tracker.getListener());
         if (!noMetaInf) {
             // update properties
@@ -261,10 +346,47 @@ public abstract class AbstractExporter implements AutoCloseable {
             writeFile(mgr.getConfig().getSource(), Constants.META_DIR + "/" + Constants.CONFIG_XML);
             writeFile(filter.getSource(), Constants.META_DIR + "/" + Constants.FILTER_XML);
         }
-        export(parent, "");
+        try {
+            export(parent, "");
+        } finally {
+            releaseSpooledArtifacts();
+        }
+        if (isTrackDigests() && incrementalBase != null) {
+            // record the aggregates that no longer exist
+            for (ExportInfo.Digest d: incrementalBase.getDigests().values()) {
+                if (d.type != ExportInfo.Type.DELETE && !exportInfo.getDigests().containsKey(d.path)) {
+                    exportInfo.updateDigest(ExportInfo.Type.DELETE, d.path, null);
+                }
+            }
+        }
         if (!noMetaInf) {
             // write node types last, as they are calculated during export.
             writeFile(getNodeTypes(mgr.getSession(), mgr.getNodeTypes()), Constants.META_DIR + "/" + Constants.NODETYPES_CND);
+
+            // write the manifest of the binaries that were exported as references
+            if (binaryReferences != null && binaryReferences.size() > 0) {
+                track("A", Constants.META_DIR + "/" + Constants.BINARY_REFERENCES_TXT);
+                try (InputStream in = binaryReferences.getInputStream()) {
+                    writeFile(in, Constants.META_DIR + "/" + Constants.BINARY_REFERENCES_TXT);
+                }
+                binaryReferences.clear();
+            }
+
+            // write the digests of the aggregates, including the deleted ones
+            if (isTrackDigests()) {
+                track("A", Constants.META_DIR + "/" + Constants.EXPORT_DIGESTS_TXT);
+                File tmpFile = File.createTempFile("export-digests", ".txt");
+                try {
+                    try (OutputStream out = new FileOutputStream(tmpFile)) {
+                        exportInfo.writeDigests(out);
+                    }
+                    try (InputStream in = FileUtils.openInputStream(tmpFile)) {
+                        writeFile(in, Constants.META_DIR + "/" + Constants.EXPORT_DIGESTS_TXT);
+                    }
+                } finally {
+                    FileUtils.deleteQuietly(tmpFile);
+                }
+            }
         }
         if (!noClose) {
             close();
@@ -283,15 +405,147 @@ public abstract class AbstractExporter implements AutoCloseable {
             throws RepositoryException, IOException {
         for (VaultFile vaultFile : parent.getChildren()) {
             String path = relPath + "/" + vaultFile.getName();
+            boolean modified = isModified(vaultFile);
             if (vaultFile.isDirectory()) {
-                createDirectory(vaultFile, path);
+                if (modified) {
+                    createDirectory(vaultFile, path);
+                }
                 export(vaultFile, path);
-            } else {
+            } else if (modified) {
                 writeFile(vaultFile, path);
             }
         }
     }
 
+    private boolean isTrackDigests() {
+        return includeDigests || incrementalBase != null;
+    }
+
+    /**
+     * Checks if the aggregate of the given file was modified since the incremental base and records its digest.
+     * @param file the vault file
+     * @return {@code true} if the file needs to be exported.
+     * @throws RepositoryException if an error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean isModified(VaultFile file) throws RepositoryException, IOException {
+        if (!isTrackDigests()) {
+            return true;
+        }
+        Aggregate aggregate = file.getControllingAggregate();
+        if (aggregate == null) {
+            return true;
+        }
+        String path = aggregate.getPath().substring(digestRoot.length());
+        if (path.isEmpty()) {
+            path = "/";
+        }
+        ExportInfo.Digest digest = exportInfo.getDigests().get(path);
+        if (digest == null) {
+            String value = getDigest(aggregate);
+            ExportInfo.Digest base = incrementalBase == null ? null : incrementalBase.getDigests().get(path);
+            ExportInfo.Type type;
+            if (base == null || base.type == ExportInfo.Type.DELETE) {
+                type = ExportInfo.Type.ADD;
+            } else if (value.equals(base.digest)) {
+                type = ExportInfo.Type.NOP;
+            } else {
+                type = ExportInfo.Type.UPDATE;
+            }
+            exportInfo.updateDigest(type, path, value);
+            if (type == ExportInfo.Type.NOP) {
+                // unchanged aggregates are not written
+                for (Artifact a: aggregate.getArtifacts().values()) {
+                    FileUtils.deleteQuietly(spooledArtifacts.remove(a));
+                }
+                return false;
+            }
+            return true;
+        }
+        return digest.type != ExportInfo.Type.NOP;
+    }
+
+    /**
+     * Calculates the digest of the given aggregate over its serialized artifacts. Binaries with a known
+     * modification date are represented by their size and modification date in order to avoid reading them.
+     * The other artifacts are spooled to temporary files while they are digested, so that they can be written
+     * without serializing them again, see {@link #spool(Artifact, OutputStream)}.
+     * @param aggregate the aggregate
+     * @return the hex encoded digest
+     * @throws RepositoryException if an error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    private String getDigest(Aggregate aggregate) throws RepositoryException, IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e.toString());
+        }
+        for (Artifact a: aggregate.getArtifacts().values()) {
+            md.update(a.getType().name().getBytes(StandardCharsets.UTF_8));
+            md.update(a.getRelativePath().getBytes(StandardCharsets.UTF_8));
+            if (a.getType() == ArtifactType.DIRECTORY) {
+                continue;
+            }
+            if (a.getSerializationType() == SerializationType.GENERIC && a.getLastModified() > 0) {
+                String stat = a.getContentLength() + ":" + a.getLastModified();
+                md.update(stat.getBytes(StandardCharsets.UTF_8));
+            } else {
+                File tmpFile = File.createTempFile("export-artifact", ".tmp");
+                spooledArtifacts.put(a, tmpFile);
+                try (OutputStream out = new DigestOutputStream(FileUtils.openOutputStream(tmpFile), md)) {
+                    a.spool(out);
+                }
+            }
+        }
+        return new SHA1(md.digest()).toString();
+    }
+
+    /**
+     * Deletes the temporary files of the artifacts that were spooled by {@link #getDigest(Aggregate)}.
+     */
+    private void releaseSpooledArtifacts() {
+        for (File file: spooledArtifacts.values()) {
+            FileUtils.deleteQuietly(file);
+        }
+        spooledArtifacts.clear();
+    }
+
+    /**
+     * Writes the content of the given artifact to the output stream. Artifacts that were already serialized to
+     * calculate the digest of their aggregate are copied from their temporary file.
+     * @param a the artifact
+     * @param out the output stream
+     * @throws RepositoryException if an error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    protected void spool(Artifact a, OutputStream out) throws RepositoryException, IOException {
+        File spooled = spooledArtifacts.remove(a);
+        if (spooled != null) {
+            try (InputStream in = FileUtils.openInputStream(spooled)) {
+                IOUtils.copy(in, out);
+            } finally {
+                FileUtils.deleteQuietly(spooled);
+            }
+            return;
+        }
+        switch (a.getPreferredAccess()) {
+            case NONE:
+                throw new RepositoryException("Artifact has no content.");
+
+            case SPOOL:
+                a.spool(out);
+                break;
+
+            case STREAM:
+                try (InputStream in = a.getInputStream()) {
+                    IOUtils.copy(in, out);
+                }
+                break;
+        }
+    }
+
     protected void track(String action, String path) {
         if ("E".equals(action)) {
             log.error("{} {}", action, path);
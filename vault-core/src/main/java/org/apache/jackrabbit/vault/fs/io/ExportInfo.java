@@ -17,11 +17,23 @@
 
 package org.apache.jackrabbit.vault.fs.io;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.apache.jackrabbit.vault.util.Constants;
 import org.apache.jackrabbit.vault.util.PathComparator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Provides information about an export
@@ -30,6 +42,8 @@ public class ExportInfo {
 
     private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>(new PathComparator(true));
 
+    private final TreeMap<String, Digest> digests = new TreeMap<String, Digest>(new PathComparator(true));
+
     public enum Type {
         ADD,
         DELETE,
@@ -55,6 +69,85 @@ public class ExportInfo {
         return entries;
     }
 
+    /**
+     * Records the digest of an exported aggregate.
+     * @param type the type of the change compared to the incremental base. {@link Type#NOP} if the aggregate
+     *             was not modified and therefore not included in the export.
+     * @param path the repository path of the aggregate
+     * @param digest the digest of the aggregate or {@code null} for deleted aggregates.
+     * @since 3.4.5
+     */
+    public void updateDigest(@NotNull Type type, @NotNull String path, @Nullable String digest) {
+        digests.put(path, new Digest(type, path, digest));
+    }
+
+    /**
+     * Returns the digests of the exported aggregates, keyed by their repository path.
+     * @return the digests
+     * @since 3.4.5
+     */
+    @NotNull
+    public Map<String, Digest> getDigests() {
+        return digests;
+    }
+
+    /**
+     * Writes the digests to the given output stream. The stream is not closed.
+     * @param out the output stream
+     * @throws IOException if an I/O error occurs
+     * @since 3.4.5
+     */
+    public void writeDigests(@NotNull OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (Digest d: digests.values()) {
+            writer.write(d.toString());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads the digests from the given input stream. The stream is not closed.
+     * @param in the input stream
+     * @throws IOException if an I/O error occurs
+     * @since 3.4.5
+     */
+    public void readDigests(@NotNull InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            Digest d = Digest.parse(line);
+            if (d != null) {
+                digests.put(d.path, d);
+            }
+        }
+    }
+
+    /**
+     * Loads the export info with the aggregate digests that were recorded in the given archive. The result can be
+     * used as base for an incremental export.
+     * @param archive the archive
+     * @return the export info or {@code null} if the archive does not contain any digests.
+     * @throws IOException if an I/O error occurs
+     * @since 3.4.5
+     */
+    @Nullable
+    public static ExportInfo load(@NotNull Archive archive) throws IOException {
+        Archive.Entry entry = archive.getEntry(Constants.META_DIR + "/" + Constants.EXPORT_DIGESTS_TXT);
+        if (entry == null) {
+            return null;
+        }
+        ExportInfo info = new ExportInfo();
+        try (InputStream in = archive.openInputStream(entry)) {
+            if (in == null) {
+                return null;
+            }
+            info.readDigests(in);
+        }
+        return info;
+    }
+
     public static class Entry {
 
         public final Type type;
@@ -71,4 +164,46 @@ public class ExportInfo {
             return type + " " + path;
         }
     }
+
+    /**
+     * Digest of an exported aggregate.
+     * @since 3.4.5
+     */
+    public static class Digest {
+
+        public final Type type;
+
+        public final String path;
+
+        public final String digest;
+
+        public Digest(@NotNull Type type, @NotNull String path, @Nullable String digest) {
+            this.type = type;
+            this.path = path;
+            this.digest = digest;
+        }
+
+        /**
+         * Parses a line written by {@link #toString()}.
+         * @param line the line
+         * @return the digest or {@code null} if the line is malformed.
+         */
+        @Nullable
+        public static Digest parse(@NotNull String line) {
+            String[] segs = line.split("\t", 3);
+            if (segs.length != 3) {
+                return null;
+            }
+            try {
+                return new Digest(Type.valueOf(segs[0]), segs[2], segs[1].isEmpty() ? null : segs[1]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return type + "\t" + (digest == null ? "" : digest) + "\t" + path;
+        }
+    }
 }
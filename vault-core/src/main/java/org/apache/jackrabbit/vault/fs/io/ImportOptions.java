@@ -65,6 +65,10 @@ public class ImportOptions {
 
     private DependencyHandling dependencyHandling = null;
 
+    private int subPackageParallelism = 1;
+
+    private boolean journaledSnapshot;
+
     /**
      * Default constructor.
      */
@@ -95,6 +99,8 @@ public class ImportOptions {
             hookClassLoader = base.hookClassLoader;
             pathMapping = base.pathMapping;
             dependencyHandling = base.dependencyHandling;
+            subPackageParallelism = base.subPackageParallelism;
+            journaledSnapshot = base.journaledSnapshot;
         }
     }
 
@@ -120,6 +126,8 @@ public class ImportOptions {
         ret.hookClassLoader = hookClassLoader;
         ret.pathMapping = pathMapping;
         ret.dependencyHandling = dependencyHandling;
+        ret.subPackageParallelism = subPackageParallelism;
+        ret.journaledSnapshot = journaledSnapshot;
         return ret;
     }
 
@@ -405,4 +413,48 @@ public class ImportOptions {
     public void setDependencyHandling(DependencyHandling dependencyHandling) {
         this.dependencyHandling = dependencyHandling;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the maximum number of sub packages that are installed concurrently.
+     * @return the sub package parallelism.
+     * @since 3.4.5
+     */
+    public int getSubPackageParallelism() {
+        return subPackageParallelism;
+    }
+
+    /**
+     * Sets the maximum number of sub packages that are installed concurrently. If greater than 1, sub packages that
+     * neither depend on each other nor have overlapping filters are extracted and installed in parallel, each with its
+     * own session. Defaults to 1.
+     * @param subPackageParallelism the sub package parallelism.
+     * @throws IllegalArgumentException if the parallelism is less than 1.
+     * @since 3.4.5
+     */
+    public void setSubPackageParallelism(int subPackageParallelism) {
+        if (subPackageParallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1.");
+        }
+        this.subPackageParallelism = subPackageParallelism;
+    }
+
+    /**
+     * Returns {@code true} if the snapshot of an installed package is a journal of the modified content.
+     * @return the journaled snapshot flag.
+     * @since 3.4.5
+     */
+    public boolean isJournaledSnapshot() {
+        return journaledSnapshot;
+    }
+
+    /**
+     * Sets the journaled snapshot flag. If {@code true}, the snapshot that is created when a package is installed
+     * does not contain an export of the entire filter, but an {@link UndoLog} with the pre-images of the items that
+     * are modified by the installation. Defaults to {@code false}.
+     * @param journaledSnapshot the journaled snapshot flag.
+     * @since 3.4.5
+     */
+    public void setJournaledSnapshot(boolean journaledSnapshot) {
+        this.journaledSnapshot = journaledSnapshot;
+    }
+}
@@ -17,12 +17,14 @@
 
 package org.apache.jackrabbit.vault.fs.io;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -34,14 +36,17 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.ValueFactory;
 import javax.jcr.version.Version;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.commons.jackrabbit.SimpleReferenceBinary;
 import org.apache.jackrabbit.spi.commons.namespace.NamespaceMapping;
 import org.apache.jackrabbit.spi.commons.namespace.NamespaceResolver;
 import org.apache.jackrabbit.spi.commons.namespace.SessionNamespaceResolver;
@@ -50,6 +55,7 @@ import org.apache.jackrabbit.vault.fs.HintArtifact;
 import org.apache.jackrabbit.vault.fs.api.Artifact;
 import org.apache.jackrabbit.vault.fs.api.ArtifactType;
 import org.apache.jackrabbit.vault.fs.api.ImportInfo;
+import org.apache.jackrabbit.vault.fs.api.ImportMode;
 import org.apache.jackrabbit.vault.fs.api.NodeNameList;
 import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
 import org.apache.jackrabbit.vault.fs.api.PathMapping;
@@ -62,6 +68,7 @@ import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.config.MetaInf;
 import org.apache.jackrabbit.vault.fs.config.VaultSettings;
 import org.apache.jackrabbit.vault.fs.impl.ArtifactSetImpl;
+import org.apache.jackrabbit.vault.fs.impl.BinaryReferenceManifest;
 import org.apache.jackrabbit.vault.fs.impl.io.FileArtifactHandler;
 import org.apache.jackrabbit.vault.fs.impl.io.FolderArtifactHandler;
 import org.apache.jackrabbit.vault.fs.impl.io.GenericArtifactHandler;
@@ -81,9 +88,11 @@ import org.apache.jackrabbit.vault.fs.spi.UserManagement;
 import org.apache.jackrabbit.vault.packaging.impl.ActivityLog;
 import org.apache.jackrabbit.vault.packaging.registry.impl.JcrPackageRegistry;
 import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.util.PathComparator;
 import org.apache.jackrabbit.vault.util.PlatformNameFormat;
 import org.apache.jackrabbit.vault.util.Text;
 import org.apache.jackrabbit.vault.util.Tree;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -262,6 +271,16 @@ public class Importer {
      */
     private Map<String, TxInfo> removedIntermediates = new LinkedHashMap<String, TxInfo>();
 
+    /**
+     * paths of the aggregates that were deleted since the base of an incremental export
+     */
+    private final Set<String> deletedPaths = new TreeSet<String>(new PathComparator());
+
+    /**
+     * optional undo log that records the pre-images of the modified items
+     */
+    private UndoLog undoLog;
+
     public Importer() {
          opts = new ImportOptions();
     }
@@ -278,6 +297,25 @@ public class Importer {
         return subPackages;
     }
 
+    /**
+     * Returns the undo log of this importer.
+     * @return the undo log or {@code null}
+     * @since 3.4.5
+     */
+    @Nullable
+    public UndoLog getUndoLog() {
+        return undoLog;
+    }
+
+    /**
+     * Sets an undo log that records the pre-images of the items modified by the import.
+     * @param undoLog the undo log or {@code null}
+     * @since 3.4.5
+     */
+    public void setUndoLog(@Nullable UndoLog undoLog) {
+        this.undoLog = undoLog;
+    }
+
     /**
      * Debug settings to allows to produce failures after each {@code failAfterEach} save.
      * @param failAfterEach cardinal indicating when to fail
@@ -413,10 +451,13 @@ public class Importer {
 
         track("Collecting import information...", "");
         TxInfo root = prepare(archive.getJcrRoot(), parentPath, new SessionNamespaceResolver(session));
+        applyExportDigests(root);
         if (filter!=null && filter.getFilterSets() != null && filter.getFilterSets().size() > 0 ) {
             root = postFilter(root);
         }
 
+        checkBinaryReferences(session);
+
         log.debug("Access control handling set to {}", opts.getAccessControlHandling());
         log.debug("CUG handling set to {}", opts.getCugHandling());
         if (opts.isDryRun()) {
@@ -433,6 +474,10 @@ public class Importer {
                 tracker.setMode(ProgressTrackerListener.Mode.PATHS);
             }
         }
+        if (!deletedPaths.isEmpty()) {
+            track("Removing deleted content...", "");
+            removeDeletedPaths(session);
+        }
         cpAutosave = autoSave.copy();
         LinkedList<TxInfo> skipList = new LinkedList<TxInfo>();
         while (recoveryRetryCounter++ < 10) {
@@ -489,6 +534,79 @@ public class Importer {
         }
     }
 
+    /**
+     * Applies the aggregate digests of an incremental export. Aggregates that did not change since the base export
+     * are not contained in the archive and are marked as skipped, so that they are neither treated as intermediate
+     * nodes nor removed by their parents. Deleted aggregates are remembered for {@link #removeDeletedPaths(Session)}.
+     *
+     * @param root the root info
+     * @throws IOException if an I/O error occurs
+     */
+    private void applyExportDigests(TxInfo root) throws IOException {
+        ExportInfo exportInfo = ExportInfo.load(archive);
+        if (exportInfo == null) {
+            return;
+        }
+        PathMapping pathMapping = opts.getPathMapping();
+        for (ExportInfo.Digest digest: exportInfo.getDigests().values()) {
+            if (digest.type != ExportInfo.Type.NOP && digest.type != ExportInfo.Type.DELETE) {
+                continue;
+            }
+            String path = pathMapping == null ? digest.path : pathMapping.map(digest.path);
+            path = "/".equals(path) ? root.path : root.path + path;
+            if (digest.type == ExportInfo.Type.DELETE) {
+                deletedPaths.add(path);
+            } else {
+                TxInfo info = root;
+                if (!path.equals(root.path)) {
+                    for (String name: Text.explode(path.substring(root.path.length()), '/')) {
+                        TxInfo child = info.children().get(name);
+                        if (child == null) {
+                            child = info.addChild(new TxInfo(info, info.path + "/" + name));
+                            child.artifacts = null;
+                        }
+                        info = child;
+                    }
+                }
+                log.trace("Skipping unmodified aggregate {}", path);
+                info.artifacts = null;
+                intermediates.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Removes the nodes of the aggregates that were deleted since the base of an incremental export, if they are
+     * contained in the filter and replaced by the import.
+     *
+     * @param session the session
+     * @throws RepositoryException if an error occurs
+     * @throws IOException if the undo log cannot be written
+     */
+    private void removeDeletedPaths(Session session) throws RepositoryException, IOException {
+        int numRemoved = 0;
+        for (String path: deletedPaths) {
+            if (path.isEmpty()) {
+                // the root node is never removed
+                continue;
+            }
+            if (filter.contains(path)
+                    && filter.getImportMode(path) == ImportMode.REPLACE
+                    && session.nodeExists(path)) {
+                if (undoLog != null) {
+                    undoLog.record(ImportInfo.Type.DEL, path);
+                }
+                session.getNode(path).remove();
+                track("D", path);
+                numRemoved++;
+            }
+        }
+        if (numRemoved > 0) {
+            autoSave.modified(numRemoved);
+            autoSave.save(session);
+        }
+    }
+
     private TxInfo postFilter(TxInfo root) {
         TxInfo modifierRoot = root;
         if (filter.contains(modifierRoot.path)){
@@ -538,6 +656,49 @@ public class Importer {
         }
     }
 
+    /**
+     * Checks if the binaries that were exported as references can be resolved in the target repository, so that
+     * the import fails before any content is modified.
+     *
+     * @param session the session
+     * @throws IOException if an I/O error occurs
+     * @throws RepositoryException if a binary reference cannot be resolved
+     */
+    private void checkBinaryReferences(Session session) throws IOException, RepositoryException {
+        Archive.Entry entry = archive.getEntry(Constants.META_DIR + "/" + Constants.BINARY_REFERENCES_TXT);
+        if (entry == null) {
+            return;
+        }
+        track("Checking binary references...", "");
+        ValueFactory valueFactory = session.getValueFactory();
+        int numMissing = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(archive.openInputStream(entry), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                BinaryReferenceManifest.Entry ref = BinaryReferenceManifest.Entry.parse(line);
+                if (ref == null) {
+                    continue;
+                }
+                try {
+                    valueFactory.createValue(new SimpleReferenceBinary(ref.getReference()));
+                } catch (RepositoryException e) {
+                    numMissing++;
+                    track(e, ref.getPath());
+                }
+            }
+        }
+        if (numMissing > 0) {
+            String msg = "Unable to resolve " + numMissing + " binary references in the target repository.";
+            if (opts.isDryRun()) {
+                hasErrors = true;
+                track(msg, "");
+            } else {
+                throw new RepositoryException(msg);
+            }
+        }
+    }
+
     private void registerPrivileges(Session session) throws IOException, RepositoryException {
         PrivilegeDefinitions privileges = archive.getMetaInf().getPrivileges();
         if (privileges != null && !privileges.getDefinitions().isEmpty()) {
@@ -954,6 +1115,9 @@ public class Importer {
             for (Map.Entry<String, ImportInfo.Info> entry: imp.getInfos().entrySet()) {
                 String path = entry.getKey();
                 ImportInfo.Type type = entry.getValue().getType();
+                if (undoLog != null) {
+                    undoLog.record(type, path, session);
+                }
                 if (type != ImportInfoImpl.Type.DEL) {
                     // mark intermediates as processed
                     TxInfo im = intermediates.remove(path);
@@ -176,20 +176,7 @@ public class JarExporter extends AbstractExporter {
         track("A", relPath);
         exportInfo.update(ExportInfo.Type.ADD, e.getName());
         jOut.putNextEntry(e);
-        switch (a.getPreferredAccess()) {
-            case NONE:
-                throw new RepositoryException("Artifact has no content.");
-
-            case SPOOL:
-                a.spool(jOut);
-                break;
-
-            case STREAM:
-                try (InputStream in = a.getInputStream()) {
-                    IOUtils.copy(in, jOut);
-                }
-                break;
-        }
+        spool(a, jOut);
         jOut.closeEntry();
         if (!compress) {
             jOut.setLevel(level);
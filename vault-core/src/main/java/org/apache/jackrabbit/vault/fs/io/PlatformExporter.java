@@ -136,22 +136,8 @@ public class PlatformExporter extends AbstractExporter {
         }
         track("A", PathUtil.getRelativeFilePath(localParent.getAbsolutePath(), local.getAbsolutePath()));
         Artifact a = file.getArtifact();
-        switch (a.getPreferredAccess()) {
-            case NONE:
-                throw new RepositoryException("Artifact has no content.");
-
-            case SPOOL:
-                try (FileOutputStream out = new FileOutputStream(local)) {
-                    a.spool(out);
-                }
-                break;
-
-            case STREAM:
-                try (InputStream in = a.getInputStream();
-                     OutputStream out = new FileOutputStream(local)) {
-                    IOUtils.copy(in, out);
-                }
-                break;
+        try (OutputStream out = new FileOutputStream(local)) {
+            spool(a, out);
         }
         if (a.getLastModified() >= 0) {
             local.setLastModified(a.getLastModified());
@@ -0,0 +1,596 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.fs.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.jcr.ImportUUIDBehavior;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.nodetype.NodeType;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.jackrabbit.vault.fs.api.ImportInfo;
+import org.apache.jackrabbit.vault.fs.api.NodeNameList;
+import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
+import org.apache.jackrabbit.vault.util.Text;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of the content modified by an import that allows to revert it. Instead of exporting the entire filter
+ * coverage before the import, the undo log records the pre-image of an item when the {@link Importer} touches it for
+ * the first time:
+ * <ul>
+ *     <li>created items are recorded by their path only</li>
+ *     <li>modified nodes are recorded with their primary type, mixins, properties and child node order</li>
+ *     <li>removed and replaced nodes are recorded with their entire subtree in system view format</li>
+ *     <li>a referenceable node that replaced a node with the same identifier but another name is recorded as created,
+ *     and the replaced node with its entire subtree</li>
+ * </ul>
+ * The pre-images are read with a separate session that does not see the pending changes of the import, so they
+ * reflect the persisted state of the items. {@link #replay(InputStream, Session, ProgressTrackerListener)} reverts the
+ * entries in reverse order.
+ *
+ * @since 3.4.5
+ */
+public class UndoLog implements Closeable {
+
+    /**
+     * default logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(UndoLog.class);
+
+    private static final int MAGIC = 0x564c5455;
+
+    private static final int VERSION = 1;
+
+    private static final byte END = 0;
+
+    private static final byte ADDED = 1;
+
+    private static final byte NODE = 2;
+
+    private static final byte TREE = 3;
+
+    /**
+     * pre-images larger than this are buffered in a temporary file
+     */
+    private static final int MEMORY_THRESHOLD = 64 * 1024;
+
+    private static final String REP_POLICY = "rep:policy";
+
+    private final Session baseSession;
+
+    private final boolean captureAccessControl;
+
+    private final File file;
+
+    private final DataOutputStream out;
+
+    /**
+     * paths of the created items and of the recorded subtrees
+     */
+    private final Set<String> covered = new HashSet<String>();
+
+    /**
+     * paths of the recorded nodes
+     */
+    private final Set<String> recorded = new HashSet<String>();
+
+    private int numEntries;
+
+    private boolean finished;
+
+    /**
+     * Creates a new undo log.
+     *
+     * @param baseSession the session used to read the pre-images. it must not be used for the import.
+     * @param captureAccessControl {@code true} to record the access control policies of the modified nodes
+     * @throws IOException if the temporary file cannot be created
+     */
+    public UndoLog(@NotNull Session baseSession, boolean captureAccessControl) throws IOException {
+        this.baseSession = baseSession;
+        this.captureAccessControl = captureAccessControl;
+        file = File.createTempFile("undo", ".log");
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Records the pre-image of an item that is about to be modified or was modified in the transient space of the
+     * import session.
+     *
+     * @param type the type of the modification
+     * @param path the path of the node or property
+     * @throws RepositoryException if a repository error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    public void record(@NotNull ImportInfo.Type type, @NotNull String path) throws RepositoryException, IOException {
+        record(type, path, null);
+    }
+
+    /**
+     * Records the pre-image of an item that is about to be modified or was modified in the transient space of the
+     * import session. A referenceable node that replaced a node with the same identifier but another name is
+     * recorded as created, and the replaced node with its entire subtree.
+     *
+     * @param type the type of the modification
+     * @param path the path of the node or property
+     * @param session the import session or {@code null} if the replaced nodes should not be looked up
+     * @throws RepositoryException if a repository error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    public void record(@NotNull ImportInfo.Type type, @NotNull String path, @Nullable Session session)
+            throws RepositoryException, IOException {
+        if (path.isEmpty() || isCovered(path)) {
+            return;
+        }
+        switch (type) {
+            case CRE:
+            case MOD:
+                if (baseSession.nodeExists(path)) {
+                    if (type == ImportInfo.Type.CRE) {
+                        recordTree(path);
+                    } else {
+                        recordNode(path);
+                    }
+                } else if (baseSession.propertyExists(path)) {
+                    recordNode(getParentPath(path));
+                } else {
+                    recordAdded(path);
+                }
+                break;
+            case DEL:
+            case REP:
+                if (baseSession.nodeExists(path)) {
+                    recordTree(path);
+                } else if (baseSession.propertyExists(path)) {
+                    recordNode(getParentPath(path));
+                } else if (session != null && session.nodeExists(path)) {
+                    // the replaced node is removed before the node is added when reverted
+                    String replacedPath = getReplacedPath(session.getNode(path));
+                    if (replacedPath != null && !isCovered(replacedPath)) {
+                        recordTree(replacedPath);
+                    }
+                    recordAdded(path);
+                }
+                break;
+            default:
+                // nothing changed
+        }
+    }
+
+    /**
+     * Returns the number of recorded entries.
+     * @return the number of entries
+     */
+    public int size() {
+        return numEntries;
+    }
+
+    /**
+     * Finishes the log and returns a stream of its serialized form. No more entries can be recorded.
+     *
+     * @return the input stream
+     * @throws IOException if an I/O error occurs
+     */
+    @NotNull
+    public InputStream openStream() throws IOException {
+        if (!finished) {
+            out.writeByte(END);
+            out.close();
+            finished = true;
+        }
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    /**
+     * Deletes the temporary file of this log.
+     */
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(out);
+        finished = true;
+        FileUtils.deleteQuietly(file);
+    }
+
+    private boolean isCovered(String path) {
+        String p = path;
+        while (!p.isEmpty() && !"/".equals(p)) {
+            if (covered.contains(p)) {
+                return true;
+            }
+            p = Text.getRelativeParent(p, 1);
+        }
+        return false;
+    }
+
+    private static String getParentPath(String path) {
+        String parentPath = Text.getRelativeParent(path, 1);
+        return parentPath.isEmpty() ? "/" : parentPath;
+    }
+
+    /**
+     * Returns the path of the persisted node with the identifier of the given node.
+     *
+     * @param node the node of the import session
+     * @return the path or {@code null} if there is none
+     * @throws RepositoryException if a repository error occurs
+     */
+    @Nullable
+    private String getReplacedPath(Node node) throws RepositoryException {
+        if (!node.isNodeType(NodeType.MIX_REFERENCEABLE)) {
+            return null;
+        }
+        try {
+            return baseSession.getNodeByIdentifier(node.getIdentifier()).getPath();
+        } catch (ItemNotFoundException e) {
+            return null;
+        }
+    }
+
+    private void recordAdded(String path) throws IOException {
+        log.trace("recording created item {}", path);
+        covered.add(path);
+        writeEntry(ADDED, path, null);
+    }
+
+    private void recordNode(String path) throws RepositoryException, IOException {
+        if (isCovered(path) || !recorded.add(path)) {
+            return;
+        }
+        log.trace("recording node {}", path);
+        final Node node = baseSession.getNode(path);
+        DeferredFileOutputStream buf = new DeferredFileOutputStream(MEMORY_THRESHOLD, "undo", ".tmp", null);
+        try {
+            try (DataOutputStream dout = new DataOutputStream(buf)) {
+                writeNode(node, dout);
+            }
+            writeEntry(NODE, path, buf);
+        } finally {
+            FileUtils.deleteQuietly(buf.getFile());
+        }
+        if (captureAccessControl && node.hasNode(REP_POLICY)) {
+            recordTree(node.getNode(REP_POLICY).getPath());
+        }
+    }
+
+    private void recordTree(String path) throws RepositoryException, IOException {
+        if ("/".equals(path)) {
+            // the root node cannot be replaced
+            recordNode(path);
+            return;
+        }
+        log.trace("recording subtree {}", path);
+        covered.add(path);
+        Node node = baseSession.getNode(path);
+        String nextSibling = "";
+        Node parent = node.getParent();
+        if (parent.getPrimaryNodeType().hasOrderableChildNodes()) {
+            NodeIterator iter = parent.getNodes();
+            while (iter.hasNext()) {
+                if (iter.nextNode().isSame(node)) {
+                    if (iter.hasNext()) {
+                        nextSibling = iter.nextNode().getName();
+                    }
+                    break;
+                }
+            }
+        }
+        DeferredFileOutputStream buf = new DeferredFileOutputStream(MEMORY_THRESHOLD, "undo", ".tmp", null);
+        try {
+            try (DataOutputStream dout = new DataOutputStream(buf)) {
+                dout.writeUTF(nextSibling);
+                baseSession.exportSystemView(path, dout, false, false);
+            }
+            writeEntry(TREE, path, buf);
+        } finally {
+            FileUtils.deleteQuietly(buf.getFile());
+        }
+    }
+
+    private void writeEntry(byte type, String path, @Nullable DeferredFileOutputStream data) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Undo log is already finished.");
+        }
+        out.writeByte(type);
+        out.writeUTF(path);
+        if (data == null) {
+            out.writeLong(0);
+        } else {
+            out.writeLong(data.getByteCount());
+            data.writeTo(out);
+        }
+        numEntries++;
+    }
+
+    private static void writeNode(Node node, DataOutputStream out) throws RepositoryException, IOException {
+        out.writeUTF(node.getPrimaryNodeType().getName());
+        NodeType[] mixins = node.getMixinNodeTypes();
+        out.writeInt(mixins.length);
+        for (NodeType mixin: mixins) {
+            out.writeUTF(mixin.getName());
+        }
+        List<Property> props = new ArrayList<Property>();
+        PropertyIterator iter = node.getProperties();
+        while (iter.hasNext()) {
+            Property p = iter.nextProperty();
+            if (!p.getDefinition().isProtected()) {
+                props.add(p);
+            }
+        }
+        out.writeInt(props.size());
+        for (Property p: props) {
+            out.writeUTF(p.getName());
+            out.writeInt(p.getType());
+            out.writeBoolean(p.isMultiple());
+            Value[] values = p.isMultiple() ? p.getValues() : new Value[]{p.getValue()};
+            out.writeInt(values.length);
+            for (Value v: values) {
+                if (v.getType() == PropertyType.BINARY) {
+                    out.writeLong(v.getBinary().getSize());
+                    try (InputStream in = v.getBinary().getStream()) {
+                        IOUtils.copy(in, out);
+                    }
+                } else {
+                    writeString(out, v.getString());
+                }
+            }
+        }
+        List<String> names = new ArrayList<String>();
+        if (node.getPrimaryNodeType().hasOrderableChildNodes()) {
+            NodeIterator nodes = node.getNodes();
+            while (nodes.hasNext()) {
+                names.add(nodes.nextNode().getName());
+            }
+        }
+        out.writeInt(names.size());
+        for (String name: names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reverts the modifications recorded in the given undo log. The changes are not saved.
+     *
+     * @param in the serialized undo log
+     * @param session the session
+     * @param listener optional listener that is notified about the reverted paths
+     * @throws RepositoryException if a repository error occurs
+     * @throws IOException if an I/O error occurs or if the undo log is not valid
+     */
+    public static void replay(@NotNull InputStream in, @NotNull Session session, @Nullable ProgressTrackerListener listener)
+            throws RepositoryException, IOException {
+        // the entries are reverted in reverse order, so the log is spooled to a file
+        File tmpFile = File.createTempFile("undo", ".log");
+        try {
+            FileUtils.copyInputStreamToFile(in, tmpFile);
+            try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "r")) {
+                List<Long> offsets = new ArrayList<Long>();
+                CountingInputStream counter = new CountingInputStream(
+                        new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+                DataInputStream din = new DataInputStream(counter);
+                if (din.readInt() != MAGIC || din.readInt() != VERSION) {
+                    throw new IOException("Unsupported undo log format.");
+                }
+                byte type;
+                while (true) {
+                    long offset = counter.getByteCount();
+                    if ((type = din.readByte()) == END) {
+                        break;
+                    }
+                    offsets.add(offset);
+                    String path = din.readUTF();
+                    IOUtils.skipFully(din, din.readLong());
+                    log.trace("undo entry {} {}", type, path);
+                }
+                for (int i = offsets.size() - 1; i >= 0; i--) {
+                    raf.seek(offsets.get(i));
+                    DataInputStream entry = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+                    type = entry.readByte();
+                    String path = entry.readUTF();
+                    long length = entry.readLong();
+                    BoundedInputStream data = new BoundedInputStream(entry, length);
+                    // the importer must not close the file
+                    data.setPropagateClose(false);
+                    switch (type) {
+                        case ADDED:
+                            revertAdded(session, path, listener);
+                            break;
+                        case NODE:
+                            revertNode(session, path, new DataInputStream(data), listener);
+                            break;
+                        case TREE:
+                            revertTree(session, path, new DataInputStream(data), listener);
+                            break;
+                        default:
+                            throw new IOException("Invalid undo log entry type: " + type);
+                    }
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(tmpFile);
+        }
+    }
+
+    private static void revertAdded(Session session, String path, ProgressTrackerListener listener)
+            throws RepositoryException {
+        if (session.nodeExists(path)) {
+            session.getNode(path).remove();
+            track(listener, "D", path);
+        } else if (session.propertyExists(path)) {
+            session.getProperty(path).remove();
+            track(listener, "U", getParentPath(path));
+        }
+    }
+
+    private static void revertNode(Session session, String path, DataInputStream in, ProgressTrackerListener listener)
+            throws RepositoryException, IOException {
+        if (!session.nodeExists(path)) {
+            log.warn("Unable to revert {}. Node does not exist.", path);
+            return;
+        }
+        Node node = session.getNode(path);
+        String primaryType = in.readUTF();
+        if (!primaryType.equals(node.getPrimaryNodeType().getName())) {
+            node.setPrimaryType(primaryType);
+        }
+        Set<String> mixins = new HashSet<String>();
+        int numMixins = in.readInt();
+        for (int i = 0; i < numMixins; i++) {
+            mixins.add(in.readUTF());
+        }
+        for (NodeType mixin: node.getMixinNodeTypes()) {
+            if (!mixins.remove(mixin.getName())) {
+                node.removeMixin(mixin.getName());
+            }
+        }
+        for (String mixin: mixins) {
+            node.addMixin(mixin);
+        }
+
+        ValueFactory factory = session.getValueFactory();
+        Set<String> names = new HashSet<String>();
+        int numProps = in.readInt();
+        for (int i = 0; i < numProps; i++) {
+            String name = in.readUTF();
+            int type = in.readInt();
+            boolean multiple = in.readBoolean();
+            Value[] values = new Value[in.readInt()];
+            for (int j = 0; j < values.length; j++) {
+                if (type == PropertyType.BINARY) {
+                    long size = in.readLong();
+                    BoundedInputStream data = new BoundedInputStream(in, size);
+                    data.setPropagateClose(false);
+                    values[j] = factory.createValue(factory.createBinary(data));
+                } else {
+                    values[j] = factory.createValue(readString(in), type);
+                }
+            }
+            names.add(name);
+            if (node.hasProperty(name)) {
+                Property p = node.getProperty(name);
+                if (p.getDefinition().isProtected()) {
+                    continue;
+                }
+                if (p.isMultiple() != multiple) {
+                    p.remove();
+                }
+            }
+            if (multiple) {
+                node.setProperty(name, values, type);
+            } else {
+                node.setProperty(name, values[0]);
+            }
+        }
+        PropertyIterator iter = node.getProperties();
+        List<Property> remove = new ArrayList<Property>();
+        while (iter.hasNext()) {
+            Property p = iter.nextProperty();
+            if (!names.contains(p.getName()) && !p.getDefinition().isProtected()) {
+                remove.add(p);
+            }
+        }
+        for (Property p: remove) {
+            p.remove();
+        }
+
+        NodeNameList nameList = new NodeNameList();
+        int numChildren = in.readInt();
+        for (int i = 0; i < numChildren; i++) {
+            nameList.addName(in.readUTF());
+        }
+        if (nameList.needsReorder(node)) {
+            nameList.restoreOrder(node);
+        }
+        track(listener, "U", path);
+    }
+
+    private static void revertTree(Session session, String path, DataInputStream in, ProgressTrackerListener listener)
+            throws RepositoryException, IOException {
+        String nextSibling = in.readUTF();
+        String parentPath = getParentPath(path);
+        if (!session.nodeExists(parentPath)) {
+            log.warn("Unable to restore {}. Parent node does not exist.", path);
+            return;
+        }
+        boolean existed = session.nodeExists(path);
+        if (existed) {
+            session.getNode(path).remove();
+        }
+        // a node with the same identifier elsewhere was not created by the import, it is replaced in place
+        session.importXML(parentPath, in, ImportUUIDBehavior.IMPORT_UUID_COLLISION_REPLACE_EXISTING);
+        Node parent = session.getNode(parentPath);
+        String name = Text.getName(path);
+        if (!nextSibling.isEmpty() && parent.hasNode(nextSibling) && parent.hasNode(name)
+                && parent.getPrimaryNodeType().hasOrderableChildNodes()) {
+            parent.orderBefore(name, nextSibling);
+        }
+        track(listener, existed ? "R" : "A", path);
+    }
+
+    private static void track(ProgressTrackerListener listener, String action, String path) {
+        log.debug("{} {}", action, path);
+        if (listener != null) {
+            listener.onMessage(ProgressTrackerListener.Mode.PATHS, action, path);
+        }
+    }
+}
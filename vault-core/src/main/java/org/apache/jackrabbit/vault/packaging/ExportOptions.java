@@ -21,6 +21,7 @@ import java.util.zip.Deflater;
 
 import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
 import org.apache.jackrabbit.vault.fs.config.MetaInf;
+import org.apache.jackrabbit.vault.fs.io.ExportInfo;
 
 /**
  * Holds options used for exporting.
@@ -39,6 +40,12 @@ public class ExportOptions {
 
     private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
 
+    private boolean useBinaryReferences;
+
+    private boolean includeDigests;
+
+    private ExportInfo incrementalBase;
+
     /**
      * Returns the progress tracker listener.
      * @return the progress tracker listener.
@@ -150,4 +157,67 @@ public class ExportOptions {
     public int getCompressionLevel() {
         return compressionLevel;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns {@code true} if binaries are exported as references.
+     * @return {@code true} if binaries are exported as references.
+     * @since 3.4.5
+     */
+    public boolean isUseBinaryReferences() {
+        return useBinaryReferences;
+    }
+
+    /**
+     * Defines if binaries should be exported as references instead of their content. This can be used if the
+     * source and target repository share the same data store. The binaries that are exported as references are
+     * listed in {@code META-INF/vault/binary-references.txt}. This has the same effect as setting the
+     * {@link PackageProperties#NAME_USE_BINARY_REFERENCES} package property.
+     *
+     * @param useBinaryReferences {@code true} to export binaries as references
+     * @since 3.4.5
+     */
+    public void setUseBinaryReferences(boolean useBinaryReferences) {
+        this.useBinaryReferences = useBinaryReferences;
+    }
+
+    /**
+     * Checks if the digests of the exported aggregates are included in the package.
+     * @return {@code true} if digests are included.
+     * @since 3.4.5
+     */
+    public boolean isIncludeDigests() {
+        return includeDigests;
+    }
+
+    /**
+     * Defines if the digests of the exported aggregates are written to {@code META-INF/vault/export-digests.txt}.
+     * A package with digests can be used as base for a later incremental export.
+     * @param includeDigests {@code true} to include the digests
+     * @since 3.4.5
+     */
+    public void setIncludeDigests(boolean includeDigests) {
+        this.includeDigests = includeDigests;
+    }
+
+    /**
+     * Returns the base of an incremental export.
+     * @return the export info of the previous export or {@code null}.
+     * @since 3.4.5
+     */
+    public ExportInfo getIncrementalBase() {
+        return incrementalBase;
+    }
+
+    /**
+     * Sets the export info of a previous export which was created with digests, usually obtained via
+     * {@link ExportInfo#load(org.apache.jackrabbit.vault.fs.io.Archive)}. If set, the package only contains the
+     * aggregates that changed since the previous export, and the ones that were removed are recorded as delete
+     * markers which are applied by the importer. Digests are always included in incremental exports.
+     *
+     * @param incrementalBase the export info of the previous export or {@code null}
+     * @since 3.4.5
+     */
+    public void setIncrementalBase(ExportInfo incrementalBase) {
+        this.incrementalBase = incrementalBase;
+    }
+}
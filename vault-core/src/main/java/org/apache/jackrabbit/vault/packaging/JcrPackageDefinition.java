@@ -126,6 +126,12 @@ public interface JcrPackageDefinition {
      */
     String PN_SUB_PACKAGES = "subPackages";
 
+    /**
+     * Property name of the undo log (only used in journaled snapshots)
+     * @since 3.4.5
+     */
+    String PN_UNDO_LOG = "undoLog";
+
     /**
      * Property name of the last unwrapped date
      */
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.events;
+
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Listener that can receive packaging events in batches. If the event dispatcher delivers the events asynchronously,
+ * the events that were queued for the listener are passed in a single call of {@link #onPackageEvents(List)}. The
+ * events are always delivered in the order they were dispatched.
+ *
+ * @since 3.4.5
+ */
+@ConsumerType
+public interface BatchPackageEventListener extends PackageEventListener {
+
+    /**
+     * Receives a batch of events.
+     * @param events the events in the order they were dispatched
+     */
+    void onPackageEvents(@NotNull List<PackageEvent> events);
+
+}
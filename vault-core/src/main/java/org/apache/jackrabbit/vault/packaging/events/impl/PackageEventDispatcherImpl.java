@@ -16,24 +16,43 @@
  */
 package org.apache.jackrabbit.vault.packaging.events.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.events.BatchPackageEventListener;
 import org.apache.jackrabbit.vault.packaging.events.PackageEvent;
 import org.apache.jackrabbit.vault.packaging.events.PackageEventListener;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Packaging observation helper
+ * Packaging observation helper. By default the events are delivered synchronously on the dispatching thread. In
+ * asynchronous mode, each listener has a bounded queue which is processed by a dedicated thread, so that each listener
+ * receives the events in the order they were dispatched. If the queue of a listener is full, the dispatching thread
+ * blocks until the listener catches up. Events are only delivered by the thread of the listener, so events that are
+ * still queued when the listener is unregistered and does not process them in time, or that are dispatched while it
+ * is unregistered, are dropped and logged. Listeners implementing {@link BatchPackageEventListener} receive the queued
+ * events in batches.
  */
 @Component(
         service = PackageEventDispatcher.class,
@@ -49,6 +68,7 @@ import org.slf4j.LoggerFactory;
                 )
         }
 )
+@Designate(ocd = PackageEventDispatcherImpl.Config.class)
 public class PackageEventDispatcherImpl implements PackageEventDispatcher {
 
     /**
@@ -56,10 +76,75 @@ public class PackageEventDispatcherImpl implements PackageEventDispatcher {
      */
     private static final Logger log = LoggerFactory.getLogger(PackageEventDispatcherImpl.class);
 
+    /**
+     * time in milliseconds to wait for a listener to process its queued events when it is unregistered
+     */
+    private static final long DRAIN_TIMEOUT = 10000;
+
+    /**
+     * time in milliseconds to wait for space in a full listener queue before checking again if the listener is stopped
+     */
+    private static final long ENQUEUE_POLL_INTERVAL = 100;
+
     /**
      * the registered listener
      */
-    private ConcurrentHashMap<Object, PackageEventListener> listeners = new ConcurrentHashMap<Object, PackageEventListener>();
+    private ConcurrentHashMap<Object, Delivery> listeners = new ConcurrentHashMap<Object, Delivery>();
+
+    /**
+     * size of the listener queues or {@code 0} for synchronous delivery.
+     */
+    private volatile int queueSize;
+
+    /**
+     * maximum number of events delivered to a batch listener at once
+     */
+    private volatile int batchSize = 1;
+
+    @ObjectClassDefinition(
+            name = "Apache Jackrabbit Package Event Dispatcher"
+    )
+    @interface Config {
+
+        @AttributeDefinition(name = "Asynchronous",
+                description = "Delivers the events to the listeners in background threads instead of the installing thread.")
+        boolean asynchronous() default false;
+
+        @AttributeDefinition(name = "Queue Size",
+                description = "Maximum number of events queued per listener in asynchronous mode. "
+                        + "If the queue of a listener is full, the dispatching thread blocks until the listener catches up.")
+        int queueSize() default 1000;
+
+        @AttributeDefinition(name = "Batch Size",
+                description = "Maximum number of events delivered at once to listeners that accept batches.")
+        int batchSize() default 100;
+    }
+
+    @Activate
+    synchronized void activate(Config config) {
+        batchSize = Math.max(1, config.batchSize());
+        queueSize = config.asynchronous() ? Math.max(1, config.queueSize()) : 0;
+        if (queueSize > 0) {
+            for (Delivery d: listeners.values()) {
+                d.start(queueSize, batchSize);
+            }
+            log.info("Package events are delivered asynchronously with queue size {} and batch size {}", queueSize, batchSize);
+        }
+    }
+
+    @Deactivate
+    void deactivate() {
+        List<Delivery> deliveries;
+        synchronized (this) {
+            queueSize = 0;
+            deliveries = new ArrayList<Delivery>(listeners.values());
+        }
+        // wait for the listeners outside of the lock, so that binding other listeners is not blocked
+        for (Delivery d: deliveries) {
+            d.stop();
+            log.debug("Package event listener statistics: {}", d);
+        }
+    }
 
     /**
      * Bind a new listener
@@ -68,7 +153,17 @@ public class PackageEventDispatcherImpl implements PackageEventDispatcher {
      */
     public void bindPackageEventListener(PackageEventListener listener, Map<String, Object> props) {
         // public for testing
-        listeners.put(props.get("component.id"), listener);
+        Delivery d = new Delivery(listener);
+        Delivery prev;
+        synchronized (this) {
+            if (queueSize > 0) {
+                d.start(queueSize, batchSize);
+            }
+            prev = listeners.put(props.get("component.id"), d);
+        }
+        if (prev != null) {
+            prev.stop();
+        }
         log.debug("Registering package event listener {}", listener.getClass().getName());
     }
 
@@ -78,7 +173,9 @@ public class PackageEventDispatcherImpl implements PackageEventDispatcher {
      * @param props service properties
      */
     protected void unbindPackageEventListener(PackageEventListener listener, Map<String, Object> props) {
-        if (listeners.remove(props.get("component.id")) != null) {
+        Delivery d = listeners.remove(props.get("component.id"));
+        if (d != null) {
+            d.stop();
             log.debug("Unregistering package event listener {}", listener.getClass().getName());
         } else {
             log.warn("unable to unregister package event listener {}", listener.getClass().getName());
@@ -87,12 +184,252 @@ public class PackageEventDispatcherImpl implements PackageEventDispatcher {
 
     public void dispatch(@NotNull PackageEvent.Type type, @NotNull PackageId id, @Nullable PackageId[] related) {
         final EventImpl event = new EventImpl(type, id, related);
-        for (PackageEventListener l: listeners.values()) {
+        for (Delivery d: listeners.values()) {
+            d.enqueue(event);
+        }
+    }
+
+    /**
+     * Returns the delivery statistics of the registered listeners.
+     * @return the statistics
+     */
+    @NotNull
+    public List<ListenerStatistics> getStatistics() {
+        return new ArrayList<ListenerStatistics>(listeners.values());
+    }
+
+    /**
+     * Delivery statistics of a listener.
+     */
+    public interface ListenerStatistics {
+
+        /**
+         * @return the class name of the listener
+         */
+        @NotNull
+        String getName();
+
+        /**
+         * @return the number of events delivered to the listener
+         */
+        long getEventCount();
+
+        /**
+         * @return the number of failed deliveries
+         */
+        long getErrorCount();
+
+        /**
+         * @return the total time in milliseconds spent in the listener
+         */
+        long getTotalTime();
+
+        /**
+         * @return the maximum time in milliseconds spent in a single delivery
+         */
+        long getMaxTime();
+
+        /**
+         * @return the number of events that were not delivered because the listener was stopped
+         */
+        long getDroppedCount();
+
+        /**
+         * @return the number of events waiting for delivery
+         */
+        int getQueueSize();
+    }
+
+    /**
+     * Delivers the events to a single listener and records its timing.
+     */
+    private static final class Delivery implements ListenerStatistics, Runnable {
+
+        private final PackageEventListener listener;
+
+        private final AtomicLong eventCount = new AtomicLong();
+
+        private final AtomicLong errorCount = new AtomicLong();
+
+        private final AtomicLong totalTime = new AtomicLong();
+
+        private final AtomicLong maxTime = new AtomicLong();
+
+        private final AtomicLong droppedCount = new AtomicLong();
+
+        private volatile BlockingQueue<PackageEvent> queue;
+
+        private volatile boolean running;
+
+        private Thread thread;
+
+        private int batchSize;
+
+        private Delivery(PackageEventListener listener) {
+            this.listener = listener;
+        }
+
+        private synchronized void start(int queueSize, int batchSize) {
+            if (running) {
+                return;
+            }
+            this.batchSize = batchSize;
+            // set before the queue, so that enqueue() never sees a queue of a delivery that is not running yet
+            running = true;
+            queue = new ArrayBlockingQueue<PackageEvent>(queueSize);
+            thread = new Thread(this, "PackageEventDispatcher-" + listener.getClass().getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Stops the delivery thread after it processed the queued events. Must not be called while holding the lock
+         * of the dispatcher.
+         */
+        private void stop() {
+            Thread t;
+            BlockingQueue<PackageEvent> q;
+            synchronized (this) {
+                if (!running) {
+                    return;
+                }
+                running = false;
+                t = thread;
+                q = queue;
+                thread = null;
+            }
+            try {
+                t.join(DRAIN_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (t.isAlive()) {
+                log.warn("Package event listener {} did not process its {} queued events in time.", getName(), q.size());
+                t.interrupt();
+            }
+            // events left by an interrupted thread or queued after the thread terminated
+            List<PackageEvent> remaining = new ArrayList<PackageEvent>();
+            q.drainTo(remaining);
+            for (PackageEvent event: remaining) {
+                drop(event);
+            }
+        }
+
+        private void enqueue(PackageEvent event) {
+            BlockingQueue<PackageEvent> q = queue;
+            if (q == null) {
+                // synchronous delivery
+                deliver(Collections.singletonList(event));
+                return;
+            }
+            try {
+                while (running) {
+                    if (q.offer(event, ENQUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                        // if the delivery was stopped meanwhile, the event is either processed, drained by stop()
+                        // or still queued
+                        if (!running && q.remove(event)) {
+                            break;
+                        }
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            drop(event);
+        }
+
+        private void drop(PackageEvent event) {
+            droppedCount.incrementAndGet();
+            log.warn("Package event listener {} is stopped. Dropping event {} of package {}.",
+                    getName(), event.getType(), event.getId());
+        }
+
+        @Override
+        public void run() {
+            final BlockingQueue<PackageEvent> q = queue;
+            final List<PackageEvent> batch = new ArrayList<PackageEvent>();
+            while (running || !q.isEmpty()) {
+                try {
+                    PackageEvent event = q.poll(100, TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        continue;
+                    }
+                    batch.add(event);
+                    q.drainTo(batch, batchSize - 1);
+                    deliver(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+
+        private void deliver(List<PackageEvent> events) {
+            long start = System.nanoTime();
             try {
-                l.onPackageEvent(event);
+                if (listener instanceof BatchPackageEventListener) {
+                    ((BatchPackageEventListener) listener).onPackageEvents(events);
+                } else {
+                    for (PackageEvent event: events) {
+                        listener.onPackageEvent(event);
+                    }
+                }
             } catch (Throwable e) {
-                // ignore
+                errorCount.incrementAndGet();
+                log.warn("Package event listener {} failed.", getName(), e);
             }
+            long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            eventCount.addAndGet(events.size());
+            totalTime.addAndGet(time);
+            long prev;
+            while ((prev = maxTime.get()) < time && !maxTime.compareAndSet(prev, time)) {
+                // retry
+            }
+        }
+
+        @NotNull
+        @Override
+        public String getName() {
+            return listener.getClass().getName();
+        }
+
+        @Override
+        public long getEventCount() {
+            return eventCount.get();
+        }
+
+        @Override
+        public long getErrorCount() {
+            return errorCount.get();
+        }
+
+        @Override
+        public long getTotalTime() {
+            return totalTime.get();
+        }
+
+        @Override
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return droppedCount.get();
+        }
+
+        @Override
+        public int getQueueSize() {
+            BlockingQueue<PackageEvent> q = queue;
+            return q == null ? 0 : q.size();
+        }
+
+        @Override
+        public String toString() {
+            return getName() + " [events=" + eventCount + ", errors=" + errorCount + ", dropped=" + droppedCount
+                    + ", totalTime=" + totalTime
+                    + "ms, maxTime=" + maxTime + "ms]";
         }
     }
 
@@ -15,7 +15,7 @@
  * limitations under the License.
  */
 
-@Version("1.0.1")
+@Version("1.1.0")
 package org.apache.jackrabbit.vault.packaging.events;
 
 import org.osgi.annotation.versioning.Version;
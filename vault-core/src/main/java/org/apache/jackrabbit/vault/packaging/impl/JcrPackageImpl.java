@@ -17,6 +17,8 @@
 
 package org.apache.jackrabbit.vault.packaging.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -30,6 +32,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import javax.jcr.Binary;
 import javax.jcr.NamespaceException;
@@ -37,6 +41,7 @@ import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
 import javax.jcr.nodetype.NodeTypeManager;
 
 import org.apache.commons.io.FileUtils;
@@ -49,10 +54,13 @@ import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
 import org.apache.jackrabbit.vault.fs.api.VaultInputSource;
 import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.config.DefaultMetaInf;
+import org.apache.jackrabbit.vault.fs.config.MetaInf;
 import org.apache.jackrabbit.vault.fs.io.AccessControlHandling;
 import org.apache.jackrabbit.vault.fs.io.Archive;
 import org.apache.jackrabbit.vault.fs.io.ImportOptions;
+import org.apache.jackrabbit.vault.fs.io.JarExporter;
 import org.apache.jackrabbit.vault.fs.io.MemoryArchive;
+import org.apache.jackrabbit.vault.fs.io.UndoLog;
 import org.apache.jackrabbit.vault.fs.io.ZipArchive;
 import org.apache.jackrabbit.vault.fs.spi.NodeTypeSet;
 import org.apache.jackrabbit.vault.packaging.CyclicDependencyException;
@@ -71,8 +79,11 @@ import org.apache.jackrabbit.vault.packaging.VaultPackage;
 import org.apache.jackrabbit.vault.packaging.Version;
 import org.apache.jackrabbit.vault.packaging.events.PackageEvent;
 import org.apache.jackrabbit.vault.packaging.registry.RegisteredPackage;
+import org.apache.jackrabbit.vault.packaging.registry.impl.ConcurrentPackageExecutor;
 import org.apache.jackrabbit.vault.packaging.registry.impl.JcrPackageRegistry;
 import org.apache.jackrabbit.vault.packaging.registry.impl.JcrRegisteredPackage;
+import org.apache.jackrabbit.vault.packaging.registry.impl.WorkerSessions;
+import org.apache.jackrabbit.vault.util.Constants;
 import org.apache.jackrabbit.vault.util.JcrConstants;
 import org.apache.jackrabbit.vault.util.Text;
 import org.jetbrains.annotations.NotNull;
@@ -391,13 +402,45 @@ public class JcrPackageImpl implements JcrPackage {
         }
         InstallContextImpl ctx = pack.prepareExtract(node.getSession(), opts);
         JcrPackage snap = null;
+        UndoLog undoLog = null;
+        Session undoSession = null;
         if (!opts.isDryRun() && createSnapshot) {
             ExportOptions eOpts = new ExportOptions();
             eOpts.setListener(opts.getListener());
-            snap = snapshot(eOpts, replaceSnapshot, opts.getAccessControlHandling());
+            if (opts.isJournaledSnapshot()) {
+                // the pre-images are read with a session that does not see the pending changes of the import
+                undoSession = openUndoSession();
+            }
+            try {
+                snap = snapshot(eOpts, replaceSnapshot, opts.getAccessControlHandling(), undoSession != null);
+                if (snap != null && undoSession != null) {
+                    AccessControlHandling acHandling = ctx.getImporter().getOptions().getAccessControlHandling();
+                    undoLog = new UndoLog(undoSession, acHandling != null && acHandling != AccessControlHandling.IGNORE);
+                    ctx.getImporter().setUndoLog(undoLog);
+                }
+            } finally {
+                if (undoLog == null && undoSession != null) {
+                    undoSession.logout();
+                }
+            }
         }
         List<String> subPackages = new ArrayList<String>();
-        pack.extract(ctx, subPackages);
+        try {
+            pack.extract(ctx, subPackages);
+        } catch (Throwable e) {
+            // the log of a failed installation is saved too, as auto saves may have persisted parts of the import
+            if (undoLog != null) {
+                try {
+                    saveUndoLog(snap, undoLog, undoSession);
+                } catch (Throwable e1) {
+                    e.addSuppressed(e1);
+                }
+            }
+            throw e;
+        }
+        if (undoLog != null) {
+            saveUndoLog(snap, undoLog, undoSession);
+        }
         if (def != null && !opts.isDryRun()) {
             def.touchLastUnpacked();
         }
@@ -492,47 +535,93 @@ public class JcrPackageImpl implements JcrPackage {
             }
             List<PackageId> subIds = new LinkedList<PackageId>();
             SubPackageHandling sb = pack.getSubPackageHandling();
-            for (JcrPackageImpl p: subPacks) {
-                boolean skip = false;
-                PackageId id = p.getDefinition().getId();
-                SubPackageHandling.Option option = sb.getOption(id);
-                String msg = null;
-                // should the package be skipped due to a newer version already installed?
-                if (option == SubPackageHandling.Option.INSTALL || option == SubPackageHandling.Option.EXTRACT) {
-                    PackageId newerPackageId = newerPackageIdPerSubPackage.get(id);
-                    if (newerPackageId != null) {
-                        msg = String.format("Skipping installation of subpackage '%s' due to newer installed version: '%s'", id, newerPackageId);
-                        skip = true;
-                    }
+            ConcurrentPackageExecutor executor = null;
+            WorkerSessions workers = null;
+            // the sub packages to install in dependency order, and the ones that are installed successfully
+            List<PackageId> installIds = new LinkedList<PackageId>();
+            Set<PackageId> installed = ConcurrentHashMap.newKeySet();
+            if (opts.getSubPackageParallelism() > 1 && subPacks.size() > 1) {
+                // the sub packages are installed with their own sessions
+                s.save();
+                workers = WorkerSessions.create(s, mgr);
+                if (workers != null) {
+                    executor = new ConcurrentPackageExecutor(opts.getSubPackageParallelism());
                 }
-                
-                if (!skip) {
-                    if (option == SubPackageHandling.Option.ADD || option == SubPackageHandling.Option.IGNORE) {
-                        msg = "Skipping installation of subpackage " + id + " due to option " + option;
-                        skip = true;
-                    } else if (option == SubPackageHandling.Option.INSTALL || option == SubPackageHandling.Option.FORCE_INSTALL) {
-                        msg = "Starting installation of subpackage " + id;
+            }
+            try {
+                for (JcrPackageImpl p: subPacks) {
+                    boolean skip = false;
+                    PackageId id = p.getDefinition().getId();
+                    SubPackageHandling.Option option = sb.getOption(id);
+                    String msg = null;
+                    // should the package be skipped due to a newer version already installed?
+                    if (option == SubPackageHandling.Option.INSTALL || option == SubPackageHandling.Option.EXTRACT) {
+                        PackageId newerPackageId = newerPackageIdPerSubPackage.get(id);
+                        if (newerPackageId != null) {
+                            msg = String.format("Skipping installation of subpackage '%s' due to newer installed version: '%s'", id, newerPackageId);
+                            skip = true;
+                        }
+                    }
+                    
+                    if (!skip) {
+                        if (option == SubPackageHandling.Option.ADD || option == SubPackageHandling.Option.IGNORE) {
+                            msg = "Skipping installation of subpackage " + id + " due to option " + option;
+                            skip = true;
+                        } else if (option == SubPackageHandling.Option.INSTALL || option == SubPackageHandling.Option.FORCE_INSTALL) {
+                            msg = "Starting installation of subpackage " + id;
+                        } else {
+                            msg = "Starting extraction of subpackage " + id;
+                        }
+                    }
+                    if (options.isDryRun()) {
+                        msg = "Dry run: " + msg;
+                    }
+                    if (options.getListener() != null) {
+                        options.getListener().onMessage(ProgressTrackerListener.Mode.TEXT, msg, "");
                     } else {
-                        msg = "Starting extraction of subpackage " + id;
+                        log.debug(msg);
+                    }
+                    if (!skip) {
+                        final boolean install = createSnapshot && (option == SubPackageHandling.Option.INSTALL || option == SubPackageHandling.Option.FORCE_INSTALL);
+                        if (executor != null) {
+                            final String path = p.getNode().getPath();
+                            WorkspaceFilter filter = p.getDefinition().getMetaInf().getFilter();
+                            if (filter != null && filter.getFilterSets().isEmpty()) {
+                                filter = null;
+                            }
+                            final WorkerSessions sessions = workers;
+                            executor.add(id, p.getDefinition().getDependencies(), filter, () -> {
+                                extractSubPackage(sessions, path, options, install);
+                                if (install) {
+                                    installed.add(id);
+                                }
+                                return null;
+                            });
+                        } else {
+                            p.extract(options, install, true);
+                            if (install) {
+                                installed.add(id);
+                            }
+                        }
+                        if (install) {
+                            installIds.add(id);
+                        }
                     }
+                    p.close();
                 }
-                if (options.isDryRun()) {
-                    msg = "Dry run: " + msg;
+                if (executor != null) {
+                    executeSubPackages(executor);
+                    s.refresh(true);
                 }
-                if (options.getListener() != null) {
-                    options.getListener().onMessage(ProgressTrackerListener.Mode.TEXT, msg, "");
-                } else {
-                    log.debug(msg);
+            } finally {
+                if (workers != null) {
+                    workers.close();
                 }
-                if (!skip) {
-                    if (createSnapshot && (option == SubPackageHandling.Option.INSTALL || option == SubPackageHandling.Option.FORCE_INSTALL)) {
-                        p.extract(options, true, true);
-                        subIds.add(id);
-                    } else {
-                        p.extract(options, false, true);
-                    }
+            }
+            for (PackageId id: installIds) {
+                if (installed.contains(id)) {
+                    subIds.add(id);
                 }
-                p.close();
             }
             // register sub packages in snapshot and on package for uninstall
             if (snap != null) {
@@ -551,6 +640,62 @@ public class JcrPackageImpl implements JcrPackage {
         }
     }
 
+    /**
+     * Extracts or installs a sub package with a worker session.
+     *
+     * @param workers the worker sessions
+     * @param path the path of the sub package
+     * @param options the import options
+     * @param install {@code true} if the sub package should be installed
+     * @throws RepositoryException if a repository error occurs
+     * @throws PackageException if a package error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    private static void extractSubPackage(WorkerSessions workers, String path, ImportOptions options, boolean install)
+            throws RepositoryException, PackageException, IOException {
+        Session session = workers.acquire();
+        try {
+            JcrPackageImpl p = new JcrPackageImpl(workers.getRegistry(session), session.getNode(path));
+            try {
+                p.extract(options, install, true);
+            } finally {
+                p.close();
+            }
+        } finally {
+            workers.release(session);
+        }
+    }
+
+    /**
+     * Executes the sub package jobs and rethrows the error of the first failed sub package.
+     *
+     * @param executor the executor
+     * @throws RepositoryException if a repository error occurs
+     * @throws PackageException if a package error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    private static void executeSubPackages(ConcurrentPackageExecutor executor)
+            throws RepositoryException, PackageException, IOException {
+        try {
+            executor.execute();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PackageException("Installation of sub packages interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RepositoryException) {
+                throw (RepositoryException) cause;
+            } else if (cause instanceof PackageException) {
+                throw (PackageException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new PackageException("Error while installing sub packages.", cause);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -845,7 +990,7 @@ public class JcrPackageImpl implements JcrPackage {
      */
     public JcrPackage snapshot(ExportOptions opts, boolean replace)
             throws RepositoryException, PackageException, IOException {
-        return snapshot(opts, replace, null);
+        return snapshot(opts, replace, null, false);
     }
 
     /**
@@ -853,13 +998,15 @@ public class JcrPackageImpl implements JcrPackage {
      * @param opts exports options when building the snapshot
      * @param replace if {@code true} existing snapshot will be replaced
      * @param acHandling user acHandling to use when snapshot is installed, i.e. package is uninstalled
+     * @param journaled if {@code true} the content is not exported. the undo log is added during the installation.
      * @return the package of the snapshot or {@code null}
      * @throws RepositoryException if an error occurrs.
      * @throws PackageException if an error occurrs.
      * @throws IOException if an error occurrs.
      */
     @Nullable
-    private JcrPackage snapshot(@NotNull ExportOptions opts, boolean replace, @Nullable AccessControlHandling acHandling)
+    private JcrPackage snapshot(@NotNull ExportOptions opts, boolean replace, @Nullable AccessControlHandling acHandling,
+                                boolean journaled)
             throws RepositoryException, PackageException, IOException {
         if (node == null) {
             return null;
@@ -903,15 +1050,95 @@ public class JcrPackageImpl implements JcrPackage {
         } else {
             snapDef.set(JcrPackageDefinition.PN_AC_HANDLING, acHandling.name(), false);
         }
-        if (opts.getListener() != null) {
-            opts.getListener().onMessage(ProgressTrackerListener.Mode.TEXT, "Creating snapshot for package " + myDef.getId(), "");
+        if (journaled) {
+            // the content is reverted with the undo log, the binary only holds the meta data
+            writeMetaInf(snap.getNode(), snapDef);
+            node.getSession().save();
+            log.debug("Created journaled snapshot {}.", id);
+        } else {
+            if (opts.getListener() != null) {
+                opts.getListener().onMessage(ProgressTrackerListener.Mode.TEXT, "Creating snapshot for package " + myDef.getId(), "");
+            }
+            packMgr.assemble(snap.getNode(), snapDef, opts.getListener());
+            log.debug("Creating snapshot for {} completed.", id);
         }
-        packMgr.assemble(snap.getNode(), snapDef, opts.getListener());
-        log.debug("Creating snapshot for {} completed.", id);
         mgr.dispatch(PackageEvent.Type.SNAPSHOT, id, null);
         return snap;
     }
 
+    /**
+     * Opens the session that reads the pre-images of the undo log of a journaled snapshot.
+     *
+     * @return the session or {@code null} if the user can't impersonate itself. A regular snapshot is then created.
+     * @throws RepositoryException if a repository error occurs
+     */
+    @Nullable
+    private Session openUndoSession() throws RepositoryException {
+        Session session = node.getSession();
+        try {
+            return session.impersonate(new SimpleCredentials(session.getUserID(), new char[0]));
+        } catch (RepositoryException e) {
+            log.warn("User {} can't impersonate itself to record the undo log of {}. Creating a regular snapshot: {}",
+                    session.getUserID(), getDefinition().getId(), e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a package that only contains the properties and the filter of the given definition to the binary of
+     * the given package node.
+     *
+     * @param packNode the package node
+     * @param def the definition
+     * @throws RepositoryException if a repository error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    private static void writeMetaInf(@NotNull Node packNode, @NotNull JcrPackageDefinitionImpl def)
+            throws RepositoryException, IOException {
+        MetaInf inf = def.getMetaInf();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JarExporter exporter = new JarExporter(out);
+        exporter.open();
+        ByteArrayOutputStream props = new ByteArrayOutputStream();
+        inf.getProperties().storeToXML(props, "FileVault Package Properties", "utf-8");
+        exporter.writeFile(new ByteArrayInputStream(props.toByteArray()), Constants.META_DIR + "/" + Constants.PROPERTIES_XML);
+        exporter.writeFile(inf.getFilter().getSource(), Constants.META_DIR + "/" + Constants.FILTER_XML);
+        exporter.close();
+        Node contentNode = packNode.getNode(JcrConstants.JCR_CONTENT);
+        Binary bin = packNode.getSession().getValueFactory().createBinary(new ByteArrayInputStream(out.toByteArray()));
+        try {
+            contentNode.setProperty(JcrConstants.JCR_DATA, bin);
+        } finally {
+            bin.dispose();
+        }
+    }
+
+    /**
+     * Stores the undo log on the definition of the journaled snapshot. The log is saved with its own session, so that
+     * the pending changes of a failed installation are not saved along with it.
+     *
+     * @param snap the snapshot
+     * @param undoLog the undo log
+     * @param session the session of the undo log
+     * @throws RepositoryException if a repository error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    private void saveUndoLog(@NotNull JcrPackage snap, @NotNull UndoLog undoLog, @NotNull Session session)
+            throws RepositoryException, IOException {
+        try {
+            session.refresh(false);
+            Node defNode = session.getNode(snap.getDefinition().getNode().getPath());
+            try (InputStream in = undoLog.openStream()) {
+                defNode.setProperty(JcrPackageDefinition.PN_UNDO_LOG, session.getValueFactory().createBinary(in));
+            }
+            session.save();
+            log.debug("Saved undo log of {} with {} entries.", snap.getDefinition().getId(), undoLog.size());
+        } finally {
+            undoLog.close();
+            session.logout();
+        }
+    }
+
     /**
      * Returns the snapshot package node of this package
      * @return the package node
@@ -1018,9 +1245,19 @@ public class JcrPackageImpl implements JcrPackage {
             if (opts.getListener() != null) {
                 opts.getListener().onMessage(ProgressTrackerListener.Mode.TEXT, "Uninstalling package from snapshot " + snap.getDefinition().getId(), "");
             }
-            // override import mode
-            opts.setImportMode(ImportMode.REPLACE);
-            snap.extract(opts);
+            Node snapDefNode = snap.getDefinition().getNode();
+            if (snapDefNode.hasProperty(JcrPackageDefinition.PN_UNDO_LOG)) {
+                Binary undoLog = snapDefNode.getProperty(JcrPackageDefinition.PN_UNDO_LOG).getBinary();
+                try (InputStream in = undoLog.getStream()) {
+                    UndoLog.replay(in, s, opts.getListener());
+                } finally {
+                    undoLog.dispose();
+                }
+            } else {
+                // override import mode
+                opts.setImportMode(ImportMode.REPLACE);
+                snap.extract(opts);
+            }
             snap.getNode().remove();
             s.save();
         }
@@ -147,15 +147,24 @@ public class PackageManagerImpl implements PackageManager {
         }
 
         VaultFsConfig config = metaInf.getConfig();
+        boolean useBinaryReferences = opts.isUseBinaryReferences();
         if (metaInf.getProperties() != null) {
             if ("true".equals(metaInf.getProperties().getProperty(PackageProperties.NAME_USE_BINARY_REFERENCES))) {
-                config = AggregateManagerImpl.getDefaultBinaryReferencesConfig();
+                useBinaryReferences = true;
             }
         }
+        if (useBinaryReferences) {
+            config = AggregateManagerImpl.getDefaultBinaryReferencesConfig();
+        }
 
         VaultFileSystem jcrfs = Mounter.mount(config, metaInf.getFilter(), addr, opts.getRootPath(), s);
         JarExporter exporter = new JarExporter(out, opts.getCompressionLevel());
         exporter.setProperties(metaInf.getProperties());
+        if (useBinaryReferences) {
+            exporter.setProperty(PackageProperties.NAME_USE_BINARY_REFERENCES, "true");
+        }
+        exporter.setIncludeDigests(opts.isIncludeDigests());
+        exporter.setIncrementalBase(opts.getIncrementalBase());
         if (opts.getListener() != null) {
             exporter.setVerbose(opts.getListener());
         }
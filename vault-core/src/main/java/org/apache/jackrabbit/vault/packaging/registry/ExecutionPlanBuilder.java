@@ -87,7 +87,19 @@ public interface ExecutionPlanBuilder {
     @NotNull
     ExecutionPlanBuilder with(@NotNull ProgressTrackerListener listener);
 
-    
+    /**
+     * Sets the maximum number of tasks that are executed concurrently. Tasks are only executed concurrently if their
+     * packages do not depend on each other and their filters do not overlap, other tasks are executed in the order of
+     * the plan. Concurrent tasks use their own sessions, which are obtained by impersonating the user of the session
+     * of this plan. If the user can't impersonate itself, or the plan has no session, the tasks are executed
+     * sequentially. The progress tracker listener is notified from multiple threads. The default is {@code 1}.
+     * @param parallelism the maximum number of concurrent tasks
+     * @return this.
+     * @since 3.4.5
+     */
+    @NotNull
+    ExecutionPlanBuilder withParallelism(int parallelism);
+
     /**
      * Sets packages handled externally ahead of execution for prevalidation of plan
      * @param externalPackages Set of package ids handled by other builder
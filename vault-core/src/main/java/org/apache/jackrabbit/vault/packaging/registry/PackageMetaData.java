@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.registry;
+
+import java.util.Calendar;
+import java.util.List;
+
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Meta data of a registered package. It is read from the stored definition data of the package and never requires
+ * the package binary to be opened.
+ *
+ * @see PackageRegistry#getMetaData(java.util.Collection)
+ * @since 3.4.5
+ */
+public interface PackageMetaData {
+
+    /**
+     * The id of the package.
+     * @return the package id
+     */
+    @NotNull
+    PackageId getId();
+
+    /**
+     * Returns the size of the package binary.
+     * @return the size in bytes or -1 if not known.
+     */
+    long getSize();
+
+    /**
+     * Checks if the package is installed.
+     * @return {@code true} if the package is installed.
+     */
+    boolean isInstalled();
+
+    /**
+     * Returns the time when the package was installed.
+     * @return the installation time or {@code null} if the package is not installed.
+     */
+    @Nullable
+    Calendar getInstallationTime();
+
+    /**
+     * Returns the dependencies of the package.
+     * @return the dependencies
+     */
+    @NotNull
+    Dependency[] getDependencies();
+
+    /**
+     * Returns the root paths of the workspace filter of the package.
+     * @return the filter roots
+     */
+    @NotNull
+    List<String> getFilterRoots();
+
+}
@@ -19,6 +19,8 @@ package org.apache.jackrabbit.vault.packaging.registry;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.jackrabbit.vault.packaging.Dependency;
@@ -145,6 +147,19 @@ public interface PackageRegistry {
     @NotNull
     PackageId[] usage(@NotNull PackageId id) throws IOException;
 
+    /**
+     * Returns the meta data of the given packages in one call. The meta data is read from the stored definition data
+     * of the packages, the package binaries are never opened. This is intended for listings that are requested
+     * frequently.
+     *
+     * @param ids the ids of the packages or {@code null} for all packages of this registry
+     * @return the meta data of the registered packages in the order of the given ids. unknown packages are omitted.
+     * @throws IOException if an I/O error occurs.
+     * @since 3.4.5
+     */
+    @NotNull
+    List<PackageMetaData> getMetaData(@Nullable Collection<PackageId> ids) throws IOException;
+
     /**
      * Creates a new execution plan builder. The builder allows to create an execution plan for package installation
      * related tasks.
@@ -21,9 +21,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.jcr.Session;
 
@@ -38,6 +42,7 @@ import org.apache.jackrabbit.vault.packaging.registry.ExecutionPlanBuilder;
 import org.apache.jackrabbit.vault.packaging.registry.PackageRegistry;
 import org.apache.jackrabbit.vault.packaging.registry.RegisteredPackage;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Abstraction for shared methods of PackageRegistry &amp; InternalPackageRegistry implementations
@@ -59,6 +64,12 @@ public abstract class AbstractPackageRegistry implements PackageRegistry, Intern
      */
     public static final String DEFAULT_PACKAGE_ROOT_PATH_PREFIX = DEFAULT_PACKAGE_ROOT_PATH + "/";
 
+    /**
+     * cache of the resolved dependencies. replaced by a new one whenever it is cleared, so that results computed before
+     * can't be added to the new cache.
+     */
+    private final AtomicReference<ResolutionCache> resolutionCache = new AtomicReference<>(new ResolutionCache());
+
     /**
      * {@inheritDoc}
      */
@@ -145,9 +156,41 @@ public abstract class AbstractPackageRegistry implements PackageRegistry, Intern
 
     /**
      * {@inheritDoc}
+     *
+     * The result is cached until {@link #clearResolutionCache()} is called, which happens whenever a package event is
+     * dispatched by the registry.
      */
+    @Nullable
     @Override
-    public abstract PackageId resolve(Dependency dependency, boolean onlyInstalled) throws IOException;
+    public PackageId resolve(@NotNull Dependency dependency, boolean onlyInstalled) throws IOException {
+        ResolutionCache cache = resolutionCache.get();
+        Map<Dependency, Optional<PackageId>> results = onlyInstalled ? cache.resolvedInstalled : cache.resolved;
+        Optional<PackageId> id = results.get(dependency);
+        if (id == null) {
+            id = Optional.ofNullable(doResolve(dependency, onlyInstalled));
+            // if the cache was cleared in the meantime, the result is only added to the discarded one
+            results.put(dependency, id);
+        }
+        return id.orElse(null);
+    }
+
+    /**
+     * Resolves the given dependency without using the resolution cache.
+     * @param dependency the dependency to resolve against.
+     * @param onlyInstalled if {@code true} only installed packages are respected.
+     * @return the package id or {@code null}
+     * @throws IOException if an I/O error occurrs.
+     */
+    @Nullable
+    protected abstract PackageId doResolve(@NotNull Dependency dependency, boolean onlyInstalled) throws IOException;
+
+    /**
+     * Clears the cached dependency resolutions. Needs to be called whenever packages are added, removed or
+     * (un)installed.
+     */
+    protected void clearResolutionCache() {
+        resolutionCache.set(new ResolutionCache());
+    }
 
     /**
      * {@inheritDoc}
@@ -214,5 +257,13 @@ public abstract class AbstractPackageRegistry implements PackageRegistry, Intern
         return new PackageId("temporary", "pack_" + UUID.randomUUID().toString(), (String) null);
     }
 
+    /**
+     * The resolved dependencies, including the ones that could not be resolved.
+     */
+    private static final class ResolutionCache {
 
+        private final Map<Dependency, Optional<PackageId>> resolved = new ConcurrentHashMap<>();
+
+        private final Map<Dependency, Optional<PackageId>> resolvedInstalled = new ConcurrentHashMap<>();
+    }
 }
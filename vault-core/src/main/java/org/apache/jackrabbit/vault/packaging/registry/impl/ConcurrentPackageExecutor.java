@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.registry.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.util.Text;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes jobs on packages with a bounded thread pool. A job is started when all the jobs added before it, that work
+ * on the same package, on a package it depends on or that depends on it, or on overlapping filter roots, are done.
+ * Jobs on independent packages run concurrently, the others in the order they were added.
+ */
+public class ConcurrentPackageExecutor {
+
+    /**
+     * default logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentPackageExecutor.class);
+
+    private final int parallelism;
+
+    private final List<Job> jobs = new ArrayList<>();
+
+    /**
+     * Creates a new executor
+     * @param parallelism the maximum number of concurrent jobs
+     */
+    public ConcurrentPackageExecutor(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Adds a job.
+     * @param id the id of the package the job works on
+     * @param dependencies the dependencies of the package
+     * @param filter the filter of the content the job modifies or {@code null} if it might modify any content.
+     * @param job the job
+     */
+    public void add(@NotNull PackageId id, @Nullable Dependency[] dependencies, @Nullable WorkspaceFilter filter,
+                    @NotNull Callable<?> job) {
+        jobs.add(new Job(id, dependencies == null ? Dependency.EMPTY : dependencies, getRoots(filter), job));
+    }
+
+    /**
+     * Executes the jobs. If a job fails, no further jobs are started and the exception of the first failed job is
+     * thrown after the running jobs completed.
+     *
+     * @throws InterruptedException if the execution is interrupted
+     * @throws ExecutionException if a job fails
+     */
+    public void execute() throws InterruptedException, ExecutionException {
+        final int size = jobs.size();
+        if (size == 0) {
+            return;
+        }
+        List<List<Integer>> predecessors = getPredecessors();
+        boolean[] started = new boolean[size];
+        boolean[] done = new boolean[size];
+        int numRunning = 0;
+        ExecutionException error = null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, size));
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        try {
+            do {
+                for (int i = 0; i < size && error == null; i++) {
+                    if (!started[i] && isDone(predecessors.get(i), done)) {
+                        started[i] = true;
+                        numRunning++;
+                        final int idx = i;
+                        final Callable<?> job = jobs.get(i).job;
+                        completion.submit(() -> {
+                            job.call();
+                            return idx;
+                        });
+                    }
+                }
+                if (numRunning > 0) {
+                    Future<Integer> result = completion.take();
+                    numRunning--;
+                    try {
+                        done[result.get()] = true;
+                    } catch (ExecutionException e) {
+                        if (error == null) {
+                            error = e;
+                        }
+                    }
+                }
+            } while (numRunning > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static boolean isDone(List<Integer> indexes, boolean[] done) {
+        for (int i: indexes) {
+            if (!done[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the indexes of the jobs each job needs to wait for.
+     */
+    private List<List<Integer>> getPredecessors() {
+        List<List<Integer>> predecessors = new ArrayList<>(jobs.size());
+        for (int i = 0; i < jobs.size(); i++) {
+            List<Integer> preds = new LinkedList<>();
+            for (int j = 0; j < i; j++) {
+                if (jobs.get(i).conflicts(jobs.get(j))) {
+                    preds.add(j);
+                }
+            }
+            log.debug("Job on {} waits for jobs {}", jobs.get(i).id, preds);
+            predecessors.add(preds);
+        }
+        return predecessors;
+    }
+
+    @Nullable
+    private static List<String> getRoots(@Nullable WorkspaceFilter filter) {
+        if (filter == null) {
+            return null;
+        }
+        List<String> ret = new ArrayList<>();
+        for (PathFilterSet set: filter.getFilterSets()) {
+            // sub packages might install content anywhere
+            if (Text.isDescendantOrEqual(AbstractPackageRegistry.DEFAULT_PACKAGE_ROOT_PATH, set.getRoot())) {
+                return null;
+            }
+            ret.add(set.getRoot());
+        }
+        return ret;
+    }
+
+    private static class Job {
+
+        private final PackageId id;
+
+        private final Dependency[] dependencies;
+
+        /**
+         * the filter roots or {@code null} if the job might modify any content.
+         */
+        private final List<String> roots;
+
+        private final Callable<?> job;
+
+        private Job(PackageId id, Dependency[] dependencies, List<String> roots, Callable<?> job) {
+            this.id = id;
+            this.dependencies = dependencies;
+            this.roots = roots;
+            this.job = job;
+        }
+
+        private boolean conflicts(Job other) {
+            if (id.equals(other.id) || dependsOn(other) || other.dependsOn(this)) {
+                return true;
+            }
+            if (roots == null || other.roots == null) {
+                return true;
+            }
+            for (String root: roots) {
+                for (String otherRoot: other.roots) {
+                    if (Text.isDescendantOrEqual(root, otherRoot) || Text.isDescendantOrEqual(otherRoot, root)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean dependsOn(Job other) {
+            for (Dependency dep: dependencies) {
+                if (dep.matches(other.id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
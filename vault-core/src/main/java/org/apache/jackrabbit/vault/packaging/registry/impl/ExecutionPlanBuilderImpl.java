@@ -89,6 +89,8 @@ public class ExecutionPlanBuilderImpl implements ExecutionPlanBuilder {
 
     private ProgressTrackerListener listener;
 
+    private int parallelism = 1;
+
     private ExecutionPlanImpl plan;
 
     private Set<PackageId> externalPackages = Collections.emptySet();
@@ -194,6 +196,16 @@ public class ExecutionPlanBuilderImpl implements ExecutionPlanBuilder {
         return this;
     }
 
+    @NotNull
+    @Override
+    public ExecutionPlanBuilder withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
     @NotNull
     @Override
     public ExecutionPlanBuilder validate() throws IOException, PackageException {
@@ -328,7 +340,7 @@ public class ExecutionPlanBuilderImpl implements ExecutionPlanBuilder {
                 }
             }
         }
-        return plan.with(registry).with(session).with(listener).execute();
+        return plan.with(registry).with(session).with(listener).withParallelism(parallelism).execute();
     }
 
     private class TaskBuilder implements PackageTaskBuilder {
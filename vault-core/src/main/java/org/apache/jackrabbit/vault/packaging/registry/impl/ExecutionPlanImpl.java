@@ -19,14 +19,19 @@ package org.apache.jackrabbit.vault.packaging.registry.impl;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.jcr.Session;
 
 import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
 import org.apache.jackrabbit.vault.packaging.PackageException;
+import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.registry.ExecutionPlan;
 import org.apache.jackrabbit.vault.packaging.registry.PackageRegistry;
 import org.apache.jackrabbit.vault.packaging.registry.PackageTask;
+import org.apache.jackrabbit.vault.packaging.registry.RegisteredPackage;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +56,8 @@ public class ExecutionPlanImpl implements ExecutionPlan {
 
     private Session session;
 
+    private int parallelism = 1;
+
     public ExecutionPlanImpl(List<PackageTask> tasks) {
         this.tasks.addAll(tasks);
     }
@@ -85,6 +92,11 @@ public class ExecutionPlanImpl implements ExecutionPlan {
         return this;
     }
 
+    ExecutionPlanImpl withParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
     PackageRegistry getRegistry() {
         return registry;
     }
@@ -125,14 +137,60 @@ public class ExecutionPlanImpl implements ExecutionPlan {
         }
 
         for (PackageTask task: tasks) {
-            if (task instanceof PackageTaskImpl) {
-                ((PackageTaskImpl) task).execute(this);
-            } else {
+            if (!(task instanceof PackageTaskImpl)) {
                 throw new PackageException("task class " + task.getClass().getName() + " is not supported.");
             }
         }
+        if (parallelism > 1 && tasks.size() > 1 && session != null) {
+            try (WorkerSessions workers = WorkerSessions.create(session,
+                    registry instanceof JcrPackageRegistry ? (JcrPackageRegistry) registry : null)) {
+                if (workers != null) {
+                    executeConcurrently(workers);
+                    return this;
+                }
+            }
+        }
+        for (PackageTask task: tasks) {
+            ((PackageTaskImpl) task).execute(this);
+        }
         return this;
     }
 
-
+    /**
+     * Executes the tasks with a bounded thread pool. A task is started when all the tasks before it, that work on a
+     * dependent package or on overlapping content, are done. Concurrent tasks use their own sessions.
+     *
+     * @param workers the sessions of the tasks
+     * @throws IOException if an I/O error occurs
+     * @throws PackageException if the execution is interrupted
+     */
+    private void executeConcurrently(@NotNull WorkerSessions workers) throws IOException, PackageException {
+        ConcurrentPackageExecutor executor = new ConcurrentPackageExecutor(parallelism);
+        for (PackageTask task: tasks) {
+            final PackageTaskImpl taskImpl = (PackageTaskImpl) task;
+            PackageId id = task.getPackageId();
+            try (RegisteredPackage pkg = registry.open(id)) {
+                Callable<Void> job = () -> {
+                    taskImpl.execute(this, workers);
+                    return null;
+                };
+                if (pkg == null) {
+                    executor.add(id, null, null, job);
+                } else if (task.getType() == PackageTask.Type.REMOVE) {
+                    // removing a package does not modify content
+                    executor.add(id, pkg.getDependencies(), new DefaultWorkspaceFilter(), job);
+                } else {
+                    executor.add(id, pkg.getDependencies(), pkg.getWorkspaceFilter(), job);
+                }
+            }
+        }
+        try {
+            executor.execute();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PackageException("Execution of plan interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new PackageException("Error while executing plan.", e.getCause());
+        }
+    }
 }
@@ -20,8 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -300,15 +303,22 @@ public class FSInstallState {
 
 
     /**
-     * Persists the installState to a metadatafile
+     * Persists the installState to a metadatafile. The state is written to a temporary file which atomically replaces
+     * the metadatafile, so that concurrent readers never see a partially written file.
      *
      * @param file The files to save the state to
      * @throws IOException if an error occurs.
      */
     public void save(File file) throws IOException {
-        try (OutputStream out = FileUtils.openOutputStream(file)) {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (OutputStream out = FileUtils.openOutputStream(tmpFile)) {
             save(out);
         }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
     /**
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.registry.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact binary index of the meta data files of the {@link FSPackageRegistry}. It contains the information needed to
+ * list and resolve packages (id, status, package file, size and dependencies) so that the registry does not need to
+ * parse every meta data file on startup. Each entry records the last modification time of its meta data file, entries
+ * of modified files are re-read from the meta data file.
+ */
+class FSPackageIndex {
+
+    /**
+     * default logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(FSPackageIndex.class);
+
+    /**
+     * name of the index file in the registry home directory
+     */
+    static final String FILE_NAME = ".index";
+
+    private static final int MAGIC = 0x46535049;
+
+    private static final int VERSION = 1;
+
+    private FSPackageIndex() {
+    }
+
+    /**
+     * Reads the index file.
+     *
+     * @param file the index file
+     * @return the entries keyed by the relative path of their meta data file. empty if the index file does not exist
+     *         or cannot be read.
+     */
+    @NotNull
+    static Map<String, Entry> read(@NotNull File file) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!file.exists()) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.info("Ignoring package index {} with unknown format.", file.getPath());
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry e = Entry.read(in);
+                entries.put(e.metaPath, e);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Unable to read package index {}. Meta data files will be parsed.", file.getPath(), e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the index file. The entries are written to a temporary file which replaces the index file.
+     *
+     * @param file the index file
+     * @param entries the entries
+     * @throws IOException if an I/O error occurs
+     */
+    static void write(@NotNull File file, @NotNull Collection<Entry> entries) throws IOException {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry e: entries) {
+                e.write(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Index entry of a single package.
+     */
+    static class Entry {
+
+        private final String metaPath;
+
+        private final long lastModified;
+
+        private final PackageId id;
+
+        private final FSPackageStatus status;
+
+        private final Path filePath;
+
+        private final long size;
+
+        private final boolean external;
+
+        private final Set<Dependency> dependencies;
+
+        private Entry(String metaPath, long lastModified, PackageId id, FSPackageStatus status, Path filePath,
+                      long size, boolean external, Set<Dependency> dependencies) {
+            this.metaPath = metaPath;
+            this.lastModified = lastModified;
+            this.id = id;
+            this.status = status;
+            this.filePath = filePath;
+            this.size = size;
+            this.external = external;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Creates an index entry for the given state.
+         *
+         * @param state the install state
+         * @param metaPath the path of the meta data file relative to the registry home
+         * @param lastModified the last modification time of the meta data file
+         */
+        Entry(@NotNull FSInstallState state, @NotNull String metaPath, long lastModified) {
+            this(metaPath, lastModified, state.getPackageId(), state.getStatus(), state.getFilePath(),
+                    state.getSize(), state.isExternal(), state.getDependencies());
+        }
+
+        @NotNull
+        String getMetaPath() {
+            return metaPath;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        @NotNull
+        PackageId getId() {
+            return id;
+        }
+
+        @NotNull
+        FSPackageStatus getStatus() {
+            return status;
+        }
+
+        @Nullable
+        Path getFilePath() {
+            return filePath;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        boolean isExternal() {
+            return external;
+        }
+
+        @NotNull
+        Set<Dependency> getDependencies() {
+            return dependencies;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(metaPath);
+            out.writeLong(lastModified);
+            out.writeUTF(id.toString());
+            out.writeUTF(status.name());
+            out.writeUTF(filePath == null ? "" : filePath.toString());
+            out.writeLong(size);
+            out.writeBoolean(external);
+            out.writeInt(dependencies.size());
+            for (Dependency dep: dependencies) {
+                out.writeUTF(dep.toString());
+            }
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            String metaPath = in.readUTF();
+            long lastModified = in.readLong();
+            PackageId id = PackageId.fromString(in.readUTF());
+            FSPackageStatus status = FSPackageStatus.valueOf(in.readUTF());
+            String filePath = in.readUTF();
+            long size = in.readLong();
+            boolean external = in.readBoolean();
+            int numDeps = in.readInt();
+            Set<Dependency> dependencies = new HashSet<>();
+            for (int i = 0; i < numDeps; i++) {
+                dependencies.add(Dependency.fromString(in.readUTF()));
+            }
+            return new Entry(metaPath, lastModified, id, status, filePath.isEmpty() ? null : Paths.get(filePath),
+                    size, external, Collections.unmodifiableSet(dependencies));
+        }
+    }
+}
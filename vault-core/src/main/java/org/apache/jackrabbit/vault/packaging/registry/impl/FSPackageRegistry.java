@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
@@ -29,7 +30,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -41,7 +46,6 @@ import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.config.MetaInf;
 import org.apache.jackrabbit.vault.fs.io.Archive;
 import org.apache.jackrabbit.vault.fs.io.ImportOptions;
-import org.apache.jackrabbit.vault.fs.io.MemoryArchive;
 import org.apache.jackrabbit.vault.packaging.Dependency;
 import org.apache.jackrabbit.vault.packaging.NoSuchPackageException;
 import org.apache.jackrabbit.vault.packaging.PackageException;
@@ -49,6 +53,7 @@ import org.apache.jackrabbit.vault.packaging.PackageExistsException;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.ScopedWorkspaceFilter;
 import org.apache.jackrabbit.vault.packaging.SubPackageHandling;
+import org.apache.jackrabbit.vault.packaging.Version;
 import org.apache.jackrabbit.vault.packaging.VaultPackage;
 import org.apache.jackrabbit.vault.packaging.events.PackageEvent;
 import org.apache.jackrabbit.vault.packaging.events.PackageEvent.Type;
@@ -56,9 +61,9 @@ import org.apache.jackrabbit.vault.packaging.events.impl.PackageEventDispatcher;
 import org.apache.jackrabbit.vault.packaging.impl.HollowVaultPackage;
 import org.apache.jackrabbit.vault.packaging.impl.ZipVaultPackage;
 import org.apache.jackrabbit.vault.packaging.registry.DependencyReport;
+import org.apache.jackrabbit.vault.packaging.registry.PackageMetaData;
 import org.apache.jackrabbit.vault.packaging.registry.PackageRegistry;
 import org.apache.jackrabbit.vault.packaging.registry.RegisteredPackage;
-import org.apache.jackrabbit.vault.util.InputStreamPump;
 import org.apache.jackrabbit.vault.util.PlatformNameFormat;
 import org.apache.jackrabbit.vault.util.Text;
 import org.jetbrains.annotations.NotNull;
@@ -99,15 +104,39 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
      */
     private final String[] META_SUFFIXES = {"xml"};
 
+    /**
+     * Contains the fully loaded install states. They are loaded on demand and reloaded when the meta data file changes.
+     */
     private Map<PackageId, FSInstallState> stateCache = new ConcurrentHashMap<>();
 
+    /**
+     * Contains the index entries of all registered packages
+     */
+    private Map<PackageId, FSPackageIndex.Entry> index = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of the indexed packages sorted by version, keyed by group and name. Created on demand.
+     */
+    private volatile Map<String, TreeMap<Version, PackageId>> versionIndex;
+
+    /**
+     * Incremented whenever the index is modified
+     */
+    private final AtomicLong indexGeneration = new AtomicLong();
+
     /**
      * Contains a map of all filesystem paths to package IDs
      */
     private Map<Path, PackageId> pathIdMapping = new ConcurrentHashMap<>();
 
 
-    private boolean packagesInitializied = false;
+    private volatile boolean packagesInitializied = false;
+
+    /**
+     * Locks that serialize the modifications of a single package. Operations on different packages run in parallel.
+     * A lock is removed when it is released by its last holder.
+     */
+    private final Map<PackageId, PackageLock> locks = new ConcurrentHashMap<>();
 
     @Reference
     private PackageEventDispatcher dispatcher;
@@ -207,6 +236,7 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
      * @param related related packages
      */
     public void dispatch(@NotNull PackageEvent.Type type, @NotNull PackageId id, @Nullable PackageId[] related) {
+        clearResolutionCache();
         if (dispatcher == null) {
             return;
         }
@@ -222,7 +252,7 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
 
     @Override
     public boolean contains(@NotNull PackageId id) throws IOException {
-        return stateCache.containsKey(id);
+        return index.containsKey(id);
     }
 
     @Nullable
@@ -321,19 +351,50 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
     /**
      * {@inheritDoc}
      */
+    @Nullable
     @Override
-    public PackageId resolve(Dependency dependency, boolean onlyInstalled) throws IOException {
-        PackageId bestId = null;
-        for (PackageId id : packages()) {
-            if (!onlyInstalled || isInstalled(id)) {
-                if (dependency.matches(id)) {
-                    if (bestId == null || id.getVersion().compareTo(bestId.getVersion()) > 0) {
-                        bestId = id;
-                    }
+    protected PackageId doResolve(@NotNull Dependency dependency, boolean onlyInstalled) throws IOException {
+        TreeMap<Version, PackageId> versions = getVersionIndex().get(dependency.getGroup() + ":" + dependency.getName());
+        if (versions == null) {
+            return null;
+        }
+        // the first matching version is the best
+        for (PackageId id : versions.descendingMap().values()) {
+            if ((!onlyInstalled || isInstalled(id)) && dependency.matches(id)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    private Map<String, TreeMap<Version, PackageId>> getVersionIndex() throws IOException {
+        Map<String, TreeMap<Version, PackageId>> versions = versionIndex;
+        if (versions == null) {
+            long generation = indexGeneration.get();
+            versions = new HashMap<>();
+            for (PackageId id : packages()) {
+                String key = id.getGroup() + ":" + id.getName();
+                TreeMap<Version, PackageId> ids = versions.get(key);
+                if (ids == null) {
+                    ids = new TreeMap<>();
+                    versions.put(key, ids);
                 }
+                ids.put(id.getVersion(), id);
+            }
+            if (generation == indexGeneration.get()) {
+                versionIndex = versions;
             }
         }
-        return bestId;
+        return versions;
+    }
+
+    /**
+     * Invalidates the version index and the dependency resolutions after the index was modified.
+     */
+    private void indexChanged() {
+        indexGeneration.incrementAndGet();
+        versionIndex = null;
+        clearResolutionCache();
     }
 
     /**
@@ -345,8 +406,8 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
      * @throws IOException If an I/O error occurs.
      */
     boolean isInstalled(PackageId id) throws IOException {
-        FSPackageStatus status = getInstallState(id).getStatus();
-        return FSPackageStatus.EXTRACTED == status;
+        FSPackageIndex.Entry entry = getIndexEntry(id);
+        return entry != null && FSPackageStatus.EXTRACTED == entry.getStatus();
     }
 
     /**
@@ -363,25 +424,90 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
      */
     @NotNull
     private PackageId register(@NotNull InputStream in, boolean replace, Dependency autoDependency) throws IOException, PackageExistsException {
-        ZipVaultPackage pkg = upload(in, replace);
-
-        Map<PackageId, SubPackageHandling.Option> subpackages = registerSubPackages(pkg, replace);
-        File pkgFile = buildPackageFile(pkg.getId());
-        HashSet<Dependency> dependencies = new HashSet<>();
-        dependencies.addAll(Arrays.asList(pkg.getDependencies()));
-        if (autoDependency != null) {
-            dependencies.add(autoDependency);
+        try (FSPackageUpload upload = FSPackageUpload.read(in, getHomeDir())) {
+            return register(upload, replace, autoDependency);
+        }
+    }
+
+    /**
+     * Registers a package that was uploaded into the registry home directory. The package file is renamed to its
+     * final location and the install state is created from the meta information indexed during the upload.
+     *
+     * @param upload the upload
+     * @param replace {@code true} to replace an existing package
+     * @param autoDependency additional dependency or {@code null}
+     * @return the id of the registered package
+     * @throws IOException if an I/O error occurs
+     * @throws PackageExistsException if the package exists and {@code replace} is {@code false}
+     */
+    @NotNull
+    private PackageId register(@NotNull FSPackageUpload upload, boolean replace, Dependency autoDependency) throws IOException, PackageExistsException {
+        PackageId pid = upload.getId();
+        lock(pid);
+        try {
+            MetaInf inf = upload.getMetaInf();
+
+            File oldPkgFile = getPackageFile(pid);
+            FSInstallState oldState = getInstallState(pid);
+            if (oldPkgFile != null && oldPkgFile.exists()) {
+                if (replace && !oldState.isExternal()) {
+                    oldPkgFile.delete();
+                } else {
+                    throw new PackageExistsException("Package already exists: " + pid).setId(pid);
+                }
+            }
+
+            Map<PackageId, SubPackageHandling.Option> subpackages = registerSubPackages(pid, upload, replace);
+            File pkgFile = buildPackageFile(pid);
+            long size = upload.getSize();
+            upload.moveTo(pkgFile);
+            dispatch(Type.UPLOAD, pid, null);
+
+            HashSet<Dependency> dependencies = new HashSet<>();
+            dependencies.addAll(Arrays.asList(inf.getPackageProperties().getDependencies()));
+            if (autoDependency != null) {
+                dependencies.add(autoDependency);
+            }
+            FSInstallState state = new FSInstallState(pid, FSPackageStatus.REGISTERED)
+                    .withFilePath(pkgFile.toPath())
+                    .withDependencies(dependencies)
+                    .withSubPackages(subpackages)
+                    .withFilter(inf.getFilter())
+                    .withSize(size)
+                    .withProperties(inf.getProperties())
+                    .withExternal(false);
+            setInstallState(state);
+            return pid;
+        } finally {
+            unlock(pid);
+        }
+    }
+
+    /**
+     * Registers the sub packages that were written during the upload of their parent package.
+     *
+     * @param pid the id of the parent package
+     * @param upload the upload of the parent package
+     * @param replace {@code true} to replace
+     * @return {@code Map} of {@code PackageId}s along with the corresponding {@code SubPackageHandling.Option}
+     * @throws IOException if an I/O error occurs
+     */
+    private Map<PackageId, SubPackageHandling.Option> registerSubPackages(PackageId pid, FSPackageUpload upload, boolean replace)
+            throws IOException {
+        Map<PackageId, SubPackageHandling.Option> subpackages = new HashMap<>();
+        if (upload.hasPackagesRoot()) {
+            SubPackageHandling handling = upload.getMetaInf().getPackageProperties().getSubPackageHandling();
+            for (FSPackageUpload sub : upload.getSubPackages()) {
+                try {
+                    PackageId id = register(sub, replace, null);
+                    subpackages.put(id, handling.getOption(id));
+                } catch (PackageExistsException e) {
+                    log.info("Subpackage already registered, skipping subpackage extraction.");
+                }
+            }
+            dispatch(Type.EXTRACT_SUB_PACKAGES, pid, subpackages.keySet().toArray(new PackageId[subpackages.size()]));
         }
-        FSInstallState state = new FSInstallState(pkg.getId(), FSPackageStatus.REGISTERED)
-                .withFilePath(pkgFile.toPath())
-                .withDependencies(dependencies)
-                .withSubPackages(subpackages)
-                .withFilter(pkg.getArchive().getMetaInf().getFilter())
-                .withSize(pkg.getSize())
-                .withProperties(pkg.getArchive().getMetaInf().getProperties())
-                .withExternal(false);
-        setInstallState(state);
-        return pkg.getId();
+        return subpackages;
     }
 
     /**
@@ -461,58 +587,8 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
      */
     public ZipVaultPackage upload(InputStream in, boolean replace)
             throws IOException, PackageExistsException {
-
-        MemoryArchive archive = new MemoryArchive(false);
-        File tempFile = File.createTempFile("upload", ".zip");
-
-        try (InputStreamPump pump = new InputStreamPump(in, archive)) {
-            // this will cause the input stream to be consumed and the memory
-            // archive being initialized.
-            try {
-
-                FileUtils.copyInputStreamToFile(pump, tempFile);
-            } catch (Exception e) {
-                String msg = "Stream could be read successfully.";
-                log.error(msg);
-                throw new IOException(msg, e);
-            }
-
-            if (archive.getJcrRoot() == null) {
-                String msg = "Stream is not a content package. Missing 'jcr_root'.";
-                log.error(msg);
-                throw new IOException(msg);
-            }
-
-            final MetaInf inf = archive.getMetaInf();
-            PackageId pid = inf.getPackageProperties().getId();
-
-            // invalidate pid if path is unknown
-            if (pid == null) {
-                throw new IllegalArgumentException("Unable to create package. No package pid set.");
-            }
-            if (!pid.isValid()) {
-                throw new IllegalArgumentException("Unable to create package. Illegal package name.");
-            }
-
-            File oldPkgFile = getPackageFile(pid);
-            FSInstallState state = getInstallState(pid);
-
-            if (oldPkgFile != null && oldPkgFile.exists()) {
-                if (replace && !state.isExternal()) {
-                    oldPkgFile.delete();
-                } else {
-                    throw new PackageExistsException("Package already exists: " + pid).setId(pid);
-                }
-            }
-
-            ZipVaultPackage pkg = new ZipVaultPackage(archive, true);
-            registerSubPackages(pkg, replace);
-            File pkgFile = buildPackageFile(pid);
-            FileUtils.moveFile(tempFile, pkgFile);
-            dispatch(Type.UPLOAD, pid, null);
-            return pkg;
-        }
-
+        PackageId pid = register(in, replace);
+        return new ZipVaultPackage(buildPackageFile(pid), false, true);
     }
 
     /**
@@ -522,6 +598,7 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
     @Override
     public PackageId register(@NotNull File file, boolean replace) throws IOException, PackageExistsException {
         ZipVaultPackage pack = new ZipVaultPackage(file, false, true);
+        lock(pack.getId());
         try {
             File pkgFile = buildPackageFile(pack.getId());
             if (pkgFile.exists()) {
@@ -545,6 +622,7 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
             setInstallState(state);
             return pack.getId();
         } finally {
+            unlock(pack.getId());
             if (!pack.isClosed()) {
                 pack.close();
             }
@@ -559,8 +637,8 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
             throw new PackageExistsException("Package already exists: " + pid).setId(pid);
         }
         ZipVaultPackage pack = new ZipVaultPackage(file, false, true);
+        lock(pack.getId());
         try {
-
             FSInstallState state = getInstallState(pack.getId());
             if (!(FSPackageStatus.NOTREGISTERED == state.getStatus())) {
                 if (replace) {
@@ -586,6 +664,7 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
             setInstallState(targetState);
             return pack.getId();
         } finally {
+            unlock(pack.getId());
             if (!pack.isClosed()) {
                 pack.close();
             }
@@ -597,19 +676,24 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
      */
     @Override
     public void remove(@NotNull PackageId id) throws IOException, NoSuchPackageException {
-        FSInstallState state = getInstallState(id);
-        File metaData = getPackageMetaDataFile(id);
+        lock(id);
+        try {
+            FSInstallState state = getInstallState(id);
+            File metaData = getPackageMetaDataFile(id);
 
-        if (!metaData.exists()) {
-            throw new NoSuchPackageException().setId(id);
-        }
-        metaData.delete();
+            if (!metaData.exists()) {
+                throw new NoSuchPackageException().setId(id);
+            }
+            metaData.delete();
 
-        if (!state.isExternal()) {
-            getPackageFile(id).delete();
+            if (!state.isExternal()) {
+                getPackageFile(id).delete();
+            }
+            updateInstallState(id, FSPackageStatus.NOTREGISTERED);
+            dispatch(PackageEvent.Type.REMOVE, id, null);
+        } finally {
+            unlock(id);
         }
-        updateInstallState(id, FSPackageStatus.NOTREGISTERED);
-        dispatch(PackageEvent.Type.REMOVE, id, null);
     }
 
     /**
@@ -618,37 +702,151 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
     @NotNull
     @Override
     public Set<PackageId> packages() throws IOException {
-        return packagesInitializied ? stateCache.keySet() : loadPackageCache();
+        return packagesInitializied ? index.keySet() : loadPackageCache();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The meta data is read from the package index and the meta data files.
+     */
+    @NotNull
+    @Override
+    public List<PackageMetaData> getMetaData(@Nullable Collection<PackageId> ids) throws IOException {
+        List<PackageMetaData> ret = new ArrayList<>();
+        for (PackageId id: ids == null ? new TreeSet<>(packages()) : ids) {
+            FSInstallState state = getInstallState(id);
+            if (state.getStatus() == FSPackageStatus.NOTREGISTERED) {
+                continue;
+            }
+            Calendar installTime = null;
+            if (state.getInstallationTime() != null) {
+                installTime = Calendar.getInstance();
+                installTime.setTimeInMillis(state.getInstallationTime());
+            }
+            List<String> roots = new ArrayList<>();
+            if (state.getFilter() != null) {
+                for (PathFilterSet set: state.getFilter().getFilterSets()) {
+                    roots.add(set.getRoot());
+                }
+            }
+            ret.add(new PackageMetaDataImpl(id, state.getSize(), state.getStatus() == FSPackageStatus.EXTRACTED,
+                    installTime, state.getDependencies().toArray(Dependency.EMPTY), roots));
+        }
+        return ret;
     }
 
     /**
-     * Loads all state from files persisted in configured homeDir, adds to cache and returns all cached {@code PackageId}s.
+     * Loads the index of all packages persisted in configured homeDir and returns all indexed {@code PackageId}s. Only
+     * the meta data files that are not indexed or were modified since they were indexed are parsed.
      *
-     * @return {@code Set} of all cached {@code PackageId}s
+     * @return {@code Set} of all indexed {@code PackageId}s
      *
      * @throws IOException If an I/O error occurs
      */
     private Set<PackageId> loadPackageCache() throws IOException {
+        Map<String, FSPackageIndex.Entry> indexed = FSPackageIndex.read(getIndexFile());
+        Map<PackageId, FSPackageIndex.Entry> entries = new HashMap<>();
         Map<PackageId, FSInstallState> cacheEntries = new HashMap<>();
         Map<Path, PackageId> idMapping = new HashMap<>();
-
+        boolean modified = false;
 
         Collection<File> files = FileUtils.listFiles(getHomeDir(), META_SUFFIXES, true);
         for (File file : files) {
-            FSInstallState state = FSInstallState.fromFile(file);
-            if (state != null) {
-                PackageId id = state.getPackageId();
-                if (id != null) {
-                    cacheEntries.put(id, state);
-                    idMapping.put(state.getFilePath(), id);
-                    
+            String metaPath = getMetaPath(file);
+            long lastModified = file.lastModified();
+            FSPackageIndex.Entry entry = indexed.remove(metaPath);
+            if (entry == null || entry.getLastModified() != lastModified) {
+                modified = true;
+                entry = null;
+                FSInstallState state = FSInstallState.fromFile(file);
+                if (state != null && state.getPackageId() != null) {
+                    entry = new FSPackageIndex.Entry(state, metaPath, lastModified);
+                    cacheEntries.put(state.getPackageId(), state);
+                }
+            }
+            if (entry != null) {
+                entries.put(entry.getId(), entry);
+                if (entry.getFilePath() != null) {
+                    idMapping.put(entry.getFilePath(), entry.getId());
                 }
             }
         }
+        // remaining entries belong to meta data files that were removed
+        modified |= !indexed.isEmpty();
+
+        index.putAll(entries);
         stateCache.putAll(cacheEntries);
         pathIdMapping.putAll(idMapping);
         packagesInitializied = true;
-        return cacheEntries.keySet();
+        indexChanged();
+        if (modified) {
+            saveIndex();
+        }
+        return entries.keySet();
+    }
+
+    /**
+     * Acquires the lock for the modifications of the given package. Sub packages are registered while the lock of
+     * their parent package is held.
+     *
+     * @param id the package id
+     */
+    private void lock(@NotNull PackageId id) {
+        PackageLock lock = locks.compute(id, (k, v) -> {
+            if (v == null) {
+                v = new PackageLock();
+            }
+            v.holders++;
+            return v;
+        });
+        lock.lock();
+    }
+
+    /**
+     * Releases the lock for the modifications of the given package, and removes it if no other thread holds or waits
+     * for it.
+     *
+     * @param id the package id
+     */
+    private void unlock(@NotNull PackageId id) {
+        locks.compute(id, (k, v) -> {
+            v.unlock();
+            return --v.holders == 0 ? null : v;
+        });
+    }
+
+    /**
+     * Lock of a package that counts the acquisitions that were not released yet, including the waiting ones.
+     */
+    private static final class PackageLock extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * guarded by the compute of the lock map
+         */
+        private int holders;
+    }
+
+    private File getIndexFile() {
+        return new File(getHomeDir(), FSPackageIndex.FILE_NAME);
+    }
+
+    private String getMetaPath(File metaFile) {
+        Path home = getHomeDir().toPath().toAbsolutePath().normalize();
+        return home.relativize(metaFile.toPath().toAbsolutePath().normalize()).toString();
+    }
+
+    /**
+     * Writes the package index. Failures are only logged, as the index is rebuilt from the meta data files.
+     */
+    private synchronized void saveIndex() {
+        try {
+            FSPackageIndex.write(getIndexFile(), index.values());
+        } catch (IOException e) {
+            log.warn("Unable to write package index {}", getIndexFile().getPath(), e);
+        }
     }
 
     /**
@@ -675,6 +873,7 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
             log.error(msg);
             throw new PackageException(msg);
         }
+        lock(pkg.getId());
         try (VaultPackage vltPkg = pkg.getPackage()) {
             WorkspaceFilter filter = getInstallState(vltPkg.getId()).getFilter();
             switch(scope) {
@@ -706,6 +905,8 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
 
         } catch (RepositoryException e) {
             throw new IOException(e);
+        } finally {
+            unlock(pkg.getId());
         }
     }
 
@@ -753,18 +954,25 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
         File metaData = getPackageMetaDataFile(pid);
 
         if (state.getStatus() == FSPackageStatus.NOTREGISTERED) {
-            pathIdMapping.remove(stateCache.get(pid).getFilePath());
+            FSPackageIndex.Entry entry = index.remove(pid);
+            if (entry != null && entry.getFilePath() != null) {
+                pathIdMapping.remove(entry.getFilePath());
+            }
             metaData.delete();
             stateCache.remove(pid);
         } else {
             state.save(metaData);
+            index.put(pid, new FSPackageIndex.Entry(state, getMetaPath(metaData), metaData.lastModified()));
             stateCache.put(pid, state);
             pathIdMapping.put(state.getFilePath(), pid);
         }
+        indexChanged();
+        saveIndex();
     }
 
     /**
      * Retrieves {@code InstallState} from cache, falls back to reading from metafile and returns state for {@code FSPackageStatus.NOTREGISTERED} in case not found.
+     * The cached state is reloaded if the metafile was modified since it was read.
      *
      * @param pid the PackageId of the package to retrieve the install state from.
      * @return {@code InstallState} found for given {@code PackageId} or a fresh one with status {@code FSPackageStatus.NOTREGISTERED}
@@ -773,19 +981,58 @@ public class FSPackageRegistry extends AbstractPackageRegistry {
      */
     @NotNull
     public FSInstallState getInstallState(PackageId pid) throws IOException {
-        if (stateCache.containsKey(pid)) {
-            return stateCache.get(pid);
-        } else {
-            File metaFile = getPackageMetaDataFile(pid);
-            FSInstallState state = FSInstallState.fromFile(metaFile);
+        File metaFile = getPackageMetaDataFile(pid);
+        FSPackageIndex.Entry entry = index.get(pid);
+        FSInstallState state = stateCache.get(pid);
+        if (state != null && entry != null && entry.getLastModified() == metaFile.lastModified()) {
+            return state;
+        }
+        // the caches are updated with the lock of the modifications of the package
+        lock(pid);
+        try {
+            entry = index.get(pid);
+            long lastModified = metaFile.lastModified();
+            state = FSInstallState.fromFile(metaFile);
             if (state != null) {
-                //theoretical file - should only be feasible when manipulating on filesystem, writing metafile automatically updates cache
+                // not loaded yet or modified on the filesystem
                 stateCache.put(pid, state);
+                index.put(pid, new FSPackageIndex.Entry(state, getMetaPath(metaFile), lastModified));
                 pathIdMapping.put(state.getFilePath(), pid);
+                if (entry == null || entry.getLastModified() != lastModified) {
+                    indexChanged();
+                }
+                return state;
+            }
+            if (entry != null) {
+                // removed on the filesystem
+                index.remove(pid);
+                stateCache.remove(pid);
+                if (entry.getFilePath() != null) {
+                    pathIdMapping.remove(entry.getFilePath());
+                }
+                indexChanged();
             }
-            return state != null ? state : new FSInstallState(pid, FSPackageStatus.NOTREGISTERED);
+            return new FSInstallState(pid, FSPackageStatus.NOTREGISTERED);
+        } finally {
+            unlock(pid);
         }
     }
 
-
+    /**
+     * Returns the index entry of the given package without loading its full install state unless the metafile was
+     * modified since it was indexed.
+     *
+     * @param pid the PackageId of the package
+     * @return the index entry or {@code null} if the package is not registered
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    private FSPackageIndex.Entry getIndexEntry(PackageId pid) throws IOException {
+        FSPackageIndex.Entry entry = index.get(pid);
+        if (entry == null || entry.getLastModified() != getPackageMetaDataFile(pid).lastModified()) {
+            getInstallState(pid);
+            entry = index.get(pid);
+        }
+        return entry;
+    }
 }
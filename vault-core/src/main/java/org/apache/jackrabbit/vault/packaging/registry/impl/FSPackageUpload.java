@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.registry.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultMetaInf;
+import org.apache.jackrabbit.vault.fs.config.MetaInf;
+import org.apache.jackrabbit.vault.fs.config.VaultSettings;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.util.PlatformNameFormat;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads a package stream into the {@link FSPackageRegistry} in a single pass. The stream is written to a temporary
+ * file next to the final package location while the zip entries are scanned: the meta information is loaded on the
+ * fly and the sub packages below {@code jcr_root/etc/packages} are written to their own temporary files from the
+ * bytes of the enclosing entry, so they never need to be read again from the uploaded package.
+ */
+class FSPackageUpload implements Closeable {
+
+    /**
+     * default logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(FSPackageUpload.class);
+
+    private static final String PACKAGES_ENTRY_PREFIX = AbstractPackageRegistry.ARCHIVE_PACKAGE_ROOT_PATH.substring(1) + "/";
+
+    private final File tmpFile;
+
+    private final DefaultMetaInf inf = new DefaultMetaInf();
+
+    private final List<FSPackageUpload> subPackages = new LinkedList<>();
+
+    private boolean hasRoot;
+
+    private boolean hasPackagesRoot;
+
+    private FSPackageUpload(@NotNull File tmpFile) {
+        this.tmpFile = tmpFile;
+    }
+
+    /**
+     * Reads the given package stream into a temporary file in the given directory. The stream is not closed.
+     *
+     * @param in the package stream
+     * @param dir the directory of the temporary files. should be on the same file system as the registry.
+     * @return the upload
+     * @throws IOException if an I/O error occurs
+     */
+    @NotNull
+    static FSPackageUpload read(@NotNull InputStream in, @NotNull File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create upload directory " + dir.getPath());
+        }
+        FSPackageUpload upload = new FSPackageUpload(File.createTempFile("upload", ".tmp", dir));
+        try {
+            upload.scan(in, dir);
+        } catch (IOException | RuntimeException e) {
+            upload.close();
+            throw e;
+        }
+        return upload;
+    }
+
+    private void scan(InputStream in, File dir) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            OutputStream out = new BufferedOutputStream(fos);
+            InputStream tee = new TeeInputStream(new BufferedInputStream(in), out);
+            ZipInputStream zin = new ZipInputStream(tee);
+            ZipEntry entry;
+            while ((entry = zin.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (name.startsWith(Constants.ROOT_DIR + "/")) {
+                    hasRoot = true;
+                }
+                if (name.startsWith(PACKAGES_ENTRY_PREFIX)) {
+                    hasPackagesRoot = true;
+                }
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (name.startsWith(Constants.META_DIR + "/")) {
+                    byte[] data = IOUtils.toByteArray(zin);
+                    try {
+                        inf.load(new ByteArrayInputStream(data), "inputstream://" + name);
+                    } catch (ConfigurationException e) {
+                        throw new IOException(e);
+                    }
+                } else if (isSubPackage(name)) {
+                    log.debug("writing sub package {}", name);
+                    subPackages.add(read(new CloseShieldInputStream(zin), dir));
+                }
+            }
+            // the central directory is not read by the zip stream
+            IOUtils.copy(tee, NullOutputStream.NULL_OUTPUT_STREAM);
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (inf.getSettings() == null) {
+            VaultSettings settings = new VaultSettings();
+            settings.getIgnoredNames().add(".svn");
+            inf.setSettings(settings);
+        }
+    }
+
+    static boolean isSubPackage(String name) {
+        if (!name.startsWith(PACKAGES_ENTRY_PREFIX)) {
+            return false;
+        }
+        String repoPath = PlatformNameFormat.getRepositoryPath(name.substring(Constants.ROOT_DIR.length()));
+        return repoPath.startsWith(AbstractPackageRegistry.DEFAULT_PACKAGE_ROOT_PATH_PREFIX)
+                && (repoPath.endsWith(".jar") || repoPath.endsWith(".zip"));
+    }
+
+    /**
+     * Returns the id of the uploaded package.
+     * @return the package id
+     * @throws IOException if the stream is not a content package
+     */
+    @NotNull
+    PackageId getId() throws IOException {
+        if (!hasRoot) {
+            String msg = "Stream is not a content package. Missing 'jcr_root'.";
+            log.error(msg);
+            throw new IOException(msg);
+        }
+        PackageId pid = inf.getPackageProperties().getId();
+        // invalidate pid if path is unknown
+        if (pid == null) {
+            throw new IllegalArgumentException("Unable to create package. No package pid set.");
+        }
+        if (!pid.isValid()) {
+            throw new IllegalArgumentException("Unable to create package. Illegal package name.");
+        }
+        return pid;
+    }
+
+    @NotNull
+    MetaInf getMetaInf() {
+        return inf;
+    }
+
+    boolean hasPackagesRoot() {
+        return hasPackagesRoot;
+    }
+
+    @NotNull
+    List<FSPackageUpload> getSubPackages() {
+        return Collections.unmodifiableList(subPackages);
+    }
+
+    long getSize() {
+        return tmpFile.length();
+    }
+
+    /**
+     * Moves the uploaded package to its final location.
+     * @param target the package file
+     * @throws IOException if an I/O error occurs
+     */
+    void moveTo(@NotNull File target) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent.getPath());
+        }
+        try {
+            Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.debug("atomic move not supported, moving {} to {}", tmpFile.getPath(), target.getPath());
+            Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the temporary files that were not moved to their final location.
+     */
+    @Override
+    public void close() {
+        for (FSPackageUpload sub: subPackages) {
+            sub.close();
+        }
+        if (tmpFile.exists() && !tmpFile.delete()) {
+            log.warn("Unable to delete temporary upload file {}", tmpFile.getPath());
+        }
+    }
+}
@@ -0,0 +1,663 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.registry.impl;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.impl.JcrPackageImpl;
+import org.apache.jackrabbit.vault.util.JcrConstants;
+import org.apache.jackrabbit.vault.util.Text;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Catalog of the packages of a {@link JcrPackageRegistry}. It indexes the packages by group and name, so that listing
+ * and resolving packages does not need to read the definitions of all packages.
+ *
+ * The catalog is persisted below the {@value #NODE_NAME} folder of the primary package root, with one file per folder
+ * that contains packages. A change of a package therefore only rewrites the file of its folder. The catalog folder
+ * records the time it was last persisted, which serves as revision: the catalog is only reloaded if the revision
+ * changed, and then only the files that were modified by another session are read again.
+ *
+ * The catalog is only updated by the operations of the registry that create, remove or install packages. Reading
+ * the catalog never writes to the repository: if the catalog does not exist yet, it is built from the package roots in
+ * memory and persisted with the next modification. Packages added or removed bypassing the registry, for example by a
+ * content import, are only visible after the catalog was rebuilt with {@link #rebuild()}.
+ */
+public class JcrPackageCatalog {
+
+    /**
+     * default logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(JcrPackageCatalog.class);
+
+    /**
+     * name of the catalog folder below the primary package root
+     */
+    public static final String NODE_NAME = ".catalog";
+
+    /**
+     * number of attempts to persist the catalog in case of concurrent modifications
+     */
+    private static final int MAX_PERSIST_ATTEMPTS = 3;
+
+    /**
+     * suffix of the catalog files
+     */
+    private static final String FILE_SUFFIX = ".txt";
+
+    /**
+     * sorts the entries by version and the ones with equal versions by their id
+     */
+    private static final Comparator<Entry> VERSION_ORDER = Comparator
+            .comparing((Entry e) -> e.getId().getVersion())
+            .thenComparing(e -> e.getId().toString());
+
+    private final JcrPackageRegistry registry;
+
+    private final Session session;
+
+    /**
+     * the catalog files by the path of the folder they cover
+     */
+    private final Map<String, Folder> folders = new HashMap<>();
+
+    /**
+     * the catalog entries by group and name and by the full package id
+     */
+    private final Map<String, Map<String, Entry>> index = new HashMap<>();
+
+    /**
+     * paths of the folders whose entries changed since the catalog was persisted
+     */
+    private final Set<String> modified = new LinkedHashSet<>();
+
+    /**
+     * {@code true} if the catalog was loaded or built at least once
+     */
+    private boolean initialized;
+
+    /**
+     * the revision of the persisted catalog when it was loaded or written, {@code -1} if not persisted.
+     */
+    private long loadedRevision = -1;
+
+    public JcrPackageCatalog(@NotNull JcrPackageRegistry registry, @NotNull Session session) {
+        this.registry = registry;
+        this.session = session;
+    }
+
+    /**
+     * Returns all entries of the catalog.
+     * @return the entries
+     * @throws RepositoryException if an error occurs
+     */
+    @NotNull
+    public List<Entry> getEntries() throws RepositoryException {
+        load();
+        List<Entry> entries = new ArrayList<>();
+        for (Map<String, Entry> versions: index.values()) {
+            entries.addAll(versions.values());
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the entries of the given package sorted by version.
+     * @param group the package group
+     * @param name the package name
+     * @return the entries
+     * @throws RepositoryException if an error occurs
+     */
+    @NotNull
+    public List<Entry> getVersions(@NotNull String group, @NotNull String name) throws RepositoryException {
+        load();
+        Map<String, Entry> versions = index.get(getKey(group, name));
+        if (versions == null) {
+            return new ArrayList<>();
+        }
+        List<Entry> entries = new ArrayList<>(versions.values());
+        entries.sort(VERSION_ORDER);
+        return entries;
+    }
+
+    /**
+     * Returns the entry of the given package.
+     * @param id the package id
+     * @return the entry or {@code null} if the catalog has no entry for the package
+     * @throws RepositoryException if an error occurs
+     */
+    @Nullable
+    public Entry getEntry(@NotNull PackageId id) throws RepositoryException {
+        load();
+        Map<String, Entry> versions = index.get(getKey(id.getGroup(), id.getName()));
+        return versions == null ? null : versions.get(id.toString());
+    }
+
+    /**
+     * Returns the revision of the persisted catalog, which changes whenever the catalog is persisted. The catalog is
+     * not loaded, so this can be used to cheaply detect modifications by other sessions.
+     * @return the revision or {@code -1} if the catalog was not persisted yet
+     * @throws RepositoryException if an error occurs
+     */
+    public long getRevision() throws RepositoryException {
+        Node catalog = getCatalogNode();
+        if (catalog == null || !catalog.hasProperty(JcrConstants.JCR_LASTMODIFIED)) {
+            return -1;
+        }
+        return catalog.getProperty(JcrConstants.JCR_LASTMODIFIED).getLong();
+    }
+
+    /**
+     * Updates the catalog entry of the given package from the repository and persists the catalog if the session has
+     * no other pending changes. Otherwise the catalog is persisted with the next {@link #flush()}.
+     * @param id the package id
+     */
+    public void update(@NotNull PackageId id) {
+        if (isSnapshot(id)) {
+            return;
+        }
+        try {
+            load();
+            apply(id);
+        } catch (RepositoryException e) {
+            log.warn("Unable to update package catalog for {}: {}", id, e.toString());
+        }
+        flush();
+    }
+
+    /**
+     * Persists the modified catalog files, if the session has no other pending changes. If a file was concurrently
+     * modified, it is reloaded and the pending changes are applied again.
+     */
+    public void flush() {
+        if (modified.isEmpty()) {
+            return;
+        }
+        try {
+            if (session.hasPendingChanges()) {
+                log.debug("Session has pending changes. Deferring persisting the package catalog.");
+                return;
+            }
+            Node root = registry.getPrimaryPackageRoot(false);
+            if (root == null) {
+                return;
+            }
+            for (int i = 0; i < MAX_PERSIST_ATTEMPTS; i++) {
+                try {
+                    // merge with concurrent modifications
+                    load();
+                    Node catalog = root.hasNode(NODE_NAME)
+                            ? root.getNode(NODE_NAME)
+                            : root.addNode(NODE_NAME, JcrConstants.NT_FOLDER);
+                    Map<Folder, Long> written = new HashMap<>();
+                    for (String path: modified) {
+                        Folder folder = folders.get(path);
+                        String fileName = getFileName(path);
+                        if (folder == null) {
+                            if (catalog.hasNode(fileName)) {
+                                catalog.getNode(fileName).remove();
+                            }
+                        } else {
+                            written.put(folder, write(catalog, fileName, folder));
+                        }
+                    }
+                    // concurrent writers conflict on the revision and merge on the next attempt
+                    long revision = touch(catalog);
+                    session.save();
+                    loadedRevision = revision;
+                    for (Map.Entry<Folder, Long> e: written.entrySet()) {
+                        e.getKey().lastModified = e.getValue();
+                        e.getKey().pending.clear();
+                    }
+                    modified.clear();
+                    return;
+                } catch (RepositoryException e) {
+                    log.debug("Unable to persist package catalog (attempt {}): {}", i + 1, e.toString());
+                    session.refresh(false);
+                }
+            }
+            log.warn("Unable to persist package catalog. Changes are kept in memory only.");
+        } catch (RepositoryException e) {
+            log.warn("Unable to persist package catalog: {}", e.toString());
+        }
+    }
+
+    /**
+     * Rebuilds the catalog by traversing the package roots and persists it.
+     * @throws RepositoryException if an error occurs
+     */
+    public void rebuild() throws RepositoryException {
+        // remove the files of the folders that no longer exist
+        Node catalog = getCatalogNode();
+        if (catalog != null) {
+            for (NodeIterator iter = catalog.getNodes(); iter.hasNext();) {
+                String path = getFolderPath(iter.nextNode());
+                if (path != null) {
+                    modified.add(path);
+                }
+            }
+        }
+        build();
+        flush();
+    }
+
+    /**
+     * Builds the catalog in memory by traversing the package roots. All folders are marked as modified, so that the
+     * catalog is persisted with the next {@link #flush()}.
+     */
+    private void build() throws RepositoryException {
+        initialized = true;
+        modified.addAll(folders.keySet());
+        folders.clear();
+        index.clear();
+        for (Node root: registry.getPackageRoots()) {
+            scan(root);
+        }
+    }
+
+    /**
+     * Loads the catalog files that were not loaded yet or were modified since, if the revision of the persisted catalog
+     * changed. If no catalog is persisted, it is built in memory.
+     * @throws RepositoryException if an error occurs
+     */
+    private void load() throws RepositoryException {
+        long persistedRevision = getRevision();
+        if (initialized && persistedRevision == loadedRevision) {
+            return;
+        }
+        Node catalog = getCatalogNode();
+        if (catalog == null) {
+            build();
+            loadedRevision = -1;
+            return;
+        }
+        initialized = true;
+        loadedRevision = persistedRevision;
+        Set<String> paths = new HashSet<>();
+        List<PackageId> pending = new ArrayList<>();
+        boolean changed = false;
+        for (NodeIterator iter = catalog.getNodes(); iter.hasNext();) {
+            Node file = iter.nextNode();
+            String path = getFolderPath(file);
+            if (path == null || !file.hasNode(JcrConstants.JCR_CONTENT)) {
+                continue;
+            }
+            paths.add(path);
+            Node content = file.getNode(JcrConstants.JCR_CONTENT);
+            long lastModified = content.getProperty(JcrConstants.JCR_LASTMODIFIED).getLong();
+            Folder folder = folders.get(path);
+            if (folder != null && folder.lastModified == lastModified) {
+                continue;
+            }
+            if (folder != null) {
+                pending.addAll(folder.pending);
+            }
+            folders.put(path, read(path, content, lastModified));
+            changed = true;
+        }
+        // files removed by other sessions
+        for (Iterator<Folder> iter = folders.values().iterator(); iter.hasNext();) {
+            Folder folder = iter.next();
+            if (folder.lastModified >= 0 && !paths.contains(folder.path)) {
+                pending.addAll(folder.pending);
+                iter.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            index.clear();
+            for (Folder folder: folders.values()) {
+                for (Entry e: folder.entries.values()) {
+                    put(e);
+                }
+            }
+            for (PackageId id: pending) {
+                apply(id);
+            }
+        }
+    }
+
+    /**
+     * Reads a catalog file.
+     */
+    @NotNull
+    private Folder read(@NotNull String path, @NotNull Node content, long lastModified) throws RepositoryException {
+        Folder folder = new Folder(path);
+        folder.lastModified = lastModified;
+        Binary bin = content.getProperty(JcrConstants.JCR_DATA).getBinary();
+        try (InputStream in = bin.getStream()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry e = Entry.parse(line);
+                if (e != null) {
+                    folder.entries.put(e.getId().toString(), e);
+                }
+            }
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to read package catalog.", e);
+        } finally {
+            bin.dispose();
+        }
+        return folder;
+    }
+
+    /**
+     * Writes the catalog file of the given folder.
+     * @return the modification time of the written file, which is always greater than the one of the previous.
+     */
+    private long write(@NotNull Node catalog, @NotNull String fileName, @NotNull Folder folder) throws RepositoryException {
+        StringBuilder buf = new StringBuilder();
+        for (Entry e: folder.entries.values()) {
+            buf.append(e).append('\n');
+        }
+        Calendar lastModified = Calendar.getInstance();
+        Node content;
+        if (catalog.hasNode(fileName)) {
+            content = catalog.getNode(fileName + "/" + JcrConstants.JCR_CONTENT);
+            long previous = content.getProperty(JcrConstants.JCR_LASTMODIFIED).getLong();
+            if (lastModified.getTimeInMillis() <= previous) {
+                lastModified.setTimeInMillis(previous + 1);
+            }
+        } else {
+            Node file = catalog.addNode(fileName, JcrConstants.NT_FILE);
+            content = file.addNode(JcrConstants.JCR_CONTENT, JcrConstants.NT_RESOURCE);
+            content.setProperty(JcrConstants.JCR_MIMETYPE, "text/plain");
+        }
+        Binary bin = session.getValueFactory().createBinary(
+                new ByteArrayInputStream(buf.toString().getBytes(StandardCharsets.UTF_8)));
+        try {
+            content.setProperty(JcrConstants.JCR_DATA, bin);
+        } finally {
+            bin.dispose();
+        }
+        content.setProperty(JcrConstants.JCR_LASTMODIFIED, lastModified);
+        return lastModified.getTimeInMillis();
+    }
+
+    /**
+     * Updates the in-memory entry of the given package from the repository.
+     */
+    private void apply(@NotNull PackageId id) throws RepositoryException {
+        String key = id.toString();
+        for (Folder folder: folders.values()) {
+            Entry e = folder.entries.remove(key);
+            if (e != null) {
+                remove(e);
+                folder.pending.add(id);
+                modified.add(folder.path);
+            }
+        }
+        Node node = registry.getPackageNode(id);
+        if (node != null) {
+            Entry e = read(node);
+            if (e != null) {
+                Folder folder = getFolder(node.getParent().getPath());
+                folder.entries.put(key, e);
+                folder.pending.add(id);
+                put(e);
+            }
+        }
+    }
+
+    /**
+     * Adds the packages in the given folder and its sub folders.
+     */
+    private void scan(@NotNull Node parent) throws RepositoryException {
+        Folder folder = getFolder(parent.getPath());
+        for (NodeIterator iter = parent.getNodes(); iter.hasNext();) {
+            Node child = iter.nextNode();
+            if (isIgnored(child)) {
+                continue;
+            }
+            if (child.isNodeType(JcrConstants.NT_FILE)) {
+                Entry e = read(child);
+                if (e != null) {
+                    folder.entries.put(e.getId().toString(), e);
+                    put(e);
+                }
+            } else if (child.hasNodes()) {
+                scan(child);
+            }
+        }
+        if (folder.entries.isEmpty()) {
+            // nothing to persist
+            folders.remove(folder.path);
+        }
+    }
+
+    @Nullable
+    private Entry read(@NotNull Node node) throws RepositoryException {
+        try (JcrPackageImpl pack = new JcrPackageImpl(registry, node)) {
+            if (!pack.isValid()) {
+                return null;
+            }
+            JcrPackageDefinition def = pack.getDefinition();
+            if (def == null || !def.getId().isValid()) {
+                return null;
+            }
+            return new Entry(def.getId(), node.getPath(), def.getLastUnpacked() != null);
+        }
+    }
+
+    /**
+     * Returns the catalog file of the given folder, which is created if missing. The folder is marked as modified.
+     */
+    @NotNull
+    private Folder getFolder(@NotNull String path) {
+        Folder folder = folders.get(path);
+        if (folder == null) {
+            folder = new Folder(path);
+            folders.put(path, folder);
+        }
+        modified.add(path);
+        return folder;
+    }
+
+    private void put(@NotNull Entry e) {
+        String key = getKey(e.getId().getGroup(), e.getId().getName());
+        Map<String, Entry> versions = index.get(key);
+        if (versions == null) {
+            versions = new HashMap<>();
+            index.put(key, versions);
+        }
+        versions.put(e.getId().toString(), e);
+    }
+
+    private void remove(@NotNull Entry e) {
+        String key = getKey(e.getId().getGroup(), e.getId().getName());
+        Map<String, Entry> versions = index.get(key);
+        if (versions != null) {
+            versions.remove(e.getId().toString());
+            if (versions.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static boolean isIgnored(@NotNull Node node) throws RepositoryException {
+        return ".snapshot".equals(node.getName()) || NODE_NAME.equals(node.getName());
+    }
+
+    /**
+     * @return {@code true} if the given folder is one of the package roots or below
+     */
+    private boolean isCovered(@NotNull String path) {
+        for (String root: registry.getPackRootPaths()) {
+            if (path.equals(root) || path.startsWith(root + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the revision of the catalog to the current time, or increments it if it was set to a later time.
+     * @return the new revision
+     */
+    private static long touch(@NotNull Node catalog) throws RepositoryException {
+        Calendar now = Calendar.getInstance();
+        if (catalog.hasProperty(JcrConstants.JCR_LASTMODIFIED)) {
+            long previous = catalog.getProperty(JcrConstants.JCR_LASTMODIFIED).getLong();
+            if (now.getTimeInMillis() <= previous) {
+                now.setTimeInMillis(previous + 1);
+            }
+        } else if (!catalog.isNodeType(JcrConstants.MIX_LAST_MODIFIED)) {
+            catalog.addMixin(JcrConstants.MIX_LAST_MODIFIED);
+        }
+        catalog.setProperty(JcrConstants.JCR_LASTMODIFIED, now);
+        return now.getTimeInMillis();
+    }
+
+    @Nullable
+    private Node getCatalogNode() throws RepositoryException {
+        Node root = registry.getPrimaryPackageRoot(false);
+        return root == null || !root.hasNode(NODE_NAME) ? null : root.getNode(NODE_NAME);
+    }
+
+    @NotNull
+    private static String getFileName(@NotNull String path) {
+        return Text.escapeIllegalJcrChars(path) + FILE_SUFFIX;
+    }
+
+    /**
+     * Returns the path of the folder covered by the given catalog file.
+     * @return the path or {@code null} if the file is not a catalog file of the package roots of this registry
+     */
+    @Nullable
+    private String getFolderPath(@NotNull Node file) throws RepositoryException {
+        String name = file.getName();
+        if (!name.endsWith(FILE_SUFFIX)) {
+            return null;
+        }
+        String path = Text.unescapeIllegalJcrChars(name.substring(0, name.length() - FILE_SUFFIX.length()));
+        // ignore the files written by registries with other package roots
+        return isCovered(path) ? path : null;
+    }
+
+    @NotNull
+    private static String getKey(@NotNull String group, @NotNull String name) {
+        return group + ":" + name;
+    }
+
+    private static boolean isSnapshot(@NotNull PackageId id) {
+        return ".snapshot".equals(id.getGroup()) || id.getGroup().endsWith("/.snapshot");
+    }
+
+    /**
+     * The catalog entries of a folder that contains packages
+     */
+    private static final class Folder {
+
+        private final String path;
+
+        /**
+         * entries by the full package id
+         */
+        private final Map<String, Entry> entries = new HashMap<>();
+
+        /**
+         * ids of the packages that changed since the file was persisted
+         */
+        private final Set<PackageId> pending = new LinkedHashSet<>();
+
+        /**
+         * the last modified time of the persisted file when it was loaded or written, {@code -1} if not persisted.
+         */
+        private long lastModified = -1;
+
+        private Folder(@NotNull String path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * Entry of the catalog
+     */
+    public static class Entry {
+
+        private final PackageId id;
+
+        private final String path;
+
+        private final boolean installed;
+
+        public Entry(@NotNull PackageId id, @NotNull String path, boolean installed) {
+            this.id = id;
+            this.path = path;
+            this.installed = installed;
+        }
+
+        @Nullable
+        static Entry parse(@NotNull String line) {
+            String[] segs = line.split("\t");
+            if (segs.length != 3) {
+                return null;
+            }
+            PackageId id = PackageId.fromString(segs[0]);
+            if (id == null || !id.isValid()) {
+                return null;
+            }
+            return new Entry(id, segs[2], "1".equals(segs[1]));
+        }
+
+        @NotNull
+        public PackageId getId() {
+            return id;
+        }
+
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isInstalled() {
+            return installed;
+        }
+
+        @Override
+        public String toString() {
+            return id + "\t" + (installed ? "1" : "0") + "\t" + path;
+        }
+    }
+}
@@ -23,6 +23,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -58,6 +60,7 @@ import org.apache.jackrabbit.vault.packaging.impl.JcrPackageDefinitionImpl;
 import org.apache.jackrabbit.vault.packaging.impl.JcrPackageImpl;
 import org.apache.jackrabbit.vault.packaging.impl.JcrPackageManagerImpl;
 import org.apache.jackrabbit.vault.packaging.impl.ZipVaultPackage;
+import org.apache.jackrabbit.vault.packaging.registry.PackageMetaData;
 import org.apache.jackrabbit.vault.packaging.registry.PackageRegistry;
 import org.apache.jackrabbit.vault.packaging.registry.RegisteredPackage;
 import org.apache.jackrabbit.vault.util.InputStreamPump;
@@ -116,6 +119,15 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
      */
     private PackageRegistry baseRegistry = null;
 
+    /**
+     * catalog of the packages
+     */
+    private final JcrPackageCatalog catalog;
+
+    /**
+     * the catalog revision the resolution cache is based on
+     */
+    private long resolvedRevision = -1;
 
     /**
      * Creates a new JcrPackageRegistry based on the given session.
@@ -123,15 +135,24 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
      * @param roots the root paths to store the packages.
      */
     public JcrPackageRegistry(@NotNull Session session, @Nullable String ... roots) {
+        this(session, roots == null || roots.length == 0 ? new String[]{DEFAULT_PACKAGE_ROOT_PATH} : roots, true);
+    }
+
+    /**
+     * Creates a new JcrPackageRegistry based on the given session.
+     * @param session the JCR session that is used to access the repository.
+     * @param roots the root paths to store the packages.
+     * @param initNodeTypes {@code false} if the node types are known to be registered already.
+     */
+    private JcrPackageRegistry(@NotNull Session session, @NotNull String[] roots, boolean initNodeTypes) {
         this.session = session;
-        if (roots == null || roots.length == 0) {
-            packRootPaths = new String[]{DEFAULT_PACKAGE_ROOT_PATH};
-        } else {
-            packRootPaths = roots;
-        }
+        packRootPaths = roots;
         packRoots = new Node[packRootPaths.length];
         primaryPackRootPathPrefix = packRootPaths[0] + "/";
-        initNodeTypes();
+        catalog = new JcrPackageCatalog(this, session);
+        if (initNodeTypes) {
+            initNodeTypes();
+        }
     }
 
     /**
@@ -156,6 +177,28 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
      * @param related related packages
      */
     public void dispatch(@NotNull PackageEvent.Type type, @NotNull PackageId id, @Nullable PackageId[] related) {
+        clearResolutionCache();
+        switch (type) {
+            case CREATE:
+            case UPLOAD:
+            case INSTALL:
+            case EXTRACT:
+            case UNINSTALL:
+            case REMOVE:
+                catalog.update(id);
+                break;
+            case RENAME:
+            case EXTRACT_SUB_PACKAGES:
+                catalog.update(id);
+                if (related != null) {
+                    for (PackageId relatedId: related) {
+                        catalog.update(relatedId);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
         if (dispatcher == null) {
             return;
         }
@@ -271,7 +314,7 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
     }
 
     @Nullable
-    private Node getPackageNode(@NotNull PackageId id) throws RepositoryException {
+    Node getPackageNode(@NotNull PackageId id) throws RepositoryException {
         String relPath = getRelativeInstallationPath(id);
         for (String pfx: packRootPaths) {
             String path = pfx + relPath;
@@ -305,39 +348,40 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
      * {@inheritDoc}
      */
     @Override
-    public PackageId resolve(Dependency dependency, boolean onlyInstalled) throws IOException {
+    public PackageId resolve(@NotNull Dependency dependency, boolean onlyInstalled) throws IOException {
         try {
-            PackageId bestId = null;
-            for (Node root: getPackageRoots()) {
-                if (!root.hasNode(dependency.getGroup())) {
+            // the catalog might have been modified by other sessions. reading its revision does not load it
+            long revision = catalog.getRevision();
+            if (revision != resolvedRevision) {
+                clearResolutionCache();
+                resolvedRevision = revision;
+            }
+        } catch (RepositoryException e) {
+            throw new IOException(e);
+        }
+        PackageId bestId = super.resolve(dependency, onlyInstalled);
+        if (bestId == null && baseRegistry != null) {
+            bestId = baseRegistry.resolve(dependency, onlyInstalled);
+        }
+        return bestId;
+    }
+
+    @Nullable
+    @Override
+    protected PackageId doResolve(@NotNull Dependency dependency, boolean onlyInstalled) throws IOException {
+        try {
+            // the versions are sorted ascending, so the last matching entry is the best
+            List<JcrPackageCatalog.Entry> versions = catalog.getVersions(dependency.getGroup(), dependency.getName());
+            for (int i = versions.size() - 1; i >= 0; i--) {
+                JcrPackageCatalog.Entry e = versions.get(i);
+                if (onlyInstalled && !e.isInstalled()) {
                     continue;
                 }
-                Node groupNode = root.getNode(dependency.getGroup());
-                NodeIterator iter = groupNode.getNodes();
-                while (iter.hasNext()) {
-                    Node child = iter.nextNode();
-                    if (".snapshot".equals(child.getName())) {
-                        continue;
-                    }
-                    try (JcrPackageImpl pack = new JcrPackageImpl(this, child)) {
-                        if (pack.isValid()) {
-                            if (onlyInstalled && !pack.isInstalled()) {
-                                continue;
-                            }
-                            PackageId id = pack.getDefinition().getId();
-                            if (dependency.matches(id)) {
-                                if (bestId == null || id.getVersion().compareTo(bestId.getVersion()) > 0) {
-                                    bestId = id;
-                                }
-                            }
-                        }
-                    }
+                if (dependency.matches(e.getId()) && session.nodeExists(e.getPath())) {
+                    return e.getId();
                 }
-            } 
-            if (bestId == null && baseRegistry != null) {
-                bestId = baseRegistry.resolve(dependency, onlyInstalled);
             }
-            return bestId;
+            return null;
         } catch (RepositoryException e) {
             throw new IOException(e);
         }
@@ -430,6 +474,7 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
                 session.refresh(false);
             } else {
                 session.save();
+                catalog.flush();
             }
         }
     }
@@ -508,6 +553,7 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
                 session.refresh(false);
             } else {
                 session.save();
+                catalog.flush();
             }
         }
     }
@@ -721,8 +767,11 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
     public Set<PackageId> packages() throws IOException {
         try {
             Set<PackageId> packages = new TreeSet<PackageId>();
-            for (Node pRoot: getPackageRoots()) {
-                listPackages(pRoot, packages);
+            for (JcrPackageCatalog.Entry e: catalog.getEntries()) {
+                // ignore stale entries and packages not readable by this session
+                if (session.nodeExists(e.getPath())) {
+                    packages.add(e.getId());
+                }
             }
             return packages;
         } catch (RepositoryException e) {
@@ -731,32 +780,97 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
     }
 
     /**
-     * internally adds the packages below {@code root} to the given list
-     * recursively.
+     * {@inheritDoc}
      *
-     * @param root root node
-     * @param packages list for the packages
-     * @throws RepositoryException if an error occurs
+     * The meta data is read from the definition nodes of the packages.
      */
-    private void listPackages(Node root, Set<PackageId> packages) throws RepositoryException {
-        for (NodeIterator iter = root.getNodes(); iter.hasNext();) {
-            Node child = iter.nextNode();
-            if (".snapshot".equals(child.getName())) {
-                continue;
-            }
-            try (JcrPackageImpl pack = new JcrPackageImpl(this, child)) {
-                if (pack.isValid()) {
-                    // skip packages with illegal names
-                    JcrPackageDefinition jDef = pack.getDefinition();
-                    if (jDef == null || !jDef.getId().isValid()) {
-                        continue;
+    @NotNull
+    @Override
+    public List<PackageMetaData> getMetaData(@Nullable Collection<PackageId> ids) throws IOException {
+        try {
+            List<PackageMetaData> ret = new ArrayList<>();
+            if (ids == null) {
+                for (JcrPackageCatalog.Entry e: catalog.getEntries()) {
+                    // ignore stale entries and packages not readable by this session
+                    PackageMetaData metaData = session.nodeExists(e.getPath())
+                            ? readMetaData(e.getId(), session.getNode(e.getPath()))
+                            : null;
+                    if (metaData != null) {
+                        ret.add(metaData);
                     }
-                    packages.add(jDef.getId());
-                } else if (child.hasNodes()) {
-                    listPackages(child, packages);
+                }
+                ret.sort(Comparator.comparing(PackageMetaData::getId));
+                return ret;
+            }
+            for (PackageId id: ids) {
+                JcrPackageCatalog.Entry e = catalog.getEntry(id);
+                Node node = e != null && session.nodeExists(e.getPath())
+                        ? session.getNode(e.getPath())
+                        : getPackageNode(id);
+                PackageMetaData metaData = node == null ? null : readMetaData(id, node);
+                if (metaData != null) {
+                    ret.add(metaData);
+                }
+            }
+            return ret;
+        } catch (RepositoryException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Reads the meta data of a package from its definition node.
+     *
+     * @param id the package id
+     * @param node the package node
+     * @return the meta data or {@code null} if the node is not a package
+     * @throws RepositoryException if an error occurs
+     */
+    @Nullable
+    private static PackageMetaData readMetaData(@NotNull PackageId id, @NotNull Node node) throws RepositoryException {
+        if (!node.hasNode(JcrConstants.JCR_CONTENT)) {
+            return null;
+        }
+        Node content = node.getNode(JcrConstants.JCR_CONTENT);
+        if (!content.hasNode(JcrPackage.NN_VLT_DEFINITION)) {
+            return null;
+        }
+        JcrPackageDefinitionImpl def = new JcrPackageDefinitionImpl(content.getNode(JcrPackage.NN_VLT_DEFINITION));
+        long size = content.hasProperty(JcrConstants.JCR_DATA)
+                ? content.getProperty(JcrConstants.JCR_DATA).getLength()
+                : -1;
+        Calendar lastUnpacked = def.getLastUnpacked();
+
+        // same structure as read by JcrWorkspaceFilter, without parsing the rules
+        Node filterNode = def.getNode();
+        if (filterNode.hasNode(JcrPackageDefinition.NN_FILTER)) {
+            filterNode = filterNode.getNode(JcrPackageDefinition.NN_FILTER);
+        }
+        List<String> roots = new ArrayList<>();
+        for (NodeIterator iter = filterNode.getNodes(); iter.hasNext();) {
+            Node filter = iter.nextNode();
+            if (filter.hasProperty(JcrPackageDefinition.PN_ROOT)) {
+                String root = filter.getProperty(JcrPackageDefinition.PN_ROOT).getString();
+                if (!root.isEmpty()) {
+                    roots.add(root);
                 }
             }
         }
+        return new PackageMetaDataImpl(id, size, lastUnpacked != null, lastUnpacked, def.getDependencies(), roots);
+    }
+
+    /**
+     * Rebuilds the package catalog by traversing the package roots. This is only needed if packages were added to
+     * the package roots bypassing the registry, for example by a content import.
+     *
+     * @throws IOException if an error occurs
+     */
+    public void rebuildCatalog() throws IOException {
+        try {
+            catalog.rebuild();
+        } catch (RepositoryException e) {
+            throw new IOException(e);
+        }
     }
 
     /**
@@ -774,7 +888,7 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
     @Override
     public void installPackage(@NotNull Session session, @NotNull RegisteredPackage pkg, @NotNull ImportOptions opts,
             boolean extract) throws IOException, PackageException {
-        try (JcrPackage jcrPkg = ((JcrRegisteredPackage) pkg).getJcrPackage()) {
+        try (JcrPackage jcrPkg = getJcrPackage(session, pkg)) {
             if (extract) {
                 jcrPkg.extract(opts);
             } else {
@@ -788,11 +902,51 @@ public class JcrPackageRegistry extends AbstractPackageRegistry {
     @Override
     public void uninstallPackage(@NotNull Session session, @NotNull RegisteredPackage pkg, @NotNull ImportOptions opts)
             throws IOException, PackageException {
-        try (JcrPackage jcrPkg = ((JcrRegisteredPackage) pkg).getJcrPackage()) {
+        try (JcrPackage jcrPkg = getJcrPackage(session, pkg)) {
             jcrPkg.uninstall(opts);
         } catch (RepositoryException e) {
             throw new IOException(e);
         }
     }
 
+    /**
+     * Creates a registry on the same package roots that uses the given session. The new registry shares the event
+     * dispatcher and the base registry with this one.
+     *
+     * @param session the session
+     * @return the new registry
+     */
+    @NotNull
+    public JcrPackageRegistry withSession(@NotNull Session session) {
+        // the node types were registered by this registry
+        JcrPackageRegistry registry = new JcrPackageRegistry(session, packRootPaths, false);
+        registry.setDispatcher(dispatcher);
+        registry.setBaseRegistry(baseRegistry);
+        return registry;
+    }
+
+    /**
+     * Returns the jcr package of the given registered package, accessed with the given session. Tasks of an execution
+     * plan that are executed concurrently use their own sessions.
+     *
+     * @param session the session
+     * @param pkg the registered package
+     * @return the jcr package
+     * @throws RepositoryException if an error occurs
+     * @throws NoSuchPackageException if the package does not exist
+     */
+    @NotNull
+    private JcrPackage getJcrPackage(@NotNull Session session, @NotNull RegisteredPackage pkg)
+            throws RepositoryException, NoSuchPackageException {
+        if (session == this.session) {
+            return ((JcrRegisteredPackage) pkg).getJcrPackage();
+        }
+        JcrPackageRegistry registry = withSession(session);
+        Node node = registry.getPackageNode(pkg.getId());
+        if (node == null) {
+            throw new NoSuchPackageException("No such package: " + pkg.getId()).setId(pkg.getId());
+        }
+        return registry.open(node, false);
+    }
+
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.registry.impl;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.registry.PackageMetaData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable {@link PackageMetaData} that holds the values read by the registry, for example from the definition node
+ * of a package in the repository or from the package state of a file based registry.
+ */
+public class PackageMetaDataImpl implements PackageMetaData {
+
+    private final PackageId id;
+
+    private final long size;
+
+    private final boolean installed;
+
+    private final Calendar installationTime;
+
+    private final Dependency[] dependencies;
+
+    private final List<String> filterRoots;
+
+    public PackageMetaDataImpl(@NotNull PackageId id, long size, boolean installed, @Nullable Calendar installationTime,
+                               @NotNull Dependency[] dependencies, @NotNull List<String> filterRoots) {
+        this.id = id;
+        this.size = size;
+        this.installed = installed;
+        this.installationTime = installationTime;
+        this.dependencies = dependencies;
+        this.filterRoots = Collections.unmodifiableList(filterRoots);
+    }
+
+    @NotNull
+    @Override
+    public PackageId getId() {
+        return id;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean isInstalled() {
+        return installed;
+    }
+
+    @Nullable
+    @Override
+    public Calendar getInstallationTime() {
+        return installationTime;
+    }
+
+    @NotNull
+    @Override
+    public Dependency[] getDependencies() {
+        return dependencies;
+    }
+
+    @NotNull
+    @Override
+    public List<String> getFilterRoots() {
+        return filterRoots;
+    }
+}
@@ -18,6 +18,8 @@ package org.apache.jackrabbit.vault.packaging.registry.impl;
 
 import java.io.IOException;
 
+import javax.jcr.Session;
+
 import org.apache.jackrabbit.vault.fs.io.ImportOptions;
 import org.apache.jackrabbit.vault.packaging.DependencyHandling;
 import org.apache.jackrabbit.vault.packaging.NoSuchPackageException;
@@ -47,9 +49,9 @@ public class PackageTaskImpl implements PackageTask {
 
     private final Type type;
 
-    private State state = State.NEW;
+    private volatile State state = State.NEW;
 
-    private Throwable error;
+    private volatile Throwable error;
 
     PackageTaskImpl(@NotNull PackageId id, @NotNull Type type) {
         this.id = id;
@@ -89,70 +91,110 @@ public class PackageTaskImpl implements PackageTask {
     }
 
     void execute(ExecutionPlanImpl executionPlan) {
+        execute(executionPlan, null);
+    }
+
+    /**
+     * Executes this task.
+     * @param executionPlan the execution plan
+     * @param workers the sessions of the user of the plan's session to execute the task with, or {@code null} to use
+     *                the plan's session. The packages are then also accessed with the registry of the worker session,
+     *                as the session of the plan's registry must not be shared between threads.
+     */
+    void execute(ExecutionPlanImpl executionPlan, @Nullable WorkerSessions workers) {
         if (state != State.NEW) {
             return;
         }
         state = State.RUNNING;
+        Session session = executionPlan.getSession();
+        PackageRegistry registry = executionPlan.getRegistry();
+        Session workerSession = null;
         try {
-            switch (type) {
-                case INSTALL:
-                    doInstall(executionPlan, false);
-                    break;
-                case UNINSTALL:
-                    doUninstall(executionPlan);
-                    break;
-                case REMOVE:
-                    doRemove(executionPlan);
-                    break;
-                case EXTRACT:
-                    doInstall(executionPlan, true);
-                    break;
+            if (workers != null) {
+                workerSession = workers.acquire();
+                session = workerSession;
+                JcrPackageRegistry workerRegistry = workers.getRegistry(workerSession);
+                if (workerRegistry != null) {
+                    registry = workerRegistry;
+                }
             }
+            doExecute(executionPlan, registry, session);
             state = State.COMPLETED;
         } catch (Exception e) {
             log.info("error during package task {} on {}: {}", type, id, e.toString());
             error  = e;
             state = State.ERROR;
+        } finally {
+            if (workerSession != null) {
+                workers.release(workerSession);
+            }
+        }
+    }
+
+    /**
+     * Performs the operation of this task.
+     * @param executionPlan the execution plan
+     * @param registry the registry
+     * @param session the session
+     * @throws IOException if an I/O error occurs
+     * @throws PackageException if a package error occurs
+     */
+    private void doExecute(ExecutionPlanImpl executionPlan, PackageRegistry registry, Session session)
+            throws IOException, PackageException {
+        switch (type) {
+            case INSTALL:
+                doInstall(executionPlan, registry, session, false);
+                break;
+            case UNINSTALL:
+                doUninstall(executionPlan, registry, session);
+                break;
+            case REMOVE:
+                doRemove(registry);
+                break;
+            case EXTRACT:
+                doInstall(executionPlan, registry, session, true);
+                break;
         }
     }
 
     /**
      * Performs the removal.
-     * @param plan the execution plan
+     * @param registry the registry
      * @throws IOException if an I/O error occurs
      * @throws PackageException if a package error occurs
      */
-    private void doRemove(ExecutionPlanImpl plan) throws IOException, PackageException {
-        try (RegisteredPackage pkg = plan.getRegistry().open(id)) {
+    private void doRemove(PackageRegistry registry) throws IOException, PackageException {
+        try (RegisteredPackage pkg = registry.open(id)) {
             if (pkg == null) {
                 throw new NoSuchPackageException("No such package: " + id);
             }
             if (pkg.isInstalled()) {
                 throw new PackageException("refusing to remove installed package: " + id);
             }
-            plan.getRegistry().remove(id);
+            registry.remove(id);
         }
     }
 
     /**
      * Performs the uninstallation.
      * @param plan the execution plan
+     * @param registry the registry
+     * @param session the session
      * @throws IOException if an I/O error occurs
      * @throws PackageException if a package error occurs
      */
-    private void doUninstall(ExecutionPlanImpl plan) throws IOException, PackageException {
+    private void doUninstall(ExecutionPlanImpl plan, PackageRegistry registry, Session session) throws IOException, PackageException {
         ImportOptions opts = new ImportOptions();
         opts.setListener(plan.getListener());
         // execution plan resolution already has resolved all dependencies, so there is no need to use best effort here.
         opts.setDependencyHandling(DependencyHandling.STRICT);
 
-        try (RegisteredPackage pkg = plan.getRegistry().open(id)) {
+        try (RegisteredPackage pkg = registry.open(id)) {
             if (pkg == null) {
                 throw new NoSuchPackageException("No such package: " + id);
             }
-            PackageRegistry registry = plan.getRegistry();
             if (registry instanceof InternalPackageRegistry) {
-              ((InternalPackageRegistry)registry).uninstallPackage(plan.getSession(), pkg, opts);
+              ((InternalPackageRegistry)registry).uninstallPackage(session, pkg, opts);
             }
         }
     }
@@ -160,22 +202,24 @@ public class PackageTaskImpl implements PackageTask {
     /**
      * Performs the installation.
      * @param plan the execution plan
+     * @param registry the registry
+     * @param session the session
+     * @param extract {@code true} to extract the package
      * @throws IOException if an I/O error occurs
      * @throws PackageException if a package error occurs
      */
-    private void doInstall(ExecutionPlanImpl plan, boolean extract) throws IOException, PackageException {
+    private void doInstall(ExecutionPlanImpl plan, PackageRegistry registry, Session session, boolean extract) throws IOException, PackageException {
         ImportOptions opts = new ImportOptions();
         opts.setListener(plan.getListener());
         // execution plan resolution already has resolved all dependencies, so there is no need to use best effort here.
         opts.setDependencyHandling(DependencyHandling.STRICT);
 
-        try (RegisteredPackage pkg = plan.getRegistry().open(id)) {
+        try (RegisteredPackage pkg = registry.open(id)) {
             if (pkg == null) {
                 throw new NoSuchPackageException("No such package: " + id);
             }
-            PackageRegistry registry = plan.getRegistry();
             if (registry instanceof InternalPackageRegistry) {
-              ((InternalPackageRegistry)registry).installPackage(plan.getSession(), pkg, opts, extract);
+              ((InternalPackageRegistry)registry).installPackage(session, pkg, opts, extract);
             }
         }
     }
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.registry.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sessions for the jobs of a {@link ConcurrentPackageExecutor}, as a session must not be shared between threads. The
+ * sessions are sessions of the user of a given session, obtained by impersonation, and are reused by the subsequent
+ * jobs, so that there are at most as many sessions as concurrent jobs. If created with a registry, each session has
+ * a registry that uses it, so that the catalog is loaded once per session and not once per job.
+ */
+public class WorkerSessions implements AutoCloseable {
+
+    /**
+     * default logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(WorkerSessions.class);
+
+    private final Session session;
+
+    private final JcrPackageRegistry registry;
+
+    /**
+     * the sessions that are not used by a job
+     */
+    private final Queue<Session> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     * all sessions
+     */
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * the registries of the sessions
+     */
+    private final Map<Session, JcrPackageRegistry> registries = new ConcurrentHashMap<>();
+
+    private WorkerSessions(@NotNull Session session, @Nullable JcrPackageRegistry registry) {
+        this.session = session;
+        this.registry = registry;
+    }
+
+    /**
+     * Creates the worker sessions for the user of the given session.
+     *
+     * @param session the session
+     * @param registry the registry the registries of the worker sessions are created from or {@code null}
+     * @return the worker sessions or {@code null} if the user can't impersonate itself. The jobs must then be
+     *         executed sequentially with the given session.
+     */
+    @Nullable
+    public static WorkerSessions create(@NotNull Session session, @Nullable JcrPackageRegistry registry) {
+        WorkerSessions workers = new WorkerSessions(session, registry);
+        try {
+            workers.release(workers.login());
+            return workers;
+        } catch (RepositoryException e) {
+            log.warn("Unable to obtain a session of user {} for concurrent execution. Executing sequentially: {}",
+                    session.getUserID(), e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Returns a session that is not used by another job.
+     *
+     * @return the session
+     * @throws RepositoryException if a new session can't be obtained
+     */
+    @NotNull
+    public Session acquire() throws RepositoryException {
+        Session s = idle.poll();
+        return s == null ? login() : s;
+    }
+
+    /**
+     * Returns the registry that uses the given session.
+     *
+     * @param s a session returned by {@link #acquire()}
+     * @return the registry or {@code null} if the worker sessions were created without a registry
+     */
+    @Nullable
+    public JcrPackageRegistry getRegistry(@NotNull Session s) {
+        return registries.get(s);
+    }
+
+    /**
+     * Releases a session returned by {@link #acquire()}. Pending changes left by a failed job are discarded.
+     *
+     * @param s the session
+     */
+    public void release(@NotNull Session s) {
+        try {
+            s.refresh(false);
+            idle.add(s);
+        } catch (RepositoryException e) {
+            log.warn("Unable to refresh worker session: {}", e.toString());
+            sessions.remove(s);
+            registries.remove(s);
+            s.logout();
+        }
+    }
+
+    /**
+     * Logs out all sessions.
+     */
+    @Override
+    public void close() {
+        List<Session> all = new ArrayList<>(sessions);
+        sessions.clear();
+        registries.clear();
+        idle.clear();
+        for (Session s: all) {
+            s.logout();
+        }
+    }
+
+    @NotNull
+    private Session login() throws RepositoryException {
+        Session s;
+        try {
+            s = session.impersonate(new SimpleCredentials(session.getUserID(), new char[0]));
+        } catch (RepositoryException e) {
+            throw new RepositoryException("User " + session.getUserID() + " is not allowed to impersonate itself.", e);
+        }
+        sessions.add(s);
+        if (registry != null) {
+            registries.put(s, registry.withSession(s));
+        }
+        return s;
+    }
+}
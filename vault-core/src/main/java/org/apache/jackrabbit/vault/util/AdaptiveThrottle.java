@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.util;
+
+/**
+ * Adapts the batch size and the pauses of a {@link RepositoryCopier} to the measured save latencies of the destination
+ * repository, a target rate and an optional {@link RepositoryCopier.LoadSignal}. It is shared by all workers of a copy.
+ */
+final class AdaptiveThrottle {
+
+    /**
+     * the minimal number of nodes saved in one batch, unless the maximal batch size is smaller
+     */
+    static final int MIN_BATCH_SIZE = 16;
+
+    /**
+     * the time in milliseconds a slow copy may catch up with the target rate
+     */
+    static final long MAX_BURST = 1000;
+
+    private final int minBatchSize;
+
+    private final int maxBatchSize;
+
+    private final long targetSaveLatency;
+
+    private final int targetRate;
+
+    private final RepositoryCopier.LoadSignal loadSignal;
+
+    private int batchSize;
+
+    /**
+     * the time at which the saved nodes are within the target rate
+     */
+    private long nextSaveTime;
+
+    /**
+     * Creates a new throttle.
+     * @param maxBatchSize the maximal (and initial) batch size
+     * @param targetSaveLatency the target save latency in milliseconds or 0
+     * @param targetRate the target number of nodes per second or 0
+     * @param loadSignal the load signal or {@code null}
+     * @param now the start time of the copy
+     */
+    AdaptiveThrottle(int maxBatchSize, long targetSaveLatency, int targetRate, RepositoryCopier.LoadSignal loadSignal, long now) {
+        this.minBatchSize = Math.max(1, Math.min(MIN_BATCH_SIZE, maxBatchSize));
+        this.maxBatchSize = Math.max(maxBatchSize, minBatchSize);
+        this.targetSaveLatency = targetSaveLatency;
+        this.targetRate = targetRate;
+        this.loadSignal = loadSignal;
+        this.batchSize = this.maxBatchSize;
+        this.nextSaveTime = now;
+    }
+
+    /**
+     * Returns the number of nodes to save in the next batch.
+     * @return the batch size
+     */
+    synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Adjusts the batch size to a save of the destination session and returns the time to pause.
+     * The batch size changes by the ratio of the target latency and the measured latency, but at most by a factor of 2.
+     * Without a target latency, a batch size reduced by the load signal is doubled while the destination is not
+     * overloaded.
+     *
+     * @param numNodes the number of saved nodes
+     * @param latency the duration of the save in milliseconds
+     * @param now the time after the save
+     * @return the pause in milliseconds
+     */
+    long onSave(int numNodes, long latency, long now) {
+        // don't call the load signal while holding the lock
+        boolean recovered = targetSaveLatency <= 0 && loadSignal != null && loadSignal.getLoad() < 1.0;
+        synchronized (this) {
+            long pause = 0;
+            if (targetSaveLatency > 0) {
+                double ratio = Math.max(0.5, Math.min(2.0, (double) targetSaveLatency / Math.max(1, latency)));
+                batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, (int) (batchSize * ratio)));
+                // give the destination time to recover
+                pause = Math.max(0, latency - targetSaveLatency);
+            } else if (recovered) {
+                batchSize = Math.min(maxBatchSize, batchSize * 2);
+            }
+            if (targetRate > 0) {
+                nextSaveTime = Math.max(nextSaveTime, now - MAX_BURST) + numNodes * 1000L / targetRate;
+                pause = Math.max(pause, nextSaveTime - now);
+            }
+            return pause;
+        }
+    }
+
+    /**
+     * Checks the load signal. If the destination is overloaded, the batch size is halved. It grows again with the
+     * next saves once the load has dropped, see {@link #onSave(int, long, long)}.
+     * @return {@code true} if the destination is overloaded
+     */
+    boolean isOverloaded() {
+        if (loadSignal == null || loadSignal.getLoad() < 1.0) {
+            return false;
+        }
+        synchronized (this) {
+            batchSize = Math.max(minBatchSize, batchSize / 2);
+        }
+        return true;
+    }
+}
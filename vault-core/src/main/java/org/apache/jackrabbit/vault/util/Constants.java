@@ -104,6 +104,18 @@ public interface Constants {
      */
     String PRIVILEGES_XML = "privileges.xml";
 
+    /**
+     * name of the file that lists the binaries exported as references
+     * @since 3.4.5
+     */
+    String BINARY_REFERENCES_TXT = "binary-references.txt";
+
+    /**
+     * name of the file that lists the digests of the exported aggregates
+     * @since 3.4.5
+     */
+    String EXPORT_DIGESTS_TXT = "export-digests.txt";
+
     /**
      * name of the file for generic serializations
      */
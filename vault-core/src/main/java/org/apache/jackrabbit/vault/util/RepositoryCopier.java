@@ -17,12 +17,23 @@
 
 package org.apache.jackrabbit.vault.util;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.jcr.Binary;
 import javax.jcr.Credentials;
 import javax.jcr.ImportUUIDBehavior;
 import javax.jcr.NamespaceException;
@@ -30,12 +41,14 @@ import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
 import javax.jcr.Repository;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
 import javax.jcr.nodetype.NodeType;
 
+import org.apache.jackrabbit.api.JackrabbitValue;
 import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
 import org.apache.jackrabbit.vault.fs.api.RepositoryAddress;
 import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
@@ -46,6 +59,15 @@ import org.xml.sax.SAXException;
 
 /**
  * Repository Copier that copies content from a source to a destination repository.
+ * <p>
+ * By default the content is copied by a single thread. With {@link #setThreads(int)} the subtrees are copied concurrently by
+ * multiple workers, each one using its own pair of source and destination sessions (see {@link SessionFactory}) and saving its
+ * changes every {@link #getBatchSize()} nodes. Whenever a worker is idle, another worker hands over the child nodes of the node it
+ * is currently copying. The order of those child nodes is restored at the end.
+ * <p>
+ * Besides the fixed {@link #setThrottle(long) throttle}, the batch size and the pauses after saving can be adapted to the
+ * destination repository with {@link #setTargetSaveLatency(long)}, {@link #setTargetRate(int)} and
+ * {@link #setLoadSignal(LoadSignal)}.
  */
 public class RepositoryCopier {
 
@@ -54,31 +76,55 @@ public class RepositoryCopier {
      */
     private static final Logger log = LoggerFactory.getLogger(RepositoryCopier.class);
 
+    /**
+     * interval in milliseconds in which the load signal is checked while the destination is overloaded
+     */
+    private static final long LOAD_CHECK_INTERVAL = 1000;
+
     protected ProgressTrackerListener tracker;
 
-    private int numNodes = 0;
+    /**
+     * the number of modified nodes not saved yet (summed up over all workers)
+     */
+    private final AtomicInteger numNodes = new AtomicInteger();
 
-    private int totalNodes = 0;
+    private final AtomicInteger totalNodes = new AtomicInteger();
 
-    private long totalSize = 0;
+    private final AtomicLong totalSize = new AtomicLong();
 
-    private long currentSize = 0;
+    /**
+     * the size of the modified properties not saved yet (summed up over all workers)
+     */
+    private final AtomicLong currentSize = new AtomicLong();
 
     private int batchSize = 1024;
 
     private long throttle = 0;
 
+    private long targetSaveLatency = 0;
+
+    private int targetRate = 0;
+
+    private LoadSignal loadSignal;
+
+    /**
+     * the throttle of the current copy or {@code null} if the copy is not throttled adaptively
+     */
+    private volatile AdaptiveThrottle adaptiveThrottle;
+
+    private int threads = 1;
+
     private long start = 0;
 
-    private String lastKnownGood;
+    private volatile String lastKnownGood;
 
-    private String currentPath;
+    private volatile String currentPath;
 
     private String resumeFrom;
 
     private WorkspaceFilter srcFilter;
 
-    private Map<String, String> prefixMapping = new HashMap<String, String>();
+    private final Map<String, String> prefixMapping = new ConcurrentHashMap<String, String>();
 
     private boolean onlyNewer;
 
@@ -86,16 +132,48 @@ public class RepositoryCopier {
 
     private boolean noOrdering;
 
-    private Session srcSession;
-
-    private Session dstSession;
+    private boolean compareContent;
 
     private String  cqLastModified;
 
     private CredentialsProvider credentialsProvider;
 
+    private SessionFactory sessionFactory;
+
     private volatile boolean abort;
 
+    /**
+     * Provides the load of the destination repository for adaptive throttling (see {@link #setLoadSignal(LoadSignal)}).
+     */
+    public interface LoadSignal {
+
+        /**
+         * Returns the current load of the destination repository relative to the load at which the copy should pause.
+         * @return the load. A value of 1 or more pauses the copy.
+         */
+        double getLoad();
+    }
+
+    /**
+     * Creates the additional sessions being used by the workers if the copy is done with multiple threads.
+     */
+    public interface SessionFactory {
+
+        /**
+         * Creates a new session for the source repository.
+         * @return the session
+         * @throws RepositoryException if the login fails
+         */
+        Session createSourceSession() throws RepositoryException;
+
+        /**
+         * Creates a new session for the destination repository.
+         * @return the session
+         * @throws RepositoryException if the login fails
+         */
+        Session createDestinationSession() throws RepositoryException;
+    }
+
     public void setTracker(ProgressTrackerListener tracker) {
         this.tracker = tracker;
     }
@@ -116,6 +194,83 @@ public class RepositoryCopier {
         this.throttle = throttle;
     }
 
+    public long getTargetSaveLatency() {
+        return targetSaveLatency;
+    }
+
+    /**
+     * Sets the target duration of a save of the destination session. If set, the batch size is adapted to the measured save
+     * durations, up to {@link #getBatchSize()} nodes. A save that takes longer than the target is followed by a pause of the
+     * exceeding time. Defaults to 0 (no target).
+     *
+     * @param targetSaveLatency the target save duration in milliseconds
+     */
+    public void setTargetSaveLatency(long targetSaveLatency) {
+        this.targetSaveLatency = targetSaveLatency;
+    }
+
+    public int getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * Sets the maximum number of nodes copied per second (summed up over all threads). If the copy is faster, it pauses
+     * after saving. Defaults to 0 (unlimited).
+     *
+     * @param targetRate the number of nodes per second
+     */
+    public void setTargetRate(int targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    public LoadSignal getLoadSignal() {
+        return loadSignal;
+    }
+
+    /**
+     * Sets the load signal of the destination repository. It is checked after saving. While the load is 1 or more, the copy
+     * pauses and the batch size is reduced.
+     *
+     * @param loadSignal the load signal or {@code null}
+     */
+    public void setLoadSignal(LoadSignal loadSignal) {
+        this.loadSignal = loadSignal;
+    }
+
+    /**
+     * Returns the number of nodes saved in one batch. This is the {@link #getBatchSize() batch size} unless it is
+     * adapted by a {@link #setTargetSaveLatency(long) target save latency} or a {@link #setLoadSignal(LoadSignal) load signal}.
+     *
+     * @return the current batch size
+     */
+    public int getCurrentBatchSize() {
+        AdaptiveThrottle adaptiveThrottle = this.adaptiveThrottle;
+        return adaptiveThrottle == null ? batchSize : adaptiveThrottle.getBatchSize();
+    }
+
+    /**
+     * Returns the number of threads used for a recursive copy.
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used for a recursive copy. If more than one thread is used, each thread copies different
+     * subtrees with its own sessions created by the {@link #setSessionFactory(SessionFactory) session factory} and saves its
+     * changes separately (every {@link #getBatchSize()} nodes). Resuming (see {@link #setResumeFrom(String)}) is only supported
+     * with a single thread. Defaults to 1.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1 but is " + threads);
+        }
+        this.threads = threads;
+    }
+
     public void setSourceFilter(WorkspaceFilter srcFilter) {
         this.srcFilter = srcFilter;
     }
@@ -136,6 +291,28 @@ public class RepositoryCopier {
         this.noOrdering = noOrdering;
     }
 
+    /**
+     * Returns {@code true} if updated nodes are compared with the source nodes (see {@link #setCompareContent(boolean)}).
+     * @return {@code true} if the content is compared
+     */
+    public boolean isCompareContent() {
+        return compareContent;
+    }
+
+    /**
+     * If {@code true}, the properties of updated nodes are only written if their values differ from the source. Binary values
+     * are compared by their content identity (see {@link JackrabbitValue#getContentIdentity()}), so that unchanged binaries are
+     * neither read nor written again. If the source or the destination provides no content identity, for example remote
+     * repositories accessed via DavEx, binaries of equal size are compared by their content. They are then still read from
+     * both repositories, but unchanged binaries are not written again. Nodes without any changes are not counted as modified.
+     * Only applies if {@link #setUpdate(boolean) update} is enabled. Defaults to {@code false}.
+     *
+     * @param compareContent {@code true} to compare the content
+     */
+    public void setCompareContent(boolean compareContent) {
+        this.compareContent = compareContent;
+    }
+
     public boolean isOnlyNewer() {
         return onlyNewer;
     }
@@ -165,19 +342,19 @@ public class RepositoryCopier {
     }
 
     public int getCurrentNumNodes() {
-        return numNodes;
+        return numNodes.get();
     }
 
     public int getTotalNodes() {
-        return totalNodes;
+        return totalNodes.get();
     }
 
     public long getTotalSize() {
-        return totalSize;
+        return totalSize.get();
     }
 
     public long getCurrentSize() {
-        return currentSize;
+        return currentSize.get();
     }
 
     public void abort() {
@@ -189,16 +366,17 @@ public class RepositoryCopier {
 
         Session srcSession = null;
         Session dstSession = null;
+        SessionFactory oldSessionFactory = sessionFactory;
         try {
             RepositoryProvider repProvider = new RepositoryProvider();
-            Repository srcRepo;
+            final Repository srcRepo;
             try {
                 srcRepo = repProvider.getRepository(src);
             } catch (RepositoryException e) {
                 log.error("Error while retrieving src repository {}: {}", src, e.toString());
                 return;
             }
-            Repository dstRepo;
+            final Repository dstRepo;
             try {
                 dstRepo = repProvider.getRepository(dst);
             } catch (RepositoryException e) {
@@ -206,29 +384,48 @@ public class RepositoryCopier {
                 return;
             }
 
+            final Credentials srcCreds;
             try {
-                Credentials srcCreds = src.getCredentials();
-                if (srcCreds == null && credentialsProvider != null) {
-                    srcCreds = credentialsProvider.getCredentials(src);
+                Credentials creds = src.getCredentials();
+                if (creds == null && credentialsProvider != null) {
+                    creds = credentialsProvider.getCredentials(src);
                 }
+                srcCreds = creds;
                 srcSession = srcRepo.login(srcCreds, src.getWorkspace());
             } catch (RepositoryException e) {
                 log.error("Error while logging in src repository {}: {}", src, e.toString());
                 return;
             }
 
+            final Credentials dstCreds;
             try {
-                Credentials dstCreds = dst.getCredentials();
-                if (dstCreds == null && credentialsProvider != null) {
-                    dstCreds = credentialsProvider.getCredentials(dst);
+                Credentials creds = dst.getCredentials();
+                if (creds == null && credentialsProvider != null) {
+                    creds = credentialsProvider.getCredentials(dst);
                 }
+                dstCreds = creds;
                 dstSession = dstRepo.login(dstCreds, dst.getWorkspace());
             } catch (RepositoryException e) {
                 log.error("Error while logging in dst repository {}: {}", dst, e.toString());
                 return;
             }
+            if (sessionFactory == null) {
+                // workers use the same credentials
+                sessionFactory = new SessionFactory() {
+                    @Override
+                    public Session createSourceSession() throws RepositoryException {
+                        return srcRepo.login(srcCreds, src.getWorkspace());
+                    }
+
+                    @Override
+                    public Session createDestinationSession() throws RepositoryException {
+                        return dstRepo.login(dstCreds, dst.getWorkspace());
+                    }
+                };
+            }
             copy(srcSession, src.getPath(), dstSession, dst.getPath(), recursive);
         } finally {
+            sessionFactory = oldSessionFactory;
             if (srcSession != null) {
                 srcSession.logout();
             }
@@ -242,12 +439,11 @@ public class RepositoryCopier {
         if (srcSession == null || dstSession == null) {
             throw new IllegalArgumentException("no src or dst session provided");
         }
-        this.srcSession = srcSession;
-        this.dstSession = dstSession;
+        Worker worker = new Worker(srcSession, dstSession, null);
 
         // get root nodes
         String dstParent = Text.getRelativeParent(dstPath, 1);
-        String dstName = checkNameSpace(Text.getName(dstPath));
+        String dstName = worker.checkNameSpace(Text.getName(dstPath));
         Node srcRoot;
         try {
             srcRoot = srcSession.getNode(srcPath);
@@ -269,241 +465,639 @@ public class RepositoryCopier {
             // ignore
         }
         try {
-            numNodes = 0;
-            totalNodes = 0;
-            currentSize = 0;
-            totalSize = 0;
+            numNodes.set(0);
+            totalNodes.set(0);
+            currentSize.set(0);
+            totalSize.set(0);
             start = System.currentTimeMillis();
-            copy(srcRoot, dstRoot, dstName, recursive);
-            if (numNodes > 0) {
-                track("", "Saving %d nodes...", numNodes);
-                dstSession.save();
-                track("", "Done.");
+            adaptiveThrottle = targetSaveLatency > 0 || targetRate > 0 || loadSignal != null
+                    ? new AdaptiveThrottle(batchSize, targetSaveLatency, targetRate, loadSignal, start)
+                    : null;
+            if (threads > 1 && recursive && isParallelCopySupported()) {
+                new ParallelCopy(threads, srcSession, dstSession).copy(srcRoot, dstRoot, dstName);
+            } else {
+                worker.copy(srcRoot, dstRoot, dstName, recursive);
+                if (worker.numNodes > 0) {
+                    track("", "Saving %d nodes...", worker.numNodes);
+                    worker.save();
+                    track("", "Done.");
+                }
             }
             long end = System.currentTimeMillis();
-            track("", "Copy completed. %d nodes in %dms. %d bytes", totalNodes, end-start, totalSize);
+            track("", "Copy completed. %d nodes in %dms. %d bytes", totalNodes.get(), end-start, totalSize.get());
         } catch (RepositoryException e) {
             log.error("Error during copy: {}", e.toString());
         }
     }
 
-    private void copy(Node src, Node dstParent, String dstName, boolean recursive)
-            throws RepositoryException {
-        if (abort) {
-            return;
+    private boolean isParallelCopySupported() {
+        if (resumeFrom != null) {
+            log.warn("Resuming is not supported with multiple threads, copying with a single thread.");
+            return false;
         }
-        String path = src.getPath();
-        currentPath = path;
-        String dstPath = dstParent.getPath() + "/" + dstName;
-        if (srcFilter != null && !srcFilter.contains(path)) {
-            track(path, "------ I");
-            return;
+        if (sessionFactory == null) {
+            log.warn("No session factory set, copying with a single thread.");
+            return false;
         }
+        return true;
+    }
 
-        boolean skip = false;
-        if (resumeFrom != null) {
-            if (path.equals(resumeFrom)) {
-                // found last node, resuming
-                resumeFrom = null;
-            } else {
-                skip = true;
-            }
-        }
-
-        // check for special node that need sysview import handling
-        boolean useSysView = src.getDefinition().isProtected();
-        Node dst;
-        boolean isNew = false;
-        boolean overwrite = update;
-        if (dstParent.hasNode(dstName)) {
-            dst = dstParent.getNode(dstName);
-            if (skip) {
-                track(path, "------ S");
-            } else if (overwrite) {
-                if (onlyNewer && dstName.equals("jcr:content")) {
-                    if (isNewer(src, dst)) {
-                        track(dstPath, "%06d U", ++totalNodes);
-                    } else {
-                        overwrite = false;
-                        recursive = false;
-                        track(dstPath, "%06d -", ++totalNodes);
-                    }
+    /**
+     * Copies nodes with one pair of source and destination sessions. Sequential copies are done with a single worker,
+     * parallel copies with one worker per thread.
+     */
+    private final class Worker {
+
+        private final Session srcSession;
+
+        private final Session dstSession;
+
+        /**
+         * the coordinator of the parallel copy or {@code null} for a sequential copy
+         */
+        private final ParallelCopy parallelCopy;
+
+        /**
+         * the number of modified nodes not saved yet by this worker
+         */
+        private int numNodes;
+
+        /**
+         * the size of the modified properties not saved yet by this worker
+         */
+        private long currentSize;
+
+        private String currentPath;
+
+        private Worker(Session srcSession, Session dstSession, ParallelCopy parallelCopy) {
+            this.srcSession = srcSession;
+            this.dstSession = dstSession;
+            this.parallelCopy = parallelCopy;
+        }
+
+        private void copy(Node src, Node dstParent, String dstName, boolean recursive)
+                throws RepositoryException {
+            if (abort) {
+                return;
+            }
+            String path = src.getPath();
+            currentPath = path;
+            RepositoryCopier.this.currentPath = path;
+            String dstPath = dstParent.getPath() + "/" + dstName;
+            if (srcFilter != null && !srcFilter.contains(path)) {
+                track(path, "------ I");
+                return;
+            }
+
+            boolean skip = false;
+            if (resumeFrom != null) {
+                if (path.equals(resumeFrom)) {
+                    // found last node, resuming
+                    resumeFrom = null;
                 } else {
-                    track(dstPath, "%06d U", ++totalNodes);
-                }
-                if (useSysView) {
-                    dst = sysCopy(src, dstParent, dstName);
+                    skip = true;
                 }
-            } else {
-                track(dstPath, "%06d -", ++totalNodes);
             }
-        } else {
-            try {
+
+            // check for special node that need sysview import handling
+            boolean useSysView = src.getDefinition().isProtected();
+            Node dst;
+            boolean isNew = false;
+            boolean overwrite = update;
+            if (dstParent.hasNode(dstName)) {
+                dst = dstParent.getNode(dstName);
                 if (skip) {
                     track(path, "------ S");
-                    dst = null;
-                } else if (useSysView) {
-                    dst = sysCopy(src, dstParent, dstName);
+                } else if (overwrite) {
+                    if (onlyNewer && dstName.equals("jcr:content") && !isNewer(src, dst)) {
+                        overwrite = false;
+                        recursive = false;
+                        track(dstPath, "%06d -", totalNodes.incrementAndGet());
+                    } else if (useSysView || !compareContent) {
+                        track(dstPath, "%06d U", totalNodes.incrementAndGet());
+                    }
+                    if (useSysView) {
+                        dst = sysCopy(src, dstParent, dstName);
+                    }
                 } else {
-                    dst = dstParent.addNode(dstName, src.getPrimaryNodeType().getName());
+                    track(dstPath, "%06d -", totalNodes.incrementAndGet());
+                }
+            } else {
+                try {
+                    if (skip) {
+                        track(path, "------ S");
+                        dst = null;
+                    } else if (useSysView) {
+                        dst = sysCopy(src, dstParent, dstName);
+                    } else {
+                        dst = dstParent.addNode(dstName, src.getPrimaryNodeType().getName());
+                    }
+                    track(dstPath, "%06d A", totalNodes.incrementAndGet());
+                    isNew = true;
+                } catch (RepositoryException e) {
+                    log.warn("Error while adding node {} (ignored): {}", dstPath, e.toString());
+                    return;
                 }
-                track(dstPath, "%06d A", ++totalNodes);
-                isNew = true;
-            } catch (RepositoryException e) {
-                log.warn("Error while adding node {} (ignored): {}", dstPath, e.toString());
-                return;
-            }
-        }
-        if (useSysView) {
-            if (!skip) {
-                // track changes
-                trackTree(dst, isNew);
             }
-        } else {
-            Set<String> names = new HashSet<String>();
-            if (!skip && (overwrite || isNew)) {
-                if (!isNew) {
-                    for (NodeType nt: dst.getMixinNodeTypes()) {
-                        names.add(nt.getName());
+            // only used if the content is compared
+            boolean modified = isNew || useSysView;
+            if (useSysView) {
+                if (!skip) {
+                    // track changes
+                    trackTree(dst, isNew);
+                }
+            } else {
+                Set<String> names = new HashSet<String>();
+                if (!skip && (overwrite || isNew)) {
+                    if (!isNew) {
+                        for (NodeType nt: dst.getMixinNodeTypes()) {
+                            names.add(nt.getName());
+                        }
+                        // add mixins
+                        for (NodeType nt: src.getMixinNodeTypes()) {
+                            String mixName = checkNameSpace(nt.getName());
+                            if (!names.remove(mixName)) {
+                                dst.addMixin(nt.getName());
+                                modified = true;
+                            }
+                        }
+                        // handle removed mixins
+                        for (String mix: names) {
+                            dst.removeMixin(mix);
+                            modified = true;
+                        }
+                    } else {
+                        // add mixins
+                        for (NodeType nt: src.getMixinNodeTypes()) {
+                            dst.addMixin(checkNameSpace(nt.getName()));
+                        }
+                    }
+
+                    // add properties
+                    names.clear();
+                    if (!isNew) {
+                        PropertyIterator iter = dst.getProperties();
+                        while (iter.hasNext()) {
+                            names.add(checkNameSpace(iter.nextProperty().getName()));
+                        }
                     }
-                    // add mixins
-                    for (NodeType nt: src.getMixinNodeTypes()) {
-                        String mixName = checkNameSpace(nt.getName());
-                        if (!names.remove(mixName)) {
-                            dst.addMixin(nt.getName());
+                    PropertyIterator iter = src.getProperties();
+                    while (iter.hasNext()) {
+                        Property p = iter.nextProperty();
+                        String pName = checkNameSpace(p.getName());
+                        names.remove(pName);
+                        // ignore protected
+                        if (p.getDefinition().isProtected()) {
+                            continue;
+                        }
+                        // remove destination property to avoid type clashes
+                        if (dst.hasProperty(pName)) {
+                            Property dstP = dst.getProperty(pName);
+                            if (compareContent && !isNew && isEqual(p, dstP)) {
+                                continue;
+                            }
+                            dstP.remove();
+                        }
+                        modified = true;
+                        if (p.getDefinition().isMultiple()) {
+                            Value[] vs = p.getValues();
+                            dst.setProperty(pName, vs);
+                            for (long s: p.getLengths()) {
+                                addSize(s);
+                            }
+                        } else {
+                            Value v = p.getValue();
+                            dst.setProperty(pName, v);
+                            addSize(p.getLength());
                         }
                     }
-                    // handle removed mixins
-                    for (String mix: names) {
-                        dst.removeMixin(mix);
+                    // remove obsolete properties
+                    for (String pName: names) {
+                        try {
+                            // ignore protected. should not happen, unless the primary node type changes.
+                            Property dstP = dst.getProperty(pName);
+                            if (dstP.getDefinition().isProtected()) {
+                                continue;
+                            }
+                            dstP.remove();
+                            modified = true;
+                        } catch (RepositoryException e) {
+                            // ignore
+                        }
                     }
-                } else {
-                    // add mixins
-                    for (NodeType nt: src.getMixinNodeTypes()) {
-                        dst.addMixin(checkNameSpace(nt.getName()));
+                    if (compareContent && !isNew) {
+                        track(dstPath, modified ? "%06d U" : "%06d =", totalNodes.incrementAndGet());
                     }
                 }
 
-                // add properties
-                names.clear();
-                if (!isNew) {
-                    PropertyIterator iter = dst.getProperties();
-                    while (iter.hasNext()) {
-                        names.add(checkNameSpace(iter.nextProperty().getName()));
+                // descend
+                if (recursive && dst != null) {
+                    names.clear();
+                    if (overwrite && !isNew) {
+                        NodeIterator niter = dst.getNodes();
+                        while (niter.hasNext()) {
+                            names.add(checkNameSpace(niter.nextNode().getName()));
+                        }
                     }
-                }
-                PropertyIterator iter = src.getProperties();
-                while (iter.hasNext()) {
-                    Property p = iter.nextProperty();
-                    String pName = checkNameSpace(p.getName());
-                    names.remove(pName);
-                    // ignore protected
-                    if (p.getDefinition().isProtected()) {
-                        continue;
+                    if (parallelCopy != null && src.hasNodes() && parallelCopy.isWorkerIdle()) {
+                        handOverChildNodes(src, dst, names, overwrite || isNew);
+                        return;
                     }
-                    // remove destination property to avoid type clashes
-                    if (dst.hasProperty(pName)) {
-                        dst.getProperty(pName).remove();
+                    NodeIterator niter = src.getNodes();
+                    while (niter.hasNext()) {
+                        Node child = niter.nextNode();
+                        String cName = checkNameSpace(child.getName());
+                        names.remove(cName);
+                        copy(child, dst, cName, true);
                     }
-                    if (p.getDefinition().isMultiple()) {
-                        Value[] vs = p.getValues();
-                        dst.setProperty(pName, vs);
-                        for (long s: p.getLengths()) {
-                            totalSize+=s;
-                            currentSize+=s;
+                    if (resumeFrom == null) {
+                        // check if we need to order
+                        if (overwrite && !isNew && !noOrdering && src.getPrimaryNodeType().hasOrderableChildNodes()) {
+                            niter = src.getNodes();
+                            while (niter.hasNext()) {
+                                Node child = niter.nextNode();
+                                String name = child.getName();
+                                if (dst.hasNode(name)) {
+                                    dst.orderBefore(name, null);
+                                }
+                            }
                         }
-                    } else {
-                        Value v = p.getValue();
-                        dst.setProperty(pName, v);
-                        long s= p.getLength();
-                        totalSize+=s;
-                        currentSize+=s;
-                    }
-                }
-                // remove obsolete properties
-                for (String pName: names) {
-                    try {
-                        // ignore protected. should not happen, unless the primary node type changes.
-                        Property dstP = dst.getProperty(pName);
-                        if (dstP.getDefinition().isProtected()) {
-                            continue;
+
+                        // remove obsolete child nodes
+                        if (removeChildNodes(dst, names)) {
+                            modified = true;
                         }
-                        dstP.remove();
-                    } catch (RepositoryException e) {
-                        // ignore
                     }
                 }
             }
 
-            // descend
-            if (recursive && dst != null) {
-                names.clear();
-                if (overwrite && !isNew) {
-                    NodeIterator niter = dst.getNodes();
-                    while (niter.hasNext()) {
-                        names.add(checkNameSpace(niter.nextNode().getName()));
+            if (!skip && (modified || !compareContent)) {
+                addNode();
+            }
+
+            // check for save
+            if (numNodes >= getCurrentBatchSize()) {
+                try {
+                    track("", "Intermediate saving %d nodes (%d kB)...", numNodes, currentSize/1000);
+                    long now = System.currentTimeMillis();
+                    long pause = save();
+                    long end = System.currentTimeMillis();
+                    track("", "Done in %d ms. Total time: %d, total nodes %d, %d kB", end-now, end-start, totalNodes.get(), totalSize.get()/1000);
+                    if (throttle > 0) {
+                        track("", "Throttling enabled. Waiting %d second%s...", throttle, throttle == 1 ? "" : "s");
+                        sleep(throttle * 1000);
+                    }
+                    if (pause > 0) {
+                        track("", "Adaptive throttling. Waiting %d ms, next batch size %d...", pause, getCurrentBatchSize());
+                        sleep(pause);
                     }
+                    AdaptiveThrottle adaptiveThrottle = RepositoryCopier.this.adaptiveThrottle;
+                    while (adaptiveThrottle != null && !abort && adaptiveThrottle.isOverloaded()) {
+                        track("", "Destination overloaded. Waiting %d ms, next batch size %d...", LOAD_CHECK_INTERVAL, getCurrentBatchSize());
+                        sleep(LOAD_CHECK_INTERVAL);
+                    }
+                } catch (RepositoryException e) {
+                    log.error("Error during intermediate save ({}); try again later: {}", numNodes, e.toString());
                 }
-                NodeIterator niter = src.getNodes();
-                while (niter.hasNext()) {
-                    Node child = niter.nextNode();
-                    String cName = checkNameSpace(child.getName());
-                    names.remove(cName);
-                    copy(child, dst, cName, true);
+            }
+        }
+
+        /**
+         * Passes the child nodes of the given node to the other workers. The destination node is saved before, so that the
+         * other workers can add the child nodes with their own sessions. Its child nodes are ordered at the end of the copy.
+         */
+        private void handOverChildNodes(Node src, Node dst, Set<String> obsoleteNames, boolean order) throws RepositoryException {
+            List<WorkItem> items = new ArrayList<WorkItem>();
+            NodeIterator niter = src.getNodes();
+            while (niter.hasNext()) {
+                Node child = niter.nextNode();
+                String cName = checkNameSpace(child.getName());
+                obsoleteNames.remove(cName);
+                items.add(new WorkItem(child.getPath(), dst.getPath(), cName));
+            }
+            removeChildNodes(dst, obsoleteNames);
+            addNode();
+            save();
+            if (order && !noOrdering && src.getPrimaryNodeType().hasOrderableChildNodes()) {
+                parallelCopy.addNodeToOrder(src.getPath(), dst.getPath());
+            }
+            parallelCopy.add(items);
+        }
+
+        private boolean removeChildNodes(Node dst, Set<String> names) {
+            boolean removed = false;
+            for (String name: names) {
+                try {
+                    Node cNode = dst.getNode(name);
+                    track(cNode.getPath(), "%06d D", totalNodes.incrementAndGet());
+                    cNode.remove();
+                    removed = true;
+                } catch (RepositoryException e) {
+                    // ignore
                 }
-                if (resumeFrom == null) {
-                    // check if we need to order
-                    if (overwrite && !isNew && !noOrdering && src.getPrimaryNodeType().hasOrderableChildNodes()) {
-                        niter = src.getNodes();
-                        while (niter.hasNext()) {
-                            Node child = niter.nextNode();
-                            String name = child.getName();
-                            if (dst.hasNode(name)) {
-                                dst.orderBefore(name, null);
+            }
+            return removed;
+        }
+
+        private void addNode() {
+            numNodes++;
+            RepositoryCopier.this.numNodes.incrementAndGet();
+        }
+
+        private void addSize(long size) {
+            currentSize += size;
+            totalSize.addAndGet(size);
+            RepositoryCopier.this.currentSize.addAndGet(size);
+        }
+
+        /**
+         * Saves the destination session.
+         * @return the time in milliseconds to pause before the next batch
+         */
+        private long save() throws RepositoryException {
+            long now = System.currentTimeMillis();
+            dstSession.save();
+            long end = System.currentTimeMillis();
+            lastKnownGood = currentPath;
+            long pause = 0;
+            AdaptiveThrottle adaptiveThrottle = RepositoryCopier.this.adaptiveThrottle;
+            if (adaptiveThrottle != null) {
+                pause = adaptiveThrottle.onSave(numNodes, end - now, end);
+            }
+            RepositoryCopier.this.numNodes.addAndGet(-numNodes);
+            RepositoryCopier.this.currentSize.addAndGet(-currentSize);
+            numNodes = 0;
+            currentSize = 0;
+            return pause;
+        }
+
+        private void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+
+        private void trackTree(Node node, boolean isNew) throws RepositoryException {
+            NodeIterator iter = node.getNodes();
+            while (iter.hasNext()) {
+                Node child = iter.nextNode();
+                if (isNew) {
+                    track(child.getPath(), "%06d A", totalNodes.incrementAndGet());
+                } else {
+                    track(child.getPath(), "%06d U", totalNodes.incrementAndGet());
+                }
+                trackTree(child, isNew);
+            }
+        }
+
+        private String checkNameSpace(String name) {
+            try {
+                int idx = name.indexOf(':');
+                if (idx > 0) {
+                    String prefix = name.substring(0, idx);
+                    String mapped = prefixMapping.get(prefix);
+                    if (mapped == null) {
+                        // namespaces are registered globally, so only register them once for all workers
+                        synchronized (prefixMapping) {
+                            mapped = prefixMapping.get(prefix);
+                            if (mapped == null) {
+                                String uri = srcSession.getNamespaceURI(prefix);
+                                try {
+                                    mapped = dstSession.getNamespacePrefix(uri);
+                                } catch (NamespaceException e) {
+                                    mapped = prefix;
+                                    int i=0;
+                                    while (i>=0) {
+                                        try {
+                                            dstSession.getWorkspace().getNamespaceRegistry().registerNamespace(mapped, uri);
+                                            i=-1;
+                                        } catch (NamespaceException e1) {
+                                            mapped = prefix + i++;
+                                        }
+                                    }
+                                }
+                                prefixMapping.put(prefix, mapped);
                             }
                         }
                     }
+                    if (mapped.equals(prefix)) {
+                        return name;
+                    } else {
+                        return mapped + name.substring(idx);
+                    }
+                }
+            } catch (RepositoryException e) {
+                log.error("Error processing namespace for {}: {}", name, e.toString());
+            }
+            return name;
+        }
+    }
 
-                    // remove obsolete child nodes
-                    for (String name: names) {
-                        try {
-                            Node cNode = dst.getNode(name);
-                            track(cNode.getPath(), "%06d D", ++totalNodes);
-                            cNode.remove();
-                        } catch (RepositoryException e) {
-                            // ignore
+    /**
+     * A subtree to be copied by a worker.
+     */
+    private static final class WorkItem {
+
+        private final String srcPath;
+
+        private final String dstParentPath;
+
+        private final String dstName;
+
+        private WorkItem(String srcPath, String dstParentPath, String dstName) {
+            this.srcPath = srcPath;
+            this.dstParentPath = dstParentPath;
+            this.dstName = dstName;
+        }
+    }
+
+    /**
+     * Coordinates the workers of a parallel copy. The subtrees to copy are kept in a shared queue. As long as a worker is idle,
+     * the other workers hand over the child nodes of the node they are currently copying instead of descending into them.
+     */
+    private final class ParallelCopy {
+
+        private final int numWorkers;
+
+        private final Session srcSession;
+
+        private final Session dstSession;
+
+        private final Deque<WorkItem> queue = new ArrayDeque<WorkItem>();
+
+        /**
+         * the source and destination paths of the nodes whose child nodes were copied by other workers
+         */
+        private final List<String[]> nodesToOrder = Collections.synchronizedList(new ArrayList<String[]>());
+
+        private int numIdleWorkers;
+
+        private boolean done;
+
+        private RepositoryException error;
+
+        private ParallelCopy(int numWorkers, Session srcSession, Session dstSession) {
+            this.numWorkers = numWorkers;
+            this.srcSession = srcSession;
+            this.dstSession = dstSession;
+            // all workers are idle until they took their first subtree
+            this.numIdleWorkers = numWorkers;
+        }
+
+        private void copy(Node srcRoot, Node dstRoot, String dstName) throws RepositoryException {
+            // the root node is copied with the given sessions, its child nodes are handed over to the workers
+            Worker worker = new Worker(srcSession, dstSession, this);
+            worker.copy(srcRoot, dstRoot, dstName, true);
+            if (worker.numNodes > 0) {
+                worker.save();
+            }
+            List<Thread> workerThreads = new ArrayList<Thread>();
+            for (int i = 0; i < numWorkers; i++) {
+                Thread thread = new Thread(this::runWorker, "RepositoryCopier Worker " + i + " (" + srcRoot.getPath() + ")");
+                thread.start();
+                workerThreads.add(thread);
+            }
+            for (Thread thread: workerThreads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    abort();
+                    fail(new RepositoryException("Interrupted while waiting for workers", e));
+                }
+            }
+            synchronized (this) {
+                if (error != null) {
+                    throw error;
+                }
+            }
+            if (!abort) {
+                orderChildNodes(worker);
+            }
+        }
+
+        /**
+         * Restores the order of the child nodes which have been copied concurrently.
+         */
+        private void orderChildNodes(Worker worker) throws RepositoryException {
+            if (nodesToOrder.isEmpty()) {
+                return;
+            }
+            track("", "Ordering child nodes of %d nodes...", nodesToOrder.size());
+            // see changes of the workers
+            dstSession.refresh(false);
+            for (String[] paths: nodesToOrder) {
+                Node src = srcSession.getNode(paths[0]);
+                Node dst = dstSession.getNode(paths[1]);
+                NodeIterator niter = src.getNodes();
+                while (niter.hasNext()) {
+                    String name = worker.checkNameSpace(niter.nextNode().getName());
+                    if (dst.hasNode(name)) {
+                        dst.orderBefore(name, null);
+                    }
+                }
+                worker.addNode();
+                if (worker.numNodes >= getCurrentBatchSize()) {
+                    worker.save();
+                }
+            }
+            if (worker.numNodes > 0) {
+                worker.save();
+            }
+        }
+
+        private void runWorker() {
+            Session workerSrcSession = null;
+            Session workerDstSession = null;
+            try {
+                workerSrcSession = sessionFactory.createSourceSession();
+                workerDstSession = sessionFactory.createDestinationSession();
+                Worker worker = new Worker(workerSrcSession, workerDstSession, this);
+                WorkItem item;
+                while ((item = take()) != null) {
+                    try {
+                        if (!workerDstSession.nodeExists(item.dstParentPath)) {
+                            // see the parent node saved by another worker
+                            workerDstSession.refresh(true);
                         }
+                        worker.copy(workerSrcSession.getNode(item.srcPath), workerDstSession.getNode(item.dstParentPath), item.dstName, true);
+                    } finally {
+                        release();
                     }
                 }
+                if (worker.numNodes > 0) {
+                    track("", "Saving %d nodes...", worker.numNodes);
+                    worker.save();
+                }
+            } catch (RepositoryException e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                fail(new RepositoryException(e));
+            } finally {
+                if (workerSrcSession != null) {
+                    workerSrcSession.logout();
+                }
+                if (workerDstSession != null) {
+                    workerDstSession.logout();
+                }
             }
         }
 
-        if (!skip) {
-            numNodes++;
+        private synchronized boolean isWorkerIdle() {
+            return numIdleWorkers > 0 && queue.isEmpty();
         }
 
-        // check for save
-        if (numNodes >= batchSize) {
-            try {
-                track("", "Intermediate saving %d nodes (%d kB)...", numNodes, currentSize/1000);
-                long now = System.currentTimeMillis();
-                dstSession.save();
-                long end = System.currentTimeMillis();
-                track("", "Done in %d ms. Total time: %d, total nodes %d, %d kB", end-now, end-start, totalNodes, totalSize/1000);
-                lastKnownGood = currentPath;
-                numNodes = 0;
-                currentSize = 0;
-                if (throttle > 0) {
-                    track("", "Throttling enabled. Waiting %d second%s...", throttle, throttle == 1 ? "" : "s");
+        private synchronized void add(List<WorkItem> items) {
+            queue.addAll(items);
+            notifyAll();
+        }
+
+        private void addNodeToOrder(String srcPath, String dstPath) {
+            nodesToOrder.add(new String[]{srcPath, dstPath});
+        }
+
+        /**
+         * Returns the next subtree to copy. Blocks until a subtree is available or all workers are idle.
+         * @return the next subtree or {@code null} if the copy is done
+         */
+        private synchronized WorkItem take() {
+            while (queue.isEmpty() && !done) {
+                if (numIdleWorkers == numWorkers || abort) {
+                    done = true;
+                    notifyAll();
+                } else {
                     try {
-                        Thread.sleep(throttle * 1000);
+                        wait();
                     } catch (InterruptedException e) {
-                        // ignore
+                        Thread.currentThread().interrupt();
+                        done = true;
+                        notifyAll();
                     }
                 }
-            } catch (RepositoryException e) {
-                log.error("Error during intermediate save ({}); try again later: {}", numNodes, e.toString());
             }
+            if (done || abort) {
+                return null;
+            }
+            numIdleWorkers--;
+            return queue.pollFirst();
+        }
+
+        /**
+         * Marks the calling worker as idle again.
+         */
+        private synchronized void release() {
+            numIdleWorkers++;
+            notifyAll();
+        }
+
+        private synchronized void fail(RepositoryException e) {
+            if (error == null) {
+                error = e;
+            }
+            done = true;
+            notifyAll();
         }
     }
 
@@ -517,18 +1111,73 @@ public class RepositoryCopier {
         }
     }
 
-    private void trackTree(Node node, boolean isNew) throws RepositoryException {
-        NodeIterator iter = node.getNodes();
-        while (iter.hasNext()) {
-            Node child = iter.nextNode();
-            if (isNew) {
-                track(child.getPath(), "%06d A", ++totalNodes);
-            } else {
-                track(child.getPath(), "%06d U", ++totalNodes);
+    /**
+     * Checks if the {@code src} property has the same type and values as the {@code dst} property.
+     *
+     * @param src source property
+     * @param dst destination property
+     * @return {@code true} if the properties are equal
+     */
+    private static boolean isEqual(Property src, Property dst) throws RepositoryException {
+        if (src.getType() != dst.getType() || src.isMultiple() != dst.isMultiple()) {
+            return false;
+        }
+        if (!src.isMultiple()) {
+            return isEqual(src.getValue(), dst.getValue());
+        }
+        Value[] srcValues = src.getValues();
+        Value[] dstValues = dst.getValues();
+        if (srcValues.length != dstValues.length) {
+            return false;
+        }
+        for (int i = 0; i < srcValues.length; i++) {
+            if (!isEqual(srcValues[i], dstValues[i])) {
+                return false;
             }
-            trackTree(child, isNew);
         }
+        return true;
     }
+
+    private static boolean isEqual(Value src, Value dst) throws RepositoryException {
+        // values of different types can have the same string representation, e.g. a string and a path
+        if (src.getType() != dst.getType()) {
+            return false;
+        }
+        if (src.getType() != PropertyType.BINARY) {
+            return src.getString().equals(dst.getString());
+        }
+        // don't read the binaries if both repositories provide a content identity
+        String srcId = src instanceof JackrabbitValue ? ((JackrabbitValue) src).getContentIdentity() : null;
+        String dstId = dst instanceof JackrabbitValue ? ((JackrabbitValue) dst).getContentIdentity() : null;
+        if (srcId != null && dstId != null) {
+            return srcId.equals(dstId);
+        }
+        Binary srcBin = src.getBinary();
+        Binary dstBin = dst.getBinary();
+        try {
+            return srcBin.getSize() == dstBin.getSize() && isEqual(srcBin, dstBin);
+        } finally {
+            srcBin.dispose();
+            dstBin.dispose();
+        }
+    }
+
+    private static boolean isEqual(Binary src, Binary dst) throws RepositoryException {
+        try (InputStream srcIn = new BufferedInputStream(src.getStream());
+             InputStream dstIn = new BufferedInputStream(dst.getStream())) {
+            int b;
+            do {
+                b = srcIn.read();
+                if (b != dstIn.read()) {
+                    return false;
+                }
+            } while (b >= 0);
+            return true;
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to compare binaries", e);
+        }
+    }
+
     /**
      * Checks if {@code src} node is newer than {@code dst} node.
      * this only applies if the nodes have either a "jcr:lastModified" or
@@ -557,45 +1206,12 @@ public class RepositoryCopier {
         }
     }
 
-    private String checkNameSpace(String name) {
-        try {
-            int idx = name.indexOf(':');
-            if (idx > 0) {
-                String prefix = name.substring(0, idx);
-                String mapped = prefixMapping.get(prefix);
-                if (mapped == null) {
-                    String uri = srcSession.getNamespaceURI(prefix);
-                    try {
-                        mapped = dstSession.getNamespacePrefix(uri);
-                    } catch (NamespaceException e) {
-                        mapped = prefix;
-                        int i=0;
-                        while (i>=0) {
-                            try {
-                                dstSession.getWorkspace().getNamespaceRegistry().registerNamespace(mapped, uri);
-                                i=-1;
-                            } catch (NamespaceException e1) {
-                                mapped = prefix + i++;
-                            }
-                        }
-                    }
-                    prefixMapping.put(prefix, mapped);
-                }
-                if (mapped.equals(prefix)) {
-                    return name;
-                } else {
-                    return mapped + name.substring(idx);
-                }
-            }
-        } catch (RepositoryException e) {
-            log.error("Error processing namespace for {}: {}", name, e.toString());
-        }
-        return name;
-    }
-
     private void track(String path, String fmt, Object ... args) {
         if (tracker != null) {
-            tracker.onMessage(ProgressTrackerListener.Mode.TEXT, String.format(fmt, args), path);
+            // the tracker is called by all workers
+            synchronized (tracker) {
+                tracker.onMessage(ProgressTrackerListener.Mode.TEXT, String.format(fmt, args), path);
+            }
         }
     }
 
@@ -607,4 +1223,18 @@ public class RepositoryCopier {
         return credentialsProvider;
     }
 
-}
\ No newline at end of file
+    /**
+     * Sets the factory for the sessions of the workers of a copy with multiple threads (see {@link #setThreads(int)}).
+     * If copying between repository addresses, the sessions are created with the same credentials by default.
+     *
+     * @param sessionFactory the session factory
+     */
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.fs.impl;
+
+import java.util.Arrays;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.nodetype.NodeType;
+
+import org.apache.jackrabbit.vault.fs.api.Aggregator;
+import org.apache.jackrabbit.vault.fs.filter.NameItemFilter;
+import org.apache.jackrabbit.vault.fs.filter.NodeTypeItemFilter;
+import org.apache.jackrabbit.vault.fs.impl.aggregator.GenericAggregator;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AggregatorProviderTest {
+
+    @Test
+    public void testDecisionIsMemoized() throws RepositoryException {
+        GenericAggregator folder = new GenericAggregator();
+        folder.getMatchFilter().addInclude(new NodeTypeItemFilter("nt:folder", true));
+        GenericAggregator def = new GenericAggregator();
+        AggregatorProvider provider = new AggregatorProvider(Arrays.<Aggregator>asList(folder, def));
+
+        Node folderNode = mockNode("/a", "a", "nt:folder");
+        Node otherNode = mockNode("/b", "b", "nt:unstructured");
+
+        assertSame(folder, provider.getAggregator(folderNode, "/a"));
+        assertSame(folder, provider.getAggregator(folderNode, "/a"));
+        assertSame(def, provider.getAggregator(otherNode, "/b"));
+        assertSame(def, provider.getAggregator(otherNode, "/b"));
+
+        verify(folderNode, times(1)).isNodeType("nt:folder");
+        verify(otherNode, times(1)).isNodeType("nt:folder");
+
+        provider.invalidate();
+        assertSame(folder, provider.getAggregator(folderNode, "/a"));
+        verify(folderNode, times(2)).isNodeType("nt:folder");
+    }
+
+    @Test
+    public void testNameDependentDecision() throws RepositoryException {
+        GenericAggregator named = new GenericAggregator();
+        named.getMatchFilter().addInclude(new NameItemFilter("foo"));
+        GenericAggregator def = new GenericAggregator();
+        AggregatorProvider provider = new AggregatorProvider(Arrays.<Aggregator>asList(named, def));
+
+        assertSame(named, provider.getAggregator(mockNode("/foo", "foo", "nt:unstructured"), "/foo"));
+        assertSame(def, provider.getAggregator(mockNode("/bar", "bar", "nt:unstructured"), "/bar"));
+        assertSame(named, provider.getAggregator(mockNode("/bar/foo", "foo", "nt:unstructured"), "/bar/foo"));
+    }
+
+    @Test
+    public void testPathDependentFilterIsNotIndexed() throws RepositoryException {
+        GenericAggregator scoped = new GenericAggregator();
+        scoped.getMatchFilter().setRoot("/content");
+        GenericAggregator def = new GenericAggregator();
+        AggregatorProvider provider = new AggregatorProvider(Arrays.<Aggregator>asList(scoped, def));
+
+        assertSame(scoped, provider.getAggregator(mockNode("/content/a", "a", "nt:unstructured"), "/content/a"));
+        assertSame(def, provider.getAggregator(mockNode("/libs/a", "a", "nt:unstructured"), "/libs/a"));
+    }
+
+    private static Node mockNode(String path, String name, String primaryType) throws RepositoryException {
+        NodeType nt = Mockito.mock(NodeType.class);
+        Mockito.when(nt.getName()).thenReturn(primaryType);
+        Node node = Mockito.mock(Node.class);
+        Mockito.when(node.getPath()).thenReturn(path);
+        Mockito.when(node.getName()).thenReturn(name);
+        Mockito.when(node.isNode()).thenReturn(true);
+        Mockito.when(node.getPrimaryNodeType()).thenReturn(nt);
+        Mockito.when(node.getMixinNodeTypes()).thenReturn(new NodeType[0]);
+        Mockito.when(node.isNodeType(primaryType)).thenReturn(true);
+        return node;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.fs.impl;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BinaryReferenceManifestTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        BinaryReferenceManifest manifest = new BinaryReferenceManifest();
+        try {
+            manifest.add("/content/a/jcr:data", "ref-a:1234", 100);
+            manifest.add("/content/b b/jcr:data", "ref-b:5678", -1);
+            assertEquals(2, manifest.size());
+
+            List<String> lines;
+            try (InputStream in = manifest.getInputStream()) {
+                lines = IOUtils.readLines(in, StandardCharsets.UTF_8);
+            }
+            assertEquals(2, lines.size());
+            BinaryReferenceManifest.Entry e = BinaryReferenceManifest.Entry.parse(lines.get(1));
+            assertEquals("/content/b b/jcr:data", e.getPath());
+            assertEquals("ref-b:5678", e.getReference());
+            assertEquals(-1, e.getLength());
+        } finally {
+            manifest.clear();
+        }
+        assertEquals(0, manifest.size());
+    }
+
+    @Test
+    public void testParseMalformed() {
+        assertNull(BinaryReferenceManifest.Entry.parse(""));
+        assertNull(BinaryReferenceManifest.Entry.parse("ref\t10"));
+        assertNull(BinaryReferenceManifest.Entry.parse("ref\tabc\t/foo"));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.fs.impl.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.jackrabbit.vault.fs.io.DocViewFormat;
+import org.apache.jackrabbit.vault.util.xml.serialize.FormattingXmlStreamWriter;
+import org.apache.jackrabbit.vault.util.xml.serialize.OutputFormat;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DocViewXmlStreamWriterTest {
+
+    private static final String JCR_NS = "http://www.jcp.org/jcr/1.0";
+
+    private static final String SLING_NS = "http://sling.apache.org/jcr/sling/1.0";
+
+    @Test
+    public void testSameOutputAsFormattingWriter() throws Exception {
+        OutputFormat format = new DocViewFormat().getXmlOutputFormat();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (FormattingXmlStreamWriter writer = FormattingXmlStreamWriter.create(expected, format)) {
+            writeDocument(writer);
+        }
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        // use a small buffer to test the flushing
+        try (DocViewXmlStreamWriter writer = new DocViewXmlStreamWriter(actual, format, 64)) {
+            writeDocument(writer);
+        }
+        assertEquals(new String(expected.toByteArray(), StandardCharsets.UTF_8), new String(actual.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMinimalDocument() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DocViewXmlStreamWriter writer = new DocViewXmlStreamWriter(out, new DocViewFormat().getXmlOutputFormat())) {
+            writer.writeStartDocument();
+            writer.writeStartElement("jcr", "root", JCR_NS);
+            writer.writeNamespace("jcr", JCR_NS);
+            writer.writeEndElement();
+            writer.writeEndDocument();
+        }
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\"/>\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static void writeDocument(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartDocument();
+        writer.writeStartElement("jcr", "root", JCR_NS);
+        writer.writeNamespace("jcr", JCR_NS);
+        writer.writeNamespace("sling", SLING_NS);
+        writer.writeAttribute("jcr", JCR_NS, "primaryType", "nt:unstructured");
+        writer.writeAttribute("sling", SLING_NS, "resourceType", "app/components/page");
+        writer.writeAttribute("title", "Quotes \" & <tags> and\nnew\tlines\r");
+        writer.writeAttribute("i18n", "Grüße 日本 😀");
+
+        // single attribute
+        writer.writeStartElement("single");
+        writer.writeAttribute("jcr", JCR_NS, "primaryType", "nt:unstructured");
+        writer.writeEndElement();
+
+        // nested elements
+        writer.writeStartElement("parent");
+        writer.writeAttribute("jcr", JCR_NS, "primaryType", "nt:unstructured");
+        writer.writeAttribute("a", "1");
+        writer.writeStartElement("child");
+        writer.writeAttribute("jcr", JCR_NS, "primaryType", "nt:unstructured");
+        writer.writeAttribute("b", "2");
+        writer.writeStartElement("", "ordering", "");
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
+
+        // no attributes
+        writer.writeStartElement("empty");
+        writer.writeEndElement();
+
+        writer.writeEndElement();
+        writer.writeEndDocument();
+    }
+}
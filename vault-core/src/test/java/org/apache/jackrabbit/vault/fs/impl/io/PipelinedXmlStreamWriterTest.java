@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.fs.impl.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.jackrabbit.vault.fs.io.DocViewFormat;
+import org.apache.jackrabbit.vault.util.xml.serialize.FormattingXmlStreamWriter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class PipelinedXmlStreamWriterTest {
+
+    @Test
+    public void testSmallDocument() throws Exception {
+        assertEquals(writeDirect(3), writePipelined(3, PipelinedXmlStreamWriter.DEFAULT_CHUNK_SIZE));
+    }
+
+    @Test
+    public void testLargeDocument() throws Exception {
+        // use small chunks to force the writer thread and chunk recycling
+        assertEquals(writeDirect(5000), writePipelined(5000, 7));
+    }
+
+    @Test
+    public void testFailingDelegate() throws Exception {
+        XMLStreamWriter writer = mock(XMLStreamWriter.class);
+        doThrow(new XMLStreamException("failed")).when(writer).writeStartElement(anyString());
+        PipelinedXmlStreamWriter pipeline = new PipelinedXmlStreamWriter(writer, 7, 2);
+        try {
+            try {
+                writeDocument(pipeline, 5000);
+            } finally {
+                pipeline.close();
+            }
+            fail("error of the delegate must be propagated");
+        } catch (XMLStreamException e) {
+            // expected
+        }
+        for (Thread t: Thread.getAllStackTraces().keySet()) {
+            assertFalse("writer thread must be terminated", "Vault DocView Writer".equals(t.getName()) && t.isAlive());
+        }
+    }
+
+    private static String writeDirect(int numNodes) throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FormattingXmlStreamWriter writer = FormattingXmlStreamWriter.create(out, new DocViewFormat().getXmlOutputFormat())) {
+            writeDocument(writer, numNodes);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String writePipelined(int numNodes, int chunkSize) throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FormattingXmlStreamWriter writer = FormattingXmlStreamWriter.create(out, new DocViewFormat().getXmlOutputFormat())) {
+            try (PipelinedXmlStreamWriter pipeline = new PipelinedXmlStreamWriter(writer, chunkSize, 2)) {
+                writeDocument(pipeline, numNodes);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeDocument(XMLStreamWriter writer, int numNodes) throws XMLStreamException {
+        writer.writeStartDocument();
+        writer.writeStartElement("jcr", "root", "http://www.jcp.org/jcr/1.0");
+        writer.writeNamespace("jcr", "http://www.jcp.org/jcr/1.0");
+        writer.writeAttribute("jcr", "http://www.jcp.org/jcr/1.0", "primaryType", "nt:unstructured");
+        for (int i = 0; i < numNodes; i++) {
+            writer.writeStartElement("node" + i);
+            writer.writeAttribute("jcr", "http://www.jcp.org/jcr/1.0", "primaryType", "nt:unstructured");
+            writer.writeAttribute("title", "Title <" + i + "> & \"more\"");
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+    }
+}
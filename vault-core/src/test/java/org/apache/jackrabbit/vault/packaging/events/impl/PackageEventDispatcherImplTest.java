@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.events.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.events.BatchPackageEventListener;
+import org.apache.jackrabbit.vault.packaging.events.PackageEvent;
+import org.apache.jackrabbit.vault.packaging.events.PackageEventListener;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Testcase for {@link PackageEventDispatcherImpl}
+ */
+public class PackageEventDispatcherImplTest {
+
+    private static final int NUM_EVENTS = 50;
+
+    @Test
+    public void testSynchronous() {
+        PackageEventDispatcherImpl dispatcher = new PackageEventDispatcherImpl();
+        RecordingListener listener = new RecordingListener();
+        dispatcher.bindPackageEventListener(listener, Collections.singletonMap("component.id", (Object) "1"));
+        dispatch(dispatcher);
+
+        assertEvents(listener.events);
+        assertEquals(Collections.singletonList(Thread.currentThread()), listener.threads);
+        assertEquals(NUM_EVENTS, dispatcher.getStatistics().get(0).getEventCount());
+    }
+
+    @Test
+    public void testAsynchronous() {
+        PackageEventDispatcherImpl dispatcher = new PackageEventDispatcherImpl();
+        PackageEventDispatcherImpl.Config config = mock(PackageEventDispatcherImpl.Config.class);
+        when(config.asynchronous()).thenReturn(true);
+        when(config.queueSize()).thenReturn(NUM_EVENTS);
+        when(config.batchSize()).thenReturn(10);
+        RecordingListener listener = new RecordingListener();
+        BatchListener batchListener = new BatchListener();
+        dispatcher.bindPackageEventListener(listener, Collections.singletonMap("component.id", (Object) "1"));
+        dispatcher.activate(config);
+        dispatcher.bindPackageEventListener(batchListener, Collections.singletonMap("component.id", (Object) "2"));
+        dispatch(dispatcher);
+        // all events are queued while the batch listener is blocked in its first delivery
+        batchListener.release.countDown();
+        dispatcher.deactivate();
+
+        assertEvents(listener.events);
+        assertEquals(1, listener.threads.size());
+        assertNotSame(Thread.currentThread(), listener.threads.get(0));
+
+        assertEvents(batchListener.events);
+        // the first batch contains at most 10 events, the remaining ones are delivered in full batches
+        assertTrue("events are delivered in batches", batchListener.batches > 1 && batchListener.batches <= 6);
+        for (PackageEventDispatcherImpl.ListenerStatistics stats: dispatcher.getStatistics()) {
+            assertEquals(NUM_EVENTS, stats.getEventCount());
+            assertEquals(0, stats.getQueueSize());
+        }
+    }
+
+    @Test
+    public void testDropAfterDeactivate() {
+        PackageEventDispatcherImpl dispatcher = new PackageEventDispatcherImpl();
+        PackageEventDispatcherImpl.Config config = mock(PackageEventDispatcherImpl.Config.class);
+        when(config.asynchronous()).thenReturn(true);
+        when(config.queueSize()).thenReturn(NUM_EVENTS);
+        when(config.batchSize()).thenReturn(10);
+        RecordingListener listener = new RecordingListener();
+        dispatcher.activate(config);
+        dispatcher.bindPackageEventListener(listener, Collections.singletonMap("component.id", (Object) "1"));
+        dispatcher.deactivate();
+
+        // events are never delivered outside of the stopped delivery thread
+        dispatcher.dispatch(PackageEvent.Type.INSTALL, PackageId.fromString("my_packages:test"), null);
+        assertTrue("no events delivered", listener.events.isEmpty());
+        PackageEventDispatcherImpl.ListenerStatistics stats = dispatcher.getStatistics().get(0);
+        assertEquals(0, stats.getEventCount());
+        assertEquals(1, stats.getDroppedCount());
+    }
+
+    private static void dispatch(PackageEventDispatcher dispatcher) {
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            dispatcher.dispatch(PackageEvent.Type.INSTALL, PackageId.fromString("my_packages:test-" + i), null);
+        }
+    }
+
+    private static void assertEvents(List<PackageEvent> events) {
+        assertEquals(NUM_EVENTS, events.size());
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            assertEquals("events are ordered", "test-" + i, events.get(i).getId().getName());
+        }
+    }
+
+    private static class RecordingListener implements PackageEventListener {
+
+        private final List<PackageEvent> events = Collections.synchronizedList(new ArrayList<PackageEvent>());
+
+        private final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        @Override
+        public void onPackageEvent(PackageEvent event) {
+            events.add(event);
+            if (!threads.contains(Thread.currentThread())) {
+                threads.add(Thread.currentThread());
+            }
+        }
+    }
+
+    private static class BatchListener implements BatchPackageEventListener {
+
+        private final List<PackageEvent> events = Collections.synchronizedList(new ArrayList<PackageEvent>());
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private volatile int batches;
+
+        @Override
+        public void onPackageEvents(List<PackageEvent> batch) {
+            batches++;
+            events.addAll(batch);
+            try {
+                // block until the events are queued up
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onPackageEvent(PackageEvent event) {
+            onPackageEvents(Collections.singletonList(event));
+        }
+    }
+}
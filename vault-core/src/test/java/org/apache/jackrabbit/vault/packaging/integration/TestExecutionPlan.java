@@ -22,6 +22,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 
+import javax.jcr.RepositoryException;
+
 import org.apache.jackrabbit.vault.packaging.CyclicDependencyException;
 import org.apache.jackrabbit.vault.packaging.DependencyException;
 import org.apache.jackrabbit.vault.packaging.PackageException;
@@ -301,6 +303,41 @@ public class TestExecutionPlan extends IntegrationTestBase {
         assertTrue("package A is not removed", registry.contains(TEST_PACKAGE_ID_C_10));
     }
 
+    /**
+     * Tests that concurrent tasks do not share the session of the registry
+     */
+    @Test
+    public void testConcurrentTasks() throws IOException, PackageException, RepositoryException {
+        PackageId idA = registry.register(getStream(TEST_PACKAGE_A_10), false);
+        PackageId idB = registry.register(getStream(TEST_PACKAGE_B_10), false);
+        PackageId idC = registry.register(getStream(TEST_PACKAGE_C_10), false);
+        PackageId idD = registry.register(getStream(TEST_PACKAGE_D_10), false);
+        PackageId idE = registry.register(getStream(TEST_PACKAGE_E_10), false);
+        PackageId idTmp = registry.register(getStream("/test-packages/tmp.zip"), false);
+
+        // removals do not modify content and run concurrently with each other and the installations
+        ExecutionPlan plan = registry.createExecutionPlan()
+                .addTask().with(idA).with(PackageTask.Type.EXTRACT)
+                .addTask().with(idTmp).with(PackageTask.Type.EXTRACT)
+                .addTask().with(idD).with(PackageTask.Type.REMOVE)
+                .addTask().with(idE).with(PackageTask.Type.REMOVE)
+                .withParallelism(4)
+                .with(admin)
+                .with(getDefaultOptions().getListener())
+                .execute();
+        assertTrue("plan is finished", plan.isExecuted());
+        assertFalse("plan has no errors", plan.hasErrors());
+
+        admin.refresh(false);
+        assertTrue("package A is installed", registry.open(idA).isInstalled());
+        assertTrue("package B is installed", registry.open(idB).isInstalled());
+        assertTrue("package C is installed", registry.open(idC).isInstalled());
+        assertTrue("package tmp is installed", registry.open(idTmp).isInstalled());
+        assertFalse("package D is removed", registry.contains(idD));
+        assertFalse("package E is removed", registry.contains(idE));
+        assertNodeExists("/tmp/foo/bar/tobi");
+    }
+
     @Test
     public void testExtractTask() throws IOException, PackageException {
         PackageId idA = registry.register(getStream(TEST_PACKAGE_A_10), false);
@@ -28,6 +28,10 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.jcr.RepositoryException;
 
@@ -44,6 +48,7 @@ import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.registry.DependencyReport;
 import org.apache.jackrabbit.vault.packaging.registry.ExecutionPlan;
 import org.apache.jackrabbit.vault.packaging.registry.ExecutionPlanBuilder;
+import org.apache.jackrabbit.vault.packaging.registry.PackageMetaData;
 import org.apache.jackrabbit.vault.packaging.registry.PackageTask;
 import org.apache.jackrabbit.vault.packaging.registry.RegisteredPackage;
 import org.apache.jackrabbit.vault.packaging.registry.PackageTask.Type;
@@ -120,6 +125,28 @@ public class TestFSPackageRegistry extends IntegrationTestBase {
         }
     }
 
+    /**
+     * reads the meta data of the registered packages
+     */
+    @Test
+    public void testMetaData() throws IOException, PackageException {
+        PackageId id = registry.register(getStream("/test-packages/tmp.zip"), false);
+
+        List<PackageMetaData> metaData = registry.getMetaData(null);
+        assertEquals("meta data of 1 package", 1, metaData.size());
+        PackageMetaData md = metaData.get(0);
+        assertEquals("package id", id, md.getId());
+        assertFalse("Package is not installed", md.isInstalled());
+        assertNull("no installation time", md.getInstallationTime());
+        assertEquals("filter roots", Collections.singletonList("/tmp"), md.getFilterRoots());
+        try (RegisteredPackage pkg = registry.open(id)) {
+            assertEquals("package size", pkg.getSize(), md.getSize());
+        }
+
+        PackageId unknown = PackageId.fromString("my_packages:unknown");
+        assertTrue("unknown packages are omitted", registry.getMetaData(Collections.singletonList(unknown)).isEmpty());
+    }
+
     /**
      * registers a package twice via stream (replace = false)
      */
@@ -538,6 +565,29 @@ public class TestFSPackageRegistry extends IntegrationTestBase {
         assertTrue(registry.open(idC).isInstalled());
     }
     
+    @Test
+    public void testExecutionPlanParallelInstallation() throws IOException, PackageException, RepositoryException {
+        // a depends on b and c, b depends on c, tmp is independent
+        PackageId idA = registry.register(getStream(TEST_PACKAGE_A_10), false);
+        PackageId idB = registry.register(getStream(TEST_PACKAGE_B_10), false);
+        PackageId idC = registry.register(getStream(TEST_PACKAGE_C_10), false);
+        PackageId idTmp = registry.register(getStream("/test-packages/tmp.zip"), false);
+
+        ExecutionPlanBuilder builder = registry.createExecutionPlan();
+        builder.addTask().with(idA).with(PackageTask.Type.EXTRACT);
+        builder.addTask().with(idTmp).with(PackageTask.Type.EXTRACT);
+        ExecutionPlan plan = builder.withParallelism(4).with(admin).execute();
+        assertFalse(plan.hasErrors());
+        assertTrue(plan.isExecuted());
+
+        assertTrue(registry.open(idA).isInstalled());
+        assertTrue(registry.open(idB).isInstalled());
+        assertTrue(registry.open(idC).isInstalled());
+        assertTrue(registry.open(idTmp).isInstalled());
+        admin.refresh(false);
+        assertNodeExists("/tmp/foo/bar/tobi");
+    }
+
     @Test
     public void testExtractSubPackage() throws IOException, PackageException, RepositoryException {
         registry.register(getStream("/test-packages/subtest.zip"), false);
@@ -546,6 +596,89 @@ public class TestFSPackageRegistry extends IntegrationTestBase {
         assertTrue(registry.contains(PACKAGE_ID_SUB_B));
     }
 
+    @Test
+    public void testRegisterSubPackagesFromStream() throws IOException, PackageException {
+        PackageId id = registry.register(getStream("/test-packages/subtest.zip"), false);
+
+        FSInstallState state = registry.getInstallState(id);
+        assertEquals("sub packages", 2, state.getSubPackages().size());
+        assertTrue(state.getSubPackages().containsKey(PACKAGE_ID_SUB_A));
+        assertTrue(state.getSubPackages().containsKey(PACKAGE_ID_SUB_B));
+        assertEquals("size", state.getFilePath().toFile().length(), state.getSize());
+
+        FSInstallState subState = registry.getInstallState(PACKAGE_ID_SUB_A);
+        assertTrue("sub package file exists", subState.getFilePath().toFile().isFile());
+        assertEquals("size", subState.getFilePath().toFile().length(), subState.getSize());
+
+        // no temporary upload files are left behind
+        assertEquals(0, FileUtils.listFiles(registryHome, new String[]{"tmp"}, true).size());
+    }
+
+    @Test
+    public void testPackageIndex() throws IOException, PackageException {
+        PackageId id = registry.register(getStream("/test-packages/tmp.zip"), false);
+        assertTrue("index file exists", new File(registryHome, ".index").isFile());
+
+        // a new registry is initialized from the index
+        FSPackageRegistry other = new FSPackageRegistry(registryHome);
+        assertTrue(other.contains(id));
+        assertFalse(other.open(id).isInstalled());
+
+        // modifications of the meta data file are detected
+        File metaFile = new File(registryHome, other.getInstallationPath(id) + ".xml");
+        FSInstallState state = other.getInstallState(id);
+        new FSInstallState(id, FSPackageStatus.EXTRACTED)
+                .withFilePath(state.getFilePath())
+                .withFilter(state.getFilter())
+                .withSize(state.getSize())
+                .save(metaFile);
+        metaFile.setLastModified(metaFile.lastModified() + 10000);
+        assertTrue(other.open(id).isInstalled());
+        assertTrue(new FSPackageRegistry(registryHome).open(id).isInstalled());
+
+        // removed meta data files are detected
+        metaFile.delete();
+        assertFalse(new FSPackageRegistry(registryHome).contains(id));
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        String[] names = {TEST_PACKAGE_A_10, TEST_PACKAGE_B_10, TEST_PACKAGE_C_10, "/test-packages/tmp.zip"};
+        ExecutorService executor = Executors.newFixedThreadPool(names.length);
+        try {
+            List<Future<PackageId>> futures = new LinkedList<>();
+            for (final String name : names) {
+                futures.add(executor.submit(new Callable<PackageId>() {
+                    @Override
+                    public PackageId call() throws Exception {
+                        return registry.register(getStream(name), false);
+                    }
+                }));
+            }
+            for (Future<PackageId> future : futures) {
+                PackageId id = future.get();
+                assertTrue(registry.contains(id));
+                assertTrue(new FSPackageRegistry(registryHome).contains(id));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(names.length, new FSPackageRegistry(registryHome).packages().size());
+    }
+
+    @Test
+    public void testResolveCacheIsInvalidated() throws IOException, PackageException {
+        Dependency dep = Dependency.fromString("my_packages:test_c");
+        assertNull(registry.resolve(dep, false));
+
+        PackageId idC = registry.register(getStream(TEST_PACKAGE_C_10), false);
+        assertEquals(idC, registry.resolve(dep, false));
+        assertNull(registry.resolve(dep, true));
+
+        registry.remove(idC);
+        assertNull(registry.resolve(dep, false));
+    }
+
     @Test
     public void testUsages() throws Exception {
         PackageId idB = registry.register(getStream(TEST_PACKAGE_B_10), false);
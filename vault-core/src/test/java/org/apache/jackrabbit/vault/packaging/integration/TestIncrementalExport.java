@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.integration;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Properties;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.commons.JcrUtils;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.DefaultMetaInf;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.apache.jackrabbit.vault.fs.io.ExportInfo;
+import org.apache.jackrabbit.vault.packaging.ExportOptions;
+import org.apache.jackrabbit.vault.packaging.PackageException;
+import org.apache.jackrabbit.vault.packaging.VaultPackage;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@code TestIncrementalExport} tests the export of the aggregates that changed since a previous export.
+ */
+public class TestIncrementalExport extends IntegrationTestBase {
+
+    private static final String ROOT = "/tmp/incremental";
+
+    private static final String JCR_ROOT = "jcr_root" + ROOT;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        clean("/tmp");
+        Node root = JcrUtils.getOrCreateByPath(ROOT, JcrConstants.NT_FOLDER, admin);
+        putFile(root, "a.txt", "a", 1);
+        putFile(root, "b.txt", "b", 1);
+        putFile(root, "c.txt", "c", 1);
+        admin.save();
+    }
+
+    @Test
+    public void exportAndImportChanges() throws IOException, RepositoryException, PackageException {
+        File base = assemblePackage(null);
+        File incremental = null;
+        try {
+            ExportInfo baseInfo;
+            try (VaultPackage vp = packMgr.open(base)) {
+                baseInfo = ExportInfo.load(vp.getArchive());
+            }
+            assertNotNull(baseInfo);
+            assertEquals(ExportInfo.Type.ADD, baseInfo.getDigests().get(ROOT + "/a.txt").type);
+
+            // modify the content
+            Node root = admin.getNode(ROOT);
+            putFile(root, "b.txt", "b modified", 2);
+            root.getNode("c.txt").remove();
+            putFile(root, "d.txt", "d", 2);
+            admin.save();
+
+            incremental = assemblePackage(baseInfo);
+            try (VaultPackage vp = packMgr.open(incremental)) {
+                assertNull(vp.getArchive().getEntry(JCR_ROOT + "/a.txt"));
+                assertNotNull(vp.getArchive().getEntry(JCR_ROOT + "/b.txt"));
+                assertNotNull(vp.getArchive().getEntry(JCR_ROOT + "/d.txt"));
+
+                ExportInfo info = ExportInfo.load(vp.getArchive());
+                assertNotNull(info);
+                assertEquals(ExportInfo.Type.NOP, info.getDigests().get(ROOT + "/a.txt").type);
+                assertEquals(ExportInfo.Type.UPDATE, info.getDigests().get(ROOT + "/b.txt").type);
+                assertEquals(ExportInfo.Type.DELETE, info.getDigests().get(ROOT + "/c.txt").type);
+                assertEquals(ExportInfo.Type.ADD, info.getDigests().get(ROOT + "/d.txt").type);
+            }
+
+            // restore the base and apply the changes
+            clean("/tmp");
+            try (VaultPackage vp = packMgr.open(base)) {
+                vp.extract(admin, getDefaultOptions());
+            }
+            assertNodeExists(ROOT + "/c.txt");
+            try (VaultPackage vp = packMgr.open(incremental)) {
+                vp.extract(admin, getDefaultOptions());
+            }
+            assertEquals("a", getContent(ROOT + "/a.txt"));
+            assertEquals("b modified", getContent(ROOT + "/b.txt"));
+            assertNodeMissing(ROOT + "/c.txt");
+            assertEquals("d", getContent(ROOT + "/d.txt"));
+        } finally {
+            base.delete();
+            if (incremental != null) {
+                incremental.delete();
+            }
+        }
+    }
+
+    private static void putFile(Node parent, String name, String content, int day) throws RepositoryException {
+        Calendar lastModified = Calendar.getInstance();
+        lastModified.clear();
+        lastModified.set(2020, Calendar.JANUARY, day);
+        JcrUtils.putFile(parent, name, "text/plain",
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), lastModified);
+    }
+
+    private String getContent(String path) throws RepositoryException, IOException {
+        return IOUtils.toString(JcrUtils.readFile(admin.getNode(path)), StandardCharsets.UTF_8);
+    }
+
+    private File assemblePackage(ExportInfo base) throws IOException, RepositoryException {
+        File tmpFile = File.createTempFile("vaulttest", ".zip");
+
+        DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+        filter.add(new PathFilterSet(ROOT));
+        DefaultMetaInf meta = new DefaultMetaInf();
+        meta.setFilter(filter);
+
+        Properties props = new Properties();
+        props.setProperty(VaultPackage.NAME_GROUP, "jackrabbit/test");
+        props.setProperty(VaultPackage.NAME_NAME, "incremental-export-package");
+        meta.setProperties(props);
+
+        ExportOptions options = new ExportOptions();
+        options.setMetaInf(meta);
+        options.setIncludeDigests(true);
+        options.setIncrementalBase(base);
+
+        packMgr.assemble(admin, options, tmpFile).close();
+        return tmpFile;
+    }
+}
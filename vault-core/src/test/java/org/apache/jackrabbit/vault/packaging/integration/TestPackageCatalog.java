@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.integration;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.PackageException;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.registry.PackageMetaData;
+import org.apache.jackrabbit.vault.packaging.registry.impl.JcrPackageCatalog;
+import org.apache.jackrabbit.vault.packaging.registry.impl.JcrPackageRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the package catalog of the {@link JcrPackageRegistry}
+ */
+public class TestPackageCatalog extends IntegrationTestBase {
+
+    private static final String CATALOG_PATH = JcrPackageRegistry.DEFAULT_PACKAGE_ROOT_PATH + "/" + JcrPackageCatalog.NODE_NAME;
+
+    private JcrPackageRegistry registry;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        registry = new JcrPackageRegistry(admin);
+    }
+
+    @Test
+    public void testCatalogIsUpdated() throws IOException, PackageException, RepositoryException {
+        PackageId id = registry.register(getStream(TEST_PACKAGE_A_10), false);
+        assertNodeExists(CATALOG_PATH);
+
+        // a second registry uses the persisted catalog
+        JcrPackageRegistry other = new JcrPackageRegistry(admin);
+        assertTrue("contains package", other.packages().contains(id));
+        assertEquals(id, other.resolve(Dependency.fromString(id.toString()), false));
+
+        // changes by the first registry are visible in the second one
+        PackageId idB = registry.register(getStream(TEST_PACKAGE_B_10), false);
+        assertEquals("packages contains 2 elements", 2, other.packages().size());
+
+        registry.remove(idB);
+        assertEquals("packages contains 1 element", 1, other.packages().size());
+    }
+
+    @Test
+    public void testResolveInstalled() throws IOException, PackageException, RepositoryException {
+        PackageId id = registry.register(getStream(TEST_PACKAGE_A_10), false);
+        Dependency dep = Dependency.fromString(id.toString());
+        assertEquals(id, registry.resolve(dep, false));
+        assertNull(registry.resolve(dep, true));
+
+        packMgr.open(id).install(getDefaultOptions());
+        assertEquals(id, new JcrPackageRegistry(admin).resolve(dep, true));
+    }
+
+    @Test
+    public void testMetaData() throws IOException, PackageException, RepositoryException {
+        PackageId id = registry.register(getStream(TEST_PACKAGE_A_10), false);
+        packMgr.open(id).install(getDefaultOptions());
+
+        List<PackageMetaData> metaData = registry.getMetaData(Collections.singletonList(id));
+        assertEquals("meta data of 1 package", 1, metaData.size());
+        PackageMetaData md = metaData.get(0);
+        assertEquals(id, md.getId());
+        assertTrue("package is installed", md.isInstalled());
+        assertNotNull("installation time", md.getInstallationTime());
+        assertEquals("package size", packMgr.open(id).getSize(), md.getSize());
+        assertFalse("filter roots", md.getFilterRoots().isEmpty());
+        assertEquals("all packages", 1, registry.getMetaData(null).size());
+    }
+
+    @Test
+    public void testRebuild() throws IOException, PackageException, RepositoryException {
+        PackageId id = registry.register(getStream(TEST_PACKAGE_A_10), false);
+        clean(CATALOG_PATH);
+
+        // the catalog is built in memory, reading it does not persist it
+        JcrPackageRegistry other = new JcrPackageRegistry(admin);
+        assertTrue("contains package", other.packages().contains(id));
+        assertNodeMissing(CATALOG_PATH);
+        assertFalse("no pending changes", admin.hasPendingChanges());
+
+        other.rebuildCatalog();
+        assertNodeExists(CATALOG_PATH);
+        assertEquals("packages contains 1 element", 1, other.packages().size());
+        assertEquals("packages contains 1 element", 1, new JcrPackageRegistry(admin).packages().size());
+    }
+
+    @Test
+    public void testStaleCatalog() throws IOException, PackageException, RepositoryException {
+        PackageId id = registry.register(getStream(TEST_PACKAGE_A_10), false);
+
+        // drop the catalog entries but keep the catalog itself, e.g. after a content import of the packages
+        NodeIterator iter = admin.getNode(CATALOG_PATH).getNodes();
+        while (iter.hasNext()) {
+            iter.nextNode().remove();
+        }
+        admin.save();
+
+        // the catalog is not verified against the package roots when it is read
+        JcrPackageRegistry other = new JcrPackageRegistry(admin);
+        assertFalse("does not contain package", other.packages().contains(id));
+        assertEquals(1, other.getMetaData(Collections.singletonList(id)).size());
+
+        other.rebuildCatalog();
+        assertTrue("contains package", new JcrPackageRegistry(admin).packages().contains(id));
+        assertEquals(id, new JcrPackageRegistry(admin).resolve(Dependency.fromString(id.toString()), false));
+    }
+
+    @Test
+    public void testRevision() throws IOException, PackageException, RepositoryException {
+        registry.register(getStream(TEST_PACKAGE_A_10), false);
+        JcrPackageCatalog catalog = new JcrPackageCatalog(registry, admin);
+        long revision = catalog.getRevision();
+        assertTrue("catalog is persisted", revision >= 0);
+
+        // reading does not change the revision
+        registry.packages();
+        assertEquals(revision, catalog.getRevision());
+
+        registry.register(getStream(TEST_PACKAGE_B_10), false);
+        assertTrue("revision increases", catalog.getRevision() > revision);
+    }
+
+    @Test
+    public void testEqualVersions() throws IOException, PackageException, RepositoryException {
+        PackageId id1 = packMgr.create("my_packages", "test", "1.1").getDefinition().getId();
+        PackageId id2 = packMgr.create("my_packages", "test", "1.01").getDefinition().getId();
+        assertEquals("versions compare equal", 0, id1.getVersion().compareTo(id2.getVersion()));
+
+        JcrPackageRegistry other = new JcrPackageRegistry(admin);
+        assertTrue("contains package " + id1, other.packages().contains(id1));
+        assertTrue("contains package " + id2, other.packages().contains(id2));
+        assertEquals("meta data of 2 packages", 2, other.getMetaData(null).size());
+    }
+}
@@ -21,12 +21,16 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.PropertyType;
@@ -41,13 +45,17 @@ import org.apache.jackrabbit.api.JackrabbitSession;
 import org.apache.jackrabbit.api.security.user.User;
 import org.apache.jackrabbit.api.security.user.UserManager;
 import org.apache.jackrabbit.commons.jackrabbit.authorization.AccessControlUtils;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.io.ImportOptions;
 import org.apache.jackrabbit.vault.fs.io.Importer;
 import org.apache.jackrabbit.vault.fs.io.ZipArchive;
 import org.apache.jackrabbit.vault.packaging.Dependency;
 import org.apache.jackrabbit.vault.packaging.InstallContext;
 import org.apache.jackrabbit.vault.packaging.JcrPackage;
+import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
 import org.apache.jackrabbit.vault.packaging.PackageException;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.impl.JcrPackageManagerImpl;
@@ -406,6 +414,180 @@ public class TestPackageInstall extends IntegrationTestBase {
         assertNodeMissing("/tmp/foo/bar/tobi");
     }
 
+    /**
+     * Installs and uninstalls a package with a journaled snapshot and checks if the content is reverted.
+     */
+    @Test
+    public void testUninstallJournaledSnapshot() throws RepositoryException, IOException, PackageException {
+        Node tmp = admin.getRootNode().addNode("tmp", NodeType.NT_UNSTRUCTURED);
+        tmp.setProperty("p", "v");
+        tmp.addNode("other", NodeType.NT_UNSTRUCTURED).setProperty("q", "w");
+        admin.save();
+
+        JcrPackage pack = packMgr.upload(getStream("/test-packages/tmp.zip"), false);
+        assertNotNull(pack);
+        ImportOptions opts = getDefaultOptions();
+        opts.setJournaledSnapshot(true);
+        pack.install(opts);
+        assertNodeExists("/tmp/foo/bar/tobi");
+        assertNodeMissing("/tmp/other");
+        assertPackageNodeExists(TMP_SNAPSHOT_PACKAGE_ID);
+        assertTrue("snapshot contains undo log",
+                pack.getSnapshot().getDefinition().getNode().hasProperty(JcrPackageDefinition.PN_UNDO_LOG));
+
+        pack.uninstall(opts);
+        assertNodeMissing("/tmp/foo");
+        assertProperty("/tmp/p", "v");
+        assertProperty("/tmp/other/q", "w");
+        assertEquals(NodeType.NT_UNSTRUCTURED, admin.getNode("/tmp").getPrimaryNodeType().getName());
+        assertPackageNodeMissing(TMP_SNAPSHOT_PACKAGE_ID);
+    }
+
+    /**
+     * Checks if the modified properties of a journaled snapshot are reverted.
+     */
+    @Test
+    public void testUninstallJournaledSnapshotModified() throws RepositoryException, IOException, PackageException {
+        Node journal = admin.getRootNode().addNode("tmp", NodeType.NT_UNSTRUCTURED).addNode("journal", NodeType.NT_UNSTRUCTURED);
+        journal.setProperty("p", "new");
+        journal.addNode("a", NodeType.NT_UNSTRUCTURED).setProperty("p", "new");
+        admin.save();
+        JcrPackage pack = createPackage("journal", "/tmp/journal");
+
+        journal.setProperty("p", "old");
+        journal.setProperty("q", "old");
+        journal.getNode("a").setProperty("p", "old");
+        admin.save();
+
+        ImportOptions opts = getDefaultOptions();
+        opts.setJournaledSnapshot(true);
+        pack.install(opts);
+        assertProperty("/tmp/journal/p", "new");
+        assertPropertyMissing("/tmp/journal/q");
+        assertProperty("/tmp/journal/a/p", "new");
+        JcrPackage snap = pack.getSnapshot();
+        assertNotNull(snap);
+        assertEquals("snapshot binary contains filter", "/tmp/journal",
+                snap.getPackage().getMetaInf().getFilter().getFilterSets().get(0).getRoot());
+
+        pack.uninstall(opts);
+        assertProperty("/tmp/journal/p", "old");
+        assertProperty("/tmp/journal/q", "old");
+        assertProperty("/tmp/journal/a/p", "old");
+    }
+
+    /**
+     * Checks if the nodes deleted by the installation of a journaled snapshot are restored at their position.
+     */
+    @Test
+    public void testUninstallJournaledSnapshotDeleted() throws RepositoryException, IOException, PackageException {
+        Node journal = admin.getRootNode().addNode("tmp", NodeType.NT_UNSTRUCTURED).addNode("journal", NodeType.NT_UNSTRUCTURED);
+        journal.addNode("a", NodeType.NT_UNSTRUCTURED);
+        admin.save();
+        JcrPackage pack = createPackage("journal", "/tmp/journal");
+
+        Node b = journal.addNode("b", NodeType.NT_UNSTRUCTURED);
+        b.setProperty("p", "old");
+        b.addNode("c", NodeType.NT_UNSTRUCTURED).setProperty("p", "old");
+        journal.orderBefore("b", "a");
+        admin.save();
+
+        ImportOptions opts = getDefaultOptions();
+        opts.setJournaledSnapshot(true);
+        pack.install(opts);
+        assertNodeMissing("/tmp/journal/b");
+
+        pack.uninstall(opts);
+        assertProperty("/tmp/journal/b/p", "old");
+        assertProperty("/tmp/journal/b/c/p", "old");
+        NodeIterator iter = admin.getNode("/tmp/journal").getNodes();
+        assertEquals("b", iter.nextNode().getName());
+        assertEquals("a", iter.nextNode().getName());
+    }
+
+    /**
+     * Checks if a referenceable node that is renamed by the installation of a journaled snapshot is restored with its
+     * name and identifier.
+     */
+    @Test
+    public void testUninstallJournaledSnapshotMoved() throws RepositoryException, IOException, PackageException {
+        Node journal = admin.getRootNode().addNode("tmp", NodeType.NT_UNSTRUCTURED).addNode("journal", NodeType.NT_UNSTRUCTURED);
+        Node node = journal.addNode("new", NodeType.NT_UNSTRUCTURED);
+        node.addMixin(NodeType.MIX_REFERENCEABLE);
+        node.setProperty("p", "new");
+        admin.save();
+        String id = node.getIdentifier();
+        JcrPackage pack = createPackage("journal", "/tmp/journal");
+
+        admin.move("/tmp/journal/new", "/tmp/journal/old");
+        admin.getNode("/tmp/journal/old").setProperty("p", "old");
+        admin.save();
+
+        ImportOptions opts = getDefaultOptions();
+        opts.setJournaledSnapshot(true);
+        pack.install(opts);
+        assertNodeMissing("/tmp/journal/old");
+        assertProperty("/tmp/journal/new/p", "new");
+
+        pack.uninstall(opts);
+        assertNodeMissing("/tmp/journal/new");
+        assertProperty("/tmp/journal/old/p", "old");
+        assertEquals(id, admin.getNode("/tmp/journal/old").getIdentifier());
+    }
+
+    /**
+     * Checks if the undo log of a failed installation is saved, so that the content persisted before the failure is
+     * reverted.
+     */
+    @Test
+    public void testUninstallJournaledSnapshotFailedInstall() throws RepositoryException, IOException, PackageException {
+        JcrPackage pack = packMgr.upload(zipDirectory("/test-packages/external_hook_failing_in_installed_phase.zip"), false);
+        assertNotNull(pack);
+        ImportOptions opts = getDefaultOptions();
+        opts.setJournaledSnapshot(true);
+        try {
+            pack.install(opts);
+            fail("Package install should fail due to installhook exception.");
+        } catch (PackageException e) {
+            // ok
+        }
+        assertNodeExists("/testroot");
+        assertTrue("snapshot contains undo log",
+                pack.getSnapshot().getDefinition().getNode().hasProperty(JcrPackageDefinition.PN_UNDO_LOG));
+
+        pack.uninstall(opts);
+        assertNodeMissing("/testroot");
+    }
+
+    /**
+     * Creates and assembles a package of the current content below the given root.
+     */
+    private JcrPackage createPackage(String name, String root) throws RepositoryException, IOException, PackageException {
+        JcrPackage pack = packMgr.create("my_packages", name, "1.0");
+        DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+        filter.add(new PathFilterSet(root));
+        pack.getDefinition().setFilter(filter, true);
+        packMgr.assemble(pack, null);
+        return pack;
+    }
+
+    /**
+     * Returns a zip of the given exploded package.
+     */
+    private InputStream zipDirectory(String name) throws IOException {
+        File dir = new File(getClass().getResource(name).getFile());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zout = new ZipOutputStream(out)) {
+            for (File file: FileUtils.listFiles(dir, null, true)) {
+                String path = dir.toURI().relativize(file.toURI()).getPath();
+                zout.putNextEntry(new ZipEntry(path));
+                FileUtils.copyFile(file, zout);
+                zout.closeEntry();
+            }
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
     /**
      * Uninstalls a package that has no snapshot (JCRVLT-89)
      */
@@ -766,6 +948,81 @@ public class TestPackageInstall extends IntegrationTestBase {
         assertEquals("packageid", TMP_PACKAGE_ID, pack.getDefinition().getId());
     }
 
+    /**
+     * Tests that a package with binary references that can't be resolved in the repository is not installed.
+     */
+    @Test
+    public void testUnresolvedBinaryReferences() throws RepositoryException, IOException, PackageException {
+        JcrPackage pack = packMgr.upload(new ByteArrayInputStream(createBinaryReferencesPackage()), true);
+        try {
+            pack.install(getDefaultOptions());
+            fail("installing a package with unresolved binary references must fail");
+        } catch (RepositoryException | PackageException e) {
+            // expected
+        }
+        assertNodeMissing("/tmp/foo");
+    }
+
+    /**
+     * Tests that binary references that can't be resolved in the repository are reported in dry run mode.
+     */
+    @Test
+    public void testUnresolvedBinaryReferencesDryRun() throws RepositoryException, IOException, PackageException {
+        JcrPackage pack = packMgr.upload(new ByteArrayInputStream(createBinaryReferencesPackage()), true);
+        final List<String> messages = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        ImportOptions opts = getDefaultOptions();
+        opts.setDryRun(true);
+        opts.setListener(new ProgressTrackerListener() {
+            @Override
+            public void onMessage(Mode mode, String action, String path) {
+                messages.add(action);
+            }
+
+            @Override
+            public void onError(Mode mode, String path, Exception e) {
+                errors.add(path);
+            }
+        });
+        pack.install(opts);
+
+        assertTrue("unresolved reference is reported", errors.contains("/tmp/foo/jcr:data"));
+        assertTrue("summary is reported", messages.contains("Unable to resolve 1 binary references in the target repository."));
+        assertNodeMissing("/tmp/foo");
+    }
+
+    /**
+     * Creates a package with a binary reference manifest that lists a reference that does not exist.
+     */
+    private static byte[] createBinaryReferencesPackage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zout = new ZipOutputStream(out)) {
+            Properties p = new Properties();
+            p.setProperty("name", TMP_PACKAGE_ID.getName());
+            p.setProperty("group", TMP_PACKAGE_ID.getGroup());
+            p.setProperty("version", TMP_PACKAGE_ID.getVersionString());
+            zout.putNextEntry(new ZipEntry("META-INF/vault/properties.xml"));
+            p.storeToXML(zout, "", "utf-8");
+            zout.closeEntry();
+
+            zout.putNextEntry(new ZipEntry("META-INF/vault/filter.xml"));
+            zout.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<workspaceFilter version=\"1.0\"><filter root=\"/tmp/foo\"/></workspaceFilter>\n").getBytes("utf-8"));
+            zout.closeEntry();
+
+            zout.putNextEntry(new ZipEntry("META-INF/vault/binary-references.txt"));
+            zout.write("missing:0123456789\t10\t/tmp/foo/jcr:data\n".getBytes("utf-8"));
+            zout.closeEntry();
+
+            zout.putNextEntry(new ZipEntry("jcr_root/tmp/foo/.content.xml"));
+            zout.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:nt=\"http://www.jcp.org/jcr/nt/1.0\"\n"
+                    + "    jcr:primaryType=\"nt:unstructured\"/>\n").getBytes("utf-8"));
+            zout.closeEntry();
+        }
+        return out.toByteArray();
+    }
+
     // todo: upload with version
     // todo: rename
 
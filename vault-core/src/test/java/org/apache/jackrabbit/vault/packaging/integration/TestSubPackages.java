@@ -225,6 +225,33 @@ public class TestSubPackages extends IntegrationTestBase {
         assertNodeExists("/tmp/b");
     }
 
+    /**
+     * Installs a package that contains sub packages recursive and in parallel
+     */
+    @Test
+    public void testRecursiveParallel() throws RepositoryException, IOException, PackageException {
+        JcrPackage pack = packMgr.upload(getStream("/test-packages/subtest.zip"), false);
+        assertNotNull(pack);
+
+        // install
+        ImportOptions opts = getDefaultOptions();
+        opts.setNonRecursive(false);
+        opts.setSubPackageParallelism(2);
+        pack.install(opts);
+
+        assertPackageNodeExists(PACKAGE_ID_SUB_A_SNAPSHOT);
+        assertPackageNodeExists(PACKAGE_ID_SUB_B_SNAPSHOT);
+        assertNodeExists("/tmp/a");
+        assertNodeExists("/tmp/b");
+
+        // sub packages are registered for uninstall
+        pack.uninstall(opts);
+        assertPackageNodeMissing(PACKAGE_ID_SUB_A);
+        assertPackageNodeMissing(PACKAGE_ID_SUB_B);
+        assertNodeMissing("/tmp/a");
+        assertNodeMissing("/tmp/b");
+    }
+
 
     /**
      * Uninstalls a package that contains sub packages non recursive
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.packaging.registry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FSPackageUploadTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testIsSubPackage() {
+        assertTrue(FSPackageUpload.isSubPackage("jcr_root/etc/packages/my_packages/sub.zip"));
+        assertFalse(FSPackageUpload.isSubPackage("jcr_root/etc/packages/my_packages/.content.xml"));
+        assertFalse(FSPackageUpload.isSubPackage("jcr_root/content/sub.zip"));
+        assertFalse(FSPackageUpload.isSubPackage("foo.zip"));
+    }
+
+    @Test
+    public void testRootLevelEntries() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zout = new ZipOutputStream(out)) {
+            addEntry(zout, "foo.zip", "not a sub package".getBytes(StandardCharsets.UTF_8));
+            addEntry(zout, "jcr_root/.content.xml", "<jcr:root/>".getBytes(StandardCharsets.UTF_8));
+        }
+        File dir = tmpFolder.newFolder();
+        try (FSPackageUpload upload = FSPackageUpload.read(new ByteArrayInputStream(out.toByteArray()), dir)) {
+            assertTrue(upload.getSubPackages().isEmpty());
+            assertFalse(upload.hasPackagesRoot());
+            assertEquals(out.size(), upload.getSize());
+        }
+    }
+
+    private static void addEntry(ZipOutputStream zout, String name, byte[] data) throws IOException {
+        zout.putNextEntry(new ZipEntry(name));
+        zout.write(data);
+        zout.closeEntry();
+    }
+}
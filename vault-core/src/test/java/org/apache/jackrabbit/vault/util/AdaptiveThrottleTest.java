@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@code AdaptiveThrottleTest}...
+ */
+public class AdaptiveThrottleTest {
+
+    @Test
+    public void testSaveLatency() {
+        AdaptiveThrottle throttle = new AdaptiveThrottle(1024, 100, 0, null, 0);
+        assertEquals(1024, throttle.getBatchSize());
+
+        // slow save: batch size is halved at most, pause for the exceeding time
+        assertEquals(300, throttle.onSave(1024, 400, 1000));
+        assertEquals(512, throttle.getBatchSize());
+
+        // moderately slow save
+        assertEquals(25, throttle.onSave(512, 125, 2000));
+        assertEquals(409, throttle.getBatchSize());
+
+        // fast save: batch size is doubled at most, but not above the maximum
+        assertEquals(0, throttle.onSave(409, 10, 3000));
+        assertEquals(818, throttle.getBatchSize());
+        assertEquals(0, throttle.onSave(818, 10, 4000));
+        assertEquals(1024, throttle.getBatchSize());
+
+        // never below the minimum
+        for (int i = 0; i < 10; i++) {
+            throttle.onSave(1, 10000, 5000);
+        }
+        assertEquals(AdaptiveThrottle.MIN_BATCH_SIZE, throttle.getBatchSize());
+    }
+
+    @Test
+    public void testSmallBatchSize() {
+        // a batch size below the minimum is kept
+        AdaptiveThrottle throttle = new AdaptiveThrottle(4, 100, 0, () -> 1.0, 0);
+        assertEquals(4, throttle.getBatchSize());
+        assertEquals(0, throttle.onSave(4, 10, 1000));
+        assertEquals(4, throttle.getBatchSize());
+        assertTrue(throttle.isOverloaded());
+        assertEquals(4, throttle.getBatchSize());
+
+        // but at least 1 node is saved in one batch
+        throttle = new AdaptiveThrottle(0, 100, 0, null, 0);
+        assertEquals(1, throttle.getBatchSize());
+    }
+
+    @Test
+    public void testTargetRate() {
+        AdaptiveThrottle throttle = new AdaptiveThrottle(100, 0, 100, null, 0);
+        // 100 nodes in 200ms, 1 second allowed
+        assertEquals(800, throttle.onSave(100, 50, 200));
+        // 100 nodes after the pause, 2 seconds allowed
+        assertEquals(800, throttle.onSave(100, 50, 1200));
+        // slow copy only catches up for a limited time
+        assertEquals(0, throttle.onSave(100, 50, 10000));
+        assertEquals(1000, throttle.onSave(100, 50, 10000));
+        assertEquals(100, throttle.getBatchSize());
+    }
+
+    @Test
+    public void testLoadSignal() {
+        final double[] load = {0.5};
+        AdaptiveThrottle throttle = new AdaptiveThrottle(1024, 0, 0, () -> load[0], 0);
+        assertFalse(throttle.isOverloaded());
+        assertEquals(1024, throttle.getBatchSize());
+
+        load[0] = 1.0;
+        assertTrue(throttle.isOverloaded());
+        assertEquals(512, throttle.getBatchSize());
+        assertTrue(throttle.isOverloaded());
+        assertEquals(256, throttle.getBatchSize());
+
+        // no recovery while overloaded
+        assertEquals(0, throttle.onSave(256, 10, 1000));
+        assertEquals(256, throttle.getBatchSize());
+
+        // batch size is doubled per save once the load dropped, but not above the maximum
+        load[0] = 0.5;
+        assertFalse(throttle.isOverloaded());
+        assertEquals(0, throttle.onSave(256, 10, 2000));
+        assertEquals(512, throttle.getBatchSize());
+        assertEquals(0, throttle.onSave(512, 10, 3000));
+        assertEquals(1024, throttle.getBatchSize());
+        assertEquals(0, throttle.onSave(1024, 10, 4000));
+        assertEquals(1024, throttle.getBatchSize());
+    }
+}
@@ -16,20 +16,30 @@
  */
 package org.apache.jackrabbit.vault.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
 import javax.jcr.nodetype.NodeType;
 
 import org.apache.jackrabbit.commons.JcrUtils;
+import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
 import org.apache.jackrabbit.vault.packaging.integration.IntegrationTestBase;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 /**
  * {@code RCPTest}...
  */
@@ -225,5 +235,148 @@ public class RCPTest extends IntegrationTestBase {
         assertProperty(DST_TEST_NODE_PATH + "/jcr:content/p0", "1");
     }
 
+    @Test
+    public void testCompareContent() throws IOException, RepositoryException, ConfigurationException {
+        Node a = JcrUtils.getOrCreateByPath(SRC_TEST_NODE_PATH, NodeType.NT_UNSTRUCTURED, NodeType.NT_UNSTRUCTURED, admin, false);
+        a.setProperty("p0", "0");
+        Node b = JcrUtils.getOrCreateByPath(SRC_PATH + "/b", NodeType.NT_UNSTRUCTURED, NodeType.NT_UNSTRUCTURED, admin, false);
+        b.setProperty("p0", "0");
+        b.setProperty("m0", new String[]{"0", "1", "2"}, PropertyType.STRING);
+        admin.save();
 
-}
\ No newline at end of file
+        RepositoryCopier rcp = new RepositoryCopier();
+        rcp.copy(admin, SRC_PATH, admin, DST_PATH, true);
+        assertProperty(DST_TEST_NODE_PATH + "/p0", "0");
+
+        a.setProperty("p0", "1");
+        admin.save();
+
+        final Map<String, String> actions = new HashMap<>();
+        rcp = new RepositoryCopier();
+        rcp.setUpdate(true);
+        rcp.setCompareContent(true);
+        rcp.setTracker(new ProgressTrackerListener() {
+            @Override
+            public void onMessage(Mode mode, String action, String path) {
+                actions.put(path, action.substring(action.length() - 1));
+            }
+
+            @Override
+            public void onError(Mode mode, String path, Exception e) {
+            }
+        });
+        rcp.copy(admin, SRC_PATH, admin, DST_PATH, true);
+
+        assertProperty(DST_TEST_NODE_PATH + "/p0", "1");
+        assertEquals("U", actions.get(DST_TEST_NODE_PATH));
+        assertEquals("=", actions.get(DST_PATH + "/b"));
+        assertEquals("=", actions.get(DST_PATH));
+    }
+
+    @Test
+    public void testCompareContentType() throws IOException, RepositoryException, ConfigurationException {
+        Node a = JcrUtils.getOrCreateByPath(SRC_TEST_NODE_PATH, NodeType.NT_UNSTRUCTURED, NodeType.NT_UNSTRUCTURED, admin, false);
+        a.setProperty("p0", "0");
+        admin.save();
+
+        RepositoryCopier rcp = new RepositoryCopier();
+        rcp.copy(admin, SRC_PATH, admin, DST_PATH, true);
+        assertEquals(PropertyType.STRING, admin.getProperty(DST_TEST_NODE_PATH + "/p0").getType());
+
+        // a value of another type with the same string representation is written
+        a.getProperty("p0").remove();
+        a.setProperty("p0", 0L);
+        admin.save();
+        Map<String, String> actions = copyCompared();
+        assertEquals("U", actions.get(DST_TEST_NODE_PATH));
+        assertEquals(PropertyType.LONG, admin.getProperty(DST_TEST_NODE_PATH + "/p0").getType());
+    }
+
+    @Test
+    public void testCompareBinary() throws IOException, RepositoryException, ConfigurationException {
+        Node src = JcrUtils.getOrCreateByPath(SRC_PATH, NodeType.NT_FOLDER, admin);
+        JcrUtils.putFile(src, "a", "text/plain", new ByteArrayInputStream("Hello, world.".getBytes("utf-8")));
+        admin.save();
+
+        RepositoryCopier rcp = new RepositoryCopier();
+        rcp.copy(admin, SRC_PATH, admin, DST_PATH, true);
+        assertEquals("Hello, world.", admin.getProperty(DST_TEST_NODE_PATH + "/jcr:content/jcr:data").getString());
+
+        // unchanged binary is not written again
+        Map<String, String> actions = copyCompared();
+        assertEquals("=", actions.get(DST_TEST_NODE_PATH + "/jcr:content"));
+        assertEquals("=", actions.get(DST_PATH));
+
+        // binary of the same size but with different content is written
+        admin.getNode(SRC_TEST_NODE_PATH + "/jcr:content").setProperty("jcr:data",
+                admin.getValueFactory().createBinary(new ByteArrayInputStream("Hello, World!".getBytes("utf-8"))));
+        admin.save();
+        actions = copyCompared();
+        assertEquals("U", actions.get(DST_TEST_NODE_PATH + "/jcr:content"));
+        assertEquals("Hello, World!", admin.getProperty(DST_TEST_NODE_PATH + "/jcr:content/jcr:data").getString());
+    }
+
+    private Map<String, String> copyCompared() {
+        final Map<String, String> actions = new HashMap<>();
+        RepositoryCopier rcp = new RepositoryCopier();
+        rcp.setUpdate(true);
+        rcp.setOnlyNewer(false);
+        rcp.setCompareContent(true);
+        rcp.setTracker(new ProgressTrackerListener() {
+            @Override
+            public void onMessage(Mode mode, String action, String path) {
+                actions.put(path, action.substring(action.length() - 1));
+            }
+
+            @Override
+            public void onError(Mode mode, String path, Exception e) {
+            }
+        });
+        rcp.copy(admin, SRC_PATH, admin, DST_PATH, true);
+        return actions;
+    }
+
+    @Test
+    public void testParallel() throws IOException, RepositoryException, ConfigurationException {
+        Node src = JcrUtils.getOrCreateByPath(SRC_PATH, NodeType.NT_UNSTRUCTURED, admin);
+        for (int i = 0; i < 10; i++) {
+            Node child = src.addNode("c" + (9 - i), NodeType.NT_UNSTRUCTURED);
+            child.setProperty("p0", String.valueOf(i));
+            for (int j = 0; j < 10; j++) {
+                child.addNode("c" + j, NodeType.NT_UNSTRUCTURED).setProperty("p0", String.valueOf(j));
+            }
+        }
+        admin.save();
+
+        RepositoryCopier rcp = new RepositoryCopier();
+        rcp.setThreads(4);
+        rcp.setBatchSize(10);
+        rcp.setSessionFactory(new RepositoryCopier.SessionFactory() {
+            @Override
+            public Session createSourceSession() throws RepositoryException {
+                return repository.login(new SimpleCredentials("admin", "admin".toCharArray()));
+            }
+
+            @Override
+            public Session createDestinationSession() throws RepositoryException {
+                return repository.login(new SimpleCredentials("admin", "admin".toCharArray()));
+            }
+        });
+        rcp.copy(admin, SRC_PATH, admin, DST_PATH, true);
+
+        assertEquals(111, rcp.getTotalNodes());
+        admin.refresh(false);
+        NodeIterator iter = admin.getNode(DST_PATH).getNodes();
+        for (int i = 0; i < 10; i++) {
+            Node child = iter.nextNode();
+            assertEquals("c" + (9 - i), child.getName());
+            assertProperty(child.getPath() + "/p0", String.valueOf(i));
+            NodeIterator grandChildren = child.getNodes();
+            for (int j = 0; j < 10; j++) {
+                assertEquals("c" + j, grandChildren.nextNode().getName());
+            }
+            assertFalse(grandChildren.hasNext());
+        }
+        assertFalse(iter.hasNext());
+    }
+}
@@ -57,12 +57,64 @@ public class DAVExRepositoryFactory implements RepositoryFactory {
      */
     public static final String PARAM_JCR_REMOTING_SPILOG = "jcr.remoting.spilog";
 
+    /**
+     * Name of the system property that controls the size of the item cache (in units of 1024 items)
+     */
+    public static final String PARAM_JCR_REMOTING_ITEMCACHE = "jcr.remoting.itemcache";
+
     private static final Set<String> SCHEMES = new HashSet<String>();
     static {
         SCHEMES.add("http");
         SCHEMES.add("https");
     }
 
+    /**
+     * the depth of the subtrees retrieved with a single request
+     */
+    private int depth = Integer.getInteger(PARAM_JCR_REMOTING_DEPTH, 4);
+
+    /**
+     * the number of items cached per session. must be large enough to hold the subtrees retrieved in batches.
+     */
+    private int itemCacheSize = Integer.getInteger(PARAM_JCR_REMOTING_ITEMCACHE, 128) * 1024;
+
+    /**
+     * Returns the depth of the subtrees that are retrieved with a single request.
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Sets the depth of the subtrees that are retrieved with a single request. The retrieved items are cached by the session,
+     * so that traversing the subtree does not need further requests. Defaults to the value of the system property
+     * {@value #PARAM_JCR_REMOTING_DEPTH} or 4.
+     *
+     * @param depth the depth
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Returns the number of items cached per session.
+     * @return the size of the item cache
+     */
+    public int getItemCacheSize() {
+        return itemCacheSize;
+    }
+
+    /**
+     * Sets the number of items cached per session. Defaults to the value of the system property
+     * {@value #PARAM_JCR_REMOTING_ITEMCACHE} (in units of 1024 items) or 128 * 1024.
+     *
+     * @param itemCacheSize the size of the item cache
+     */
+    public void setItemCacheSize(int itemCacheSize) {
+        this.itemCacheSize = itemCacheSize;
+    }
+
     public Set<String> getSupportedSchemes() {
         return SCHEMES;
     }
@@ -82,15 +134,7 @@ public class DAVExRepositoryFactory implements RepositoryFactory {
                     // ignore
                 }
             }
-            Map<String, Object> parameters = new HashMap<String, Object>();
-            parameters.put(Jcr2spiRepositoryFactory.PARAM_REPOSITORY_SERVICE_FACTORY, Spi2davexRepositoryServiceFactory.class.getName());
-            parameters.put(Jcr2spiRepositoryFactory.PARAM_ITEM_CACHE_SIZE, Integer.getInteger(PARAM_JCR_REMOTING_DEPTH, 128));
-            parameters.put(Spi2davexRepositoryServiceFactory.PARAM_REPOSITORY_URI, uri.toString());
-            DefaultBatchReadConfig br = new DefaultBatchReadConfig();
-            br.setDefaultDepth(Integer.getInteger(PARAM_JCR_REMOTING_DEPTH, 4));
-            br.setDepth("/", 2);
-            br.setDepth("/jcr:system", 1);
-            parameters.put(Spi2davexRepositoryServiceFactory.PARAM_BATCHREAD_CONFIG, br);
+            Map<String, Object> parameters = createParameters(uri, address.getWorkspace());
             String file = System.getProperty(PARAM_JCR_REMOTING_SPILOG);
             if (file != null) {
                 WriterLogWriterProvider provider = new WriterLogWriterProvider(
@@ -102,16 +146,35 @@ public class DAVExRepositoryFactory implements RepositoryFactory {
                 );
             }
 
-            String workspace = address.getWorkspace();
-            if (workspace != null) {
-                parameters.put(Spi2davexRepositoryServiceFactory.PARAM_WORKSPACE_NAME_DEFAULT, workspace);
-            }
             System.out.printf("Connecting via JCR remoting to %s%n", address.getSpecificURI().toString());
             return new RepositoryFactoryImpl().getRepository(parameters);
         } catch (IOException e) {
             throw new RepositoryException(e);
         }
     }
+
+    /**
+     * Creates the parameters of the jcr2spi repository.
+     *
+     * @param uri the uri of the remote repository, without credentials
+     * @param workspace the default workspace or {@code null}
+     * @return the parameters
+     */
+    Map<String, Object> createParameters(URI uri, String workspace) {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(Jcr2spiRepositoryFactory.PARAM_REPOSITORY_SERVICE_FACTORY, Spi2davexRepositoryServiceFactory.class.getName());
+        parameters.put(Jcr2spiRepositoryFactory.PARAM_ITEM_CACHE_SIZE, itemCacheSize);
+        parameters.put(Spi2davexRepositoryServiceFactory.PARAM_REPOSITORY_URI, uri.toString());
+        DefaultBatchReadConfig br = new DefaultBatchReadConfig();
+        br.setDefaultDepth(depth);
+        br.setDepth("/", 2);
+        br.setDepth("/jcr:system", 1);
+        parameters.put(Spi2davexRepositoryServiceFactory.PARAM_BATCHREAD_CONFIG, br);
+        if (workspace != null) {
+            parameters.put(Spi2davexRepositoryServiceFactory.PARAM_WORKSPACE_NAME_DEFAULT, workspace);
+        }
+        return parameters;
+    }
 }
 
 class DefaultBatchReadConfig implements BatchReadConfig {
@@ -135,4 +198,8 @@ class DefaultBatchReadConfig implements BatchReadConfig {
     public void setDefaultDepth(int defaultDepth) {
         this.defaultDepth = defaultDepth;
     }
+
+    public int getDefaultDepth() {
+        return defaultDepth;
+    }
 }
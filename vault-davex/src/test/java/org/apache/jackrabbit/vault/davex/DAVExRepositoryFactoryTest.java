@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.davex;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.apache.jackrabbit.jcr2spi.Jcr2spiRepositoryFactory;
+import org.apache.jackrabbit.spi2davex.Spi2davexRepositoryServiceFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DAVExRepositoryFactoryTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost:4502/crx/server");
+
+    @Test
+    public void testDefaults() {
+        DAVExRepositoryFactory factory = new DAVExRepositoryFactory();
+        assertEquals(4, factory.getDepth());
+        assertEquals(128 * 1024, factory.getItemCacheSize());
+
+        Map<String, Object> params = factory.createParameters(URI, null);
+        assertEquals(128 * 1024, params.get(Jcr2spiRepositoryFactory.PARAM_ITEM_CACHE_SIZE));
+        assertEquals(4, ((DefaultBatchReadConfig) params.get(Spi2davexRepositoryServiceFactory.PARAM_BATCHREAD_CONFIG)).getDefaultDepth());
+        assertEquals("http://localhost:4502/crx/server", params.get(Spi2davexRepositoryServiceFactory.PARAM_REPOSITORY_URI));
+        assertFalse(params.containsKey(Spi2davexRepositoryServiceFactory.PARAM_WORKSPACE_NAME_DEFAULT));
+    }
+
+    @Test
+    public void testSystemProperties() {
+        System.setProperty(DAVExRepositoryFactory.PARAM_JCR_REMOTING_ITEMCACHE, "2");
+        System.setProperty(DAVExRepositoryFactory.PARAM_JCR_REMOTING_DEPTH, "6");
+        try {
+            DAVExRepositoryFactory factory = new DAVExRepositoryFactory();
+            assertEquals("item cache size is in units of 1024 items", 2048, factory.getItemCacheSize());
+            assertEquals(6, factory.getDepth());
+
+            Map<String, Object> params = factory.createParameters(URI, null);
+            assertEquals(2048, params.get(Jcr2spiRepositoryFactory.PARAM_ITEM_CACHE_SIZE));
+            assertEquals(6, ((DefaultBatchReadConfig) params.get(Spi2davexRepositoryServiceFactory.PARAM_BATCHREAD_CONFIG)).getDefaultDepth());
+        } finally {
+            System.clearProperty(DAVExRepositoryFactory.PARAM_JCR_REMOTING_ITEMCACHE);
+            System.clearProperty(DAVExRepositoryFactory.PARAM_JCR_REMOTING_DEPTH);
+        }
+    }
+
+    @Test
+    public void testSetters() {
+        DAVExRepositoryFactory factory = new DAVExRepositoryFactory();
+        factory.setDepth(2);
+        factory.setItemCacheSize(5000);
+
+        Map<String, Object> params = factory.createParameters(URI, "crx.default");
+        assertEquals(5000, params.get(Jcr2spiRepositoryFactory.PARAM_ITEM_CACHE_SIZE));
+        assertEquals(2, ((DefaultBatchReadConfig) params.get(Spi2davexRepositoryServiceFactory.PARAM_BATCHREAD_CONFIG)).getDefaultDepth());
+        assertEquals("crx.default", params.get(Spi2davexRepositoryServiceFactory.PARAM_WORKSPACE_NAME_DEFAULT));
+    }
+}
@@ -22,7 +22,6 @@ import java.net.URI;
 
 import javax.jcr.Credentials;
 import javax.jcr.Session;
-import javax.jcr.SimpleCredentials;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
@@ -32,7 +31,6 @@ import org.apache.jackrabbit.vault.fs.api.RepositoryAddress;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
-import org.apache.sling.commons.json.JSONArray;
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.JSONObject;
 import org.apache.sling.commons.json.io.JSONWriter;
@@ -63,7 +61,12 @@ public class RcpServlet extends SlingAllMethodsServlet {
     public static final String PARAM_UPDATE = "update";
     public static final String PARAM_NO_ORDERING = "noOrdering";
     public static final String PARAM_ONLY_NEWER = "onlyNewer";
+    public static final String PARAM_COMPARE_CONTENT = "compareContent";
     public static final String PARAM_THROTTLE = "throttle";
+    public static final String PARAM_TARGET_SAVE_LATENCY = "targetSaveLatency";
+    public static final String PARAM_TARGET_RATE = "targetRate";
+    public static final String PARAM_THREADS = "threads";
+    public static final String PARAM_PREFETCH_DEPTH = "prefetchDepth";
     public static final String PARAM_EXCLUDES = "excludes";
     public static final String PARAM_RESUME_FROM = "resumeFrom";
 
@@ -144,38 +147,14 @@ public class RcpServlet extends SlingAllMethodsServlet {
                     );
                 }
                 if (srcCreds != null && srcCreds.length() > 0) {
-                    int idx = srcCreds.indexOf(':');
-                    if (idx < 0) {
-                        creds = new SimpleCredentials(srcCreds, new char[0]);
-                    } else {
-                        creds = new SimpleCredentials(
-                                srcCreds.substring(0, idx),
-                                srcCreds.substring(idx+1).toCharArray());
-                    }
+                    creds = RcpTask.createCredentials(srcCreds);
                 }
 
                 task = taskMgr.addTask(address, creds, dst, id);
 
                 // add additional data
-                if (data.has(PARAM_BATCHSIZE)) {
-                    task.getRcp().setBatchSize((int) data.getLong(PARAM_BATCHSIZE));
-                }
-                task.setRecursive(data.optBoolean(PARAM_RECURSIVE, false));
-                task.getRcp().setUpdate(data.optBoolean(PARAM_UPDATE, false));
-                task.getRcp().setOnlyNewer(data.optBoolean(PARAM_ONLY_NEWER, false));
-                task.getRcp().setNoOrdering(data.optBoolean(PARAM_NO_ORDERING, false));
-                if (data.has(PARAM_THROTTLE)) {
-                    task.getRcp().setThrottle(data.getLong(PARAM_THROTTLE));
-                }
-                if (data.has(PARAM_EXCLUDES)) {
-                    JSONArray excludes = data.getJSONArray(PARAM_EXCLUDES);
-                    for (int idx = 0; idx < excludes.length(); idx++) {
-                        task.addExclude(excludes.getString(idx));
-                    }
-                }
-                if (data.has(PARAM_RESUME_FROM)) {
-                    task.getRcp().setResumeFrom(data.getString(PARAM_RESUME_FROM));
-                }
+                task.setOptions(data);
+                taskMgr.saveTask(task);
                 response.setStatus(HttpServletResponse.SC_CREATED);
                 String path = "/libs/granite/packaging/rcp.tasks/" + task.getId();
                 response.setHeader("Location", path);
@@ -190,6 +169,11 @@ public class RcpServlet extends SlingAllMethodsServlet {
                 if (task == null) {
                     throw new IllegalArgumentException("No such task with id='" + id + "'");
                 }
+                // the credentials of restored tasks are not persisted
+                String srcCreds = data.optString(PARAM_SRC_CREDS, null);
+                if (srcCreds != null && srcCreds.length() > 0) {
+                    task.setSourceCredentials(RcpTask.createCredentials(srcCreds));
+                }
                 task.start(request.getResourceResolver().adaptTo(Session.class));
 
             // ----------------------------------------------------------------------------------------------< stop >---
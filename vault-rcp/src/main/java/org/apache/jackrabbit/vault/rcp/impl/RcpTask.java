@@ -34,7 +34,9 @@ import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
 import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.filter.DefaultPathFilter;
 import org.apache.jackrabbit.vault.util.RepositoryCopier;
+import org.apache.sling.commons.json.JSONArray;
 import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
 import org.apache.sling.commons.json.io.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,7 +66,7 @@ public class RcpTask implements Runnable {
 
     private final RepositoryAddress src;
 
-    private final Credentials srcCreds;
+    private Credentials srcCreds;
 
     private final String dst;
 
@@ -72,7 +74,7 @@ public class RcpTask implements Runnable {
 
     private volatile STATE state = STATE.NEW;
 
-    private Exception error = null;
+    private volatile String error = null;
 
     private List<String> excludes = new ArrayList<String>();
 
@@ -82,6 +84,19 @@ public class RcpTask implements Runnable {
 
     private Session dstSession;
 
+    private final DAVExRepositoryFactory srcRepositoryFactory = new DAVExRepositoryFactory();
+
+    /**
+     * the id of the user who started the task
+     */
+    private String userId;
+
+    /**
+     * {@code true} if the last saved path of the copier can be used to resume the task. This is not the case for a parallel
+     * copy, since the other workers might not have saved the content before the last saved path yet.
+     */
+    private boolean resumable;
+
     public RcpTask(RcpTaskManagerImpl mgr, RepositoryAddress src, Credentials srcCreds, String dst, String id) {
         this.mgr = mgr;
         this.src = src;
@@ -109,6 +124,113 @@ public class RcpTask implements Runnable {
         return rcp;
     }
 
+    /**
+     * Applies the options of the given task definition. The definition has the same format as the create command of the
+     * {@link RcpServlet} and the output of {@link #write(JSONWriter)}.
+     *
+     * @param data the task definition
+     * @throws JSONException if the definition is invalid
+     * @throws ConfigurationException if an exclude is invalid
+     */
+    public void setOptions(JSONObject data) throws JSONException, ConfigurationException {
+        if (data.has(RcpServlet.PARAM_BATCHSIZE)) {
+            rcp.setBatchSize((int) data.getLong(RcpServlet.PARAM_BATCHSIZE));
+        }
+        setRecursive(data.optBoolean(RcpServlet.PARAM_RECURSIVE, false));
+        rcp.setUpdate(data.optBoolean(RcpServlet.PARAM_UPDATE, false));
+        rcp.setOnlyNewer(data.optBoolean(RcpServlet.PARAM_ONLY_NEWER, false));
+        rcp.setCompareContent(data.optBoolean(RcpServlet.PARAM_COMPARE_CONTENT, false));
+        rcp.setNoOrdering(data.optBoolean(RcpServlet.PARAM_NO_ORDERING, false));
+        if (data.has(RcpServlet.PARAM_THROTTLE)) {
+            rcp.setThrottle(data.getLong(RcpServlet.PARAM_THROTTLE));
+        }
+        if (data.has(RcpServlet.PARAM_TARGET_SAVE_LATENCY)) {
+            rcp.setTargetSaveLatency(data.getLong(RcpServlet.PARAM_TARGET_SAVE_LATENCY));
+        }
+        if (data.has(RcpServlet.PARAM_TARGET_RATE)) {
+            rcp.setTargetRate((int) data.getLong(RcpServlet.PARAM_TARGET_RATE));
+        }
+        if (data.has(RcpServlet.PARAM_THREADS)) {
+            rcp.setThreads((int) data.getLong(RcpServlet.PARAM_THREADS));
+        }
+        if (data.has(RcpServlet.PARAM_PREFETCH_DEPTH)) {
+            setPrefetchDepth((int) data.getLong(RcpServlet.PARAM_PREFETCH_DEPTH));
+        }
+        if (data.has(RcpServlet.PARAM_EXCLUDES)) {
+            JSONArray excludes = data.getJSONArray(RcpServlet.PARAM_EXCLUDES);
+            for (int idx = 0; idx < excludes.length(); idx++) {
+                addExclude(excludes.getString(idx));
+            }
+        }
+        if (!data.isNull(RcpServlet.PARAM_RESUME_FROM)) {
+            rcp.setResumeFrom(data.getString(RcpServlet.PARAM_RESUME_FROM));
+        }
+    }
+
+    /**
+     * Creates the credentials for the source repository.
+     * @param srcCreds the user id and the password separated by a colon
+     * @return the credentials
+     */
+    static Credentials createCredentials(String srcCreds) {
+        int idx = srcCreds.indexOf(':');
+        if (idx < 0) {
+            return new SimpleCredentials(srcCreds, new char[0]);
+        } else {
+            return new SimpleCredentials(
+                    srcCreds.substring(0, idx),
+                    srcCreds.substring(idx+1).toCharArray());
+        }
+    }
+
+    Credentials getSourceCredentials() {
+        return srcCreds;
+    }
+
+    /**
+     * Sets the credentials for the source repository. The credentials are not persisted, so a restored task needs them
+     * to be set again before it is started.
+     * @param srcCreds the credentials
+     */
+    void setSourceCredentials(Credentials srcCreds) {
+        if (state != STATE.NEW) {
+            throw new IllegalStateException("Unable to set credentials of task " + id + ". wrong state = " + state);
+        }
+        this.srcCreds = srcCreds;
+    }
+
+    /**
+     * Returns the id of the user who started the task.
+     * @return the user id or {@code null} if the task was not started yet
+     */
+    String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Returns the path from which the task needs to be resumed, so that no content is missed.
+     * @return the path or {@code null} if the task needs to start from the beginning
+     */
+    String getCheckpoint() {
+        String lastSavedPath = rcp.getLastKnownGood();
+        if (state == STATE.NEW || (state == STATE.ENDED && error == null) || lastSavedPath == null) {
+            return rcp.getResumeFrom();
+        }
+        return resumable ? lastSavedPath : null;
+    }
+
+    /**
+     * Marks a restored task as ended, so that it is not started again.
+     * @param error the error of the task or an empty string
+     */
+    void setEnded(String error) {
+        if (state != STATE.NEW) {
+            throw new IllegalStateException("Unable to restore task " + id + ". wrong state = " + state);
+        }
+        this.error = error == null || error.length() == 0 ? null : error;
+        state = STATE.ENDED;
+    }
+
     public boolean stop() {
         // wait for thread
         if (state != STATE.STOPPED && state != STATE.STOPPING) {
@@ -137,6 +259,7 @@ public class RcpTask implements Runnable {
                 dstSession.logout();
                 dstSession = null;
             }
+            mgr.saveTask(this);
             log.info("Stopping task {}...done", id);
         }
         return true;
@@ -153,7 +276,10 @@ public class RcpTask implements Runnable {
             throw new IllegalStateException("Unable to start task " + id + ". wrong state = " + state);
         }
         // clone session
-        dstSession = session.impersonate(new SimpleCredentials(session.getUserID(), new char[0]));
+        userId = session.getUserID();
+        dstSession = session.impersonate(new SimpleCredentials(userId, new char[0]));
+        // a parallel copy with a resume path falls back to a single thread
+        resumable = rcp.getThreads() <= 1 || rcp.getResumeFrom() != null;
         ClassLoader dynLoader = mgr.getDynamicClassLoader();
         ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
         Thread.currentThread().setContextClassLoader(dynLoader);
@@ -163,17 +289,33 @@ public class RcpTask implements Runnable {
             Thread.currentThread().setContextClassLoader(oldLoader);
         }
 
+        // sessions of the workers if copying with multiple threads
+        rcp.setSessionFactory(new RepositoryCopier.SessionFactory() {
+            @Override
+            public Session createSourceSession() throws RepositoryException {
+                return getSourceSession(src);
+            }
+
+            @Override
+            public Session createDestinationSession() throws RepositoryException {
+                // the destination session is not used by the copier while the workers are running
+                synchronized (dstSession) {
+                    return dstSession.impersonate(new SimpleCredentials(dstSession.getUserID(), new char[0]));
+                }
+            }
+        });
+
         thread  = new Thread(this, "Vault RCP Task - " + id);
         thread.setContextClassLoader(dynLoader);
         thread.start();
+        mgr.saveTask(this);
         return true;
     }
 
     private Session getSourceSession(RepositoryAddress src) throws RepositoryException {
-        DAVExRepositoryFactory factory = new DAVExRepositoryFactory();
         Repository srcRepo;
         try {
-            srcRepo = factory.createRepository(src);
+            srcRepo = srcRepositoryFactory.createRepository(src);
         } catch (RepositoryException e) {
             log.error("Error while retrieving src repository {}: {}", src, e.toString());
             throw e;
@@ -200,11 +342,11 @@ public class RcpTask implements Runnable {
             rcp.copy(srcSession, src.getPath(), dstSession, dst, recursive);
             state = STATE.ENDED;
         } catch (Exception e) {
-            error = e;
+            error = e.toString();
         } finally {
             state = STATE.ENDED;
         }
-        // todo: notify manager that we ended.
+        mgr.saveTask(this);
     }
 
     public STATE getState() {
@@ -223,6 +365,22 @@ public class RcpTask implements Runnable {
         this.recursive = b;
     }
 
+    /**
+     * Returns the depth of the subtrees retrieved from the source repository with a single request.
+     * @return the depth
+     */
+    public int getPrefetchDepth() {
+        return srcRepositoryFactory.getDepth();
+    }
+
+    /**
+     * Sets the depth of the subtrees retrieved from the source repository with a single request.
+     * @param depth the depth
+     */
+    public void setPrefetchDepth(int depth) {
+        srcRepositoryFactory.setDepth(depth);
+    }
+
     public void addExclude(String exclude) throws ConfigurationException {
         excludes.add(exclude);
         // could be done better
@@ -245,8 +403,13 @@ public class RcpTask implements Runnable {
         w.key(RcpServlet.PARAM_BATCHSIZE).value(rcp.getBatchSize());
         w.key(RcpServlet.PARAM_UPDATE).value(rcp.isUpdate());
         w.key(RcpServlet.PARAM_ONLY_NEWER).value(rcp.isOnlyNewer());
+        w.key(RcpServlet.PARAM_COMPARE_CONTENT).value(rcp.isCompareContent());
         w.key(RcpServlet.PARAM_NO_ORDERING).value(rcp.isNoOrdering());
         w.key(RcpServlet.PARAM_THROTTLE).value(rcp.getThrottle());
+        w.key(RcpServlet.PARAM_TARGET_SAVE_LATENCY).value(rcp.getTargetSaveLatency());
+        w.key(RcpServlet.PARAM_TARGET_RATE).value(rcp.getTargetRate());
+        w.key(RcpServlet.PARAM_THREADS).value(rcp.getThreads());
+        w.key(RcpServlet.PARAM_PREFETCH_DEPTH).value(getPrefetchDepth());
         w.key(RcpServlet.PARAM_RESUME_FROM).value(rcp.getResumeFrom());
         if (excludes.size() > 0) {
             w.key(RcpServlet.PARAM_EXCLUDES).array();
@@ -263,7 +426,8 @@ public class RcpTask implements Runnable {
         w.key("totalSize").value(rcp.getTotalSize());
         w.key("currentSize").value(rcp.getCurrentSize());
         w.key("currentNodes").value(rcp.getCurrentNumNodes());
-        w.key("error").value(error == null ? "" : error.toString());
+        w.key("currentBatchSize").value(rcp.getCurrentBatchSize());
+        w.key("error").value(error == null ? "" : error);
         w.endObject();
         w.endObject();
     }
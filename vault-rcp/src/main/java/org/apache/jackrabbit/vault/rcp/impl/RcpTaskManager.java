@@ -33,4 +33,10 @@ public interface RcpTaskManager {
 
     RcpTask addTask(RepositoryAddress src, Credentials srcCreds, String dst, String id);
 
+    /**
+     * Persists the definition and the progress of the given task, so that it is restored after a restart.
+     * @param task the task
+     */
+    void saveTask(RcpTask task);
+
 }
\ No newline at end of file
@@ -16,14 +16,33 @@
  */
 package org.apache.jackrabbit.vault.rcp.impl;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.jcr.Credentials;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
 
 import org.apache.jackrabbit.vault.fs.api.RepositoryAddress;
 import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
@@ -32,6 +51,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * {@code RcpTaskManager}...
+ * <p>
+ * The tasks are persisted in the data area of the bundle together with the path from which they can be resumed. Tasks
+ * that were running when the manager was deactivated are resumed on activation as the user who started them. The
+ * credentials of the source repository are not persisted, so tasks that need them are restored but have to be started
+ * again with the credentials.
  */
 @Component(
         immediate = true,
@@ -44,42 +68,261 @@ public class RcpTaskManagerImpl implements RcpTaskManager {
      */
     private static final Logger log = LoggerFactory.getLogger(RcpTaskManagerImpl.class);
 
+    /**
+     * name of the directory in the data area of the bundle that contains the tasks
+     */
+    private static final String TASKS_DIR = "tasks";
+
+    private static final String TASK_FILE_SUFFIX = ".json";
+
+    /**
+     * interval in seconds in which the progress of the running tasks is persisted
+     */
+    private static final long CHECKPOINT_INTERVAL = 30;
+
+    private static final String KEY_TASK = "task";
+
+    private static final String KEY_HAS_SRC_CREDS = "hasSrcCreds";
+
+    private static final String KEY_USER_ID = "userId";
+
+    private static final String KEY_CHECKPOINT = "checkpoint";
+
+    private static final String KEY_RESUME = "resume";
+
+    private static final String KEY_STATUS = "status";
+
+    private static final String KEY_ERROR = "error";
+
     @Reference
     private DynamicClassLoaderManager dynLoaderMgr;
 
+    /**
+     * repository used to resume the persisted tasks on activation
+     */
+    @Reference
+    private SlingRepository repository;
+
     private final Map<String, RcpTask> tasks = new LinkedHashMap<String, RcpTask>();
 
+    /**
+     * directory of the persisted tasks or {@code null} if the tasks are not persisted. package private for testing.
+     */
+    File tasksDir;
+
+    private ScheduledExecutorService checkpointExecutor;
+
+    @Activate
+    private void activate(BundleContext context) {
+        tasksDir = context.getDataFile(TASKS_DIR);
+        if (tasksDir == null) {
+            log.warn("No data area available. Tasks are not persisted.");
+        } else if (!tasksDir.isDirectory() && !tasksDir.mkdirs()) {
+            log.warn("Unable to create directory {}. Tasks are not persisted.", tasksDir);
+            tasksDir = null;
+        }
+        checkpointExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Vault RCP Task Checkpoints");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (tasksDir != null) {
+            final Map<RcpTask, String> resumeTasks = loadTasks();
+            if (!resumeTasks.isEmpty()) {
+                // login to the source repositories in the background
+                checkpointExecutor.execute(() -> resumeTasks(resumeTasks));
+            }
+            checkpointExecutor.scheduleWithFixedDelay(this::checkpoint, CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
     @Deactivate
     private void deactivate() {
         log.info("RcpTaskManager deactivated. Stopping running tasks...");
-        while (!tasks.isEmpty()) {
-            tasks.values().iterator().next().remove();
+        checkpointExecutor.shutdownNow();
+        for (RcpTask task: getTaskList()) {
+            boolean running = task.getState() == RcpTask.STATE.RUNNING;
+            task.stop();
+            // resume the task on activation
+            saveTask(task, running);
+        }
+        synchronized (tasks) {
+            tasks.clear();
         }
         log.info("RcpTaskManager deactivated. Stopping running tasks...done.");
     }
 
     public RcpTask getTask(String taskId) {
-        return tasks.get(taskId);
+        synchronized (tasks) {
+            return tasks.get(taskId);
+        }
     }
 
     public Map<String, RcpTask> getTasks() {
-        return Collections.unmodifiableMap(tasks);
+        synchronized (tasks) {
+            return Collections.unmodifiableMap(new LinkedHashMap<String, RcpTask>(tasks));
+        }
     }
 
     public RcpTask addTask(RepositoryAddress src, Credentials srcCreds, String dst, String id) {
-        if (id != null && id.length() > 0 && tasks.containsKey(id)) {
-            throw new IllegalArgumentException("Task with id " + id + " already exists.");
+        synchronized (tasks) {
+            if (id != null && id.length() > 0 && tasks.containsKey(id)) {
+                throw new IllegalArgumentException("Task with id " + id + " already exists.");
+            }
+            RcpTask task = new RcpTask(this, src, srcCreds, dst, id);
+            tasks.put(task.getId(), task);
+            return task;
         }
-        RcpTask task = new RcpTask(this, src, srcCreds, dst, id);
-        tasks.put(task.getId(), task);
-        return task;
+    }
+
+    public void saveTask(RcpTask task) {
+        saveTask(task, task.getState() == RcpTask.STATE.RUNNING);
     }
 
     protected void remove(RcpTask task)  {
-        tasks.remove(task.getId());
+        synchronized (tasks) {
+            tasks.remove(task.getId());
+            if (tasksDir != null) {
+                File file = getTaskFile(task.getId());
+                if (file.exists() && !file.delete()) {
+                    log.warn("Unable to delete {}", file);
+                }
+            }
+        }
     }
 
     protected ClassLoader getDynamicClassLoader() {
         return dynLoaderMgr.getDynamicClassLoader();
     }
-}
\ No newline at end of file
+
+    private List<RcpTask> getTaskList() {
+        synchronized (tasks) {
+            return new ArrayList<RcpTask>(tasks.values());
+        }
+    }
+
+    private File getTaskFile(String id) {
+        try {
+            return new File(tasksDir, URLEncoder.encode(id, "utf-8") + TASK_FILE_SUFFIX);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Persists the given task.
+     * @param task the task
+     * @param resume {@code true} if the task is resumed on activation
+     */
+    void saveTask(RcpTask task, boolean resume) {
+        // serialize with removing the task
+        synchronized (tasks) {
+            if (tasksDir == null || tasks.get(task.getId()) != task) {
+                return;
+            }
+            File file = getTaskFile(task.getId());
+            File tmpFile = new File(tasksDir, file.getName() + ".tmp");
+            try (Writer out = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+                JSONWriter w = new JSONWriter(out);
+                w.setTidy(true);
+                w.object();
+                w.key(KEY_TASK);
+                task.write(w);
+                // never persist the credentials, they need to be provided again when starting the restored task
+                boolean hasSrcCreds = task.getSourceCredentials() != null;
+                w.key(KEY_HAS_SRC_CREDS).value(hasSrcCreds);
+                w.key(KEY_USER_ID).value(task.getUserId());
+                w.key(KEY_CHECKPOINT).value(task.getCheckpoint());
+                w.key(KEY_RESUME).value(resume && !hasSrcCreds && task.getUserId() != null);
+                w.endObject();
+            } catch (Exception e) {
+                log.error("Error while persisting task {}: {}", task.getId(), e.toString());
+                return;
+            }
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.error("Error while persisting task {}: {}", task.getId(), e.toString());
+            }
+        }
+    }
+
+    /**
+     * Loads the persisted tasks.
+     * @return the tasks that need to be resumed and the ids of the users who started them
+     */
+    Map<RcpTask, String> loadTasks() {
+        Map<RcpTask, String> resumeTasks = new LinkedHashMap<RcpTask, String>();
+        File[] files = tasksDir.listFiles((dir, name) -> name.endsWith(TASK_FILE_SUFFIX));
+        if (files == null) {
+            return resumeTasks;
+        }
+        for (File file: files) {
+            try {
+                JSONObject state = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+                JSONObject data = state.getJSONObject(KEY_TASK);
+                String id = data.getString(RcpServlet.PARAM_ID);
+                RcpTask task;
+                synchronized (tasks) {
+                    task = new RcpTask(this, new RepositoryAddress(data.getString(RcpServlet.PARAM_SRC)), null,
+                            data.getString(RcpServlet.PARAM_DST), id);
+                    task.setOptions(data);
+                    task.getRcp().setResumeFrom(state.isNull(KEY_CHECKPOINT) ? null : state.getString(KEY_CHECKPOINT));
+                    // ended tasks can not be started again, all others are restored as new tasks
+                    JSONObject status = data.optJSONObject(KEY_STATUS);
+                    if (status != null && RcpTask.STATE.ENDED.name().equals(status.optString(RcpServlet.PARAM_STATE))) {
+                        task.setEnded(status.optString(KEY_ERROR, ""));
+                    }
+                    tasks.put(id, task);
+                }
+                if (task.getState() == RcpTask.STATE.ENDED) {
+                    log.info("Restored ended task {}.", id);
+                    continue;
+                }
+                if (state.optBoolean(KEY_HAS_SRC_CREDS, false)) {
+                    log.info("Task {} needs to be started again with the credentials of the source repository.", id);
+                } else if (state.optBoolean(KEY_RESUME, false)) {
+                    resumeTasks.put(task, state.getString(KEY_USER_ID));
+                }
+                log.info("Restored task {}. Resuming from {}", id, task.getRcp().getResumeFrom());
+            } catch (Exception e) {
+                log.error("Error while restoring task from {}: {}", file, e.toString());
+            }
+        }
+        return resumeTasks;
+    }
+
+    private void resumeTasks(Map<RcpTask, String> resumeTasks) {
+        for (Map.Entry<RcpTask, String> entry: resumeTasks.entrySet()) {
+            RcpTask task = entry.getKey();
+            Session admin = null;
+            Session session = null;
+            try {
+                admin = repository.loginAdministrative(null);
+                session = admin.impersonate(new SimpleCredentials(entry.getValue(), new char[0]));
+                task.start(session);
+                log.info("Resumed task {}.", task.getId());
+            } catch (Exception e) {
+                log.error("Error while resuming task {}: {}", task.getId(), e.toString());
+            } finally {
+                if (session != null) {
+                    session.logout();
+                }
+                if (admin != null) {
+                    admin.logout();
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists the progress of the running tasks.
+     */
+    private void checkpoint() {
+        for (RcpTask task: getTaskList()) {
+            if (task.getState() == RcpTask.STATE.RUNNING) {
+                saveTask(task, true);
+            }
+        }
+    }
+}
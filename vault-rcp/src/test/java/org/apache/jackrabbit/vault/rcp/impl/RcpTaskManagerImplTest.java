@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.rcp.impl;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import javax.jcr.SimpleCredentials;
+
+import org.apache.jackrabbit.vault.fs.api.RepositoryAddress;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RcpTaskManagerImplTest {
+
+    private static final String SRC = "http://localhost:4502/crx/server/-/jcr:root/content/src";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private RcpTaskManagerImpl newManager() {
+        RcpTaskManagerImpl mgr = new RcpTaskManagerImpl();
+        mgr.tasksDir = tmpFolder.getRoot();
+        return mgr;
+    }
+
+    @Test
+    public void testStoppedTask() throws Exception {
+        RcpTaskManagerImpl mgr = newManager();
+        RcpTask task = mgr.addTask(new RepositoryAddress(SRC), new SimpleCredentials("admin", "secret".toCharArray()),
+                "/content/dst", "stopped");
+        task.setRecursive(true);
+        task.getRcp().setBatchSize(500);
+        task.getRcp().setResumeFrom("/content/src/b");
+        task.stop();
+
+        String persisted = new String(Files.readAllBytes(new File(tmpFolder.getRoot(), "stopped.json").toPath()),
+                StandardCharsets.UTF_8);
+        assertFalse("credentials are not persisted", persisted.contains("secret"));
+
+        RcpTaskManagerImpl restoredMgr = newManager();
+        Map<RcpTask, String> resumeTasks = restoredMgr.loadTasks();
+        assertTrue("stopped tasks are not resumed", resumeTasks.isEmpty());
+
+        RcpTask restored = restoredMgr.getTask("stopped");
+        assertEquals(RcpTask.STATE.NEW, restored.getState());
+        assertEquals("/content/src", restored.getSource().getPath());
+        assertEquals("/content/dst", restored.getDestination());
+        assertEquals(500, restored.getRcp().getBatchSize());
+        assertEquals("/content/src/b", restored.getRcp().getResumeFrom());
+        assertNull("credentials are not restored", restored.getSourceCredentials());
+    }
+
+    @Test
+    public void testEndedTask() throws Exception {
+        RcpTaskManagerImpl mgr = newManager();
+        RcpTask task = mgr.addTask(new RepositoryAddress(SRC), null, "/content/dst", "ended");
+        task.setEnded("javax.jcr.RepositoryException: failed");
+        mgr.saveTask(task, true);
+
+        RcpTaskManagerImpl restoredMgr = newManager();
+        assertTrue("ended tasks are not resumed", restoredMgr.loadTasks().isEmpty());
+
+        RcpTask restored = restoredMgr.getTask("ended");
+        assertEquals(RcpTask.STATE.ENDED, restored.getState());
+        assertEquals("javax.jcr.RepositoryException: failed", getStatus(restored).getString("error"));
+    }
+
+    @Test
+    public void testRemovedTask() throws Exception {
+        RcpTaskManagerImpl mgr = newManager();
+        RcpTask task = mgr.addTask(new RepositoryAddress(SRC), null, "/content/dst", "removed");
+        mgr.saveTask(task);
+        task.remove();
+
+        RcpTaskManagerImpl restoredMgr = newManager();
+        restoredMgr.loadTasks();
+        assertTrue(restoredMgr.getTasks().isEmpty());
+    }
+
+    @Test
+    public void testPrefetchDepth() throws Exception {
+        RcpTaskManagerImpl mgr = newManager();
+        RcpTask task = mgr.addTask(new RepositoryAddress(SRC), null, "/content/dst", "prefetch");
+        assertEquals(4, task.getPrefetchDepth());
+
+        task.setOptions(new JSONObject().put(RcpServlet.PARAM_PREFETCH_DEPTH, 6));
+        assertEquals(6, task.getPrefetchDepth());
+        mgr.saveTask(task);
+
+        RcpTaskManagerImpl restoredMgr = newManager();
+        restoredMgr.loadTasks();
+        assertEquals(6, restoredMgr.getTask("prefetch").getPrefetchDepth());
+    }
+
+    private static JSONObject getStatus(RcpTask task) throws Exception {
+        StringWriter out = new StringWriter();
+        task.write(new JSONWriter(out));
+        return new JSONObject(out.toString()).getJSONObject("status");
+    }
+}
@@ -16,22 +16,42 @@
  */
 package org.apache.jackrabbit.vault.validation;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.vault.fs.io.Archive;
 import org.apache.jackrabbit.vault.util.Constants;
 import org.apache.jackrabbit.vault.util.PlatformNameFormat;
 import org.apache.jackrabbit.vault.validation.impl.util.EnhancedBufferedInputStream;
 import org.apache.jackrabbit.vault.validation.impl.util.ResettableInputStream;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidationCache;
 import org.apache.jackrabbit.vault.validation.impl.util.ValidatorException;
 import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
 import org.apache.jackrabbit.vault.validation.spi.FilterValidator;
@@ -46,6 +66,7 @@ import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
 import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.apache.jackrabbit.vault.validation.spi.ValidatorFactory;
 import org.apache.jackrabbit.vault.validation.spi.impl.AdvancedFilterValidator;
 import org.apache.jackrabbit.vault.validation.spi.impl.AdvancedPropertiesValidator;
 import org.apache.jackrabbit.vault.validation.spi.impl.DocumentViewParserValidator;
@@ -58,11 +79,22 @@ import org.slf4j.LoggerFactory;
 /** 
  * Provides methods to call all registered validators. This instance is bound to the {@link ValidationContext} being given in the 
  * {@link ValidationExecutorFactory#createValidationExecutor(org.apache.jackrabbit.vault.validation.spi.ValidationContext, boolean, boolean, Map)}.
- * This class is thread-safe (i.e. methods can be used from different threads on the same instance). 
+ * The methods validating single files call the validators directly, therefore they must only be called concurrently in case all validators
+ * are thread-safe (see {@link ValidatorFactory#isThreadSafe()}).
+ * Use {@link #validate(Path, int)} or {@link #validate(Archive, Path, int)} to validate a whole package with multiple threads.
+ * Those never call validators which are not thread-safe concurrently and let them see the files in the same order as a sequential validation.
  * @see ValidationExecutorFactory
  */
 public final class ValidationExecutor {
 
+    /** call sites being used as keys for cached messages */
+    private static final String CALL_SITE_META_INF_PATH = "metaInfPath";
+    private static final String CALL_SITE_META_INF_DATA = "metaInfData";
+    private static final String CALL_SITE_JCR_PATH = "jcrPath";
+    private static final String CALL_SITE_JCR_DATA = "jcrData";
+    private static final String CALL_SITE_DOCVIEW = "docview";
+    private static final String CALL_SITE_NODE_PATH_PREFIX = "node:";
+
     private final Map<String, DocumentViewXmlValidator> documentViewXmlValidators;
     private final Map<String, NodePathValidator> nodePathValidators;
     private final Map<String, GenericJcrDataValidator> genericJcrDataValidators;
@@ -71,7 +103,16 @@ public final class ValidationExecutor {
     private final Map<String, JcrPathValidator> jcrPathValidators;
     private final Map<String, FilterValidator> filterValidators;
     private final Map<String, PropertiesValidator> propertiesValidators;
+    /** the id of the {@link DocumentViewParserValidator} or {@code null} in case there is none */
+    private final @Nullable String documentViewParserValidatorId;
+    private volatile boolean isSingleParse;
+    private volatile @NotNull ValidationMessageSeverity minimumSeverity = ValidationMessageSeverity.DEBUG;
+    private volatile @Nullable ValidationCache validationCache;
     private final @NotNull Map<String, Validator> validatorsById;
+    /** {@code true} in case all validators are thread-safe */
+    private final boolean isThreadSafe;
+    /** the ids of the validators which were not called for some files in single parse mode */
+    private final @NotNull Set<String> skippedValidatorIds = ConcurrentHashMap.newKeySet();
 
     /**
      * the default logger
@@ -79,12 +120,25 @@ public final class ValidationExecutor {
     private static final Logger log = LoggerFactory.getLogger(ValidationExecutor.class);
 
     /**
-     * Creates a new instance with the given validators.
+     * Creates a new instance with the given validators. None of the validators is considered thread-safe.
      * 
      * @param validatorsById a map of validator ids and actual validators
      */
     public ValidationExecutor(@NotNull Map<String, Validator> validatorsById) {
+        this(validatorsById, Collections.emptySet());
+    }
+
+    /**
+     * Creates a new instance with the given validators.
+     * Validators not contained in {@code threadSafeValidatorIds} are never called concurrently by {@link #validate(Path, int)} and {@link #validate(Archive, Path, int)},
+     * the other validators may be called concurrently.
+     * 
+     * @param validatorsById a map of validator ids and actual validators
+     * @param threadSafeValidatorIds the ids of the validators which are thread-safe
+     */
+    public ValidationExecutor(@NotNull Map<String, Validator> validatorsById, @NotNull Set<String> threadSafeValidatorIds) {
         this.validatorsById = validatorsById;
+        this.isThreadSafe = threadSafeValidatorIds.containsAll(validatorsById.keySet());
         this.documentViewXmlValidators = ValidationExecutor.filterValidatorsByClass(validatorsById, DocumentViewXmlValidator.class);
         this.nodePathValidators = ValidationExecutor.filterValidatorsByClass(validatorsById, NodePathValidator.class);
         this.genericJcrDataValidators = ValidationExecutor.filterValidatorsByClass(validatorsById, GenericJcrDataValidator.class);
@@ -93,6 +147,10 @@ public final class ValidationExecutor {
         this.jcrPathValidators = ValidationExecutor.filterValidatorsByClass(validatorsById, JcrPathValidator.class);
         this.filterValidators = ValidationExecutor.filterValidatorsByClass(validatorsById, FilterValidator.class);
         this.propertiesValidators = ValidationExecutor.filterValidatorsByClass(validatorsById, PropertiesValidator.class);
+        this.documentViewParserValidatorId = validatorsById.entrySet().stream()
+                .filter(x -> x.getValue() instanceof DocumentViewParserValidator)
+                .map(Map.Entry::getKey)
+                .findFirst().orElse(null);
         
         // nested validators (i.e. ones called from specific low-level validators) need to be linked
         for (Validator validator : validatorsById.values()) {
@@ -108,6 +166,44 @@ public final class ValidationExecutor {
         }
     }
 
+    /**
+     * Enables or disables the single parse mode. In this mode each Document View XML file below jcr_root is only read and parsed once by the
+     * {@link DocumentViewParserValidator} which passes the parsed nodes to all {@link DocumentViewXmlValidator}s.
+     * Other {@link GenericJcrDataValidator}s are not called for those files, therefore the input stream is never buffered and replayed.
+     * Validators interested in the content of Document View XML files should implement {@link DocumentViewXmlValidator} when using this mode.
+     * A warning is logged for each {@link GenericJcrDataValidator} being skipped for the first time, see also {@link #getSkippedValidatorIds()}.
+     * By default this mode is disabled.
+     * 
+     * @param isSingleParse {@code true} to enable the single parse mode, {@code false} to disable it
+     */
+    public void setSingleParse(boolean isSingleParse) {
+        this.isSingleParse = isSingleParse;
+    }
+
+    /**
+     * Sets the minimum severity of the validation messages being returned or passed to a sink. Messages with a lower severity are
+     * discarded, the executor does not even create its own messages with a lower severity.
+     * By default all messages are returned (i.e. minimum severity is {@link ValidationMessageSeverity#DEBUG}).
+     * 
+     * @param minimumSeverity the minimum severity
+     */
+    public void setMinimumSeverity(@NotNull ValidationMessageSeverity minimumSeverity) {
+        this.minimumSeverity = minimumSeverity;
+    }
+
+    /**
+     * Sets the cache for the messages of local validators (see {@link ValidatorFactory#isLocal()}).
+     * The cache is only used by {@link #validate(Path, int)} and {@link #validate(Archive, Path, int)} (and their overloads) and only for files (not for folders).
+     * For each file the cached messages of local validators are replayed instead of calling those validators again, in case the file's content did not change.
+     * Replayed messages don't carry the original throwable.
+     * 
+     * @param validationCache the cache or {@code null} to disable caching
+     * @see ValidationExecutorFactory#setCacheDirectory(Path)
+     */
+    void setValidationCache(@Nullable ValidationCache validationCache) {
+        this.validationCache = validationCache;
+    }
+
     /**
      * Returns all bound validators by id.
      * @return a map with all validators (key=validator id, value=actual validator)
@@ -116,6 +212,16 @@ public final class ValidationExecutor {
         return validatorsById;
     }
 
+    /**
+     * Returns the ids of the {@link GenericJcrDataValidator}s which were not called for some Document View XML files they are interested in,
+     * because those were only parsed by the {@link DocumentViewParserValidator} in single parse mode (see {@link #setSingleParse(boolean)}).
+     * 
+     * @return the ids of the skipped validators
+     */
+    public @NotNull Set<String> getSkippedValidatorIds() {
+        return Collections.unmodifiableSet(skippedValidatorIds);
+    }
+
     /**
      * Returns all unused validators by id. Unused validators are those implementing an interface which
      * is not understood by this executor.
@@ -145,16 +251,34 @@ public final class ValidationExecutor {
      * @return the list of validation messages 
      * @throws IOException in case the input stream could not be accessed */
     public @NotNull Collection<ValidationViolation> validateMetaInf(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath) throws IOException {
+        List<ValidationViolation> messages = new ArrayList<>();
+        validateMetaInf(input, filePath, basePath, messages::add);
+        return messages;
+    }
+
+    /** 
+     * Validates a package META-INF input stream  with all relevant validators.
+     * 
+     * @param input the input stream if it is a file or {@code null} in case it is called for a folder. It is not closed during processing, this is obligation of the caller. Should not be buffered as buffering is done internally! 
+     * @param filePath should be relative to the META-INF directory (i.e. should not start with {@code META-INF})
+     * @param basePath the path to which the file path is relative
+     * @param sink the consumer which receives all validation messages with at least the minimum severity
+     * @throws IOException in case the input stream could not be accessed */
+    public void validateMetaInf(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath, @NotNull Consumer<ValidationViolation> sink) throws IOException {
+        validateMetaInf(input, filePath, basePath, null, sink);
+    }
+
+    private void validateMetaInf(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath, @Nullable ValidationCache.CachedFile cachedFile, @NotNull Consumer<ValidationViolation> sink) throws IOException {
         if (filePath.isAbsolute()) {
             throw new IllegalArgumentException("Given file path must not be absolute");
         }
         if (filePath.startsWith(Constants.META_INF)) {
             throw new IllegalArgumentException("Given file path must not start with META-INF but rather on the level below");
         }
-        List<ValidationViolation> messages = new LinkedList<>();
-        messages.add(new ValidationViolation(ValidationMessageSeverity.DEBUG, "Validating meta inf file '" + filePath + "'..."));
-        messages.addAll(validateGenericMetaInfData(input != null ? new EnhancedBufferedInputStream(input) : null, filePath, basePath));
-        return messages;
+        if (isReported(ValidationMessageSeverity.DEBUG)) {
+            sink.accept(new ValidationViolation(ValidationMessageSeverity.DEBUG, "Validating meta inf file '" + filePath + "'..."));
+        }
+        validateGenericMetaInfData(input != null ? new EnhancedBufferedInputStream(input) : null, filePath, basePath, cachedFile, sink);
     }
 
     /** 
@@ -167,16 +291,35 @@ public final class ValidationExecutor {
      * @throws IOException in case the input stream could not be accessed
      */
     public @NotNull Collection<ValidationViolation> validateJcrRoot(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath) throws IOException {
+        List<ValidationViolation> messages = new ArrayList<>();
+        validateJcrRoot(input, filePath, basePath, messages::add);
+        return messages;
+    }
+
+    /** 
+     * Validates a package jcr_root input stream  with all relevant validators.
+     * 
+     * @param input the input stream if it is a file or {@code null} in case it is called for a folder. It is not closed during processing, this is obligation of the caller. Should not be buffered as buffering is done internally! 
+     * @param filePath file path relative to the content package jcr root (i.e. the folder named "jcr_root")
+     * @param basePath the path to which the file path is relative
+     * @param sink the consumer which receives all validation messages with at least the minimum severity
+     * @throws IOException in case the input stream could not be accessed
+     */
+    public void validateJcrRoot(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath, @NotNull Consumer<ValidationViolation> sink) throws IOException {
+        validateJcrRoot(input, filePath, basePath, null, sink);
+    }
+
+    private void validateJcrRoot(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath, @Nullable ValidationCache.CachedFile cachedFile, @NotNull Consumer<ValidationViolation> sink) throws IOException {
         if (filePath.isAbsolute()) {
             throw new IllegalArgumentException("Given path is not relative " + filePath);
         }
         if (filePath.startsWith(Constants.ROOT_DIR)) {
             throw new IllegalArgumentException("Given file path must not start with jcr_root but rather on the level below");
         }
-        List<ValidationViolation> messages = new LinkedList<>();
-        messages.add(new ValidationViolation(ValidationMessageSeverity.DEBUG, "Validating jcr file '" + filePath + "'..."));
-        messages.addAll(validateGenericJcrData(input != null ? new EnhancedBufferedInputStream(input) : null, filePath, basePath));
-        return messages;
+        if (isReported(ValidationMessageSeverity.DEBUG)) {
+            sink.accept(new ValidationViolation(ValidationMessageSeverity.DEBUG, "Validating jcr file '" + filePath + "'..."));
+        }
+        validateGenericJcrData(input != null ? new EnhancedBufferedInputStream(input) : null, filePath, basePath, cachedFile, sink);
     }
 
     /** 
@@ -186,48 +329,89 @@ public final class ValidationExecutor {
      * @return the list of additional validation violations (might be empty) which have not been reported before 
      */
     public @NotNull Collection<ValidationViolation> done() {
-        Collection<ValidationViolation> allViolations = new LinkedList<>();
+        List<ValidationViolation> allViolations = new ArrayList<>();
+        done(allViolations::add);
+        return allViolations;
+    }
+
+    /** 
+     * Must be called at the end of the validation (when the validation context is no longer used).
+     * This is important as some validators emit violation messages only when this method is called.
+     * 
+     * @param sink the consumer which receives all additional validation messages with at least the minimum severity
+     */
+    public void done(@NotNull Consumer<ValidationViolation> sink) {
         // go through all validators (even the nested ones)
         for (Map.Entry<String, Validator>entry : validatorsById.entrySet()) {
             try {
-                Collection<ValidationMessage> violations = entry.getValue().done();
-                if (violations != null && !violations.isEmpty()) {
-                    allViolations.addAll(ValidationViolation.wrapMessages(entry.getKey(), violations, null, null, null, 0, 0));
-                }
+                report(sink, entry.getKey(), entry.getValue().done(), null, null, null, 0);
             } catch (RuntimeException e) {
                 throw new ValidatorException(entry.getKey(), e);
             }
         }
-        return allViolations;
     }
 
-    private Collection<ValidationViolation> validateNodePaths(Path filePath, Path basePath, Map<String, Integer> nodePathsAndLineNumbers) {
-        List<ValidationViolation> enrichedMessages = new LinkedList<>();
-       
+    private boolean isReported(@NotNull ValidationMessageSeverity severity) {
+        return severity.ordinal() >= minimumSeverity.ordinal();
+    }
+
+    private void report(@NotNull Consumer<ValidationViolation> sink, @NotNull String validatorId, @Nullable Collection<ValidationMessage> messages,
+            @Nullable Path filePath, @Nullable Path basePath, @Nullable String nodePath, int line) {
+        if (messages != null) {
+            for (ValidationMessage message : messages) {
+                if (isReported(message.getSeverity())) {
+                    sink.accept(ValidationViolation.wrapMessage(validatorId, message, filePath, basePath, nodePath, line, 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls a validator method or replays its cached messages.
+     * 
+     * @param cachedFile the cache view of the current file or {@code null} in case caching is not used
+     * @param validatorId the validator id
+     * @param callSite the call site
+     * @param call the actual call of the validator method
+     * @return the messages returned by the validator method
+     * @throws IOException in case the validator method failed to access the file
+     */
+    private static @Nullable Collection<ValidationMessage> callOrReplay(@Nullable ValidationCache.CachedFile cachedFile, @NotNull String validatorId, @NotNull String callSite, @NotNull ValidatorCall call) throws IOException {
+        if (cachedFile == null) {
+            return call.call();
+        }
+        Collection<ValidationMessage> messages = cachedFile.getMessages(validatorId, callSite);
+        if (messages != null) {
+            log.debug("Replay cached messages of validator '{}' for call site '{}'", validatorId, callSite);
+        } else {
+            messages = call.call();
+            cachedFile.recordMessages(validatorId, callSite, messages);
+        }
+        return messages;
+    }
+
+    private void validateNodePaths(Path filePath, Path basePath, Map<String, Integer> nodePathsAndLineNumbers, @Nullable ValidationCache.CachedFile cachedFile, Consumer<ValidationViolation> sink) throws IOException {
+        final boolean isDebugReported = isReported(ValidationMessageSeverity.DEBUG);
         for (Map.Entry<String, Integer> nodePathAndLineNumber : nodePathsAndLineNumbers.entrySet()) {
             for (Map.Entry<String, NodePathValidator> entry : nodePathValidators.entrySet()) {
-                enrichedMessages.add(new ValidationViolation(entry.getKey(), ValidationMessageSeverity.DEBUG, "Validate..."));
+                if (isDebugReported) {
+                    sink.accept(new ValidationViolation(entry.getKey(), ValidationMessageSeverity.DEBUG, "Validate..."));
+                }
                 try {
-                    Collection<ValidationMessage> messages = entry.getValue().validate(new NodeContextImpl(nodePathAndLineNumber.getKey(), filePath, basePath));
-                    if (messages != null && !messages.isEmpty()) {
-                        enrichedMessages.addAll(ValidationViolation.wrapMessages(entry.getKey(), messages, filePath, basePath, nodePathAndLineNumber.getKey(),
-                                nodePathAndLineNumber.getValue().intValue(), 0));
-                    }
+                    Collection<ValidationMessage> messages = callOrReplay(cachedFile, entry.getKey(), CALL_SITE_NODE_PATH_PREFIX + nodePathAndLineNumber.getKey(),
+                            () -> entry.getValue().validate(new NodeContextImpl(nodePathAndLineNumber.getKey(), filePath, basePath)));
+                    report(sink, entry.getKey(), messages, filePath, basePath, nodePathAndLineNumber.getKey(), nodePathAndLineNumber.getValue().intValue());
                 } catch (RuntimeException e) {
                     throw new ValidatorException(entry.getKey(), nodePathAndLineNumber.getKey(), filePath, e);
                 }
             }
         }
-        return enrichedMessages;
     }
 
-    private Collection<ValidationViolation> validateGenericMetaInfData(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath) throws IOException {
-        Collection<ValidationViolation> enrichedMessages = new LinkedList<>();
+    private void validateGenericMetaInfData(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath, @Nullable ValidationCache.CachedFile cachedFile, @NotNull Consumer<ValidationViolation> sink) throws IOException {
         for (Map.Entry<String, MetaInfPathValidator> entry : metaInfPathValidators.entrySet()) {
-            Collection<ValidationMessage> messages = entry.getValue().validateMetaInfPath(filePath, basePath, input == null);
-            if (messages != null && !messages.isEmpty()) {
-                enrichedMessages.addAll(ValidationViolation.wrapMessages(entry.getKey(), messages, filePath, basePath, null, 0, 0));
-            }
+            Collection<ValidationMessage> messages = callOrReplay(cachedFile, entry.getKey(), CALL_SITE_META_INF_PATH, () -> entry.getValue().validateMetaInfPath(filePath, basePath, input == null));
+            report(sink, entry.getKey(), messages, filePath, basePath, null, 0);
         }
         if (input != null) {
             InputStream currentInput = input;
@@ -245,11 +429,12 @@ public final class ValidationExecutor {
                             } else {
                                 resettableInputStream.reset();
                             }
-                            enrichedMessages.add(new ValidationViolation(entry.getKey(), ValidationMessageSeverity.DEBUG, "Validate..."));
-                            Collection<ValidationMessage> messages = validator.validateMetaInfData(currentInput, filePath, basePath);
-                            if (messages != null && !messages.isEmpty()) {
-                                enrichedMessages.addAll(ValidationViolation.wrapMessages(entry.getKey(), messages, filePath, basePath, null, 0, 0));
+                            if (isReported(ValidationMessageSeverity.DEBUG)) {
+                                sink.accept(new ValidationViolation(entry.getKey(), ValidationMessageSeverity.DEBUG, "Validate..."));
                             }
+                            final InputStream validatorInput = currentInput;
+                            Collection<ValidationMessage> messages = callOrReplay(cachedFile, entry.getKey(), CALL_SITE_META_INF_DATA, () -> validator.validateMetaInfData(validatorInput, filePath, basePath));
+                            report(sink, entry.getKey(), messages, filePath, basePath, null, 0);
                         }
                     } catch (RuntimeException e) {
                         if (!(e instanceof ValidatorException)) {
@@ -263,14 +448,13 @@ public final class ValidationExecutor {
                 }
             }
         }
-        return enrichedMessages;
     }
 
-    private Collection<ValidationViolation> validateGenericJcrData(@Nullable InputStream input, @NotNull Path filePath, @NotNull Path basePath) throws IOException {
+    private void validateGenericJcrData(@Nullable BufferedInputStream input, @NotNull Path filePath, @NotNull Path basePath, @Nullable ValidationCache.CachedFile cachedFile, @NotNull Consumer<ValidationViolation> sink) throws IOException {
         Map<String, Integer> nodePathsAndLineNumbers = new LinkedHashMap<>();
-        Collection<ValidationViolation> enrichedMessages = new LinkedList<>();
         
         if (input != null) {
+            final String exclusiveValidatorId = getExclusiveValidatorId(input, filePath, basePath);
             InputStream currentInput = input;
             ResettableInputStream resettableInputStream = null;
             try {
@@ -279,20 +463,24 @@ public final class ValidationExecutor {
                     try {
                         GenericJcrDataValidator validator = entry.getValue();
                         log.debug("Validate {} with validator '{}'", filePath, validator.getClass().getName());
-                        if (validator.shouldValidateJcrData(filePath, basePath)) {
-                            if (resettableInputStream == null) {
+                        if (exclusiveValidatorId != null && !exclusiveValidatorId.equals(entry.getKey())) {
+                            if (validator.shouldValidateJcrData(filePath, basePath)) {
+                                skip(entry.getKey(), filePath, exclusiveValidatorId);
+                            }
+                        } else if (validator.shouldValidateJcrData(filePath, basePath)) {
+                            if (resettableInputStream == null && exclusiveValidatorId == null) {
                                 boolean isAnotherValidatorInterested = genericJcrDataValidators.values().stream().filter(t-> !t.equals(validator)).anyMatch(x -> x.shouldValidateJcrData(filePath, basePath));
                                 if (isAnotherValidatorInterested) {
                                     currentInput = resettableInputStream = new ResettableInputStream(input);
                                 }
-                            } else {
+                            } else if (resettableInputStream != null) {
                                 resettableInputStream.reset();
                             }
-                            enrichedMessages.add(new ValidationViolation(entry.getKey(), ValidationMessageSeverity.DEBUG, "Validate..."));
-                            Collection<ValidationMessage> messages = validator.validateJcrData(currentInput, filePath, basePath, nodePathsAndLineNumbers);
-                            if (messages != null && !messages.isEmpty()) {
-                                enrichedMessages.addAll(ValidationViolation.wrapMessages(entry.getKey(), messages, filePath, basePath, null, 0, 0));
+                            if (isReported(ValidationMessageSeverity.DEBUG)) {
+                                sink.accept(new ValidationViolation(entry.getKey(), ValidationMessageSeverity.DEBUG, "Validate..."));
                             }
+                            Collection<ValidationMessage> messages = validateJcrData(entry.getKey(), validator, currentInput, filePath, basePath, nodePathsAndLineNumbers, cachedFile);
+                            report(sink, entry.getKey(), messages, filePath, basePath, null, 0);
                         } 
                         // only do it if we haven't collected node paths from a previous run
                         if (nodePathsAndLineNumbers.isEmpty()) {
@@ -322,13 +510,396 @@ public final class ValidationExecutor {
         // generate node context
         NodeContext nodeContext = new NodeContextImpl(nodePathsAndLineNumbers.keySet().iterator().next(), filePath, basePath);
         for (Map.Entry<String, JcrPathValidator> entry : jcrPathValidators.entrySet()) {
-            Collection<ValidationMessage> messages = entry.getValue().validateJcrPath(nodeContext, input == null);
-            if (messages != null && !messages.isEmpty()) {
-                enrichedMessages.addAll(ValidationViolation.wrapMessages(entry.getKey(), messages, filePath, basePath, null, 0, 0));
+            Collection<ValidationMessage> messages = callOrReplay(cachedFile, entry.getKey(), CALL_SITE_JCR_PATH, () -> entry.getValue().validateJcrPath(nodeContext, input == null));
+            report(sink, entry.getKey(), messages, filePath, basePath, null, 0);
+        }
+        validateNodePaths(filePath, basePath, nodePathsAndLineNumbers, cachedFile, sink);
+    }
+
+    private void skip(@NotNull String validatorId, @NotNull Path filePath, @NotNull String exclusiveValidatorId) {
+        if (skippedValidatorIds.add(validatorId)) {
+            log.warn("Validator '{}' is not called for Document View XML files like {} as those are only parsed by validator '{}' in single parse mode. "
+                    + "It should implement DocumentViewXmlValidator instead.", validatorId, filePath, exclusiveValidatorId);
+        } else {
+            log.debug("Skip validator '{}' for {} as it is only parsed by validator '{}'", validatorId, filePath, exclusiveValidatorId);
+        }
+    }
+
+    /**
+     * Calls {@link GenericJcrDataValidator#validateJcrData(InputStream, Path, Path, Map)} or replays the cached messages and node paths.
+     */
+    private @Nullable Collection<ValidationMessage> validateJcrData(@NotNull String validatorId, @NotNull GenericJcrDataValidator validator, @NotNull InputStream input,
+            @NotNull Path filePath, @NotNull Path basePath, @NotNull Map<String, Integer> nodePathsAndLineNumbers, @Nullable ValidationCache.CachedFile cachedFile) throws IOException {
+        if (cachedFile == null) {
+            return validator.validateJcrData(input, filePath, basePath, nodePathsAndLineNumbers);
+        }
+        if (validatorId.equals(documentViewParserValidatorId)) {
+            return validateDocumentViewXml(validatorId, input, filePath, basePath, nodePathsAndLineNumbers, cachedFile);
+        }
+        if (!cachedFile.isLocal(validatorId)) {
+            return validator.validateJcrData(input, filePath, basePath, nodePathsAndLineNumbers);
+        }
+        Collection<ValidationMessage> messages = cachedFile.getMessages(validatorId, CALL_SITE_JCR_DATA);
+        if (messages != null) {
+            log.debug("Replay cached messages of validator '{}' for {}", validatorId, filePath);
+            cachedFile.getNodePathsAndLineNumbers(validatorId).forEach(nodePathsAndLineNumbers::putIfAbsent);
+        } else {
+            // separate the node paths found by this validator to be able to cache them
+            Map<String, Integer> validatorNodePathsAndLineNumbers = new LinkedHashMap<>();
+            messages = validator.validateJcrData(input, filePath, basePath, validatorNodePathsAndLineNumbers);
+            cachedFile.recordMessages(validatorId, CALL_SITE_JCR_DATA, messages);
+            cachedFile.recordNodePathsAndLineNumbers(validatorId, validatorNodePathsAndLineNumbers);
+            nodePathsAndLineNumbers.putAll(validatorNodePathsAndLineNumbers);
+        }
+        return messages;
+    }
+
+    /**
+     * Validates a file with the {@link DocumentViewParserValidator}. The cached messages of local {@link DocumentViewXmlValidator}s are replayed,
+     * the parsed nodes are only passed to the other {@link DocumentViewXmlValidator}s. The file is not parsed at all in case the parser and all 
+     * {@link DocumentViewXmlValidator}s are local and their messages are cached.
+     */
+    private @NotNull Collection<ValidationMessage> validateDocumentViewXml(@NotNull String parserId, @NotNull InputStream input, @NotNull Path filePath, @NotNull Path basePath,
+            @NotNull Map<String, Integer> nodePathsAndLineNumbers, @NotNull ValidationCache.CachedFile cachedFile) throws IOException {
+        List<ValidationMessage> cachedMessages = new ArrayList<>();
+        Map<String, DocumentViewXmlValidator> uncachedDocViewValidators = new HashMap<>();
+        for (Map.Entry<String, DocumentViewXmlValidator> entry : documentViewXmlValidators.entrySet()) {
+            List<ValidationMessage> messages = cachedFile.getMessages(entry.getKey(), CALL_SITE_DOCVIEW);
+            if (messages != null) {
+                cachedMessages.addAll(messages);
+            } else {
+                uncachedDocViewValidators.put(entry.getKey(), entry.getValue());
+            }
+        }
+        List<ValidationMessage> cachedParserMessages = cachedFile.getMessages(parserId, CALL_SITE_JCR_DATA);
+        if (cachedParserMessages != null && uncachedDocViewValidators.isEmpty()) {
+            log.debug("Replay cached messages of validator '{}' and all document view validators for {}", parserId, filePath);
+            cachedFile.getNodePathsAndLineNumbers(parserId).forEach(nodePathsAndLineNumbers::putIfAbsent);
+            List<ValidationMessage> messages = new ArrayList<>(cachedParserMessages);
+            messages.addAll(cachedMessages);
+            return messages;
+        }
+        DocumentViewParserValidator parser = DocumentViewParserValidator.class.cast(validatorsById.get(parserId));
+        Map<String, Integer> parserNodePathsAndLineNumbers = new LinkedHashMap<>();
+        Collection<ValidationMessage> parserMessages = parser.validateJcrData(input, filePath, basePath, parserNodePathsAndLineNumbers, uncachedDocViewValidators);
+        // split the messages by the validators which emitted them
+        Map<String, List<ValidationMessage>> docViewMessagesByValidatorId = new HashMap<>();
+        for (String validatorId : uncachedDocViewValidators.keySet()) {
+            docViewMessagesByValidatorId.put(validatorId, new ArrayList<>());
+        }
+        List<ValidationMessage> ownMessages = new ArrayList<>();
+        for (ValidationMessage message : parserMessages) {
+            String validatorId = message instanceof ValidationViolation ? ValidationViolation.class.cast(message).getValidatorId() : null;
+            List<ValidationMessage> docViewMessages = validatorId != null ? docViewMessagesByValidatorId.get(validatorId) : null;
+            if (docViewMessages != null) {
+                docViewMessages.add(message);
+            } else {
+                ownMessages.add(message);
             }
         }
-        enrichedMessages.addAll(validateNodePaths(filePath, basePath, nodePathsAndLineNumbers));
-        return enrichedMessages;
+        for (Map.Entry<String, List<ValidationMessage>> entry : docViewMessagesByValidatorId.entrySet()) {
+            cachedFile.recordMessages(entry.getKey(), CALL_SITE_DOCVIEW, entry.getValue());
+        }
+        cachedFile.recordMessages(parserId, CALL_SITE_JCR_DATA, ownMessages);
+        cachedFile.recordNodePathsAndLineNumbers(parserId, parserNodePathsAndLineNumbers);
+        nodePathsAndLineNumbers.putAll(parserNodePathsAndLineNumbers);
+        List<ValidationMessage> messages = new ArrayList<>(parserMessages);
+        messages.addAll(cachedMessages);
+        return messages;
+    }
+
+    /**
+     * Validates all files of the given package directory with all relevant validators and calls {@link #done()} afterwards.
+     * The files are validated concurrently by the given number of threads, first all files below {@code META-INF}, then all files below {@code jcr_root}.
+     * Each file is validated by one thread with all relevant validators in the usual order.
+     * In case some validators are not thread-safe, the files are only read concurrently but validated one after the other in their order.
+     * 
+     * @param packageDirectory the directory containing the {@code META-INF} and {@code jcr_root} directories of the package
+     * @param parallelism the number of threads to use
+     * @return the list of validation messages (in the order of the files)
+     * @throws IOException in case some file could not be accessed
+     */
+    public @NotNull Collection<ValidationViolation> validate(@NotNull Path packageDirectory, int parallelism) throws IOException {
+        List<ValidationViolation> violations = new ArrayList<>();
+        validate(packageDirectory, parallelism, violations::add);
+        return violations;
+    }
+
+    /**
+     * Same as {@link #validate(Path, int)} but passes the validation messages to the given sink instead of collecting them.
+     * 
+     * @param packageDirectory the directory containing the {@code META-INF} and {@code jcr_root} directories of the package
+     * @param parallelism the number of threads to use
+     * @param sink the consumer which receives all validation messages with at least the minimum severity (in the order of the files, never concurrently)
+     * @throws IOException in case some file could not be accessed
+     */
+    public void validate(@NotNull Path packageDirectory, int parallelism, @NotNull Consumer<ValidationViolation> sink) throws IOException {
+        Path metaInfPath = packageDirectory.resolve(Constants.META_INF);
+        Path jcrRootPath = packageDirectory.resolve(Constants.ROOT_DIR);
+        validate(collectFiles(metaInfPath), metaInfPath, collectFiles(jcrRootPath), jcrRootPath, parallelism, sink);
+    }
+
+    /**
+     * Validates all entries of the given package archive with all relevant validators and calls {@link #done()} afterwards.
+     * The entries are validated concurrently by the given number of threads, first all entries below {@code META-INF}, then all entries below {@code jcr_root}.
+     * Each entry is validated by one thread with all relevant validators in the usual order.
+     * In case some validators are not thread-safe, the entries are only read concurrently but validated one after the other in their order.
+     * 
+     * @param archive the opened archive which must support concurrent calls of {@link Archive#openInputStream(Archive.Entry)}
+     * @param archivePath the path of the archive, used as base for the file paths of the validation messages
+     * @param parallelism the number of threads to use
+     * @return the list of validation messages (in the order of the entries)
+     * @throws IOException in case some entry could not be accessed
+     */
+    public @NotNull Collection<ValidationViolation> validate(@NotNull Archive archive, @NotNull Path archivePath, int parallelism) throws IOException {
+        List<ValidationViolation> violations = new ArrayList<>();
+        validate(archive, archivePath, parallelism, violations::add);
+        return violations;
+    }
+
+    /**
+     * Same as {@link #validate(Archive, Path, int)} but passes the validation messages to the given sink instead of collecting them.
+     * 
+     * @param archive the opened archive which must support concurrent calls of {@link Archive#openInputStream(Archive.Entry)}
+     * @param archivePath the path of the archive, used as base for the file paths of the validation messages
+     * @param parallelism the number of threads to use
+     * @param sink the consumer which receives all validation messages with at least the minimum severity (in the order of the entries, never concurrently)
+     * @throws IOException in case some entry could not be accessed
+     */
+    public void validate(@NotNull Archive archive, @NotNull Path archivePath, int parallelism, @NotNull Consumer<ValidationViolation> sink) throws IOException {
+        List<FileToValidate> metaInfFiles = new ArrayList<>();
+        Archive.Entry metaInf = archive.getRoot().getChild(Constants.META_INF);
+        if (metaInf != null) {
+            collectEntries(archive, metaInf, Paths.get(""), metaInfFiles);
+        }
+        List<FileToValidate> jcrRootFiles = new ArrayList<>();
+        Archive.Entry jcrRoot = archive.getJcrRoot();
+        if (jcrRoot != null) {
+            collectEntries(archive, jcrRoot, Paths.get(""), jcrRootFiles);
+        }
+        validate(metaInfFiles, archivePath.resolve(Constants.META_INF), jcrRootFiles, archivePath.resolve(Constants.ROOT_DIR), parallelism, sink);
+    }
+
+    private void validate(@NotNull List<FileToValidate> metaInfFiles, @NotNull Path metaInfBasePath,
+            @NotNull List<FileToValidate> jcrRootFiles, @NotNull Path jcrRootBasePath, int parallelism, @NotNull Consumer<ValidationViolation> sink) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but is " + parallelism);
+        }
+        FileValidation metaInfValidation = (input, filePath, cachedFile, fileSink) -> validateMetaInf(input, filePath, metaInfBasePath, cachedFile, fileSink);
+        FileValidation jcrRootValidation = (input, filePath, cachedFile, fileSink) -> validateJcrRoot(input, filePath, jcrRootBasePath, cachedFile, fileSink);
+        if (isThreadSafe) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                validateFiles(pool, metaInfFiles, Paths.get(Constants.META_INF), metaInfValidation, sink);
+                validateFiles(pool, jcrRootFiles, Paths.get(Constants.ROOT_DIR), jcrRootValidation, sink);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+            try {
+                validateFilesInOrder(executorService, metaInfFiles, Paths.get(Constants.META_INF), metaInfValidation, sink);
+                validateFilesInOrder(executorService, jcrRootFiles, Paths.get(Constants.ROOT_DIR), jcrRootValidation, sink);
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+        done(sink);
+    }
+
+    private void validateFiles(@NotNull ForkJoinPool pool, @NotNull List<FileToValidate> files, @NotNull Path cachePath, @NotNull FileValidation validation, @NotNull Consumer<ValidationViolation> sink) throws IOException {
+        final ValidationCache cache = validationCache;
+        try {
+            // the messages of each file are passed to the sink in the order of the files
+            pool.submit(() -> files.parallelStream().map(file -> {
+                List<ValidationViolation> violations = new ArrayList<>();
+                try {
+                    ValidationCache.CachedFile cachedFile = null;
+                    if (cache != null) {
+                        try (InputStream input = file.openInputStream()) {
+                            if (input != null) {
+                                cachedFile = cache.getCachedFile(cachePath.resolve(file.filePath), ValidationCache.hash(input));
+                            }
+                        }
+                    }
+                    try (InputStream input = file.openInputStream()) {
+                        validation.validate(input, file.filePath, cachedFile, violations::add);
+                    }
+                    // only cache the results of files which have been validated completely
+                    if (cachedFile != null) {
+                        cachedFile.store();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return violations;
+            }).forEachOrdered(violations -> violations.forEach(sink))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Validation was interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Reads the given files concurrently but validates them one after the other in their order, so that validators which are not thread-safe are never
+     * called concurrently and see the files in the same order as in a sequential validation.
+     * The executor service must start its tasks in the order in which they were submitted.
+     */
+    private void validateFilesInOrder(@NotNull ExecutorService executorService, @NotNull List<FileToValidate> files, @NotNull Path cachePath, @NotNull FileValidation validation,
+            @NotNull Consumer<ValidationViolation> sink) throws IOException {
+        final ValidationCache cache = validationCache;
+        final FileSequence sequence = new FileSequence();
+        List<Future<List<ValidationViolation>>> results = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            final int index = i;
+            final FileToValidate file = files.get(i);
+            results.add(executorService.submit(() -> {
+                try {
+                    byte[] content;
+                    try (InputStream input = file.openInputStream()) {
+                        content = input != null ? IOUtils.toByteArray(input) : null;
+                    }
+                    ValidationCache.CachedFile cachedFile = null;
+                    if (cache != null && content != null) {
+                        cachedFile = cache.getCachedFile(cachePath.resolve(file.filePath), ValidationCache.hash(new ByteArrayInputStream(content)));
+                    }
+                    List<ValidationViolation> violations = new ArrayList<>();
+                    sequence.awaitTurn(index);
+                    validation.validate(content != null ? new ByteArrayInputStream(content) : null, file.filePath, cachedFile, violations::add);
+                    // only cache the results of files which have been validated completely
+                    if (cachedFile != null) {
+                        cachedFile.store();
+                    }
+                    return violations;
+                } finally {
+                    sequence.complete(index);
+                }
+            }));
+        }
+        try {
+            for (Future<List<ValidationViolation>> result : results) {
+                result.get().forEach(sink);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Validation was interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private static @NotNull List<FileToValidate> collectFiles(@NotNull Path baseDirectory) throws IOException {
+        List<FileToValidate> files = new ArrayList<>();
+        if (Files.isDirectory(baseDirectory)) {
+            try (Stream<Path> paths = Files.walk(baseDirectory)) {
+                paths.filter(path -> !path.equals(baseDirectory)).sorted().forEach(path -> {
+                    boolean isFolder = Files.isDirectory(path);
+                    files.add(new FileToValidate(baseDirectory.relativize(path), isFolder ? null : () -> Files.newInputStream(path)));
+                });
+            }
+        }
+        return files;
+    }
+
+    private static void collectEntries(@NotNull Archive archive, @NotNull Archive.Entry parent, @NotNull Path parentPath, @NotNull List<FileToValidate> files) {
+        for (Archive.Entry entry : parent.getChildren()) {
+            Path filePath = parentPath.resolve(entry.getName());
+            if (entry.isDirectory()) {
+                files.add(new FileToValidate(filePath, null));
+                collectEntries(archive, entry, filePath, files);
+            } else {
+                files.add(new FileToValidate(filePath, () -> archive.openInputStream(entry)));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface InputStreamSupplier {
+        @Nullable InputStream get() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface FileValidation {
+        void validate(@Nullable InputStream input, @NotNull Path filePath, @Nullable ValidationCache.CachedFile cachedFile, @NotNull Consumer<ValidationViolation> sink) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ValidatorCall {
+        @Nullable Collection<ValidationMessage> call() throws IOException;
+    }
+
+    /**
+     * Lets the tasks validating the files take turns in the order of the files.
+     */
+    private static final class FileSequence {
+        private final BitSet completed = new BitSet();
+        private int next;
+
+        /** Waits until all previous files are completed. */
+        synchronized void awaitTurn(int index) throws InterruptedException {
+            while (next != index) {
+                wait();
+            }
+        }
+
+        /** Marks the given file as completed, also in case it failed before it had its turn. */
+        synchronized void complete(int index) {
+            completed.set(index);
+            while (completed.get(next)) {
+                next++;
+            }
+            notifyAll();
+        }
+    }
+
+    private static final class FileToValidate {
+        private final @NotNull Path filePath;
+        /** {@code null} for folders */
+        private final @Nullable InputStreamSupplier inputStreamSupplier;
+
+        FileToValidate(@NotNull Path filePath, @Nullable InputStreamSupplier inputStreamSupplier) {
+            this.filePath = filePath;
+            this.inputStreamSupplier = inputStreamSupplier;
+        }
+
+        @Nullable InputStream openInputStream() throws IOException {
+            return inputStreamSupplier != null ? inputStreamSupplier.get() : null;
+        }
+    }
+
+    /**
+     * Returns the id of the only validator which should read the given input in single parse mode.
+     * 
+     * @param input the input which is reset afterwards
+     * @param filePath the file path relative to the jcr root
+     * @param basePath the path to which the file path is relative
+     * @return the id of the {@link DocumentViewParserValidator} in case the single parse mode is enabled and the given input is a Document View XML file, otherwise {@code null}
+     * @throws IOException in case the input could not be read
+     */
+    private @Nullable String getExclusiveValidatorId(@NotNull BufferedInputStream input, @NotNull Path filePath, @NotNull Path basePath) throws IOException {
+        if (!isSingleParse || documentViewParserValidatorId == null) {
+            return null;
+        }
+        if (!genericJcrDataValidators.get(documentViewParserValidatorId).shouldValidateJcrData(filePath, basePath)) {
+            return null;
+        }
+        return DocumentViewParserValidator.isDocumentViewXml(input, filePath) ? documentViewParserValidatorId : null;
     }
 
     /**
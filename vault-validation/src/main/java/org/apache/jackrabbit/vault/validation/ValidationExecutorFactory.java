@@ -16,8 +16,10 @@
  */
 package org.apache.jackrabbit.vault.validation;
 
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -25,10 +27,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidationCache;
 import org.apache.jackrabbit.vault.validation.impl.util.ValidatorSettingsImpl;
 import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
 import org.apache.jackrabbit.vault.validation.spi.Validator;
 import org.apache.jackrabbit.vault.validation.spi.ValidatorFactory;
 import org.apache.jackrabbit.vault.validation.spi.ValidatorSettings;
@@ -50,6 +55,8 @@ public final class ValidationExecutorFactory {
      */
     private static final Logger log = LoggerFactory.getLogger(ValidationExecutorFactory.class);
 
+    private volatile @Nullable Path cacheDirectory;
+
     /** Creates a new instance with {@code ValidatorFactory} instances being created via the {@link ServiceLoader} being used with the given classloader.
      * 
      * @param classLoader the class loader to be used with the service loader
@@ -68,7 +75,18 @@ public final class ValidationExecutorFactory {
         Collections.sort(validatorFactories, rankingComparator);
     }
 
-    
+    /**
+     * Sets the directory in which the messages of local validators (see {@link ValidatorFactory#isLocal()}) are cached across validation runs.
+     * The cache is used by all executors created afterwards (see {@link ValidationExecutor#validate(Path, int)}).
+     * Each cache entry is bound to the file content, the validator's implementation (class name and implementation version) and settings and the package's filter.
+     * The directory may be shared between packages and may be deleted at any time.
+     * 
+     * @param cacheDirectory the cache directory or {@code null} to disable caching (the default)
+     */
+    public void setCacheDirectory(@Nullable Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
     /** 
      * Creates a {@link ValidationExecutor} for the given context.
      * 
@@ -80,14 +98,37 @@ public final class ValidationExecutorFactory {
      * @return either {@code null} or an executor (if at least one validator is registered)
      */
     public @Nullable ValidationExecutor createValidationExecutor(@NotNull ValidationContext context, boolean isSubPackage, boolean enforceSubpackageValidation, Map<String, ? extends ValidatorSettings> validatorSettingsById) {
-        Map<String, Validator> validatorsById = createValidators(context, isSubPackage, enforceSubpackageValidation, validatorSettingsById != null ? validatorSettingsById : Collections.emptyMap());
+        return createValidationExecutor(context, isSubPackage, enforceSubpackageValidation, validatorSettingsById, ValidationMessageSeverity.DEBUG);
+    }
+
+    /** 
+     * Creates a {@link ValidationExecutor} for the given context which only emits validation messages with at least the given severity.
+     * 
+     * @param context the validation context given to the validators
+     * @param isSubPackage {@code true} in case this is a subpackage, otherwise {@code false}
+     * @param enforceSubpackageValidation {@code true} in case all validators should be also applied in any case to the sub package
+     *            (independent of their {@link ValidatorFactory#shouldValidateSubpackages()} return value)
+     * @param validatorSettingsById a map of {@link ValidatorSettings}. The key is the validator id. May be {@code null}.
+     * @param minimumSeverity the minimum severity of the messages emitted by the executor (see {@link ValidationExecutor#setMinimumSeverity(ValidationMessageSeverity)})
+     * @return either {@code null} or an executor (if at least one validator is registered)
+     */
+    public @Nullable ValidationExecutor createValidationExecutor(@NotNull ValidationContext context, boolean isSubPackage, boolean enforceSubpackageValidation, Map<String, ? extends ValidatorSettings> validatorSettingsById, @NotNull ValidationMessageSeverity minimumSeverity) {
+        Set<String> threadSafeValidatorIds = new HashSet<>();
+        Map<String, String> localValidatorFingerprints = new HashMap<>();
+        Map<String, Validator> validatorsById = createValidators(context, isSubPackage, enforceSubpackageValidation, validatorSettingsById != null ? validatorSettingsById : Collections.emptyMap(), threadSafeValidatorIds, localValidatorFingerprints);
         if (validatorsById.isEmpty()) {
             return null;
         }
-        return new ValidationExecutor(validatorsById);
+        ValidationExecutor executor = new ValidationExecutor(validatorsById, threadSafeValidatorIds);
+        executor.setMinimumSeverity(minimumSeverity);
+        Path cacheDirectory = this.cacheDirectory;
+        if (cacheDirectory != null && !localValidatorFingerprints.isEmpty()) {
+            executor.setValidationCache(new ValidationCache(cacheDirectory, localValidatorFingerprints));
+        }
+        return executor;
     }
 
-    private @NotNull Map<String, Validator> createValidators(@NotNull ValidationContext context, boolean isSubPackage, boolean enforceSubpackageValidation, Map<String, ? extends ValidatorSettings> validatorSettingsById) {
+    private @NotNull Map<String, Validator> createValidators(@NotNull ValidationContext context, boolean isSubPackage, boolean enforceSubpackageValidation, Map<String, ? extends ValidatorSettings> validatorSettingsById, @NotNull Set<String> threadSafeValidatorIds, @NotNull Map<String, String> localValidatorFingerprints) {
         Map<String, Validator> validatorsById = new LinkedHashMap<>();
         Set<String> validatorSettingsIds = new HashSet<>(validatorSettingsById.keySet());
         for (ValidatorFactory validatorFactory : validatorFactories) {
@@ -104,6 +145,13 @@ public final class ValidationExecutorFactory {
                         Validator oldValidator = validatorsById.putIfAbsent(validatorId, validator);
                         if (oldValidator != null) {
                             log.error("Found validators with duplicate id " + validatorId + ": " + oldValidator.getClass().getName() + " and " + validator.getClass().getName() + "(Duplicate, not considered)");
+                        } else {
+                            if (validatorFactory.isThreadSafe()) {
+                                threadSafeValidatorIds.add(validatorId);
+                            }
+                            if (validatorFactory.isLocal()) {
+                                localValidatorFingerprints.put(validatorId, getFingerprint(validatorFactory, context, settings));
+                            }
                         }
                     }
                 } else {
@@ -117,4 +165,16 @@ public final class ValidationExecutorFactory {
         return validatorsById;
     }
 
+    /**
+     * Returns the fingerprint of a local validator. It covers everything the messages of a local validator may depend on apart from the file itself.
+     */
+    private static @NotNull String getFingerprint(@NotNull ValidatorFactory validatorFactory, @NotNull ValidationContext context, @NotNull ValidatorSettings settings) {
+        StringBuilder fingerprint = new StringBuilder(validatorFactory.getClass().getName())
+                .append('\n').append(validatorFactory.getClass().getPackage() != null ? validatorFactory.getClass().getPackage().getImplementationVersion() : null)
+                .append('\n').append(settings.getDefaultSeverity())
+                .append('\n').append(new TreeMap<>(settings.getOptions()))
+                .append('\n').append(context.getFilter().getSourceAsString());
+        return ValidationCache.hash(fingerprint.toString());
+    }
+
 }
@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.validation.impl.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache for the validation messages of local validators (i.e. validators whose messages for a file only depend on the file's path and content,
+ * the validator settings and the package's filter).
+ * Each entry is bound to a file path, the hash of the file content and the fingerprint of the validator (which covers the validator's implementation and settings
+ * and the package's filter). It contains the messages returned for that file per call site and the node paths found by the validator in the file.
+ * Messages are cached without their throwables.
+ * This class is thread-safe.
+ */
+public final class ValidationCache {
+
+    /**
+     * the default logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(ValidationCache.class);
+
+    private static final int MAGIC = 0x56564343;
+
+    private static final int VERSION = 1;
+
+    private final @NotNull Path directory;
+
+    private final @NotNull Map<String, String> fingerprintsByValidatorId;
+
+    /**
+     * Creates a new cache.
+     * 
+     * @param directory the directory in which the entries are stored
+     * @param fingerprintsByValidatorId the fingerprints of all local validators (key=validator id)
+     */
+    public ValidationCache(@NotNull Path directory, @NotNull Map<String, String> fingerprintsByValidatorId) {
+        this.directory = directory;
+        this.fingerprintsByValidatorId = fingerprintsByValidatorId;
+    }
+
+    /**
+     * @param validatorId the validator id
+     * @return {@code true} in case the messages of the given validator may be cached, otherwise {@code false}
+     */
+    public boolean isLocal(@NotNull String validatorId) {
+        return fingerprintsByValidatorId.containsKey(validatorId);
+    }
+
+    /**
+     * Returns the cache view for a single file. The returned object must only be used by a single thread.
+     * 
+     * @param filePath the file path relative to the package root (i.e. starting with either {@code META-INF} or {@code jcr_root})
+     * @param contentHash the hash of the file's content (see {@link #hash(InputStream)})
+     * @return the cache view for the given file
+     */
+    public @NotNull CachedFile getCachedFile(@NotNull Path filePath, @NotNull String contentHash) {
+        return new CachedFile(filePath, contentHash);
+    }
+
+    private @Nullable Entry get(@NotNull String validatorId, @NotNull Path filePath, @NotNull String contentHash) {
+        Path file = getEntryFile(validatorId, filePath, contentHash);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            return Entry.read(in);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Unable to read validation cache entry {}, validating again.", file, e);
+            return null;
+        }
+    }
+
+    private void put(@NotNull String validatorId, @NotNull Path filePath, @NotNull String contentHash, @NotNull Entry entry) {
+        Path file = getEntryFile(validatorId, filePath, contentHash);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmpFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream os = Files.newOutputStream(tmpFile)) {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    entry.write(out);
+                    out.flush();
+                }
+                try {
+                    Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write validation cache entry {}", file, e);
+        }
+    }
+
+    private @NotNull Path getEntryFile(@NotNull String validatorId, @NotNull Path filePath, @NotNull String contentHash) {
+        String key = hash(validatorId + '\n' + fingerprintsByValidatorId.get(validatorId) + '\n' + filePath.toString().replace('\\', '/') + '\n' + contentHash);
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * Calculates the hash of the given input.
+     * 
+     * @param input the input stream (not closed by this method)
+     * @return the hex encoded SHA-256 hash of the input
+     * @throws IOException in case the input stream could not be read
+     */
+    public static @NotNull String hash(@NotNull InputStream input) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Calculates the hash of the given string.
+     * 
+     * @param value the string
+     * @return the hex encoded SHA-256 hash of the UTF-8 representation of the given string
+     */
+    public static @NotNull String hash(@NotNull String value) {
+        return toHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The cache view for a single file. Provides the cached messages of local validators and records the messages of local validators which are not cached yet.
+     * Call sites identify the method (and its arguments apart from the file) being called on the validator.
+     */
+    public final class CachedFile {
+
+        private final @NotNull Path filePath;
+
+        private final @NotNull String contentHash;
+
+        /** the entries read from the cache (value {@code null} in case there is no entry) */
+        private final @NotNull Map<String, Entry> cachedEntries = new HashMap<>();
+
+        /** the entries being modified during the current validation */
+        private final @NotNull Map<String, Entry> modifiedEntries = new LinkedHashMap<>();
+
+        CachedFile(@NotNull Path filePath, @NotNull String contentHash) {
+            this.filePath = filePath;
+            this.contentHash = contentHash;
+        }
+
+        /**
+         * @param validatorId the validator id
+         * @return {@code true} in case the messages of the given validator may be cached, otherwise {@code false}
+         */
+        public boolean isLocal(@NotNull String validatorId) {
+            return ValidationCache.this.isLocal(validatorId);
+        }
+
+        /**
+         * Returns the cached messages of a call site.
+         * 
+         * @param validatorId the validator id
+         * @param callSite the call site
+         * @return the cached messages or {@code null} in case the given validator is not local or the call site has not been cached for this file
+         */
+        public @Nullable List<ValidationMessage> getMessages(@NotNull String validatorId, @NotNull String callSite) {
+            Entry entry = getCachedEntry(validatorId);
+            return entry != null ? entry.messagesByCallSite.get(callSite) : null;
+        }
+
+        /**
+         * Returns the cached node paths.
+         * 
+         * @param validatorId the validator id
+         * @return the node paths and their line numbers found by the validator in this file or {@code null} in case the given validator is not local or nothing has been cached for this file
+         */
+        public @Nullable Map<String, Integer> getNodePathsAndLineNumbers(@NotNull String validatorId) {
+            Entry entry = getCachedEntry(validatorId);
+            return entry != null ? entry.nodePathsAndLineNumbers : null;
+        }
+
+        /**
+         * Records the messages of a call site. Does nothing for validators which are not local.
+         * 
+         * @param validatorId the validator id
+         * @param callSite the call site
+         * @param messages the messages returned from the validator (may be {@code null})
+         */
+        public void recordMessages(@NotNull String validatorId, @NotNull String callSite, @Nullable Collection<? extends ValidationMessage> messages) {
+            Entry entry = getModifiedEntry(validatorId);
+            if (entry != null) {
+                List<ValidationMessage> callSiteMessages = new ArrayList<>();
+                if (messages != null) {
+                    callSiteMessages.addAll(messages);
+                }
+                entry.messagesByCallSite.put(callSite, callSiteMessages);
+            }
+        }
+
+        /**
+         * Records the node paths found by a validator. Does nothing for validators which are not local.
+         * 
+         * @param validatorId the validator id
+         * @param nodePathsAndLineNumbers the node paths and their line numbers
+         */
+        public void recordNodePathsAndLineNumbers(@NotNull String validatorId, @NotNull Map<String, Integer> nodePathsAndLineNumbers) {
+            Entry entry = getModifiedEntry(validatorId);
+            if (entry != null) {
+                entry.nodePathsAndLineNumbers.putAll(nodePathsAndLineNumbers);
+            }
+        }
+
+        /**
+         * Writes all recorded messages and node paths to the cache. Must only be called after the file has been validated successfully.
+         */
+        public void store() {
+            for (Map.Entry<String, Entry> entry : modifiedEntries.entrySet()) {
+                put(entry.getKey(), filePath, contentHash, entry.getValue());
+            }
+        }
+
+        private @Nullable Entry getCachedEntry(@NotNull String validatorId) {
+            if (!isLocal(validatorId)) {
+                return null;
+            }
+            if (!cachedEntries.containsKey(validatorId)) {
+                cachedEntries.put(validatorId, get(validatorId, filePath, contentHash));
+            }
+            return cachedEntries.get(validatorId);
+        }
+
+        private @Nullable Entry getModifiedEntry(@NotNull String validatorId) {
+            if (!isLocal(validatorId)) {
+                return null;
+            }
+            // extend the cached entry (if there is one) with the call sites not being cached yet
+            return modifiedEntries.computeIfAbsent(validatorId, id -> {
+                Entry cachedEntry = getCachedEntry(id);
+                return cachedEntry != null ? cachedEntry : new Entry();
+            });
+        }
+    }
+
+    /**
+     * The cached results of one validator for one file.
+     */
+    private static final class Entry {
+
+        private final @NotNull Map<String, List<ValidationMessage>> messagesByCallSite = new LinkedHashMap<>();
+
+        private final @NotNull Map<String, Integer> nodePathsAndLineNumbers = new LinkedHashMap<>();
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(messagesByCallSite.size());
+            for (Map.Entry<String, List<ValidationMessage>> callSite : messagesByCallSite.entrySet()) {
+                out.writeUTF(callSite.getKey());
+                out.writeInt(callSite.getValue().size());
+                for (ValidationMessage message : callSite.getValue()) {
+                    writeNullable(out, message instanceof ValidationViolation ? ((ValidationViolation) message).getValidatorId() : null);
+                    out.writeUTF(message.getSeverity().name());
+                    writeString(out, message.getMessage());
+                    writeNullable(out, message.getFilePath() != null ? message.getFilePath().toString() : null);
+                    writeNullable(out, message.getNodePath());
+                    out.writeInt(message.getLine());
+                    out.writeInt(message.getColumn());
+                }
+            }
+            out.writeInt(nodePathsAndLineNumbers.size());
+            for (Map.Entry<String, Integer> nodePath : nodePathsAndLineNumbers.entrySet()) {
+                writeString(out, nodePath.getKey());
+                out.writeInt(nodePath.getValue());
+            }
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            Entry entry = new Entry();
+            int numCallSites = in.readInt();
+            for (int i = 0; i < numCallSites; i++) {
+                String callSite = in.readUTF();
+                int numMessages = in.readInt();
+                List<ValidationMessage> messages = new ArrayList<>(numMessages);
+                for (int j = 0; j < numMessages; j++) {
+                    String validatorId = readNullable(in);
+                    ValidationMessageSeverity severity = ValidationMessageSeverity.valueOf(in.readUTF());
+                    String message = readString(in);
+                    String filePath = readNullable(in);
+                    String nodePath = readNullable(in);
+                    int line = in.readInt();
+                    int column = in.readInt();
+                    messages.add(new ValidationViolation(validatorId, severity, message, filePath != null ? Paths.get(filePath) : null, null, nodePath, line, column, null));
+                }
+                entry.messagesByCallSite.put(callSite, messages);
+            }
+            int numNodePaths = in.readInt();
+            for (int i = 0; i < numNodePaths; i++) {
+                String nodePath = readString(in);
+                entry.nodePathsAndLineNumbers.put(nodePath, in.readInt());
+            }
+            return entry;
+        }
+
+        private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                writeString(out, value);
+            }
+        }
+
+        private static @Nullable String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? readString(in) : null;
+        }
+
+        // messages might exceed the 64k limit of writeUTF
+        private static void writeString(DataOutputStream out, @NotNull String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static @NotNull String readString(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
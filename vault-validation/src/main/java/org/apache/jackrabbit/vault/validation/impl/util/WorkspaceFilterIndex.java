@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.validation.impl.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index over the node filter sets of a {@link WorkspaceFilter}. The roots of the filter sets are kept in a trie (with one level per path segment),
+ * so that looking up the filter sets covering a path only depends on the depth of the path and not on the number of filter sets.
+ * The methods behave like the according methods of {@link WorkspaceFilter} (in its default implementation).
+ * This class is thread-safe.
+ */
+public final class WorkspaceFilterIndex {
+
+    private final @NotNull WorkspaceFilter filter;
+
+    /** all node filter sets in their original order */
+    private final @NotNull List<PathFilterSet> filterSets;
+
+    /** the trie node for path "/" */
+    private final @NotNull TrieNode rootNode;
+
+    /** the indices of the filter sets whose roots are not normalized absolute paths, those are evaluated one by one */
+    private final @NotNull List<Integer> irregularFilterSetIndices;
+
+    public WorkspaceFilterIndex(@NotNull WorkspaceFilter filter) {
+        this.filter = filter;
+        this.filterSets = new ArrayList<>(filter.getFilterSets());
+        this.rootNode = new TrieNode();
+        this.irregularFilterSetIndices = new ArrayList<>();
+        for (int index = 0; index < filterSets.size(); index++) {
+            String root = filterSets.get(index).getRoot();
+            if (!isNormalizedAbsolutePath(root)) {
+                irregularFilterSetIndices.add(index);
+                continue;
+            }
+            TrieNode node = rootNode;
+            for (String segment : getSegments(root)) {
+                node = node.children.computeIfAbsent(segment, k -> new TrieNode());
+            }
+            node.filterSetIndices.add(index);
+        }
+    }
+
+    /**
+     * Returns all filter sets covering the given path.
+     * 
+     * @param path the absolute path
+     * @return the filter sets covering the given path in the order in which they are defined in the filter (might be empty)
+     */
+    public @NotNull List<PathFilterSet> getCoveringFilterSets(@NotNull String path) {
+        if (!isNormalizedAbsolutePath(path)) {
+            return filterSets.stream().filter(s -> s.covers(path)).collect(Collectors.toList());
+        }
+        List<Integer> indices = new ArrayList<>();
+        TrieNode node = rootNode;
+        indices.addAll(node.filterSetIndices);
+        for (String segment : getSegments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+            indices.addAll(node.filterSetIndices);
+        }
+        for (int index : irregularFilterSetIndices) {
+            if (filterSets.get(index).covers(path)) {
+                indices.add(index);
+            }
+        }
+        if (indices.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(indices);
+        List<PathFilterSet> coveringFilterSets = new ArrayList<>(indices.size());
+        for (int index : indices) {
+            coveringFilterSets.add(filterSets.get(index));
+        }
+        return coveringFilterSets;
+    }
+
+    /**
+     * Same as {@link WorkspaceFilter#getCoveringFilterSet(String)}.
+     * 
+     * @param path the absolute path
+     * @return the first filter set covering the given path or {@code null}
+     */
+    public @Nullable PathFilterSet getCoveringFilterSet(@NotNull String path) {
+        if (filter.isGloballyIgnored(path)) {
+            return null;
+        }
+        List<PathFilterSet> coveringFilterSets = getCoveringFilterSets(path);
+        return coveringFilterSets.isEmpty() ? null : coveringFilterSets.get(0);
+    }
+
+    /**
+     * Same as {@link WorkspaceFilter#contains(String)}.
+     * 
+     * @param path the absolute path
+     * @return {@code true} in case the given path is contained in any of the filter sets, otherwise {@code false}
+     */
+    public boolean contains(@NotNull String path) {
+        if (filter.isGloballyIgnored(path)) {
+            return false;
+        }
+        for (PathFilterSet filterSet : getCoveringFilterSets(path)) {
+            if (filterSet.contains(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link WorkspaceFilter#isAncestor(String)}.
+     * 
+     * @param path the absolute path
+     * @return {@code true} in case the given path is the root or an ancestor of the root of any of the filter sets, otherwise {@code false}
+     */
+    public boolean isAncestor(@NotNull String path) {
+        if ("/".equals(path)) {
+            return !filterSets.isEmpty();
+        }
+        if (!isNormalizedAbsolutePath(path)) {
+            return filterSets.stream().anyMatch(s -> s.isAncestor(path));
+        }
+        // every trie node is the root or an ancestor of at least one filter root
+        TrieNode node = rootNode;
+        for (String segment : getSegments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+        }
+        if (node != null) {
+            return true;
+        }
+        for (int index : irregularFilterSetIndices) {
+            if (filterSets.get(index).isAncestor(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path the path to check
+     * @return {@code true} in case the given path is absolute and contains neither empty segments nor a trailing slash (apart from the root path "/")
+     */
+    private static boolean isNormalizedAbsolutePath(@NotNull String path) {
+        return "/".equals(path) || (path.startsWith("/") && !path.endsWith("/") && !path.contains("//"));
+    }
+
+    private static @NotNull String[] getSegments(@NotNull String path) {
+        return "/".equals(path) ? new String[0] : path.substring(1).split("/");
+    }
+
+    private static final class TrieNode {
+        private final @NotNull Map<String, TrieNode> children = new HashMap<>();
+        /** the indices of the filter sets having exactly this node as root */
+        private final @NotNull List<Integer> filterSetIndices = new ArrayList<>();
+    }
+}
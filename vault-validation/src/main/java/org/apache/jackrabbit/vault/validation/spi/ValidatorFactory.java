@@ -64,4 +64,27 @@ public interface ValidatorFactory {
      * @return the service ranking
      */
     int getServiceRanking();
+
+    /**
+     * Returns whether the validators created by this factory may be called concurrently from multiple threads.
+     * Validators which are not thread-safe are never called concurrently when the {@code ValidationExecutor} validates a whole package with multiple threads,
+     * they are called for one file after the other in the order of the files.
+     * 
+     * @return {@code true} in case the validators returned by {@link #createValidator(ValidationContext, ValidatorSettings)} are thread-safe, otherwise {@code false}
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * Returns whether the validators created by this factory are local, i.e. whether the messages returned for a file only depend on the file's path and content,
+     * the validator settings and the package's filter.
+     * The messages and node paths of local validators may be cached across validation runs and replayed for unmodified files, in which case the validator is not called for those files.
+     * Validators which need to be called for every file (e.g. because they collect information for {@link Validator#done()}) must not be local.
+     * 
+     * @return {@code true} in case the validators returned by {@link #createValidator(ValidationContext, ValidatorSettings)} are local, otherwise {@code false}
+     */
+    default boolean isLocal() {
+        return false;
+    }
 }
@@ -23,6 +23,7 @@ import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -58,6 +59,7 @@ import org.apache.jackrabbit.vault.util.DocViewNode;
 import org.apache.jackrabbit.vault.util.Text;
 import org.apache.jackrabbit.vault.validation.ValidationViolation;
 import org.apache.jackrabbit.vault.validation.impl.util.ValidationMessageErrorHandler;
+import org.apache.jackrabbit.vault.validation.impl.util.WorkspaceFilterIndex;
 import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
 import org.apache.jackrabbit.vault.validation.spi.FilterValidator;
 import org.apache.jackrabbit.vault.validation.spi.GenericMetaInfDataValidator;
@@ -93,9 +95,12 @@ public final class AdvancedFilterValidator implements GenericMetaInfDataValidato
     private final @NotNull ValidationMessageSeverity severityForUncoveredFilterRootAncestors;
     private final @NotNull ValidationMessageSeverity severityForOrphanedFilterEntries;
     private final Collection<PackageInfo> dependenciesMetaInfo;
-    private final WorkspaceFilter filter;
+    /** index over the package's filter used for all checks per node */
+    private final WorkspaceFilterIndex filterIndex;
     private Map<String, FilterValidator> filterValidators;
-    private final Collection<String> danglingNodePaths;
+    private final Set<String> danglingNodePaths;
+    /** node paths for which no (further) dangling ancestor node path needs to be reported */
+    private final Set<String> resolvedNodePaths;
     private final Map<PathFilterSet, List<Entry<PathFilter>>> orphanedFilterSets;
 
     public AdvancedFilterValidator(@NotNull ValidationMessageSeverity defaultSeverity, @NotNull ValidationMessageSeverity severityForUncoveredAncestorNodes, @NotNull ValidationMessageSeverity severityForUncoveredFilterRootAncestors, @NotNull ValidationMessageSeverity severityForOrphanedFilterEntries, boolean isSubPackage, @NotNull Collection<PackageInfo> dependenciesMetaInfo, @NotNull WorkspaceFilter filter, @NotNull Collection<String> validRoots) {
@@ -106,9 +111,10 @@ public final class AdvancedFilterValidator implements GenericMetaInfDataValidato
         this.severityForUncoveredFilterRootAncestors = severityForUncoveredFilterRootAncestors;
         this.severityForOrphanedFilterEntries = severityForOrphanedFilterEntries;
         this.dependenciesMetaInfo = dependenciesMetaInfo;
-        this.filter = filter;
+        this.filterIndex = new WorkspaceFilterIndex(filter);
         this.validRoots = validRoots;
-        this.danglingNodePaths = new LinkedList<>();
+        this.danglingNodePaths = new HashSet<>();
+        this.resolvedNodePaths = new HashSet<>();
         
         // all roots from dependencies are also potentially valid
         for (PackageInfo dependencyInfo : dependenciesMetaInfo) {
@@ -247,8 +253,8 @@ public final class AdvancedFilterValidator implements GenericMetaInfDataValidato
         removeFromOrphanedFilterEntries(nodePath);
         
         // now go through all includes
-        if (!filter.contains(nodePath)) {
-            if (filter.isAncestor(nodePath)) {
+        if (!filterIndex.contains(nodePath)) {
+            if (filterIndex.isAncestor(nodePath)) {
                 // consider valid roots
                 if (validRoots.contains(nodePath)) {
                     return Collections.singleton(
@@ -266,7 +272,7 @@ public final class AdvancedFilterValidator implements GenericMetaInfDataValidato
             }
         } else {
             // is it a cleanup filter?
-            PathFilterSet pathFilterSet = filter.getCoveringFilterSet(nodePath);
+            PathFilterSet pathFilterSet = filterIndex.getCoveringFilterSet(nodePath);
             if (pathFilterSet != null) {
                 if (PathFilterSet.TYPE_CLEANUP.equals(pathFilterSet.getType())) {
                     return Collections
@@ -275,7 +281,7 @@ public final class AdvancedFilterValidator implements GenericMetaInfDataValidato
             }
         }
         // check that all ancestor nodes till the root node are contained as well
-        String danglingNodePath = getDanglingAncestorNodePath(nodePath, filter);
+        String danglingNodePath = getDanglingAncestorNodePath(nodePath);
         if (danglingNodePath != null) {
             return Collections.singleton(
                     new ValidationMessage(defaultSeverity, "Ancestor node (" + danglingNodePath + ") of Node '" + nodePath +"' which is contained in a filter include element is not included!"));
@@ -370,12 +376,14 @@ public final class AdvancedFilterValidator implements GenericMetaInfDataValidato
     }
 
     private void removeFromOrphanedFilterEntries(@NotNull String nodePath) {
-        // find all filter roots which match
-        Iterator<java.util.Map.Entry<PathFilterSet, List<Entry<PathFilter>>>> iter = orphanedFilterSets.entrySet().iterator();
-        while (iter.hasNext()) {
-            java.util.Map.Entry<PathFilterSet, List<Entry<PathFilter>>> orphanedFilterEntry = iter.next();
-            if (orphanedFilterEntry.getKey().contains(nodePath)) {
-                Iterator<Entry<PathFilter>> includeIterator = orphanedFilterEntry.getValue().iterator();
+        if (orphanedFilterSets.isEmpty()) {
+            return;
+        }
+        // only filter sets whose root covers the node path may contain it
+        for (PathFilterSet pathFilterSet : filterIndex.getCoveringFilterSets(nodePath)) {
+            List<Entry<PathFilter>> orphanedIncludes = orphanedFilterSets.get(pathFilterSet);
+            if (orphanedIncludes != null && pathFilterSet.contains(nodePath)) {
+                Iterator<Entry<PathFilter>> includeIterator = orphanedIncludes.iterator();
                 // check all include and remove if they apply to the node path
                 while (includeIterator.hasNext()) {
                     Entry<PathFilter> includeEntry = includeIterator.next();
@@ -384,9 +392,9 @@ public final class AdvancedFilterValidator implements GenericMetaInfDataValidato
                     }
                 }
                 // remove the whole entry if no includes are left
-                if (orphanedFilterEntry.getValue().isEmpty()) {
+                if (orphanedIncludes.isEmpty()) {
                     // remove it
-                    iter.remove();
+                    orphanedFilterSets.remove(pathFilterSet);
                 }
             }
         }
@@ -397,21 +405,27 @@ public final class AdvancedFilterValidator implements GenericMetaInfDataValidato
      * @param nodePath
      * @return the path the ancestor node not contained in the filter or {@code null}
      */
-     @Nullable String getDanglingAncestorNodePath(String nodePath, WorkspaceFilter filter) {
-        // check cache first (in that case the issue has already been emitted)
-        if (danglingNodePaths.contains(nodePath)) {
+     @Nullable String getDanglingAncestorNodePath(String nodePath) {
+        // check caches first (in case of a dangling node path the issue has already been emitted)
+        if (danglingNodePaths.contains(nodePath) || resolvedNodePaths.contains(nodePath)) {
             return null;
         }
         // check that all ancestor nodes till the filter root node are contained as well
-        for (PathFilterSet pathFilterSet : filter.getFilterSets()) {
+        for (PathFilterSet pathFilterSet : filterIndex.getCoveringFilterSets(nodePath)) {
             if (pathFilterSet.contains(nodePath)) {
                 String parentNodePath = Text.getRelativeParent(nodePath, 1);
                 // make sure that all ancestors till the root node are contained as well
                 if (!nodePath.equals(pathFilterSet.getRoot()) && !parentNodePath.equals(pathFilterSet.getRoot())) {
                     // ancestor might also be contained in another filter
-                    return getDanglingAncestorNodePath(parentNodePath, filter);
+                    String danglingNodePath = getDanglingAncestorNodePath(parentNodePath);
+                    if (danglingNodePath == null) {
+                        // this result never changes, so don't walk up the ancestors again for this node path
+                        resolvedNodePaths.add(nodePath);
+                    }
+                    return danglingNodePath;
                 } else {
                     // once the root level is reached this node path is contained
+                    resolvedNodePaths.add(nodePath);
                     return null;
                 }
             } 
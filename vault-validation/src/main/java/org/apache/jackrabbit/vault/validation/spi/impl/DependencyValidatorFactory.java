@@ -59,4 +59,9 @@ public final class DependencyValidatorFactory implements ValidatorFactory {
         return 0;
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
 }
@@ -27,7 +27,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.jackrabbit.vault.fs.api.SerializationType;
@@ -49,13 +51,39 @@ import org.xml.sax.XMLReader;
 public class DocumentViewParserValidator implements GenericJcrDataValidator {
 
     private final Map<String, DocumentViewXmlValidator> docViewValidators;
-    private final SAXParser saxParser;
+    /** the parser being used by the current thread */
+    private final ThreadLocal<SAXParser> saxParser;
     private final @NotNull ValidationMessageSeverity severity;
     
+    /**
+     * Creates a validator which must not be called concurrently as it always uses the given parser.
+     * 
+     * @param saxParser the parser
+     * @param severity the severity for invalid XML
+     */
     public DocumentViewParserValidator(SAXParser saxParser, @NotNull ValidationMessageSeverity severity) {
         super();
         this.docViewValidators = new HashMap<>();
-        this.saxParser = saxParser;
+        this.saxParser = ThreadLocal.withInitial(() -> saxParser);
+        this.severity = severity;
+    }
+
+    /**
+     * Creates a thread-safe validator which uses a separate parser for each thread.
+     * 
+     * @param saxParserFactory the factory for the parsers
+     * @param severity the severity for invalid XML
+     */
+    public DocumentViewParserValidator(SAXParserFactory saxParserFactory, @NotNull ValidationMessageSeverity severity) {
+        super();
+        this.docViewValidators = new HashMap<>();
+        this.saxParser = ThreadLocal.withInitial(() -> {
+            try {
+                return saxParserFactory.newSAXParser();
+            } catch (ParserConfigurationException | SAXException e) {
+                throw new IllegalStateException("Could not create SAX parser", e);
+            }
+        });
         this.severity = severity;
     }
 
@@ -76,6 +104,22 @@ public class DocumentViewParserValidator implements GenericJcrDataValidator {
 
     @Override
     public Collection<ValidationMessage> validateJcrData(@NotNull InputStream input, @NotNull Path filePath, @NotNull Path basePath, @NotNull Map<String, Integer> nodePathsAndLineNumbers) throws IOException {
+        return validateJcrData(input, filePath, basePath, nodePathsAndLineNumbers, docViewValidators);
+    }
+
+    /**
+     * Same as {@link #validateJcrData(InputStream, Path, Path, Map)} but only passes the parsed nodes to the given validators.
+     * 
+     * @param input the input stream of the file
+     * @param filePath file path relative to the jcr_root directory
+     * @param basePath the path to which the file path is relative
+     * @param nodePathsAndLineNumbers the map to which the node paths found in the file are added
+     * @param docViewValidators the validators which should be called for the nodes of the file (key=validator id)
+     * @return the validation messages
+     * @throws IOException in case the input stream could not be accessed
+     */
+    public Collection<ValidationMessage> validateJcrData(@NotNull InputStream input, @NotNull Path filePath, @NotNull Path basePath, @NotNull Map<String, Integer> nodePathsAndLineNumbers,
+            @NotNull Map<String, DocumentViewXmlValidator> docViewValidators) throws IOException {
         Collection<ValidationMessage> messages = new LinkedList<>();
         // TODO: support other formats like sysview xml or generic xml
         // (https://jackrabbit.apache.org/filevault/vaultfs.html#Deserialization)
@@ -87,7 +131,7 @@ public class DocumentViewParserValidator implements GenericJcrDataValidator {
         if (documentViewXmlRootPath != null) {
             try {
                 messages.addAll(validateDocumentViewXml(bufferedInput, filePath, basePath, ValidationExecutor.filePathToNodePath(documentViewXmlRootPath),
-                            nodePathsAndLineNumbers));
+                            nodePathsAndLineNumbers, docViewValidators));
             } catch (SAXException e) {
                 throw new IOException("Could not parse xml", e);
             }
@@ -100,6 +144,18 @@ public class DocumentViewParserValidator implements GenericJcrDataValidator {
     }
 
 
+    /**
+     * Checks whether the given input is a Document View XML file. Only the beginning of the given input is read, it is reset afterwards.
+     * 
+     * @param input the input stream of the file
+     * @param filePath file path relative to the jcr_root directory
+     * @return {@code true} in case the given input is a Document View XML file, otherwise {@code false}
+     * @throws IOException in case the input stream could not be accessed
+     */
+    public static boolean isDocumentViewXml(@NotNull BufferedInputStream input, @NotNull Path filePath) throws IOException {
+        return getDocumentViewXmlRootPath(input, filePath) != null;
+    }
+
     /** @param input the given input stream must be reset later on
      * @param path
      * @return either the path of the root node of the given docview xml or {@code null} if no docview xml given
@@ -144,8 +200,13 @@ public class DocumentViewParserValidator implements GenericJcrDataValidator {
 
     protected Collection<ValidationMessage> validateDocumentViewXml(InputStream input, @NotNull Path filePath, @NotNull Path basePath, String rootNodePath,
             Map<String, Integer> nodePathsAndLineNumbers) throws IOException, SAXException {
+        return validateDocumentViewXml(input, filePath, basePath, rootNodePath, nodePathsAndLineNumbers, docViewValidators);
+    }
+
+    private Collection<ValidationMessage> validateDocumentViewXml(InputStream input, @NotNull Path filePath, @NotNull Path basePath, String rootNodePath,
+            Map<String, Integer> nodePathsAndLineNumbers, Map<String, DocumentViewXmlValidator> docViewValidators) throws IOException, SAXException {
         List<ValidationMessage> enrichedMessages = new LinkedList<>();
-        XMLReader xr = saxParser.getXMLReader();
+        XMLReader xr = saxParser.get().getXMLReader();
         final DocumentViewXmlContentHandler handler = new DocumentViewXmlContentHandler(filePath, basePath, rootNodePath,
                 docViewValidators);
         enrichedMessages.add(new ValidationMessage(ValidationMessageSeverity.DEBUG, "Detected DocView..."));
@@ -18,7 +18,6 @@ package org.apache.jackrabbit.vault.validation.spi.impl;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
@@ -32,18 +31,29 @@ import org.xml.sax.SAXException;
 @MetaInfServices
 public class DocumentViewParserValidatorFactory implements ValidatorFactory {
 
-    private SAXParser saxParser;
+    private final SAXParserFactory saxParserFactory;
 
     public DocumentViewParserValidatorFactory() throws ParserConfigurationException, SAXException {
 
-        SAXParserFactory spf = SAXParserFactory.newInstance();
-        spf.setNamespaceAware(true);
-        spf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        saxParser = spf.newSAXParser();
+        saxParserFactory = SAXParserFactory.newInstance();
+        saxParserFactory.setNamespaceAware(true);
+        saxParserFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        // make sure the configuration is supported
+        saxParserFactory.newSAXParser();
     }
     @Override
     public Validator createValidator(@NotNull ValidationContext context, @NotNull ValidatorSettings settings) {
-        return new DocumentViewParserValidator(saxParser, settings.getDefaultSeverity());
+        return new DocumentViewParserValidator(saxParserFactory, settings.getDefaultSeverity());
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
     }
 
     @Override
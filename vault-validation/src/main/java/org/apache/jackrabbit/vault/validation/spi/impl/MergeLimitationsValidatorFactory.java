@@ -46,4 +46,14 @@ public final class MergeLimitationsValidatorFactory implements ValidatorFactory
     public int getServiceRanking() {
         return 0;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
 }
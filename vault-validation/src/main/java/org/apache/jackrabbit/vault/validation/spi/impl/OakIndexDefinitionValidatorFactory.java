@@ -71,6 +71,11 @@ public final class OakIndexDefinitionValidatorFactory implements ValidatorFactor
     public int getServiceRanking() {
         return 0;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
     
     
 }
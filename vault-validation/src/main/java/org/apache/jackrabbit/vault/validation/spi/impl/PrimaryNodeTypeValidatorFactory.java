@@ -47,5 +47,15 @@ public final class PrimaryNodeTypeValidatorFactory implements ValidatorFactory {
         return 0;
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
     
 }
@@ -22,6 +22,8 @@ import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -30,10 +32,12 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
 import org.apache.jackrabbit.vault.validation.ValidationExecutor;
 import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.impl.util.ValidationCache;
 import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
 import org.apache.jackrabbit.vault.validation.spi.GenericJcrDataValidator;
 import org.apache.jackrabbit.vault.validation.spi.GenericMetaInfDataValidator;
@@ -46,11 +50,14 @@ import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
 import org.apache.jackrabbit.vault.validation.spi.Validator;
+import org.apache.jackrabbit.vault.validation.spi.impl.DocumentViewParserValidator;
 import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -82,6 +89,8 @@ public class ValidationExecutorTest {
     private Validator unusedValidator;
     @Mock
     private ValidationContext context;
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
     
     private ValidationExecutor executor;
 
@@ -198,6 +207,46 @@ public class ValidationExecutorTest {
         }
     }
 
+    @Test
+    public void testGenericJcrDataInSingleParseMode() throws IOException, ParserConfigurationException, SAXException {
+        Mockito.when(genericJcrDataValidator.shouldValidateJcrData(Mockito.any(), Mockito.any())).thenReturn(true);
+        SAXParserFactory spf = SAXParserFactory.newInstance();
+        spf.setNamespaceAware(true);
+        Map<String, Validator> validators = new LinkedHashMap<>();
+        validators.put("docviewparserid", new DocumentViewParserValidator(spf, ValidationMessageSeverity.ERROR));
+        validators.put("docviewid", docViewXmlValidator);
+        validators.put("genericjcrdataid", genericJcrDataValidator);
+        executor = new ValidationExecutor(validators);
+        executor.setSingleParse(true);
+        try (InputStream input = this.getClass().getResourceAsStream("/simple-package/jcr_root/apps/.content.xml")) {
+            executor.validateJcrRoot(input, Paths.get("apps", ".content.xml"), Paths.get(""));
+        }
+        // docview files are only parsed by the docview parser
+        Mockito.verify(docViewXmlValidator, Mockito.atLeastOnce()).validate(Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(genericJcrDataValidator, Mockito.never()).validateJcrData(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        Assert.assertEquals(Collections.singleton("genericjcrdataid"), executor.getSkippedValidatorIds());
+        try (InputStream input = this.getClass().getResourceAsStream("/simple-package/jcr_root/apps/genericfile.xml")) {
+            executor.validateJcrRoot(input, Paths.get("apps", "genericfile.xml"), Paths.get(""));
+        }
+        Mockito.verify(genericJcrDataValidator).validateJcrData(Mockito.any(), Mockito.eq(Paths.get("apps", "genericfile.xml")), Mockito.eq(Paths.get("")), Mockito.any());
+    }
+
+    @Test
+    public void testSkippedValidatorIdsOnlyContainInterestedValidators() throws IOException, ParserConfigurationException, SAXException {
+        Mockito.when(genericJcrDataValidator.shouldValidateJcrData(Mockito.any(), Mockito.any())).thenReturn(false);
+        SAXParserFactory spf = SAXParserFactory.newInstance();
+        spf.setNamespaceAware(true);
+        Map<String, Validator> validators = new LinkedHashMap<>();
+        validators.put("docviewparserid", new DocumentViewParserValidator(spf, ValidationMessageSeverity.ERROR));
+        validators.put("genericjcrdataid", genericJcrDataValidator);
+        executor = new ValidationExecutor(validators);
+        executor.setSingleParse(true);
+        try (InputStream input = this.getClass().getResourceAsStream("/simple-package/jcr_root/apps/.content.xml")) {
+            executor.validateJcrRoot(input, Paths.get("apps", ".content.xml"), Paths.get(""));
+        }
+        Assert.assertTrue(executor.getSkippedValidatorIds().isEmpty());
+    }
+
     @Test
     public void testJcrRootFolder() throws URISyntaxException, IOException, SAXException {
         Collection<ValidationViolation> messages = validateFolder(executor, Paths.get(""), "apps.dir", false);
@@ -207,6 +256,19 @@ public class ValidationExecutorTest {
         Mockito.verify(nodePathValidator).validate(expectedNodeContext);
     }
 
+    @Test
+    public void testMinimumSeverityWithSink() throws IOException {
+        Mockito.when(jcrPathValidator.validateJcrPath(Mockito.any(), Mockito.anyBoolean())).thenReturn(Arrays.asList(
+                new ValidationMessage(ValidationMessageSeverity.INFO, "info"), new ValidationMessage(ValidationMessageSeverity.ERROR, "patherror")));
+        executor.setMinimumSeverity(ValidationMessageSeverity.WARN);
+        List<ValidationViolation> messages = new ArrayList<>();
+        executor.validateJcrRoot(null, Paths.get("apps.dir"), Paths.get(""), messages::add);
+        Assert.assertThat(messages, Matchers.contains(
+                new ValidationViolation("jcrpathid", ValidationMessageSeverity.ERROR, "patherror", Paths.get("apps.dir"), Paths.get(""), null, 0, 0, null)));
+        // the node path validator is still called
+        Mockito.verify(nodePathValidator).validate(new NodeContextImpl("/apps", Paths.get("apps.dir"), Paths.get("")));
+    }
+
     @Test
     public void testDone() {
         Mockito.when(genericJcrDataValidator.done()).thenReturn(Collections.singleton(new ValidationMessage(ValidationMessageSeverity.ERROR, "test1")));
@@ -240,6 +302,57 @@ public class ValidationExecutorTest {
         return messages;
     }
 
+    @Test
+    public void testValidateDirectoryConcurrently() throws URISyntaxException, IOException {
+        Mockito.when(nodePathValidator.validate(Mockito.argThat(new NodeContextNodePathMatcher("/apps/invalid/wrongtype.xml")))).thenReturn(Collections.singletonList(new ValidationMessage(ValidationMessageSeverity.ERROR, "Invalid node path")));
+        Mockito.when(unusedValidator.done()).thenReturn(Collections.singletonList(new ValidationMessage(ValidationMessageSeverity.WARN, "done")));
+        Path packageDirectory = Paths.get(this.getClass().getResource("/simple-package").toURI());
+        Collection<ValidationViolation> messages = executor.validate(packageDirectory, 4);
+        Path jcrRootPath = packageDirectory.resolve("jcr_root");
+        ValidationExecutorTest.assertViolation(messages,
+                new ValidationViolation("nodepathid", ValidationMessageSeverity.ERROR, "Invalid node path", Paths.get("apps/invalid/wrongtype.xml"), jcrRootPath, "/apps/invalid/wrongtype.xml", 0, 0, null),
+                new ValidationViolation("unusedid", ValidationMessageSeverity.WARN, "done"));
+        Mockito.verify(metaInfPathValidator).validateMetaInfPath(Paths.get("vault", "filter.xml"), packageDirectory.resolve("META-INF"), false);
+        Mockito.verify(metaInfPathValidator).validateMetaInfPath(Paths.get("vault"), packageDirectory.resolve("META-INF"), true);
+        Mockito.verify(nodePathValidator).validate(Mockito.argThat(new NodeContextNodePathMatcher("/apps/child2")));
+    }
+
+    @Test
+    public void testValidateDirectoryConcurrentlyInFileOrder() throws URISyntaxException, IOException {
+        List<String> nodePaths = Collections.synchronizedList(new ArrayList<>());
+        Mockito.when(jcrPathValidator.validateJcrPath(Mockito.any(), Mockito.anyBoolean())).then(invocation -> {
+            nodePaths.add(NodeContext.class.cast(invocation.getArguments()[0]).getNodePath());
+            return null;
+        });
+        Path packageDirectory = Paths.get(this.getClass().getResource("/simple-package").toURI());
+        executor.validate(packageDirectory, 1);
+        List<String> sequentialNodePaths = new ArrayList<>(nodePaths);
+        nodePaths.clear();
+        // validators which are not thread-safe see the files in the same order
+        executor.validate(packageDirectory, 4);
+        Assert.assertEquals(sequentialNodePaths, nodePaths);
+    }
+
+    @Test
+    public void testValidateDirectoryWithCache() throws URISyntaxException, IOException {
+        Mockito.when(jcrPathValidator.validateJcrPath(Mockito.any(), Mockito.eq(false))).thenReturn(Collections.singletonList(new ValidationMessage(ValidationMessageSeverity.ERROR, "patherror")));
+        executor.setValidationCache(new ValidationCache(tmpFolder.getRoot().toPath(), Collections.singletonMap("jcrpathid", "fingerprint")));
+        Path packageDirectory = Paths.get(this.getClass().getResource("/simple-package").toURI());
+        List<ValidationViolation> messages = executor.validate(packageDirectory, 2).stream().filter(m -> "jcrpathid".equals(m.getValidatorId())).collect(Collectors.toList());
+        Path jcrRootPath = packageDirectory.resolve("jcr_root");
+        Assert.assertThat(messages, Matchers.hasItem(
+                new ValidationViolation("jcrpathid", ValidationMessageSeverity.ERROR, "patherror", Paths.get("apps/child1.xml"), jcrRootPath, null, 0, 0, null)));
+        Mockito.verify(jcrPathValidator, Mockito.times(8)).validateJcrPath(Mockito.any(), Mockito.eq(false));
+
+        // second run replays the cached messages for all (unmodified) files
+        List<ValidationViolation> cachedMessages = executor.validate(packageDirectory, 2).stream().filter(m -> "jcrpathid".equals(m.getValidatorId())).collect(Collectors.toList());
+        Assert.assertEquals(messages, cachedMessages);
+        Mockito.verify(jcrPathValidator, Mockito.times(8)).validateJcrPath(Mockito.any(), Mockito.eq(false));
+        // folders and validators which are not local are not cached
+        Mockito.verify(jcrPathValidator, Mockito.times(2)).validateJcrPath(Mockito.argThat(new NodeContextNodePathMatcher("/apps/child2")), Mockito.eq(true));
+        Mockito.verify(nodePathValidator, Mockito.times(2)).validate(Mockito.argThat(new NodeContextNodePathMatcher("/apps/invalid/wrongtype.xml")));
+    }
+
     @Test
     public void testFilePathToNodePath() {
         Assert.assertEquals("/apps/test", ValidationExecutor.filePathToNodePath(Paths.get("apps", "test")));
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.vault.validation.impl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkspaceFilterIndexTest {
+
+    private static final List<String> PATHS = Arrays.asList("/", "/apps", "/apps/", "/apps//test", "/apps/test", "/apps/test/child", "/apps/testother", 
+            "/var", "/var/acs-commons", "/var/acs-commons/mcp", "/var/acs-commons/mcp/rep:policy", "/var/acs-commons/on-deploy-scripts-status/README.txt",
+            "/etc", "/etc/test", "/content", "/content/foo/bar", "relative");
+
+    private DefaultWorkspaceFilter filter;
+
+    @Before
+    public void setUp() throws IOException, ConfigurationException {
+        filter = new DefaultWorkspaceFilter();
+        try (InputStream input = this.getClass().getResourceAsStream("/test-filter.xml")) {
+            filter.load(input);
+        }
+        filter.add(new PathFilterSet("/apps/test"));
+        // root with trailing slash and relative root
+        filter.add(new PathFilterSet("/apps/"));
+        filter.add(new PathFilterSet("relative"));
+    }
+
+    @Test
+    public void testSameResultsAsFilter() {
+        WorkspaceFilterIndex index = new WorkspaceFilterIndex(filter);
+        for (String path : PATHS) {
+            Assert.assertEquals("contains " + path, filter.contains(path), index.contains(path));
+            Assert.assertEquals("isAncestor " + path, filter.isAncestor(path), index.isAncestor(path));
+            Assert.assertEquals("getCoveringFilterSet " + path, filter.getCoveringFilterSet(path), index.getCoveringFilterSet(path));
+        }
+    }
+
+    @Test
+    public void testGetCoveringFilterSets() {
+        WorkspaceFilterIndex index = new WorkspaceFilterIndex(filter);
+        for (String path : PATHS) {
+            Object[] expectedFilterSets = filter.getFilterSets().stream().filter(s -> s.covers(path)).toArray();
+            Assert.assertArrayEquals("getCoveringFilterSets " + path, expectedFilterSets, index.getCoveringFilterSets(path).toArray());
+        }
+    }
+
+    @Test
+    public void testEmptyFilter() {
+        WorkspaceFilterIndex index = new WorkspaceFilterIndex(new DefaultWorkspaceFilter());
+        Assert.assertFalse(index.contains("/apps"));
+        Assert.assertFalse(index.isAncestor("/"));
+        Assert.assertNull(index.getCoveringFilterSet("/apps"));
+    }
+}